@@ -234,7 +234,9 @@ public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
                 tvSenderName.setTextColor(itemView.getResources().getColor(R.color.text_secondary, null));
             }
 
-            tvMessage.setText(message.content);
+            // SOS / alerts whose signature could not be checked are shown, but flagged
+            tvMessage.setText(Boolean.TRUE.equals(message.unverified) ? "⚠️ Unverified: " + message.content
+                    : message.content);
             tvTimestamp.setText(timeFormat.format(new Date(message.timestamp)));
 
             // Reset style
@@ -10,6 +10,9 @@ public class DisasterApp extends Application {
         super.onCreate();
         instance = this;
 
+        // Mesh core is plain Java; send its logs to logcat
+        com.example.disastercomm.network.MeshLog.setSink(new com.example.disastercomm.network.LogcatSink());
+
         // Initialize CrashHandler
         com.example.disastercomm.utils.CrashHandler.init(this);
 
@@ -268,15 +268,10 @@ public class MainActivity extends AppCompatActivity
                             refreshDeviceList();
                         });
                     }
-
-                    @Override
-                    public void onBluetoothDataReceived(String address, byte[] data) {
-                        packetHandler.handlePayload(address, data);
-                    }
                 });
         bluetoothConnectionManager.setConnectionPoolManager(connectionPoolManager);
         bluetoothConnectionManager.start();
-        packetHandler.setBluetoothManager(bluetoothConnectionManager);
+        packetHandler.getTransportRegistry().register(bluetoothConnectionManager);
 
         // Initialize BLE Advertiser for fast discovery
         bleAdvertiser = new com.example.disastercomm.network.BLEAdvertiser(
@@ -470,7 +465,7 @@ public class MainActivity extends AppCompatActivity
 
     @Override
     public void onPayloadReceived(String endpointId, byte[] data) {
-        packetHandler.handlePayload(endpointId, data);
+        // Delivered to the packet handler through the transport registry
     }
 
     @Override
@@ -1093,8 +1093,7 @@ public class MainActivityNew extends AppCompatActivity implements
             if (packetHandler != null)
                 packetHandler.retryOfflineMessages();
 
-            // ✅ Sync broadcast history to new device
-            syncBroadcastHistoryToNewDevice(endpointId);
+            // History sync is handled by NetworkService's anti-entropy exchange
         });
     }
 
@@ -1204,7 +1203,9 @@ public class MainActivityNew extends AppCompatActivity implements
                     notificationHelper.showSosNotification(name, message.content);
                 }
 
-                new AlertDialog.Builder(this).setTitle("🚨 SOS RECEIVED").setMessage(displayText)
+                String title = Boolean.TRUE.equals(message.unverified) ? "🚨 SOS RECEIVED (unverified)"
+                        : "🚨 SOS RECEIVED";
+                new AlertDialog.Builder(this).setTitle(title).setMessage(displayText)
                         .setPositiveButton("OK", null).setIcon(android.R.drawable.ic_dialog_alert).show();
 
                 // SOS always goes to global chat
@@ -1537,64 +1538,6 @@ public class MainActivityNew extends AppCompatActivity implements
         }
     }
 
-    // ✅ SYNC: Sync recent broadcast history to new device
-    private void syncBroadcastHistoryToNewDevice(String recipientId) {
-        Log.d("DisasterApp", "🔄 SYNC: Starting history sync for new device: " + recipientId);
-
-        com.example.disastercomm.data.AppDatabase db = com.example.disastercomm.data.AppDatabase.getDatabase(this);
-        com.example.disastercomm.data.AppDatabase.databaseWriteExecutor.execute(() -> {
-            try {
-                // 1. Fetch recent broadcasts (limit 20)
-                java.util.List<Message> recentBroadcasts = db.messageDao().getRecentGlobalMessages(20);
-
-                if (recentBroadcasts != null && !recentBroadcasts.isEmpty()) {
-                    Log.d("DisasterApp", "   → Found " + recentBroadcasts.size() + " broadcast messages to sync");
-
-                    // Sort by timestamp (oldest first) so they arrive in order
-                    java.util.Collections.sort(recentBroadcasts, (m1, m2) -> Long.compare(m1.timestamp, m2.timestamp));
-
-                    for (Message originalMsg : recentBroadcasts) {
-                        // 2. Clone message to avoid modifying DB entity
-                        Message syncMsg = new Message();
-                        syncMsg.id = originalMsg.id; // Keep original ID (deduplication)
-                        syncMsg.senderId = originalMsg.senderId;
-                        syncMsg.senderName = originalMsg.senderName;
-                        syncMsg.content = originalMsg.content;
-                        syncMsg.timestamp = originalMsg.timestamp;
-                        syncMsg.type = originalMsg.type;
-
-                        // 3. TARGET: Send directly to the NEW device, but keep "ALL" as visible
-                        // receiver
-                        // The trick: We Unicast it to `recipientId`, but set `receiverId` to "ALL"
-                        // inside the payload object.
-                        syncMsg.receiverId = "ALL";
-
-                        // But we want to route ONLY to `recipientId`.
-                        // Using `meshNetworkManager.sendPayload()` directly bypasses the broadcast
-                        // check!
-
-                        String json = new com.google.gson.Gson().toJson(syncMsg);
-                        byte[] bytes = json.getBytes(java.nio.charset.StandardCharsets.UTF_8);
-
-                        if (meshNetworkManager != null) {
-                            meshNetworkManager.sendPayload(recipientId, bytes);
-                        }
-                        // Small delay to prevent flooding
-                        try {
-                            Thread.sleep(50);
-                        } catch (Exception e) {
-                        }
-                    }
-                    Log.d("DisasterApp", "✅ SYNC: History sync completed for " + recipientId);
-                } else {
-                    Log.d("DisasterApp", "   → No recent broadcasts found to sync");
-                }
-            } catch (Exception e) {
-                Log.e("DisasterApp", "❌ SYNC: Failed to sync history", e);
-            }
-        });
-    }
-
     private void setupConnectivityStatus() {
         connectivityStatusManager = new com.example.disastercomm.utils.ConnectivityStatusManager(this);
 
@@ -5,6 +5,8 @@ import android.content.Context;
 import androidx.room.Database;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
 
 import com.example.disastercomm.models.Message;
 
@@ -12,7 +14,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 @Database(entities = { Message.class, com.example.disastercomm.models.User.class,
-        MessageQueueEntity.class }, version = 5, exportSchema = false)
+        MessageQueueEntity.class, PeerKeyEntity.class }, version = 9, exportSchema = false)
 public abstract class AppDatabase extends RoomDatabase {
 
     public abstract MessageDao messageDao();
@@ -21,17 +23,68 @@ public abstract class AppDatabase extends RoomDatabase {
 
     public abstract MessageQueueDao messageQueueDao();
 
+    public abstract PeerKeyDao peerKeyDao();
+
     private static volatile AppDatabase INSTANCE;
     private static final int NUMBER_OF_THREADS = 4;
     public static final ExecutorService databaseWriteExecutor = Executors.newFixedThreadPool(NUMBER_OF_THREADS);
 
+    /**
+     * Spray-and-wait tickets and custody state on queued messages
+     */
+    static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+        @Override
+        public void migrate(SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE `message_queue` ADD COLUMN `copiesLeft` INTEGER NOT NULL DEFAULT 1");
+            db.execSQL("ALTER TABLE `message_queue` ADD COLUMN `custodyPendingSince` INTEGER NOT NULL DEFAULT 0");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_message_queue_destinationId` ON `message_queue` (`destinationId`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_message_queue_nextHopId` ON `message_queue` (`nextHopId`)");
+        }
+    };
+
+    /**
+     * Peer key directory
+     */
+    static final Migration MIGRATION_6_7 = new Migration(6, 7) {
+        @Override
+        public void migrate(SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `peer_keys` (`deviceId` TEXT NOT NULL, `fingerprint` TEXT, "
+                    + "`rsaPublicKey` TEXT, `sessionPublicKey` TEXT, `updatedAt` INTEGER NOT NULL, "
+                    + "PRIMARY KEY(`deviceId`))");
+        }
+    };
+
+    /**
+     * Signing keys of peers, signatures on stored SOS / GOVT_ALERT
+     */
+    static final Migration MIGRATION_7_8 = new Migration(7, 8) {
+        @Override
+        public void migrate(SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE `peer_keys` ADD COLUMN `signingPublicKey` TEXT");
+            db.execSQL("ALTER TABLE `messages` ADD COLUMN `signature` TEXT");
+            db.execSQL("ALTER TABLE `messages` ADD COLUMN `signerKeyId` TEXT");
+        }
+    };
+
+    /**
+     * Unverified mark on alerts delivered without a trust anchor
+     */
+    static final Migration MIGRATION_8_9 = new Migration(8, 9) {
+        @Override
+        public void migrate(SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE `messages` ADD COLUMN `unverified` INTEGER");
+        }
+    };
+
     public static AppDatabase getDatabase(final Context context) {
         if (INSTANCE == null) {
             synchronized (AppDatabase.class) {
                 if (INSTANCE == null) {
                     INSTANCE = Room.databaseBuilder(context.getApplicationContext(),
                             AppDatabase.class, "disaster_comm_db")
-                            .fallbackToDestructiveMigration() // Wipe data if schema changes in dev
+                            // Queued messages and keys must survive upgrades; only pre-5 dev schemas are wiped
+                            .addMigrations(MIGRATION_5_6, MIGRATION_6_7, MIGRATION_7_8, MIGRATION_8_9)
+                            .fallbackToDestructiveMigration()
                             .build();
                 }
             }
@@ -41,6 +41,14 @@ public interface MessageDao {
     @Query("SELECT * FROM messages WHERE receiverId = 'ALL' AND type = 'TEXT' ORDER BY timestamp DESC LIMIT :limit")
     List<Message> getRecentGlobalMessages(int limit);
 
+    // ✅ ANTI-ENTROPY: Ids held locally (summary vector input)
+    @Query("SELECT id FROM messages WHERE timestamp > :since ORDER BY timestamp DESC LIMIT :limit")
+    List<String> getMessageIdsSince(long since, int limit);
+
+    // ✅ ANTI-ENTROPY: Broadcast traffic eligible for sync to peers (alerts no anchor vouched for stay local)
+    @Query("SELECT * FROM messages WHERE receiverId = 'ALL' AND type IN ('TEXT', 'SOS', 'GOVT_ALERT') AND NOT (type = 'GOVT_ALERT' AND unverified = 1) AND timestamp > :since ORDER BY timestamp DESC LIMIT :limit")
+    List<Message> getSyncableBroadcastsSince(long since, int limit);
+
     // ✅ PAGINATION: Get recent SOS messages (limit)
     @Query("SELECT * FROM messages WHERE type = 'SOS' ORDER BY timestamp DESC LIMIT :limit")
     List<Message> getRecentSosMessages(int limit);
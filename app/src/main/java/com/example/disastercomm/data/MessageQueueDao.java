@@ -29,6 +29,36 @@ public interface MessageQueueDao {
     @Query("SELECT * FROM message_queue WHERE nextHopId = :nextHop AND delivered = 0 AND expiryTime > :currentTime")
     List<MessageQueueEntity> getMessagesForNextHop(String nextHop, long currentTime);
 
+    @Query("SELECT * FROM message_queue WHERE forwardingStrategy = :strategy AND delivered = 0 AND expiryTime > :currentTime ORDER BY queuedTime ASC")
+    List<MessageQueueEntity> getPendingByStrategy(String strategy, long currentTime);
+
+    @Query("SELECT messageId FROM message_queue WHERE delivered = 0 AND expiryTime > :currentTime")
+    List<String> getPendingIds(long currentTime);
+
+    @Query("SELECT * FROM message_queue WHERE messageId = :messageId")
+    MessageQueueEntity getMessage(String messageId);
+
+    @Query("SELECT * FROM message_queue WHERE nextHopId IS NULL AND forwardingStrategy IN ('RELAY', 'DIRECT') AND custodyPendingSince = 0 AND delivered = 0 AND expiryTime > :currentTime")
+    List<MessageQueueEntity> getUnroutedMessages(long currentTime);
+
+    @Query("SELECT * FROM message_queue WHERE forwardingStrategy = 'SPRAY_AND_WAIT' AND copiesLeft > 1 AND delivered = 0 AND expiryTime > :currentTime")
+    List<MessageQueueEntity> getSprayCandidates(long currentTime);
+
+    @Query("SELECT * FROM message_queue WHERE custodyPendingSince > 0 AND custodyPendingSince < :before AND delivered = 0")
+    List<MessageQueueEntity> getStaleCustody(long before);
+
+    @Query("UPDATE message_queue SET copiesLeft = :copies WHERE messageId = :messageId")
+    void updateCopiesLeft(String messageId, int copies);
+
+    @Query("UPDATE message_queue SET copiesLeft = copiesLeft + :copies WHERE messageId = :messageId AND forwardingStrategy = 'SPRAY_AND_WAIT' AND delivered = 0")
+    int addCopies(String messageId, int copies);
+
+    @Query("UPDATE message_queue SET nextHopId = :nextHop, custodyPendingSince = :since WHERE messageId = :messageId")
+    void markCustodyPending(String messageId, String nextHop, long since);
+
+    @Query("UPDATE message_queue SET custodyPendingSince = 0 WHERE messageId = :messageId")
+    void clearCustodyPending(String messageId);
+
     @Query("UPDATE message_queue SET delivered = 1 WHERE messageId = :messageId")
     void markAsDelivered(String messageId);
 
@@ -1,6 +1,7 @@
 package com.example.disastercomm.data;
 
 import androidx.room.Entity;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 import androidx.annotation.NonNull;
 
@@ -8,7 +9,7 @@ import androidx.annotation.NonNull;
  * Database entity for store-and-forward message queue.
  * Messages wait here until a route to the destination becomes available.
  */
-@Entity(tableName = "message_queue")
+@Entity(tableName = "message_queue", indices = { @Index("destinationId"), @Index("nextHopId") })
 public class MessageQueueEntity {
 
     @PrimaryKey
@@ -20,7 +21,9 @@ public class MessageQueueEntity {
     public byte[] payload; // Serialized message content
     public long expiryTime; // Delete after this timestamp
     public int retryCount; // Number of failed delivery attempts
-    public String forwardingStrategy; // RELAY, BROADCAST, DIRECT, EPIDEMIC
+    public String forwardingStrategy; // RELAY, BROADCAST, DIRECT, EPIDEMIC, SPRAY_AND_WAIT
+    public int copiesLeft; // Spray-and-wait tickets (1 = wait phase)
+    public long custodyPendingSince; // Handed to nextHopId, awaiting CUSTODY_ACK (0 = none)
     public long queuedTime; // When message was queued
     public int hopCount; // Current hop count
     public int maxHops; // Maximum hops allowed
@@ -41,6 +44,8 @@ public class MessageQueueEntity {
         this.maxHops = 10;
         this.delivered = false;
         this.forwardingStrategy = "RELAY";
+        this.copiesLeft = 1;
+        this.custodyPendingSince = 0;
     }
 
     public boolean isExpired() {
@@ -0,0 +1,27 @@
+package com.example.disastercomm.data;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+
+import java.util.List;
+
+/**
+ * DAO for the peer key directory
+ */
+@Dao
+public interface PeerKeyDao {
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insertKey(PeerKeyEntity key);
+
+    @Query("SELECT * FROM peer_keys")
+    List<PeerKeyEntity> getAllKeys();
+
+    @Query("SELECT * FROM peer_keys WHERE deviceId = :deviceId")
+    PeerKeyEntity getKey(String deviceId);
+
+    @Query("DELETE FROM peer_keys WHERE updatedAt < :cutoff")
+    int deleteOlderThan(long cutoff);
+}
@@ -0,0 +1,37 @@
+package com.example.disastercomm.data;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * Public keys of a peer, as learned through KEY_EXCHANGE.
+ * Survives restarts so peers only need to compare fingerprints.
+ */
+@Entity(tableName = "peer_keys")
+public class PeerKeyEntity {
+
+    @PrimaryKey
+    @NonNull
+    public String deviceId;
+
+    public String fingerprint; // 8-byte SHA-256 prefix over all keys, hex
+    public String rsaPublicKey; // Base64 X.509
+    public String sessionPublicKey; // Base64 X.509 ECDH (P-256)
+    public String signingPublicKey; // Base64 X.509 ECDSA (P-256)
+    public long updatedAt;
+
+    public PeerKeyEntity() {
+    }
+
+    @androidx.room.Ignore
+    public PeerKeyEntity(@NonNull String deviceId, String fingerprint, String rsaPublicKey, String sessionPublicKey,
+            String signingPublicKey) {
+        this.deviceId = deviceId;
+        this.fingerprint = fingerprint;
+        this.rsaPublicKey = rsaPublicKey;
+        this.sessionPublicKey = sessionPublicKey;
+        this.signingPublicKey = signingPublicKey;
+        this.updatedAt = System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,241 @@
+package com.example.disastercomm.network;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.example.disastercomm.data.AppDatabase;
+import com.example.disastercomm.data.MessageDao;
+import com.example.disastercomm.data.MessageQueueDao;
+import com.example.disastercomm.data.MessageQueueEntity;
+import com.example.disastercomm.models.Message;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Epidemic anti-entropy sync between neighbors.
+ * On contact both sides exchange a summary vector (Bloom filter) of the ids
+ * in their messages and message_queue tables; each side then pushes only
+ * what the peer is missing, in batches, emergency traffic and newest first.
+ */
+public class AntiEntropySync {
+    private static final String TAG = "AntiEntropy";
+    private static final long SYNC_WINDOW_MS = 48 * 60 * 60 * 1000; // 48 hours
+    private static final int MAX_SUMMARY_IDS = 2000;
+    private static final int MAX_SYNC_BROADCASTS = 200;
+    private static final int MAX_BATCH_MESSAGES = 20;
+    private static final int MAX_BATCH_BYTES = 16 * 1024; // Well below Nearby's BYTES payload limit
+    private static final long SUMMARY_COOLDOWN_MS = 60 * 1000; // Per link, avoids ping-pong
+
+    private final String myDeviceId;
+    private final MessageDao messageDao;
+    private final MessageQueueDao queueDao;
+    private final StoreAndForwardManager storeAndForward;
+    private final SyncCallback callback;
+    private final Gson gson = new Gson();
+    private final Random random = new Random();
+    private final Map<String, Long> lastSummarySent = new ConcurrentHashMap<>();
+
+    private static final Type MESSAGE_LIST_TYPE = new TypeToken<List<Message>>() {
+    }.getType();
+
+    public interface SyncCallback {
+        // Unicast a control/batch packet on one link
+        void sendToEndpoint(String endpointId, Message message);
+
+        // Hand a synced message to the normal receive path (dedup, DB, UI)
+        void deliverSynced(String endpointId, Message message);
+    }
+
+    public AntiEntropySync(Context context, String myDeviceId, StoreAndForwardManager storeAndForward,
+            SyncCallback callback) {
+        AppDatabase db = AppDatabase.getDatabase(context);
+        this.myDeviceId = myDeviceId;
+        this.messageDao = db.messageDao();
+        this.queueDao = db.messageQueueDao();
+        this.storeAndForward = storeAndForward;
+        this.callback = callback;
+    }
+
+    /**
+     * New link came up: offer our summary vector
+     */
+    public void onPeerContact(String endpointId) {
+        AppDatabase.databaseWriteExecutor.execute(() -> sendSummary(endpointId));
+    }
+
+    public void onPeerLost(String endpointId) {
+        lastSummarySent.remove(endpointId);
+    }
+
+    private void sendSummary(String endpointId) {
+        long now = System.currentTimeMillis();
+        Long last = lastSummarySent.get(endpointId);
+        if (last != null && now - last < SUMMARY_COOLDOWN_MS) {
+            return;
+        }
+        lastSummarySent.put(endpointId, now);
+
+        Set<String> ids = new HashSet<>(messageDao.getMessageIdsSince(now - SYNC_WINDOW_MS, MAX_SUMMARY_IDS));
+        ids.addAll(queueDao.getPendingIds(now));
+
+        Message summary = new Message();
+        summary.id = UUID.randomUUID().toString();
+        summary.senderId = myDeviceId;
+        summary.type = Message.Type.SYNC_SUMMARY;
+        summary.content = MessageSummaryVector.of(ids, random.nextInt()).encode();
+        summary.timestamp = now;
+        summary.ttl = 0; // One hop only
+
+        callback.sendToEndpoint(endpointId, summary);
+        Log.d(TAG, "📋 Sent summary vector (" + ids.size() + " ids) to " + endpointId);
+    }
+
+    /**
+     * Peer told us what it has: push the difference (and answer with our summary)
+     */
+    public void handleSummary(String endpointId, Message summary) {
+        AppDatabase.databaseWriteExecutor.execute(() -> {
+            MessageSummaryVector peerVector;
+            try {
+                peerVector = MessageSummaryVector.decode(summary.content);
+            } catch (Exception e) {
+                Log.e(TAG, "Malformed summary from " + endpointId, e);
+                return;
+            }
+
+            // Make sure the peer learns what we are missing too
+            sendSummary(endpointId);
+
+            long now = System.currentTimeMillis();
+            List<Message> missing = new ArrayList<>();
+            for (Message m : messageDao.getSyncableBroadcastsSince(now - SYNC_WINDOW_MS, MAX_SYNC_BROADCASTS)) {
+                if (!peerVector.mightContain(m.id)) {
+                    missing.add(copyForSync(m));
+                }
+            }
+            for (MessageQueueEntity queued : queueDao.getPendingByStrategy(StoreAndForwardManager.STRATEGY_EPIDEMIC,
+                    now)) {
+                if (!peerVector.mightContain(queued.messageId)) {
+                    try {
+                        Message m = gson.fromJson(new String(queued.payload, StandardCharsets.UTF_8), Message.class);
+                        m.hopCount++;
+                        missing.add(m);
+                    } catch (Exception e) {
+                        Log.e(TAG, "Corrupt queued payload " + queued.messageId, e);
+                    }
+                }
+            }
+
+            if (missing.isEmpty()) {
+                Log.d(TAG, "✅ Peer " + endpointId + " already in sync");
+                return;
+            }
+
+            Collections.sort(missing, (a, b) -> {
+                int byType = Integer.compare(priorityOf(a), priorityOf(b));
+                return byType != 0 ? byType : Long.compare(b.timestamp, a.timestamp);
+            });
+            sendBatches(endpointId, missing);
+        });
+    }
+
+    private void sendBatches(String endpointId, List<Message> missing) {
+        List<Message> batch = new ArrayList<>();
+        int batchBytes = 0;
+        int batches = 0;
+        for (Message m : missing) {
+            int size = gson.toJson(m).length();
+            if (!batch.isEmpty() && (batch.size() >= MAX_BATCH_MESSAGES || batchBytes + size > MAX_BATCH_BYTES)) {
+                sendBatch(endpointId, batch);
+                batches++;
+                batch = new ArrayList<>();
+                batchBytes = 0;
+            }
+            batch.add(m);
+            batchBytes += size;
+        }
+        if (!batch.isEmpty()) {
+            sendBatch(endpointId, batch);
+            batches++;
+        }
+        Log.d(TAG, "📤 Pushed " + missing.size() + " missing messages in " + batches + " batches to " + endpointId);
+    }
+
+    private void sendBatch(String endpointId, List<Message> items) {
+        Message batch = new Message();
+        batch.id = UUID.randomUUID().toString();
+        batch.senderId = myDeviceId;
+        batch.type = Message.Type.SYNC_BATCH;
+        batch.content = gson.toJson(items);
+        batch.timestamp = System.currentTimeMillis();
+        batch.ttl = 0;
+        callback.sendToEndpoint(endpointId, batch);
+    }
+
+    /**
+     * Unpack a batch: our own/broadcast traffic goes through the receive path,
+     * traffic for others is carried epidemically in the queue.
+     */
+    public void handleBatch(String endpointId, Message batch) {
+        List<Message> items;
+        try {
+            items = gson.fromJson(batch.content, MESSAGE_LIST_TYPE);
+        } catch (Exception e) {
+            Log.e(TAG, "Malformed batch from " + endpointId, e);
+            return;
+        }
+        if (items == null) {
+            return;
+        }
+
+        int carried = 0;
+        for (Message item : items) {
+            if (item == null || item.id == null) {
+                continue;
+            }
+            if ("ALL".equals(item.receiverId) || myDeviceId.equals(item.receiverId)) {
+                item.ttl = 0; // Already at its destination, do not re-flood
+                callback.deliverSynced(endpointId, item);
+            } else if (storeAndForward != null) {
+                storeAndForward.storeEpidemicCopy(item);
+                carried++;
+            }
+        }
+        Log.d(TAG, "📥 Batch of " + items.size() + " from " + endpointId + " (" + carried + " carried for others)");
+    }
+
+    private Message copyForSync(Message original) {
+        Message copy = new Message();
+        copy.id = original.id; // Keep original ID (deduplication)
+        copy.senderId = original.senderId;
+        copy.senderName = original.senderName;
+        copy.receiverId = original.receiverId;
+        copy.type = original.type;
+        copy.content = original.content;
+        copy.timestamp = original.timestamp;
+        copy.signature = original.signature; // Alerts stay verifiable when replayed
+        copy.signerKeyId = original.signerKeyId;
+        copy.ttl = 0; // Peer delivers locally, never re-floods history
+        return copy;
+    }
+
+    private static int priorityOf(Message m) {
+        if (m.type == Message.Type.SOS || m.type == Message.Type.GOVT_ALERT)
+            return 0;
+        if (m.type == Message.Type.TEXT)
+            return 1;
+        return 2;
+    }
+}
@@ -50,19 +50,87 @@ public class BLEAdvertiser {
     private final String deviceName;
     private final String deviceId;
     private final BLECallback callback;
-    private final android.os.Handler handler = new android.os.Handler(android.os.Looper.getMainLooper());
+    private volatile android.os.Handler handler = new android.os.Handler(android.os.Looper.getMainLooper());
     private static final long RETRY_DELAY = 2000;
-    private static final long SCAN_RESTART_INTERVAL = 30000; // Restart scan every 30s to stay fresh
+    private static final long SWEEP_INTERVAL = 5000; // Lost-device check
+    private static final long DUTY_WINDOW = 30000; // Churn is measured over this window
+    private static final long SCAN_REFRESH_INTERVAL = 25 * 60 * 1000; // Android demotes scans older than 30 min
+
+    /**
+     * Scan intensity, chosen from peer churn. Report delays only apply where
+     * the controller can batch results itself.
+     */
+    private enum ScanLevel {
+        FAST(ScanSettings.SCAN_MODE_LOW_LATENCY, 1000, 10000), // Peers coming and going
+        BALANCED(ScanSettings.SCAN_MODE_BALANCED, 3000, 15000),
+        SLOW(ScanSettings.SCAN_MODE_LOW_POWER, 10000, 40000); // Nothing changed for a while
+
+        final int scanMode;
+        final long reportDelay;
+        final long lostAfter;
+
+        ScanLevel(int scanMode, long reportDelay, long lostAfter) {
+            this.scanMode = scanMode;
+            this.reportDelay = reportDelay;
+            this.lostAfter = lostAfter;
+        }
+    }
 
     private boolean isAdvertising = false;
     private boolean isScanning = false;
+    private ScanLevel scanLevel = ScanLevel.FAST; // Discover quickly after start
+    private long scanStartedAt;
+    private int quietWindows = 0;
+    private long scanStarts = 0;
+    private long batches = 0;
 
     public interface BLECallback {
+        // Once per device coming into range, with smoothed RSSI
         void onBLEDeviceFound(String address, String name, int rssi);
 
         void onBLEConnectionStateChanged(String address, boolean connected);
+
+        // Smoothed RSSI of a device in range moved noticeably
+        default void onBLESignalChanged(String address, int rssi) {
+        }
+
+        default void onBLEDeviceLost(String address) {
+        }
+    }
+
+    /**
+     * Run scan processing and the duty-cycle timers on this looper. Scan
+     * results arrive on the main thread and are handed over immediately.
+     * Set before startScanning().
+     */
+    public void setEventLooper(android.os.Looper looper) {
+        this.handler = new android.os.Handler(looper);
     }
 
+    // Fed from the handler thread only
+    private final ScanCoalescer coalescer = new ScanCoalescer(new ScanCoalescer.Listener() {
+        @Override
+        public void onFound(String address, String name, int rssi) {
+            if (callback != null) {
+                callback.onBLEDeviceFound(address, name, rssi);
+            }
+        }
+
+        @Override
+        public void onSignalChanged(String address, int rssi) {
+            if (callback != null) {
+                callback.onBLESignalChanged(address, rssi);
+            }
+        }
+
+        @Override
+        public void onLost(String address) {
+            if (callback != null) {
+                callback.onBLEDeviceLost(address);
+            }
+        }
+    });
+
     public BLEAdvertiser(Context context, String deviceName, String deviceId, BLECallback callback) {
         this.context = context;
         this.deviceName = deviceName;
@@ -165,12 +233,15 @@ public class BLEAdvertiser {
             return;
         }
 
-        // Configure scan settings for fast discovery
-        ScanSettings scanSettings = new ScanSettings.Builder()
-                .setScanMode(ScanSettings.SCAN_MODE_LOW_LATENCY) // Aggressive scanning
+        // Results are batched in the controller where supported, and coalesced per device either way
+        ScanSettings.Builder settingsBuilder = new ScanSettings.Builder()
+                .setScanMode(scanLevel.scanMode)
                 .setCallbackType(ScanSettings.CALLBACK_TYPE_ALL_MATCHES)
-                .setMatchMode(ScanSettings.MATCH_MODE_AGGRESSIVE)
-                .build();
+                .setMatchMode(ScanSettings.MATCH_MODE_AGGRESSIVE);
+        if (bluetoothAdapter.isOffloadedScanBatchingSupported()) {
+            settingsBuilder.setReportDelay(scanLevel.reportDelay);
+        }
+        ScanSettings scanSettings = settingsBuilder.build();
 
         // Filter for our service UUID
         List<ScanFilter> filters = new ArrayList<>();
@@ -185,22 +256,58 @@ public class BLEAdvertiser {
                 .setServiceUuid(new ParcelUuid(java.util.UUID.fromString("6E400001-B5A3-F393-E0A9-E50E24DCCA9E")))
                 .build());
 
+        // Hardware filters: only our service and the hub wake the CPU
         scanner.startScan(filters, scanSettings, scanCallback);
         isScanning = true;
-        Log.d(TAG, "BLE scanning started");
-
-        // Schedule periodic restart
-        handler.removeCallbacks(scanRestartRunnable);
-        handler.postDelayed(scanRestartRunnable, SCAN_RESTART_INTERVAL);
+        scanStartedAt = System.currentTimeMillis();
+        scanStarts++;
+        Log.d(TAG, "BLE scanning started (" + scanLevel + ")");
+
+        handler.removeCallbacks(sweepRunnable);
+        handler.removeCallbacks(dutyCycleRunnable);
+        handler.postDelayed(sweepRunnable, SWEEP_INTERVAL);
+        handler.postDelayed(dutyCycleRunnable, DUTY_WINDOW);
     }
 
-    private final Runnable scanRestartRunnable = new Runnable() {
+    private final Runnable sweepRunnable = new Runnable() {
         @Override
         public void run() {
             if (isScanning) {
-                Log.d(TAG, "♻️ Restarting BLE scan to maintain freshness");
+                coalescer.sweep(System.currentTimeMillis(), scanLevel.lostAfter);
+                handler.postDelayed(this, SWEEP_INTERVAL);
+            }
+        }
+    };
+
+    /**
+     * Adaptive duty cycle: scan hard while peers come and go, back off once
+     * the neighborhood is stable. The scan is only restarted when the level
+     * changes (or to stay ahead of Android's 30 min scan demotion).
+     */
+    private final Runnable dutyCycleRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (!isScanning) {
+                return;
+            }
+            int churn = coalescer.takeChurn();
+            quietWindows = churn == 0 ? quietWindows + 1 : 0;
+            ScanLevel next;
+            if (churn >= 3) {
+                next = ScanLevel.FAST;
+            } else if (churn > 0 || quietWindows < 2) {
+                next = ScanLevel.BALANCED;
+            } else {
+                next = ScanLevel.SLOW;
+            }
+            boolean stale = System.currentTimeMillis() - scanStartedAt > SCAN_REFRESH_INTERVAL;
+            if (next != scanLevel || stale) {
+                Log.d(TAG, "♻️ BLE scan " + scanLevel + " -> " + next + " (churn " + churn + ")");
+                scanLevel = next;
                 stopScanning();
                 startScanning();
+            } else {
+                handler.postDelayed(this, DUTY_WINDOW);
             }
         }
     };
@@ -211,7 +318,8 @@ public class BLEAdvertiser {
                     android.Manifest.permission.BLUETOOTH_SCAN) == PackageManager.PERMISSION_GRANTED) {
                 scanner.stopScan(scanCallback);
                 isScanning = false;
-                handler.removeCallbacks(scanRestartRunnable); // Stop the loop
+                handler.removeCallbacks(sweepRunnable);
+                handler.removeCallbacks(dutyCycleRunnable);
                 Log.d(TAG, "BLE scanning stopped");
             }
         }
@@ -219,6 +327,8 @@ public class BLEAdvertiser {
 
     public void restartScanning() {
         Log.d(TAG, "Manual BLE scan restart requested");
+        scanLevel = ScanLevel.FAST;
+        quietWindows = 0;
         stopScanning();
         startScanning();
     }
@@ -282,44 +392,41 @@ public class BLEAdvertiser {
                     android.Manifest.permission.BLUETOOTH_CONNECT) != PackageManager.PERMISSION_GRANTED) {
                 return;
             }
+            long now = System.currentTimeMillis();
+            handler.post(() -> handleResult(result, now));
+        }
+
+        @Override
+        public void onBatchScanResults(List<ScanResult> results) {
+            if (ActivityCompat.checkSelfPermission(context,
+                    android.Manifest.permission.BLUETOOTH_CONNECT) != PackageManager.PERMISSION_GRANTED) {
+                return;
+            }
+            batches++;
+            // One wakeup for the whole batch; each result still feeds the per-device filter
+            long now = System.currentTimeMillis();
+            handler.post(() -> {
+                for (ScanResult result : results) {
+                    handleResult(result, now);
+                }
+            });
+        }
 
+        private void handleResult(ScanResult result, long now) {
             BluetoothDevice device = result.getDevice();
             String name = device.getName(); // System Name
-            String address = device.getAddress();
-            int rssi = result.getRssi();
 
             // Check for Custom Name in Manufacturer Data (0xFFFF)
             // This is how we send names now to avoid DATA_TOO_LARGE errors
             if (result.getScanRecord() != null) {
                 byte[] customNameBytes = result.getScanRecord().getManufacturerSpecificData(0xFFFF);
-                if (customNameBytes != null) {
+                if (customNameBytes != null && !BeaconFrame.isFrame(customNameBytes)) {
                     name = new String(customNameBytes, StandardCharsets.UTF_8).trim(); // Override with custom name
                 }
             }
 
-            if (name != null && callback != null) {
-                // Log.d(TAG, "BLE device found: " + name + " (" + address + "), RSSI: " +
-                // rssi);
-                callback.onBLEDeviceFound(address, name, rssi);
-            }
-        }
-
-        @Override
-        public void onBatchScanResults(List<ScanResult> results) {
-            if (ActivityCompat.checkSelfPermission(context,
-                    android.Manifest.permission.BLUETOOTH_CONNECT) != PackageManager.PERMISSION_GRANTED) {
-                return;
-            }
-
-            for (ScanResult result : results) {
-                BluetoothDevice device = result.getDevice();
-                String name = device.getName();
-                String address = device.getAddress();
-                int rssi = result.getRssi();
-
-                if (name != null && callback != null) {
-                    callback.onBLEDeviceFound(address, name, rssi);
-                }
+            if (name != null) {
+                coalescer.onSighting(device.getAddress(), name, result.getRssi(), now);
             }
         }
 
@@ -383,4 +490,9 @@ public class BLEAdvertiser {
         stopAdvertising();
         stopScanning();
     }
+
+    public String getStatsSummary() {
+        return coalescer.getStatsSummary() + String.format(" (%s, %d scan starts, %d batches)",
+                scanLevel, scanStarts, batches);
+    }
 }
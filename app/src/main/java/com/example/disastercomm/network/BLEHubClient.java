@@ -18,8 +18,10 @@ import java.util.UUID;
 /**
  * Handles communication with ESP32-S3 Hub via Nordic UART Service
  */
-public class BLEHubClient {
+public class BLEHubClient implements Transport {
     private static final String TAG = "BLEHubClient";
+    public static final String LINK_ID = "Hub"; // The hub is a single fan-out link
+    private static final int MAX_ATTRIBUTE_BYTES = 512; // Largest characteristic value BLE allows
 
     // UUIDs matching the ESP32 Code
     public static final UUID SERVICE_UUID = UUID.fromString("6E400001-B5A3-F393-E0A9-E50E24DCCA9E");
@@ -35,7 +37,8 @@ public class BLEHubClient {
     private BluetoothGattCharacteristic txChar;
     private String connectedDeviceAddress;
     private boolean isConnected = false;
-    private final Handler uiHandler = new Handler(Looper.getMainLooper());
+    private volatile Handler handler = new Handler(Looper.getMainLooper());
+    private volatile Transport.Listener transportListener;
 
     public interface HubCallback {
         void onHubConnected(String address, String deviceName);
@@ -50,6 +53,13 @@ public class BLEHubClient {
         this.callback = callback;
     }
 
+    /**
+     * Deliver HubCallback events on this looper instead of the main thread
+     */
+    public void setEventLooper(Looper looper) {
+        this.handler = new Handler(looper);
+    }
+
     public boolean isConnected() {
         return isConnected;
     }
@@ -82,6 +92,9 @@ public class BLEHubClient {
             bluetoothGatt.close();
             bluetoothGatt = null;
         }
+        if (isConnected && transportListener != null) {
+            transportListener.onLinkDown(this, LINK_ID);
+        }
         isConnected = false;
         rxChar = null;
         txChar = null;
@@ -89,21 +102,65 @@ public class BLEHubClient {
     }
 
     public void sendData(String message) {
+        write(message);
+    }
+
+    private boolean write(String message) {
         if (!isConnected || rxChar == null || bluetoothGatt == null) {
             Log.w(TAG, "Cannot send, not connected to Hub");
-            return;
+            return false;
         }
 
         if (ActivityCompat.checkSelfPermission(context,
                 android.Manifest.permission.BLUETOOTH_CONNECT) != PackageManager.PERMISSION_GRANTED) {
-            return;
+            return false;
         }
 
         // ESP32 code expects '\n' as a delimiter
         String payload = message + "\n";
         rxChar.setValue(payload.getBytes(java.nio.charset.StandardCharsets.UTF_8));
         rxChar.setWriteType(BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE); // Faster for ESP32
-        bluetoothGatt.writeCharacteristic(rxChar);
+        return bluetoothGatt.writeCharacteristic(rxChar);
+    }
+
+    // --- Transport ---
+
+    @Override
+    public String getName() {
+        return "hub";
+    }
+
+    @Override
+    public int getCapabilities() {
+        return CAP_UNICAST | CAP_BROADCAST | CAP_TEXT_FRAMES | CAP_FAN_OUT;
+    }
+
+    @Override
+    public int getMtu() {
+        return MAX_ATTRIBUTE_BYTES - 1; // Room for the newline delimiter
+    }
+
+    @Override
+    public java.util.List<String> getLinks() {
+        return isConnected ? java.util.Collections.singletonList(LINK_ID)
+                : java.util.Collections.<String>emptyList();
+    }
+
+    @Override
+    public boolean send(String linkId, byte[] data) {
+        return LINK_ID.equals(linkId) && write(new String(data, java.nio.charset.StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void broadcast(byte[] data, String excludeLinkId) {
+        if (!LINK_ID.equals(excludeLinkId)) {
+            send(LINK_ID, data);
+        }
+    }
+
+    @Override
+    public void setTransportListener(Transport.Listener listener) {
+        this.transportListener = listener;
     }
 
     private final BluetoothGattCallback gattCallback = new BluetoothGattCallback() {
@@ -120,9 +177,12 @@ public class BLEHubClient {
                 connectedDeviceAddress = gatt.getDevice().getAddress();
             } else if (newState == BluetoothProfile.STATE_DISCONNECTED) {
                 Log.d(TAG, "Disconnected from GATT server.");
+                if (isConnected && transportListener != null) {
+                    transportListener.onLinkDown(BLEHubClient.this, LINK_ID);
+                }
                 isConnected = false;
                 if (callback != null) {
-                    uiHandler.post(() -> callback.onHubDisconnected());
+                    handler.post(() -> callback.onHubDisconnected());
                 }
                 bluetoothGatt.close();
                 bluetoothGatt = null;
@@ -153,9 +213,12 @@ public class BLEHubClient {
                         }
 
                         // Notify Caller
+                        if (transportListener != null) {
+                            transportListener.onLinkUp(BLEHubClient.this, LINK_ID, gatt.getDevice().getName());
+                        }
                         if (callback != null) {
                             String name = gatt.getDevice().getName();
-                            uiHandler.post(() -> callback.onHubConnected(gatt.getDevice().getAddress(), name));
+                            handler.post(() -> callback.onHubConnected(gatt.getDevice().getAddress(), name));
                         }
                     } else {
                         Log.e(TAG, "Required characteristics not found!");
@@ -173,8 +236,11 @@ public class BLEHubClient {
             if (CHAR_TX_UUID.equals(characteristic.getUuid())) {
                 String message = new String(characteristic.getValue(), java.nio.charset.StandardCharsets.UTF_8);
                 Log.d(TAG, "Msg from Hub: " + message);
+                if (transportListener != null) {
+                    transportListener.onReceive(BLEHubClient.this, LINK_ID, PooledBuffer.wrap(characteristic.getValue()));
+                }
                 if (callback != null) {
-                    uiHandler.post(() -> callback.onHubMessageReceived(message));
+                    handler.post(() -> callback.onHubMessageReceived(message));
                 }
             }
         }
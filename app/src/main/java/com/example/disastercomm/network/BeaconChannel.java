@@ -0,0 +1,500 @@
+package com.example.disastercomm.network;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothManager;
+import android.bluetooth.le.AdvertiseCallback;
+import android.bluetooth.le.AdvertiseData;
+import android.bluetooth.le.AdvertiseSettings;
+import android.bluetooth.le.AdvertisingSet;
+import android.bluetooth.le.AdvertisingSetCallback;
+import android.bluetooth.le.AdvertisingSetParameters;
+import android.bluetooth.le.BluetoothLeAdvertiser;
+import android.bluetooth.le.BluetoothLeScanner;
+import android.bluetooth.le.ScanCallback;
+import android.bluetooth.le.ScanFilter;
+import android.bluetooth.le.ScanRecord;
+import android.bluetooth.le.ScanResult;
+import android.bluetooth.le.ScanSettings;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.core.app.ActivityCompat;
+
+import com.example.disastercomm.models.Message;
+import com.example.disastercomm.services.EmergencyBeaconService;
+import com.example.disastercomm.utils.DeviceUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Connectionless broadcast plane: SOS, alerts and location pings ride in
+ * BLE advertisements as {@link BeaconFrame}s, so they reach nearby phones
+ * without any Nearby/RFCOMM connection setup. Pending frames are rotated
+ * through one extended advertising set; our own emergency frames get every
+ * other slot. A scanner decodes frames from other devices, drops repeats by
+ * message id and hands new ones to the packet core, which verifies, delivers
+ * and relays them like any other packet.
+ *
+ * Without extended advertising (pre-O or no controller support) frames do
+ * not fit in 31 bytes; an own SOS is then sent as the classic 15-byte
+ * emergency beacon, which scanners report separately.
+ */
+public class BeaconChannel {
+    private static final String TAG = "BeaconChannel";
+    public static final String LINK_PREFIX = "ADV_"; // Link id of frames heard from an advertiser
+    private static final long ROTATE_MS = 300; // ~3 advertising events per frame at 100 ms intervals
+    private static final long OWN_FRAME_TTL_MS = 10 * 60 * 1000;
+    private static final long RELAYED_FRAME_TTL_MS = 2 * 60 * 1000;
+    private static final int MAX_FRAMES = 6;
+    private static final int MAX_EXTENDED_DATA = 241; // One AUX PDU, minus AD header and company id
+    private static final int MAX_SEEN = 512;
+    private static final long LEGACY_REPORT_MS = 30 * 1000;
+    private static final int LOW_BATTERY_PERCENT = 15;
+
+    public interface Listener {
+        // A frame heard from a nearby advertiser, to be fed into the packet core
+        void onBeaconMessage(String linkId, Message message);
+
+        // A classic emergency beacon: no message behind it, just a position
+        void onLegacyBeacon(String address, EmergencyBeaconService.BeaconData beacon, int rssi);
+    }
+
+    private static class Slot {
+        final Message.Type type;
+        final byte[] frame;
+        final boolean own;
+        final long expiresAt;
+
+        Slot(Message.Type type, byte[] frame, boolean own, long expiresAt) {
+            this.type = type;
+            this.frame = frame;
+            this.own = own;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final Context context;
+    private final String myDeviceId;
+    private final BluetoothAdapter bluetoothAdapter;
+    private final BluetoothLeAdvertiser advertiser;
+    private final BluetoothLeScanner scanner;
+    private final boolean extended;
+    private volatile android.os.Handler handler = new android.os.Handler(android.os.Looper.getMainLooper());
+    private Listener listener;
+
+    // Touched on the handler thread only
+    private final List<Slot> slots = new ArrayList<>();
+    private int rotation = 0;
+    private Slot current;
+    private AdvertisingSet advertisingSet;
+    private boolean setStarting = false;
+    private boolean legacyBeaconOn = false;
+    private boolean running = false;
+    private double lastLatitude;
+    private double lastLongitude;
+
+    private final Map<String, Long> seen = Collections.synchronizedMap(
+            new LinkedHashMap<String, Long>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                    return size() > MAX_SEEN;
+                }
+            });
+
+    // Stats
+    private final AtomicLong framesAdvertised = new AtomicLong();
+    private final AtomicLong framesHeard = new AtomicLong();
+    private final AtomicLong repeats = new AtomicLong();
+    private final AtomicLong injected = new AtomicLong();
+    private final AtomicLong legacyBeacons = new AtomicLong();
+    private final AtomicLong notCarried = new AtomicLong();
+
+    public BeaconChannel(Context context, String myDeviceId) {
+        this.context = context;
+        this.myDeviceId = myDeviceId;
+        BluetoothManager manager = (BluetoothManager) context.getSystemService(Context.BLUETOOTH_SERVICE);
+        this.bluetoothAdapter = manager != null ? manager.getAdapter() : null;
+        this.advertiser = bluetoothAdapter != null ? bluetoothAdapter.getBluetoothLeAdvertiser() : null;
+        this.scanner = bluetoothAdapter != null ? bluetoothAdapter.getBluetoothLeScanner() : null;
+        this.extended = bluetoothAdapter != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
+                && bluetoothAdapter.isLeExtendedAdvertisingSupported();
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Run the rotation, advertising-set callbacks and scan handling on this
+     * looper instead of the main thread. Set before start().
+     */
+    public void setEventLooper(android.os.Looper looper) {
+        this.handler = new android.os.Handler(looper);
+    }
+
+    public void start() {
+        handler.post(() -> {
+            if (running) {
+                return;
+            }
+            running = true;
+            startScan();
+            handler.post(rotateRunnable);
+            Log.d(TAG, "📡 Beacon channel started (" + (extended ? "extended" : "legacy") + " advertising)");
+        });
+    }
+
+    public void stop() {
+        handler.post(() -> {
+            running = false;
+            handler.removeCallbacks(rotateRunnable);
+            stopAdvertising();
+            if (scanner != null && hasPermission(android.Manifest.permission.BLUETOOTH_SCAN)) {
+                scanner.stopScan(scanCallback);
+            }
+            Log.d(TAG, "🛑 Beacon channel stopped");
+        });
+    }
+
+    /**
+     * Put a broadcast into the advertising rotation. Own messages stay on air
+     * longer and win the slot back every other rotation; relayed ones fill
+     * the gaps. Any thread.
+     */
+    public void offer(Message message, boolean own) {
+        if (!BeaconFrame.isBeaconType(message.type) || (!own && message.type == Message.Type.LOCATION_UPDATE)) {
+            return;
+        }
+        if (own && message.type == Message.Type.LOCATION_UPDATE) {
+            String content = message.content;
+            handler.post(() -> updateLocation(content)); // Also the position of a legacy SOS beacon
+        }
+        boolean lowBattery = DeviceUtil.getBatteryRelease(context) < LOW_BATTERY_PERCENT;
+        byte[] frame = BeaconFrame.encode(message, lowBattery, extended ? maxFrameLength() : 0);
+        if (frame == null && (extended || !(own && message.type == Message.Type.SOS))) {
+            notCarried.incrementAndGet();
+            return;
+        }
+        long expiresAt = System.currentTimeMillis() + (own ? OWN_FRAME_TTL_MS : RELAYED_FRAME_TTL_MS);
+        Slot slot = new Slot(message.type, frame, own, expiresAt);
+        seen.put(message.id, expiresAt); // Never re-inject our own advertisement
+        handler.post(() -> {
+            if (own && message.type == Message.Type.LOCATION_UPDATE) {
+                removeSlots(Message.Type.LOCATION_UPDATE); // Only the latest ping matters
+            }
+            if (slots.size() >= MAX_FRAMES) {
+                evictOne();
+            }
+            slots.add(slot);
+            if (running && current == null) {
+                handler.removeCallbacks(rotateRunnable);
+                handler.post(rotateRunnable);
+            }
+        });
+    }
+
+    // --- Advertising ---
+
+    private final Runnable rotateRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (!running) {
+                return;
+            }
+            Slot next = nextSlot();
+            if (next == null) {
+                stopAdvertising();
+                return; // Resumed by the next offer()
+            }
+            if (extended) {
+                advertiseFrame(next);
+            } else {
+                advertiseLegacyBeacon();
+            }
+            current = next;
+            handler.postDelayed(this, ROTATE_MS);
+        }
+    };
+
+    private Slot nextSlot() {
+        long now = System.currentTimeMillis();
+        Iterator<Slot> it = slots.iterator();
+        while (it.hasNext()) {
+            if (it.next().expiresAt < now) {
+                it.remove();
+            }
+        }
+        if (slots.isEmpty()) {
+            return null;
+        }
+        if (!extended) {
+            for (Slot slot : slots) {
+                if (slot.own && slot.type == Message.Type.SOS) {
+                    return slot;
+                }
+            }
+            return null; // Nothing a legacy advertisement can carry
+        }
+        rotation++;
+        if (rotation % 2 == 0) {
+            for (Slot slot : slots) {
+                if (slot.own && slot.type != Message.Type.LOCATION_UPDATE) {
+                    return slot;
+                }
+            }
+        }
+        return slots.get(rotation % slots.size());
+    }
+
+    private void advertiseFrame(Slot slot) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O || advertiser == null || slot.frame == null
+                || !hasPermission(android.Manifest.permission.BLUETOOTH_ADVERTISE)) {
+            return;
+        }
+        AdvertiseData data = new AdvertiseData.Builder()
+                .setIncludeDeviceName(false)
+                .addManufacturerData(EmergencyBeaconService.MANUFACTURER_ID, slot.frame)
+                .build();
+        if (advertisingSet != null) {
+            if (slot != current) {
+                advertisingSet.setAdvertisingData(data); // Swap the payload, no restart
+                framesAdvertised.incrementAndGet();
+            }
+            return;
+        }
+        if (setStarting) {
+            return;
+        }
+        AdvertisingSetParameters parameters = new AdvertisingSetParameters.Builder()
+                .setLegacyMode(false)
+                .setConnectable(false)
+                .setScannable(false)
+                .setInterval(AdvertisingSetParameters.INTERVAL_LOW) // 100 ms
+                .setTxPowerLevel(AdvertisingSetParameters.TX_POWER_HIGH)
+                .setPrimaryPhy(android.bluetooth.BluetoothDevice.PHY_LE_1M)
+                .setSecondaryPhy(android.bluetooth.BluetoothDevice.PHY_LE_1M)
+                .build();
+        setStarting = true;
+        advertiser.startAdvertisingSet(parameters, data, null, null, null, advertisingSetCallback, handler);
+        framesAdvertised.incrementAndGet();
+    }
+
+    private void advertiseLegacyBeacon() {
+        if (legacyBeaconOn || advertiser == null || !hasPermission(android.Manifest.permission.BLUETOOTH_ADVERTISE)) {
+            return;
+        }
+        AdvertiseSettings settings = new AdvertiseSettings.Builder()
+                .setAdvertiseMode(AdvertiseSettings.ADVERTISE_MODE_LOW_LATENCY)
+                .setTxPowerLevel(AdvertiseSettings.ADVERTISE_TX_POWER_HIGH)
+                .setConnectable(false)
+                .setTimeout(0)
+                .build();
+        AdvertiseData data = new AdvertiseData.Builder()
+                .setIncludeDeviceName(false)
+                .addManufacturerData(EmergencyBeaconService.MANUFACTURER_ID,
+                        EmergencyBeaconService.buildBeaconPayload(BeaconFrame.FLAG_SOS, lastLatitude, lastLongitude,
+                                myDeviceId))
+                .build();
+        advertiser.startAdvertising(settings, data, legacyCallback);
+        legacyBeaconOn = true;
+        framesAdvertised.incrementAndGet();
+    }
+
+    private void stopAdvertising() {
+        current = null;
+        if (advertiser == null || !hasPermission(android.Manifest.permission.BLUETOOTH_ADVERTISE)) {
+            return;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && (advertisingSet != null || setStarting)) {
+            advertiser.stopAdvertisingSet(advertisingSetCallback);
+            advertisingSet = null;
+            setStarting = false;
+        }
+        if (legacyBeaconOn) {
+            advertiser.stopAdvertising(legacyCallback);
+            legacyBeaconOn = false;
+        }
+    }
+
+    private final AdvertisingSetCallback advertisingSetCallback = Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
+            ? new AdvertisingSetCallback() {
+                @Override
+                public void onAdvertisingSetStarted(AdvertisingSet set, int txPower, int status) {
+                    setStarting = false;
+                    if (status != AdvertisingSetCallback.ADVERTISE_SUCCESS) {
+                        Log.e(TAG, "❌ Advertising set failed: " + status);
+                        current = null;
+                        return;
+                    }
+                    advertisingSet = set;
+                    if (!running) {
+                        stopAdvertising();
+                    }
+                }
+
+                @Override
+                public void onAdvertisingSetStopped(AdvertisingSet set) {
+                    advertisingSet = null;
+                }
+            }
+            : null;
+
+    private final AdvertiseCallback legacyCallback = new AdvertiseCallback() {
+        @Override
+        public void onStartFailure(int errorCode) {
+            legacyBeaconOn = false;
+            Log.e(TAG, "❌ Emergency beacon failed: " + errorCode);
+        }
+    };
+
+    // --- Scanning ---
+
+    private void startScan() {
+        if (scanner == null || !hasPermission(android.Manifest.permission.BLUETOOTH_SCAN)) {
+            Log.w(TAG, "BLE scanner not available, beacon frames will not be received");
+            return;
+        }
+        List<ScanFilter> filters = new ArrayList<>();
+        filters.add(new ScanFilter.Builder()
+                .setManufacturerData(EmergencyBeaconService.MANUFACTURER_ID, new byte[] { 'D', 'C' },
+                        new byte[] { (byte) 0xFF, (byte) 0xFF })
+                .build());
+        ScanSettings.Builder settings = new ScanSettings.Builder()
+                .setScanMode(ScanSettings.SCAN_MODE_LOW_LATENCY)
+                .setCallbackType(ScanSettings.CALLBACK_TYPE_ALL_MATCHES);
+        if (extended && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            settings.setLegacy(false).setPhy(ScanSettings.PHY_LE_ALL_SUPPORTED);
+        }
+        scanner.startScan(filters, settings.build(), scanCallback);
+    }
+
+    private final ScanCallback scanCallback = new ScanCallback() {
+        @Override
+        public void onScanResult(int callbackType, ScanResult result) {
+            handler.post(() -> handleResult(result));
+        }
+
+        @Override
+        public void onBatchScanResults(List<ScanResult> results) {
+            handler.post(() -> {
+                for (ScanResult result : results) {
+                    handleResult(result);
+                }
+            });
+        }
+
+        @Override
+        public void onScanFailed(int errorCode) {
+            Log.e(TAG, "Beacon scan failed: " + errorCode + ". Retrying...");
+            handler.postDelayed(() -> {
+                if (running) {
+                    startScan();
+                }
+            }, 2000);
+        }
+    };
+
+    private void handleResult(ScanResult result) {
+        ScanRecord record = result.getScanRecord();
+        byte[] data = record != null ? record.getManufacturerSpecificData(EmergencyBeaconService.MANUFACTURER_ID) : null;
+        if (data == null) {
+            return;
+        }
+        String address = result.getDevice().getAddress();
+        Listener l = listener;
+        if (BeaconFrame.isFrame(data)) {
+            framesHeard.incrementAndGet();
+            // Each frame repeats every advertising interval: dedup on the id before decoding anything
+            String messageId = BeaconFrame.messageId(data);
+            if (seen.containsKey(messageId)) {
+                repeats.incrementAndGet();
+                return;
+            }
+            Message message = BeaconFrame.decode(data);
+            if (message == null) {
+                return;
+            }
+            seen.put(messageId, System.currentTimeMillis());
+            injected.incrementAndGet();
+            if (l != null) {
+                l.onBeaconMessage(LINK_PREFIX + address, message);
+            }
+            return;
+        }
+        EmergencyBeaconService.BeaconData beacon = EmergencyBeaconService.parseBeaconPayload(data);
+        if (beacon == null) {
+            return;
+        }
+        String key = "legacy/" + beacon.deviceHash;
+        Long last = seen.get(key);
+        long now = System.currentTimeMillis();
+        if (last != null && now - last < LEGACY_REPORT_MS) {
+            return;
+        }
+        seen.put(key, now);
+        legacyBeacons.incrementAndGet();
+        if (l != null) {
+            l.onLegacyBeacon(address, beacon, result.getRssi());
+        }
+    }
+
+    // --- Helpers ---
+
+    private int maxFrameLength() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O || bluetoothAdapter == null) {
+            return 0;
+        }
+        return Math.min(MAX_EXTENDED_DATA, bluetoothAdapter.getLeMaximumAdvertisingDataLength() - 4);
+    }
+
+    private void updateLocation(String content) {
+        try {
+            String[] parts = content.split(",");
+            lastLatitude = Double.parseDouble(parts[0].trim());
+            lastLongitude = Double.parseDouble(parts[1].trim());
+        } catch (Exception e) {
+            // Not a "lat,lng" ping
+        }
+    }
+
+    private void removeSlots(Message.Type type) {
+        Iterator<Slot> it = slots.iterator();
+        while (it.hasNext()) {
+            if (it.next().type == type) {
+                it.remove();
+            }
+        }
+    }
+
+    // Relayed frames go first, oldest first; own frames only if there is nothing else
+    private void evictOne() {
+        for (int i = 0; i < slots.size(); i++) {
+            if (!slots.get(i).own) {
+                slots.remove(i);
+                return;
+            }
+        }
+        slots.remove(0);
+    }
+
+    // Runtime Bluetooth permissions only exist from Android 12
+    private boolean hasPermission(String permission) {
+        return Build.VERSION.SDK_INT < Build.VERSION_CODES.S
+                || ActivityCompat.checkSelfPermission(context, permission) == PackageManager.PERMISSION_GRANTED;
+    }
+
+    public String getStatsSummary() {
+        return String.format("Beacon plane (%s): %d advertised, %d heard, %d repeats, %d injected, "
+                        + "%d legacy beacons, %d not carried",
+                extended ? "extended" : "legacy", framesAdvertised.get(), framesHeard.get(), repeats.get(),
+                injected.get(), legacyBeacons.get(), notCarried.get());
+    }
+}
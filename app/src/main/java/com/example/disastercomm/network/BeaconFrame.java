@@ -0,0 +1,205 @@
+package com.example.disastercomm.network;
+
+import android.util.Base64;
+
+import com.example.disastercomm.models.Message;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Compact binary form of a short broadcast (SOS, alert, location ping) that
+ * fits in one extended BLE advertisement. It travels as manufacturer data
+ * next to the classic 15-byte emergency beacon and shares its "DC" prefix
+ * and flag byte, with FLAG_FRAME set so old scanners ignore it.
+ *
+ * Everything the signature covers (see SignatureVerifier.signedBytes) is
+ * carried verbatim, so a decoded frame verifies like the original message.
+ *
+ * Layout (big-endian):
+ *  0  'D' 'C'
+ *  2  flags (bit 0 SOS, bit 1 low battery, bit 6 signed, bit 7 frame)
+ *  3  version
+ *  4  Message.Type ordinal
+ *  5  ttl
+ *  6  message id as UUID (16 bytes)
+ *  22 senderId as UUID (16 bytes)
+ *  38 timestamp, ms (8 bytes)
+ *  46 senderName length (1) + UTF-8
+ *  .. content length (1) + UTF-8
+ *  .. signed only: signerKeyId (8 bytes) + signature length (1) + DER signature
+ */
+public final class BeaconFrame {
+    public static final int FLAG_SOS = 1;
+    public static final int FLAG_LOW_BATTERY = 1 << 1;
+    public static final int FLAG_SIGNED = 1 << 6;
+    public static final int FLAG_FRAME = 1 << 7;
+    private static final byte VERSION = 1;
+    private static final int FIXED_LENGTH = 46;
+    private static final int MAX_FIELD = 255;
+    private static final Message.Type[] TYPES = Message.Type.values();
+
+    private BeaconFrame() {
+    }
+
+    /**
+     * Types worth a slot in the advertising rotation
+     */
+    public static boolean isBeaconType(Message.Type type) {
+        return type == Message.Type.SOS || type == Message.Type.GOVT_ALERT || type == Message.Type.LOCATION_UPDATE;
+    }
+
+    public static boolean isFrame(byte[] data) {
+        return data != null && data.length >= FIXED_LENGTH && data[0] == 'D' && data[1] == 'C'
+                && (data[2] & FLAG_FRAME) != 0 && data[3] == VERSION;
+    }
+
+    /**
+     * Encode a broadcast, or null if it cannot be carried (not a broadcast,
+     * non-UUID ids, missing or too long fields, or larger than maxLength)
+     */
+    public static byte[] encode(Message message, boolean lowBattery, int maxLength) {
+        // null would not survive the round trip (and would break the signature)
+        if (!isBeaconType(message.type) || !"ALL".equals(message.receiverId) || message.senderName == null
+                || message.content == null) {
+            return null;
+        }
+        UUID id = uuidOf(message.id);
+        UUID sender = uuidOf(message.senderId);
+        byte[] name = bytes(message.senderName);
+        byte[] content = bytes(message.content);
+        byte[] signature = message.signature != null ? Base64.decode(message.signature, Base64.NO_WRAP) : null;
+        byte[] signerKeyId = signature != null ? hexToBytes(message.signerKeyId) : null;
+        if (id == null || sender == null || name.length > MAX_FIELD || content.length > MAX_FIELD
+                || (signature != null && (signerKeyId == null || signerKeyId.length != 8 || signature.length > MAX_FIELD))) {
+            return null;
+        }
+        int length = FIXED_LENGTH + 1 + name.length + 1 + content.length
+                + (signature != null ? 8 + 1 + signature.length : 0);
+        if (length > maxLength) {
+            return null;
+        }
+
+        int flags = FLAG_FRAME;
+        if (message.type == Message.Type.SOS) {
+            flags |= FLAG_SOS;
+        }
+        if (lowBattery) {
+            flags |= FLAG_LOW_BATTERY;
+        }
+        if (signature != null) {
+            flags |= FLAG_SIGNED;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.put((byte) 'D').put((byte) 'C');
+        buffer.put((byte) flags);
+        buffer.put(VERSION);
+        buffer.put((byte) message.type.ordinal());
+        buffer.put((byte) Math.max(0, Math.min(255, message.ttl)));
+        buffer.putLong(id.getMostSignificantBits()).putLong(id.getLeastSignificantBits());
+        buffer.putLong(sender.getMostSignificantBits()).putLong(sender.getLeastSignificantBits());
+        buffer.putLong(message.timestamp);
+        buffer.put((byte) name.length).put(name);
+        buffer.put((byte) content.length).put(content);
+        if (signature != null) {
+            buffer.put(signerKeyId);
+            buffer.put((byte) signature.length).put(signature);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Message id of a frame without decoding the rest, for dedup
+     */
+    public static String messageId(byte[] data) {
+        ByteBuffer buffer = ByteBuffer.wrap(data, 6, 16);
+        return new UUID(buffer.getLong(), buffer.getLong()).toString();
+    }
+
+    /**
+     * Rebuild the broadcast, or null if the frame is malformed
+     */
+    public static Message decode(byte[] data) {
+        if (!isFrame(data)) {
+            return null;
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            buffer.position(2);
+            int flags = buffer.get() & 0xFF;
+            buffer.get(); // Version
+            int typeOrdinal = buffer.get() & 0xFF;
+            if (typeOrdinal >= TYPES.length || !isBeaconType(TYPES[typeOrdinal])) {
+                return null;
+            }
+            Message message = new Message();
+            message.type = TYPES[typeOrdinal];
+            message.ttl = buffer.get() & 0xFF;
+            message.id = new UUID(buffer.getLong(), buffer.getLong()).toString();
+            message.senderId = new UUID(buffer.getLong(), buffer.getLong()).toString();
+            message.timestamp = buffer.getLong();
+            message.senderName = string(buffer);
+            message.content = string(buffer);
+            message.receiverId = "ALL";
+            if ((flags & FLAG_SIGNED) != 0) {
+                byte[] signerKeyId = new byte[8];
+                buffer.get(signerKeyId);
+                message.signerKeyId = bytesToHex(signerKeyId);
+                byte[] signature = new byte[buffer.get() & 0xFF];
+                buffer.get(signature);
+                message.signature = Base64.encodeToString(signature, Base64.NO_WRAP);
+            }
+            return message;
+        } catch (RuntimeException e) {
+            return null; // Truncated frame
+        }
+    }
+
+    // Only canonical (lower-case) UUID strings survive the round trip exactly
+    private static UUID uuidOf(String id) {
+        if (id == null || id.length() != 36) {
+            return null;
+        }
+        try {
+            UUID uuid = UUID.fromString(id);
+            return uuid.toString().equals(id) ? uuid : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(ByteBuffer buffer) {
+        byte[] value = new byte[buffer.get() & 0xFF];
+        buffer.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] hexToBytes(String hex) {
+        if (hex == null || hex.length() % 2 != 0) {
+            return null;
+        }
+        byte[] out = new byte[hex.length() / 2];
+        for (int i = 0; i < out.length; i++) {
+            int high = Character.digit(hex.charAt(2 * i), 16);
+            int low = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                return null;
+            }
+            out[i] = (byte) ((high << 4) | low);
+        }
+        return out;
+    }
+
+    private static String bytesToHex(byte[] data) {
+        StringBuilder sb = new StringBuilder(data.length * 2);
+        for (byte b : data) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+}
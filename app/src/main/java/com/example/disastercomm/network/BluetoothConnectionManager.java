@@ -12,38 +12,91 @@ import androidx.core.app.ActivityCompat;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
-
-public class BluetoothConnectionManager {
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * RFCOMM links to nearby phones. Android Bluetooth sockets only offer
+ * blocking streams, so each link keeps one reader; everything else is
+ * shared and bounded regardless of link count:
+ *  - a small writer pool drains per-link outbound queues, so a send or
+ *    broadcast only enqueues and a slow peer never holds up the others
+ *  - one scheduler runs every heartbeat, connect timeout and stall check
+ *  - connect attempts run on a fixed pool instead of a thread each
+ * Links are capped at MAX_LINKS (an ACL piconet tops out at 7 anyway).
+ *
+ * RFCOMM is a byte stream, so one read can hold part of a packet or
+ * several. Links switch to StreamFraming once both ends support it: each
+ * end opens with a transport heartbeat offering the "f1" capability; an end
+ * that hears the offer writes a switch heartbeat and frames everything
+ * after it, and its peer reads framed from right after that switch. Older
+ * peers never offer, so they keep getting (and sending) raw packets.
+ */
+public class BluetoothConnectionManager implements Transport {
     private static final String TAG = "BTConnMgr";
     private static final String SERVICE_NAME = "DisasterComm";
     private static final UUID SERVICE_UUID = UUID.fromString("00001101-0000-1000-8000-00805F9B34FB");
+    private static final int READ_BUFFER_BYTES = 8192; // OPTIMIZED: Larger buffer for faster transfer
+
+    private static final int MAX_LINKS = 7;
+    private static final int CONNECT_THREADS = 4;
+    private static final int WRITER_THREADS = 2;
+    private static final int MAX_QUEUED_PER_LINK = 256; // Packets; beyond this new sends are dropped
+    private static final int WRITES_PER_TURN = 16; // Then the writer moves on to the next link
+    private static final long TICK_MS = 5000; // Shared scheduler period
+    private static final long HEARTBEAT_IDLE_MS = 30000; // Heartbeat a link we have not written to for this long
+    private static final long READ_IDLE_MS = 120000; // Peers heartbeat every 30 s; silence this long is a dead link
+    private static final long WRITE_STALL_MS = 10000; // A single write blocked this long closes the link
+    private static final long CONNECT_TIMEOUT_MS = 10000;
+    private static final int MAX_FRAME_BYTES = 64 * 1024;
+    static final String FRAMING_CAPABILITY = "f1";
+    // Look like plain heartbeats to older peers; constant bytes so they can be found in a raw read
+    private static final byte[] FRAMING_OFFER = ("{\"type\":\"HEARTBEAT\",\"id\":\"hb_offer\",\"caps\":\""
+            + FRAMING_CAPABILITY + "\"}").getBytes(StandardCharsets.UTF_8);
+    private static final byte[] FRAMING_SWITCH = ("{\"type\":\"HEARTBEAT\",\"id\":\"hb_framed\",\"caps\":\""
+            + FRAMING_CAPABILITY + "\"}").getBytes(StandardCharsets.UTF_8);
 
     private final Context context;
     private final BluetoothCallback callback;
     private final BluetoothAdapter bluetoothAdapter;
-    private final Map<String, ConnectedThread> activeConnections = new ConcurrentHashMap<>();
-    private ExecutorService connectionExecutor = Executors.newFixedThreadPool(4); // Parallel connections - NOT final
-                                                                                  // for restart
+    private final Map<String, Link> activeConnections = new ConcurrentHashMap<>();
     private final Set<String> attemptedDevices = ConcurrentHashMap.newKeySet(); // Track connection attempts
 
+    // Recreated on start() after a stop()
+    private ExecutorService connectionExecutor;
+    private ExecutorService readers; // One reader per link, at most MAX_LINKS
+    private ExecutorService writers;
+    private ScheduledExecutorService scheduler;
+
     private AcceptThread acceptThread;
-    private boolean isRunning = false;
+    private volatile boolean isRunning = false;
     private ConnectionPoolManager poolManager;
+    private volatile Transport.Listener transportListener;
+    private volatile android.os.Handler handler = new android.os.Handler(android.os.Looper.getMainLooper());
+
+    // Stats
+    private final AtomicLong linksOpened = new AtomicLong();
+    private final AtomicLong linksRefused = new AtomicLong();
+    private final AtomicLong connectTimeouts = new AtomicLong();
+    private final AtomicLong stalls = new AtomicLong();
+    private final AtomicLong idleCloses = new AtomicLong();
 
     public interface BluetoothCallback {
         void onBluetoothConnected(String address, String deviceName);
 
         void onBluetoothDisconnected(String address);
-
-        void onBluetoothDataReceived(String address, byte[] data);
     }
 
     public BluetoothConnectionManager(Context context, BluetoothCallback callback) {
@@ -56,6 +109,13 @@ public class BluetoothConnectionManager {
         this.poolManager = poolManager;
     }
 
+    /**
+     * Run connection timers on this looper instead of the main thread
+     */
+    public void setEventLooper(android.os.Looper looper) {
+        this.handler = new android.os.Handler(looper);
+    }
+
     /**
      * ✅ Check if any device is connected via Bluetooth
      */
@@ -63,14 +123,22 @@ public class BluetoothConnectionManager {
         return !activeConnections.isEmpty();
     }
 
+    public boolean isConnectedTo(String address) {
+        return address != null && activeConnections.containsKey(address);
+    }
+
+    public java.util.List<String> getConnectedAddresses() {
+        return new java.util.ArrayList<>(activeConnections.keySet());
+    }
+
     public java.util.Map<String, String> getConnectedDevices() {
         java.util.Map<String, String> devices = new java.util.HashMap<>();
         if (ActivityCompat.checkSelfPermission(context,
                 android.Manifest.permission.BLUETOOTH_CONNECT) != PackageManager.PERMISSION_GRANTED) {
             return devices;
         }
-        for (ConnectedThread thread : activeConnections.values()) {
-            BluetoothDevice device = thread.socket.getRemoteDevice();
+        for (Link link : activeConnections.values()) {
+            BluetoothDevice device = link.socket.getRemoteDevice();
             String name = device.getName();
             devices.put(device.getAddress(), name != null ? name : device.getAddress());
         }
@@ -89,13 +157,13 @@ public class BluetoothConnectionManager {
 
         isRunning = true;
 
-        // Recreate executor if it was shutdown
-        if (connectionExecutor == null || connectionExecutor.isShutdown()) {
-            connectionExecutor = Executors.newFixedThreadPool(4);
-            Log.d(TAG, "ConnectionExecutor recreated");
-        }
+        // Recreate the engine if it was shut down
+        connectionExecutor = Executors.newFixedThreadPool(CONNECT_THREADS);
+        readers = Executors.newCachedThreadPool();
+        writers = Executors.newFixedThreadPool(WRITER_THREADS);
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        scheduler.scheduleWithFixedDelay(this::tick, TICK_MS, TICK_MS, TimeUnit.MILLISECONDS);
 
-        acceptThread = new AcceptThread();
         acceptThread = new AcceptThread();
         acceptThread.start();
         scanPairedDevices(); // Start scanning for known devices
@@ -111,7 +179,6 @@ public class BluetoothConnectionManager {
         // OPTIMIZED: Parallel connection attempts with minimal delay
         Set<BluetoothDevice> pairedDevices = bluetoothAdapter.getBondedDevices();
         if (pairedDevices != null && !pairedDevices.isEmpty()) {
-            android.os.Handler handler = new android.os.Handler(android.os.Looper.getMainLooper());
             long delay = 0;
 
             for (BluetoothDevice device : pairedDevices) {
@@ -119,13 +186,10 @@ public class BluetoothConnectionManager {
 
                 // Skip if already connected or currently attempting
                 if (!activeConnections.containsKey(address) && !attemptedDevices.contains(address)) {
-                    attemptedDevices.add(address);
-
-                    // OPTIMIZED: Use executor for parallel connections with small stagger
+                    // OPTIMIZED: Small stagger, the connect pool runs attempts in parallel
                     handler.postDelayed(() -> {
-                        if (isRunning && !activeConnections.containsKey(address)) {
-                            Log.d(TAG, "Auto-connecting to: " + address);
-                            connectionExecutor.submit(() -> connectToDevice(device));
+                        if (isRunning) {
+                            connectToDevice(device);
                         }
                     }, delay);
                     delay += 100; // OPTIMIZED: 100ms stagger for parallel attempts
@@ -142,12 +206,17 @@ public class BluetoothConnectionManager {
             acceptThread = null;
         }
 
-        for (ConnectedThread thread : activeConnections.values()) {
-            thread.cancel();
+        for (Link link : activeConnections.values()) {
+            link.close();
         }
         activeConnections.clear();
         attemptedDevices.clear();
-        connectionExecutor.shutdown();
+        if (connectionExecutor != null) {
+            connectionExecutor.shutdownNow();
+            readers.shutdownNow();
+            writers.shutdownNow();
+            scheduler.shutdownNow();
+        }
         Log.d(TAG, "Bluetooth manager stopped");
     }
 
@@ -177,20 +246,26 @@ public class BluetoothConnectionManager {
             Log.d(TAG, "Already connected to " + address);
             return;
         }
+        if (!isRunning || activeConnections.size() >= MAX_LINKS) {
+            return;
+        }
 
         // ✅ Prevent duplicate connection attempts
-        if (attemptedDevices.contains(address)) {
+        if (!attemptedDevices.add(address)) {
             return;
         }
-        attemptedDevices.add(address);
 
-        new ConnectThread(device).start();
+        try {
+            connectionExecutor.execute(() -> connect(device));
+        } catch (RejectedExecutionException e) {
+            attemptedDevices.remove(address); // Stopped meanwhile
+        }
     }
 
     public void sendData(String address, byte[] data) {
-        ConnectedThread thread = activeConnections.get(address);
-        if (thread != null) {
-            thread.write(data);
+        Link link = activeConnections.get(address);
+        if (link != null) {
+            link.enqueue(data, false);
         } else {
             Log.w(TAG, "No connection to " + address);
         }
@@ -200,10 +275,60 @@ public class BluetoothConnectionManager {
         broadcastData(data, null);
     }
 
+    // --- Transport ---
+
+    @Override
+    public String getName() {
+        return "bluetooth";
+    }
+
+    @Override
+    public int getCapabilities() {
+        return CAP_UNICAST | CAP_BROADCAST;
+    }
+
+    /**
+     * Legacy peers read up to 8 KB at a time and treat each read as one
+     * packet, so that stays the limit even on framed links.
+     */
+    @Override
+    public int getMtu() {
+        return READ_BUFFER_BYTES;
+    }
+
+    @Override
+    public java.util.List<String> getLinks() {
+        return getConnectedAddresses();
+    }
+
+    @Override
+    public boolean hasLink(String linkId) {
+        return isConnectedTo(linkId);
+    }
+
+    @Override
+    public boolean send(String linkId, byte[] data) {
+        Link link = activeConnections.get(linkId);
+        if (link == null) {
+            return false;
+        }
+        return link.enqueue(data, false); // Never blocks; a full queue drops and counts it
+    }
+
+    @Override
+    public void broadcast(byte[] data, String excludeLinkId) {
+        broadcastData(data, excludeLinkId);
+    }
+
+    @Override
+    public void setTransportListener(Transport.Listener listener) {
+        this.transportListener = listener;
+    }
+
     public void broadcastData(byte[] data, String excludeAddress) {
-        for (Map.Entry<String, ConnectedThread> entry : activeConnections.entrySet()) {
+        for (Map.Entry<String, Link> entry : activeConnections.entrySet()) {
             if (excludeAddress == null || !entry.getKey().equals(excludeAddress)) {
-                entry.getValue().write(data);
+                entry.getValue().enqueue(data, false);
             }
         }
     }
@@ -257,50 +382,44 @@ public class BluetoothConnectionManager {
         }
     }
 
-    // Client thread to initiate outgoing connection
-    private class ConnectThread extends Thread {
-        private final BluetoothDevice device;
-
-        public ConnectThread(BluetoothDevice device) {
-            this.device = device;
-        }
-
-        @Override
-        public void run() {
-            BluetoothSocket socket = null;
-            try {
-                if (ActivityCompat.checkSelfPermission(context,
-                        android.Manifest.permission.BLUETOOTH_CONNECT) == PackageManager.PERMISSION_GRANTED) {
-
-                    // ✅ OPTIMIZED: Use insecure socket (no pairing dialog, faster connection)
-                    socket = device.createInsecureRfcommSocketToServiceRecord(SERVICE_UUID);
-
-                    // ✅ OPTIMIZED: Reduced timeout for faster failure detection
-                    socket.connect(); // 2s timeout vs default 10s
-
-                    // Connection succeeded - remove from attempted list
-                    attemptedDevices.remove(device.getAddress());
-
-                    // manageConnectedSocket will handle pool registration
-                    manageConnectedSocket(socket);
-                }
-            } catch (IOException e) {
-                Log.e(TAG, "Connection failed to " + device.getAddress(), e);
-
-                // ✅ Track failure and allow retry on next scan
-                attemptedDevices.remove(device.getAddress());
+    // Outgoing connection, on the connect pool
+    private void connect(BluetoothDevice device) {
+        String address = device.getAddress();
+        BluetoothSocket socket = null;
+        ScheduledFuture<?> timeout = null;
+        try {
+            if (ActivityCompat.checkSelfPermission(context,
+                    android.Manifest.permission.BLUETOOTH_CONNECT) != PackageManager.PERMISSION_GRANTED) {
+                return;
+            }
+            // ✅ OPTIMIZED: Use insecure socket (no pairing dialog, faster connection)
+            socket = device.createInsecureRfcommSocketToServiceRecord(SERVICE_UUID);
+
+            // connect() has no timeout of its own; closing the socket aborts it
+            BluetoothSocket pending = socket;
+            timeout = scheduler.schedule(() -> {
+                connectTimeouts.incrementAndGet();
+                closeQuietly(pending);
+            }, CONNECT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            socket.connect();
+            if (!timeout.cancel(false)) {
+                throw new IOException("Connect timed out"); // Socket already closed under us
+            }
 
-                if (poolManager != null) {
-                    poolManager.recordFailure(device.getAddress());
-                }
-                if (socket != null) {
-                    try {
-                        socket.close();
-                    } catch (IOException closeException) {
-                        Log.e(TAG, "Close socket failed", closeException);
-                    }
-                }
+            // manageConnectedSocket will handle pool registration
+            manageConnectedSocket(socket);
+        } catch (IOException | RejectedExecutionException e) {
+            Log.e(TAG, "Connection failed to " + address, e);
+            if (timeout != null) {
+                timeout.cancel(false);
             }
+            if (poolManager != null) {
+                poolManager.recordFailure(address);
+            }
+            closeQuietly(socket);
+        } finally {
+            // ✅ Connected or failed, allow a retry on the next scan
+            attemptedDevices.remove(address);
         }
     }
 
@@ -309,17 +428,32 @@ public class BluetoothConnectionManager {
         BluetoothDevice device = socket.getRemoteDevice();
         String address = device.getAddress();
 
-        if (activeConnections.containsKey(address)) {
-            try {
-                socket.close();
-            } catch (IOException e) {
+        if (activeConnections.containsKey(address) || activeConnections.size() >= MAX_LINKS) {
+            if (!activeConnections.containsKey(address)) {
+                linksRefused.incrementAndGet();
             }
+            closeQuietly(socket);
             return;
         }
 
-        ConnectedThread thread = new ConnectedThread(socket);
-        activeConnections.put(address, thread);
-        thread.start();
+        Link link;
+        try {
+            link = new Link(socket);
+        } catch (IOException e) {
+            Log.e(TAG, "Error creating streams", e);
+            closeQuietly(socket);
+            return;
+        }
+        activeConnections.put(address, link);
+        linksOpened.incrementAndGet();
+        link.enqueue(FRAMING_OFFER, true); // First bytes on the link
+        try {
+            readers.execute(link::readLoop);
+        } catch (RejectedExecutionException e) {
+            activeConnections.remove(address);
+            link.close();
+            return;
+        }
 
         // Register with connection pool
         if (poolManager != null) {
@@ -331,6 +465,9 @@ public class BluetoothConnectionManager {
             }
         }
 
+        if (transportListener != null) {
+            transportListener.onLinkUp(this, address, address);
+        }
         if (ActivityCompat.checkSelfPermission(context,
                 android.Manifest.permission.BLUETOOTH_CONNECT) == PackageManager.PERMISSION_GRANTED) {
             String name = device.getName();
@@ -338,68 +475,225 @@ public class BluetoothConnectionManager {
         }
     }
 
-    private class ConnectedThread extends Thread {
-        private final BluetoothSocket socket;
+    // Shared scheduler: heartbeats for idle links, dead and stalled link detection
+    private void tick() {
+        long now = System.currentTimeMillis();
+        for (Link link : activeConnections.values()) {
+            long writeStartedAt = link.writeStartedAt;
+            if (writeStartedAt != 0 && now - writeStartedAt > WRITE_STALL_MS) {
+                stalls.incrementAndGet();
+                Log.w(TAG, "🐢 Write to " + link.address + " stalled, closing link");
+                link.close(); // Unblocks the writer and the reader
+            } else if (now - link.lastReadAt > READ_IDLE_MS) {
+                idleCloses.incrementAndGet();
+                Log.w(TAG, "Nothing from " + link.address + " in " + READ_IDLE_MS / 1000 + "s, closing link");
+                link.close();
+            } else if (now - link.lastWriteAt > HEARTBEAT_IDLE_MS) {
+                String heartbeatJson = "{\"type\":\"HEARTBEAT\",\"id\":\"hb_" + now + "\"}";
+                link.enqueue(heartbeatJson.getBytes(StandardCharsets.UTF_8), false);
+            }
+        }
+    }
+
+    private static void closeQuietly(BluetoothSocket socket) {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                Log.e(TAG, "Close socket failed", e);
+            }
+        }
+    }
+
+    /**
+     * One RFCOMM link: its socket, outbound queue and counters. The queue is
+     * drained by at most one writer at a time.
+     */
+    private class Link {
+        final BluetoothSocket socket;
+        final String address;
         private final InputStream inStream;
         private final OutputStream outStream;
-        private final String address;
-        private final ScheduledExecutorService heartbeatExecutor;
-
-        public ConnectedThread(BluetoothSocket socket) {
+        private final ArrayDeque<byte[]> queue = new ArrayDeque<>();
+        private boolean draining = false;
+        private volatile boolean closed = false;
+        final long openedAt = System.currentTimeMillis();
+
+        // Framing state: out is flipped by the drainer right after it wrote FRAMING_SWITCH,
+        // in is only touched by the reader
+        private boolean switchQueued = false; // Under the queue lock
+        volatile boolean framedOut = false;
+        private boolean framedIn = false;
+        private final StreamFraming.Decoder decoder = new StreamFraming.Decoder(MAX_FRAME_BYTES);
+
+        // Metrics; each field has a single writer (reader thread, current drainer, or under the queue lock)
+        volatile long lastReadAt = openedAt;
+        volatile long lastWriteAt = openedAt;
+        volatile long writeStartedAt;
+        volatile long packetsIn;
+        volatile long bytesIn;
+        volatile long packetsOut;
+        volatile long bytesOut;
+        volatile long dropped;
+        volatile long maxWriteMs;
+
+        Link(BluetoothSocket socket) throws IOException {
             this.socket = socket;
             this.address = socket.getRemoteDevice().getAddress();
-            InputStream tmpIn = null;
-            OutputStream tmpOut = null;
+            this.inStream = socket.getInputStream();
+            this.outStream = socket.getOutputStream();
+        }
+
+        /**
+         * Queue a packet; false if the link is closed or its queue is full.
+         * Control packets (framing negotiation) are never dropped.
+         */
+        boolean enqueue(byte[] bytes, boolean control) {
+            boolean startDrain;
+            synchronized (queue) {
+                if (closed) {
+                    return false;
+                }
+                if (!control && queue.size() >= MAX_QUEUED_PER_LINK) {
+                    dropped++; // Slow peer: it loses packets, nobody else waits
+                    return false;
+                }
+                queue.addLast(bytes);
+                startDrain = !draining;
+                draining = true;
+            }
+            if (startDrain) {
+                scheduleDrain();
+            }
+            return true;
+        }
 
+        // The peer offered framing: switch our direction exactly once
+        private void onFramingOffer() {
+            synchronized (queue) {
+                if (switchQueued) {
+                    return;
+                }
+                switchQueued = true;
+            }
+            enqueue(FRAMING_SWITCH, true);
+        }
+
+        private void scheduleDrain() {
             try {
-                tmpIn = socket.getInputStream();
-                tmpOut = socket.getOutputStream();
-            } catch (IOException e) {
-                Log.e(TAG, "Error creating streams", e);
+                writers.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                synchronized (queue) {
+                    draining = false; // Engine stopped
+                }
             }
+        }
 
-            inStream = tmpIn;
-            outStream = tmpOut;
-            heartbeatExecutor = Executors.newSingleThreadScheduledExecutor();
-            startHeartbeat();
+        // A bounded turn, so a busy link shares the writer pool with the rest
+        private void drain() {
+            for (int i = 0; i < WRITES_PER_TURN; i++) {
+                byte[] bytes;
+                synchronized (queue) {
+                    bytes = queue.pollFirst();
+                    if (bytes == null) {
+                        draining = false;
+                        return;
+                    }
+                }
+                if (!write(bytes)) {
+                    close();
+                    return;
+                }
+                if (bytes == FRAMING_SWITCH) {
+                    framedOut = true; // The peer reads framed from here on
+                }
+            }
+            scheduleDrain();
         }
 
-        private void startHeartbeat() {
-            heartbeatExecutor.scheduleAtFixedRate(() -> {
-                try {
-                    String heartbeatJson = "{\"type\":\"HEARTBEAT\",\"id\":\"hb_" + System.currentTimeMillis() + "\"}";
-                    write(heartbeatJson.getBytes(java.nio.charset.StandardCharsets.UTF_8));
-                } catch (Exception e) {
-                    Log.e(TAG, "Heartbeat failed: " + e.getMessage());
-                    cancel(); // Close connection if heartbeat fails
+        private boolean write(byte[] bytes) {
+            long startTime = System.currentTimeMillis();
+            writeStartedAt = startTime;
+            try {
+                if (framedOut) {
+                    // Header and packet in one write, so a stall check never sees half a frame
+                    ByteBuffer frame = StreamFraming.encode(bytes);
+                    outStream.write(frame.array(), 0, frame.limit());
+                } else {
+                    outStream.write(bytes);
                 }
-            }, 30, 30, TimeUnit.SECONDS);
+                outStream.flush(); // Ensure immediate send
+            } catch (IOException e) {
+                if (!closed) {
+                    Log.e(TAG, "Write failed to " + address, e);
+                }
+                if (poolManager != null) {
+                    poolManager.recordFailure(address);
+                }
+                return false;
+            } finally {
+                writeStartedAt = 0;
+            }
+            long latency = System.currentTimeMillis() - startTime;
+            lastWriteAt = startTime + latency;
+            packetsOut++;
+            bytesOut += bytes.length;
+            if (latency > maxWriteMs) {
+                maxWriteMs = latency;
+            }
+
+            // Update pool manager
+            if (poolManager != null) {
+                poolManager.recordMessageSent(address, latency);
+            }
+            return true;
         }
 
-        public void run() {
-            byte[] buffer = new byte[8192]; // OPTIMIZED: Larger buffer for faster transfer
+        void readLoop() {
             int bytes;
 
-            while (isRunning) {
+            while (isRunning && !closed) {
+                // Each read lands in a pooled buffer; raw reads are handed on as-is and the receiver releases them
+                PooledBuffer packet = BufferPool.shared().acquire(READ_BUFFER_BYTES);
                 try {
-                    bytes = inStream.read(buffer);
-                    byte[] data = new byte[bytes];
-                    System.arraycopy(buffer, 0, data, 0, bytes);
+                    bytes = inStream.read(packet.array(), 0, READ_BUFFER_BYTES);
+                    if (bytes < 0) {
+                        packet.release();
+                        break; // Remote closed the socket
+                    }
+                    packet.setLength(bytes);
+                    lastReadAt = System.currentTimeMillis();
+                    bytesIn += bytes;
 
                     // Update pool manager
                     if (poolManager != null) {
                         poolManager.recordMessageReceived(address);
                         poolManager.updateLastSeen(address);
                     }
-
-                    callback.onBluetoothDataReceived(address, data);
                 } catch (IOException e) {
+                    packet.release();
                     Log.e(TAG, "Disconnected from " + address, e);
                     break;
                 }
+                try {
+                    if (framedIn) {
+                        try {
+                            decodeFrames(packet.array(), 0, bytes);
+                        } finally {
+                            packet.release();
+                        }
+                    } else {
+                        onRawRead(packet);
+                    }
+                } catch (IOException e) {
+                    Log.e(TAG, "Corrupt frame from " + address + ", closing link", e);
+                    break;
+                }
             }
+            decoder.reset();
 
-            activeConnections.remove(address);
+            close();
+            activeConnections.remove(address, this);
             attemptedDevices.remove(address);
 
             // Remove from pool
@@ -407,38 +701,123 @@ public class BluetoothConnectionManager {
                 poolManager.removeConnection(address);
             }
 
+            if (transportListener != null) {
+                transportListener.onLinkDown(BluetoothConnectionManager.this, address);
+            }
             callback.onBluetoothDisconnected(address);
-            heartbeatExecutor.shutdownNow();
         }
 
-        public void write(byte[] bytes) {
-            long startTime = System.currentTimeMillis();
+        /**
+         * A read from a peer that has not switched to framing: one read is one packet,
+         * except that the framing offer and switch are taken out, and whatever follows
+         * the switch is already framed. Takes ownership of packet.
+         */
+        private void onRawRead(PooledBuffer packet) throws IOException {
+            byte[] data = packet.array();
+            int length = packet.length();
+            int offerAt = indexOf(data, length, FRAMING_OFFER);
+            int switchAt = indexOf(data, length, FRAMING_SWITCH);
+            if (offerAt < 0 && switchAt < 0) {
+                deliver(packet);
+                return;
+            }
             try {
-                outStream.write(bytes);
-                outStream.flush(); // Ensure immediate send
-
-                // Update pool manager
-                if (poolManager != null) {
-                    long latency = System.currentTimeMillis() - startTime;
-                    poolManager.recordMessageSent(address, latency);
+                int rawEnd = switchAt >= 0 ? switchAt : length;
+                if (offerAt >= 0 && offerAt < rawEnd) {
+                    onFramingOffer();
+                    deliverCopy(data, 0, offerAt);
+                    deliverCopy(data, offerAt + FRAMING_OFFER.length, rawEnd);
+                } else {
+                    deliverCopy(data, 0, rawEnd);
                 }
-            } catch (IOException e) {
-                Log.e(TAG, "Write failed to " + address, e);
-                if (poolManager != null) {
-                    poolManager.recordFailure(address);
+                if (switchAt >= 0) {
+                    framedIn = true;
+                    Log.d(TAG, "📦 " + address + " switched to framed packets");
+                    decodeFrames(data, switchAt + FRAMING_SWITCH.length, length);
                 }
+            } finally {
+                packet.release();
             }
         }
 
-        public void cancel() {
-            try {
-                if (heartbeatExecutor != null) {
-                    heartbeatExecutor.shutdownNow();
+        private void decodeFrames(byte[] data, int from, int to) throws IOException {
+            ByteBuffer in = ByteBuffer.wrap(data, from, to - from);
+            PooledBuffer frame;
+            while ((frame = decoder.next(in)) != null) {
+                deliver(frame);
+            }
+        }
+
+        private void deliverCopy(byte[] data, int from, int to) {
+            if (to <= from) {
+                return;
+            }
+            PooledBuffer copy = BufferPool.shared().acquire(to - from);
+            System.arraycopy(data, from, copy.array(), 0, to - from);
+            copy.setLength(to - from);
+            deliver(copy);
+        }
+
+        private void deliver(PooledBuffer packet) {
+            packetsIn++;
+            if (transportListener != null) {
+                transportListener.onReceive(BluetoothConnectionManager.this, address, packet);
+            } else {
+                packet.release();
+            }
+        }
+
+        void close() {
+            synchronized (queue) {
+                closed = true;
+                queue.clear();
+            }
+            closeQuietly(socket);
+        }
+
+        int depth() {
+            synchronized (queue) {
+                return queue.size();
+            }
+        }
+    }
+
+    private static int indexOf(byte[] data, int length, byte[] pattern) {
+        outer:
+        for (int i = 0; i <= length - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
                 }
-                socket.close();
-            } catch (IOException e) {
-                Log.e(TAG, "Close socket failed", e);
             }
+            return i;
+        }
+        return -1;
+    }
+
+    public String getStatsSummary() {
+        StringBuilder sb = new StringBuilder();
+        long queued = 0;
+        long dropped = 0;
+        int framed = 0;
+        for (Link link : activeConnections.values()) {
+            queued += link.depth();
+            dropped += link.dropped;
+            if (link.framedOut) {
+                framed++;
+            }
+        }
+        sb.append(String.format("RFCOMM: %d/%d links (%d framed), %d opened, %d refused, %d queued, %d dropped, "
+                        + "%d connect timeouts, %d stalls, %d idle closes",
+                activeConnections.size(), MAX_LINKS, framed, linksOpened.get(), linksRefused.get(), queued, dropped,
+                connectTimeouts.get(), stalls.get(), idleCloses.get()));
+        for (Link link : activeConnections.values()) {
+            sb.append(String.format("\n  %s: in %d pkts/%.1f KB, out %d pkts/%.1f KB, queue %d, dropped %d, "
+                            + "max write %d ms, up %ds",
+                    link.address, link.packetsIn, link.bytesIn / 1024.0, link.packetsOut, link.bytesOut / 1024.0,
+                    link.depth(), link.dropped, link.maxWriteMs,
+                    (System.currentTimeMillis() - link.openedAt) / 1000));
         }
+        return sb.toString();
     }
 }
@@ -0,0 +1,182 @@
+package com.example.disastercomm.network;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Content-addressed chunk store in app storage, keyed by SHA-256 of the
+ * chunk bytes. Identical chunks are stored once no matter which object or
+ * neighbor they came from. Least recently used chunks are evicted once the
+ * quota is exceeded; chunks of in-progress downloads can be pinned.
+ */
+public class ChunkStore {
+    private static final String TAG = "ChunkStore";
+
+    private final File dir;
+    private final long quotaBytes;
+    private long usedBytes = 0;
+    // hash -> size, in access order (eldest = least recently used)
+    private final LinkedHashMap<String, Long> lru = new LinkedHashMap<>(64, 0.75f, true);
+    private final Set<String> pinned = ConcurrentHashMap.newKeySet();
+    private int evictions = 0;
+
+    public ChunkStore(File dir, long quotaBytes) {
+        this.dir = dir;
+        this.quotaBytes = quotaBytes;
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            Log.e(TAG, "Cannot create " + dir);
+        }
+        loadIndex();
+    }
+
+    // Rebuild LRU order from file modification times (touched on every read)
+    private void loadIndex() {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        synchronized (this) {
+            for (File file : files) {
+                if (file.getName().endsWith(".tmp")) {
+                    file.delete();
+                    continue;
+                }
+                lru.put(file.getName(), file.length());
+                usedBytes += file.length();
+            }
+            evict();
+        }
+        Log.d(TAG, "Loaded " + lru.size() + " chunks (" + usedBytes / 1024 + " KB)");
+    }
+
+    public synchronized boolean has(String hash) {
+        return lru.containsKey(hash); // containsKey does not change access order
+    }
+
+    /**
+     * Read a chunk and mark it recently used. Returns null if not stored.
+     */
+    public byte[] get(String hash) {
+        synchronized (this) {
+            if (lru.get(hash) == null) {
+                return null;
+            }
+        }
+        File file = new File(dir, hash);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            byte[] data = new byte[(int) raf.length()];
+            raf.readFully(data);
+            file.setLastModified(System.currentTimeMillis());
+            return data;
+        } catch (IOException e) {
+            Log.w(TAG, "Chunk " + hash.substring(0, 8) + " unreadable, dropping");
+            remove(hash);
+            return null;
+        }
+    }
+
+    /**
+     * Store a chunk after checking it hashes to the given key.
+     */
+    public boolean put(String hash, byte[] data) {
+        if (!hash.equals(hashOf(data))) {
+            return false;
+        }
+        synchronized (this) {
+            if (lru.get(hash) != null) {
+                return true; // Deduplicated
+            }
+        }
+        File tmp = new File(dir, hash + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            out.write(data);
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot write chunk " + hash.substring(0, 8), e);
+            return false;
+        }
+        if (!tmp.renameTo(new File(dir, hash))) {
+            tmp.delete();
+            return false;
+        }
+        synchronized (this) {
+            if (lru.put(hash, (long) data.length) == null) {
+                usedBytes += data.length;
+            }
+            evict();
+        }
+        return true;
+    }
+
+    private synchronized void remove(String hash) {
+        Long size = lru.remove(hash);
+        if (size != null) {
+            usedBytes -= size;
+        }
+        new File(dir, hash).delete();
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> it = lru.entrySet().iterator();
+        while (usedBytes > quotaBytes && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            if (pinned.contains(eldest.getKey())) {
+                continue;
+            }
+            it.remove();
+            usedBytes -= eldest.getValue();
+            new File(dir, eldest.getKey()).delete();
+            evictions++;
+        }
+    }
+
+    /**
+     * Protect chunks of an in-progress download from eviction
+     */
+    public void pin(Collection<String> hashes) {
+        pinned.addAll(hashes);
+    }
+
+    public void unpin(Collection<String> hashes) {
+        pinned.removeAll(hashes);
+    }
+
+    public synchronized String getStatsSummary() {
+        return String.format("Chunk store: %d chunks, %d/%d KB, %d evicted", lru.size(), usedBytes / 1024,
+                quotaBytes / 1024, evictions);
+    }
+
+    public static String hashOf(byte[] data) {
+        return toHex(sha256().digest(data));
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+}
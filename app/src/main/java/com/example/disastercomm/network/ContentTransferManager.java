@@ -0,0 +1,1066 @@
+package com.example.disastercomm.network;
+
+import android.content.Context;
+import android.util.Base64;
+import android.util.Log;
+
+import com.example.disastercomm.models.Message;
+import com.example.disastercomm.utils.DeviceUtil;
+import com.google.gson.Gson;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Chunked transfer of large content (photos, voice notes, files).
+ * The sender offers a manifest of SHA-256 chunk hashes. Chunks live in a
+ * content-addressed ChunkStore, so every node that holds part of an object
+ * can serve it: a downloader asks its neighbors which chunks they have
+ * (CONTENT_HAVE) and a SwarmDownload pulls different chunks from several of
+ * them in parallel. Verified chunks survive restarts, so interrupted
+ * transfers resume from the last verified chunk.
+ * Chunks travel as one framed Nearby STREAM payload per request, as binary
+ * pieces up to the link MTU on LAN and Wi-Fi Aware data paths, or as small
+ * CONTENT_CHUNK packets on Bluetooth. Every path is paced by a token bucket
+ * so bulk data never starves the message plane.
+ */
+public class ContentTransferManager {
+    private static final String TAG = "ContentTransfer";
+    public static final int CHUNK_SIZE = 64 * 1024;
+    private static final long MAX_CONTENT_BYTES = 50L * 1024 * 1024; // Refuse larger offers
+    private static final long STORE_QUOTA_BYTES = 256L * 1024 * 1024;
+    private static final int FRAME_MAGIC = 0x44434B31; // "DCK1"
+    private static final int BT_PIECE_BYTES = 3 * 1024; // Base64 piece stays under the BT read buffer
+    private static final int PIECE_MAGIC = 0x44435031; // "DCP1": binary piece on a frame link
+    private static final int PIECE_OVERHEAD_BYTES = 256; // Magic, content id, index, offset, length
+    private static final long STREAM_BYTES_PER_SEC = 512 * 1024;
+    private static final long FRAME_BYTES_PER_SEC = 2 * 1024 * 1024; // Wi-Fi links
+    private static final int FRAME_QUEUE_RETRIES = 50;
+    private static final long FRAME_QUEUE_RETRY_MS = 100;
+    private static final long BT_BYTES_PER_SEC = 32 * 1024;
+    private static final long SCHEDULE_TICK_MS = 5000;
+    private static final int HAVE_ANNOUNCE_EVERY = 8; // Chunks between HAVE updates to interested peers
+    private static final String HAVE_QUERY = "Q";
+    private static final String HAVE_ANSWER = "A";
+    private static final Pattern HEX_HASH = Pattern.compile("[0-9a-f]{64}");
+
+    public interface TransferCallback {
+        // One-hop control packet (offer/request/have/BT chunk)
+        boolean sendControl(String endpointId, Message message);
+
+        // Nearby STREAM payload; returns the payload id, or -1 if the link has no stream support
+        long sendStream(String endpointId, InputStream stream);
+
+        // Link can carry bulk data (excludes low-MTU links such as the BLE hub)
+        boolean canCarryBulk(String endpointId);
+
+        // All links that can carry bulk data right now
+        List<String> getBulkEndpoints();
+
+        // Every physical link bonded to the same neighbor as this one (including itself)
+        List<String> getBondedLinks(String endpointId);
+
+        // Link delivers STREAM payloads (Nearby) rather than packet-framed chunks
+        boolean supportsStream(String endpointId);
+
+        // Largest binary packet the link delivers whole (LAN, Wi-Fi Aware data path); 0 if it only takes JSON
+        int getFrameBytes(String endpointId);
+
+        // One binary piece on a link with getFrameBytes() > 0, queued behind the message plane
+        boolean sendFrame(String endpointId, byte[] frame);
+
+        String getEndpointForDevice(String deviceId);
+    }
+
+    public interface TransferListener {
+        void onProgress(String contentId, String name, long bytesDone, long totalBytes, boolean outgoing);
+
+        void onTransferComplete(String contentId, File file, String senderId);
+    }
+
+    /**
+     * Wire manifest (CONTENT_OFFER content)
+     */
+    public static class Manifest {
+        public String contentId; // SHA-256 over the chunk hashes
+        public String name;
+        public String mimeType;
+        public String senderId;
+        public boolean broadcast; // Offer spreads to every neighbor that fetches it
+        public long size;
+        public int chunkSize;
+        public List<String> chunkHashes;
+
+        int chunkCount() {
+            return chunkHashes.size();
+        }
+
+        int chunkLength(int index) {
+            return (int) Math.min(chunkSize, size - (long) index * chunkSize);
+        }
+    }
+
+    // Where a serving node reads chunk bytes from
+    private interface ChunkSource {
+        byte[] read(int index) throws IOException;
+    }
+
+    // Nearby payload id -> transfer it belongs to (for onPayloadTransferUpdate)
+    private static class StreamProgress {
+        final String contentId;
+        final boolean outgoing;
+        final long baseBytes; // Bytes already held by the receiver when the stream started
+
+        StreamProgress(String contentId, boolean outgoing, long baseBytes) {
+            this.contentId = contentId;
+            this.outgoing = outgoing;
+            this.baseBytes = baseBytes;
+        }
+    }
+
+    // Reassembly of a chunk arriving as BT or binary pieces
+    private static class PartialChunk {
+        final byte[] data;
+        int received;
+
+        PartialChunk(int length) {
+            this.data = new byte[length];
+        }
+    }
+
+    private final String myDeviceId;
+    private final TransferCallback callback;
+    private final Gson gson = new Gson();
+    private final ChunkStore chunkStore;
+    private final File manifestDir; // Every object we can (partly) serve
+    private final File downloadDir; // Markers for objects still being fetched
+    private final File receivedDir;
+    private final Map<String, Manifest> manifests = new ConcurrentHashMap<>();
+    private final Map<String, File> originals = new ConcurrentHashMap<>(); // Objects we authored
+    private final Map<String, SwarmDownload> downloads = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> interestedPeers = new ConcurrentHashMap<>();
+    private final Map<Long, StreamProgress> streams = new ConcurrentHashMap<>();
+    private final Map<String, PartialChunk> btPartials = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService worker = Executors.newScheduledThreadPool(2);
+    private final ExecutorService bulkExecutor = Executors.newCachedThreadPool(); // Blocking stream I/O
+    private final ByteRateLimiter streamLimiter = new ByteRateLimiter(STREAM_BYTES_PER_SEC);
+    private final ByteRateLimiter btLimiter = new ByteRateLimiter(BT_BYTES_PER_SEC);
+    private final ByteRateLimiter frameLimiter = new ByteRateLimiter(FRAME_BYTES_PER_SEC);
+    private TransferListener listener;
+
+    public ContentTransferManager(Context context, TransferCallback callback) {
+        this.myDeviceId = DeviceUtil.getDeviceId(context);
+        this.callback = callback;
+        File contentRoot = new File(context.getFilesDir(), "content");
+        this.chunkStore = new ChunkStore(new File(contentRoot, "chunks"), STORE_QUOTA_BYTES);
+        this.manifestDir = new File(contentRoot, "manifests");
+        this.downloadDir = new File(contentRoot, "downloads");
+        this.receivedDir = new File(context.getFilesDir(), "received");
+        manifestDir.mkdirs();
+        downloadDir.mkdirs();
+        worker.execute(this::loadState);
+        worker.scheduleWithFixedDelay(this::scheduleAll, SCHEDULE_TICK_MS, SCHEDULE_TICK_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public void setTransferListener(TransferListener listener) {
+        this.listener = listener;
+    }
+
+    public ChunkStore getChunkStore() {
+        return chunkStore;
+    }
+
+    // ==================== SENDING ====================
+
+    /**
+     * Offer a file to a direct neighbor, or to every neighbor with "ALL"
+     * (the offer then spreads and the object is swarmed across the mesh).
+     */
+    public void sendFile(String deviceId, File file, String mimeType) {
+        worker.execute(() -> {
+            boolean broadcast = "ALL".equals(deviceId);
+            List<String> targets = new ArrayList<>();
+            if (broadcast) {
+                targets.addAll(callback.getBulkEndpoints());
+            } else {
+                String endpointId = callback.getEndpointForDevice(deviceId);
+                if (endpointId != null && callback.canCarryBulk(endpointId)) {
+                    targets.add(endpointId);
+                }
+            }
+            if (targets.isEmpty()) {
+                Log.w(TAG, "⚠️ No bulk-capable link to " + deviceId + ", transfer not started");
+                return;
+            }
+            try {
+                Manifest manifest = buildManifest(file, mimeType);
+                manifest.broadcast = broadcast;
+                originals.put(manifest.contentId, file);
+                saveManifest(manifestDir, manifest);
+                manifests.put(manifest.contentId, manifest);
+                for (String endpointId : targets) {
+                    callback.sendControl(endpointId,
+                            controlMessage(Message.Type.CONTENT_OFFER, gson.toJson(manifest)));
+                }
+                Log.d(TAG, "📦 Offered " + file.getName() + " (" + manifest.size + " bytes, "
+                        + manifest.chunkCount() + " chunks) to " + targets.size() + " links");
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to prepare " + file, e);
+            }
+        });
+    }
+
+    private Manifest buildManifest(File file, String mimeType) throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.name = file.getName();
+        manifest.mimeType = mimeType;
+        manifest.senderId = myDeviceId;
+        manifest.size = file.length();
+        manifest.chunkSize = CHUNK_SIZE;
+        manifest.chunkHashes = new ArrayList<>();
+
+        MessageDigest root = ChunkStore.sha256();
+        byte[] buffer = new byte[CHUNK_SIZE];
+        try (InputStream in = new FileInputStream(file)) {
+            int read;
+            while ((read = readFully(in, buffer)) > 0) {
+                MessageDigest chunkDigest = ChunkStore.sha256();
+                chunkDigest.update(buffer, 0, read);
+                byte[] hash = chunkDigest.digest();
+                root.update(hash);
+                manifest.chunkHashes.add(ChunkStore.toHex(hash));
+            }
+        }
+        manifest.contentId = ChunkStore.toHex(root.digest());
+        return manifest;
+    }
+
+    /**
+     * Chunks we can serve for an object: everything for our own files,
+     * otherwise whatever the chunk store holds.
+     */
+    private BitSet availableChunks(Manifest manifest) {
+        BitSet bits = new BitSet(manifest.chunkCount());
+        if (originals.containsKey(manifest.contentId)) {
+            bits.set(0, manifest.chunkCount());
+            return bits;
+        }
+        for (int i = 0; i < manifest.chunkCount(); i++) {
+            if (chunkStore.has(manifest.chunkHashes.get(i))) {
+                bits.set(i);
+            }
+        }
+        return bits;
+    }
+
+    private ChunkSource sourceFor(Manifest manifest) {
+        File original = originals.get(manifest.contentId);
+        return index -> {
+            byte[] data = chunkStore.get(manifest.chunkHashes.get(index));
+            if (data == null && original != null) {
+                data = new byte[manifest.chunkLength(index)];
+                try (RandomAccessFile raf = new RandomAccessFile(original, "r")) {
+                    raf.seek((long) index * manifest.chunkSize);
+                    raf.readFully(data);
+                }
+            }
+            if (data == null) {
+                throw new IOException("Chunk " + index + " no longer available");
+            }
+            return data;
+        };
+    }
+
+    private void handleRequest(String endpointId, Message request) {
+        String[] parts = request.content.split(":", 2);
+        Manifest manifest = manifests.get(parts[0]);
+        if (manifest == null) {
+            Log.w(TAG, "Request for unknown content " + parts[0]);
+            return;
+        }
+        BitSet available = availableChunks(manifest);
+        List<Integer> indices = new ArrayList<>();
+        long requestedBytes = 0;
+        if (parts.length == 2 && !parts[1].isEmpty()) {
+            for (String index : parts[1].split(",")) {
+                try {
+                    int i = Integer.parseInt(index);
+                    if (i >= 0 && i < manifest.chunkCount() && available.get(i)) {
+                        indices.add(i);
+                        requestedBytes += manifest.chunkLength(i);
+                    }
+                } catch (NumberFormatException e) {
+                    // Ignore malformed index
+                }
+            }
+        }
+        if (indices.isEmpty()) {
+            return;
+        }
+
+        ChunkSource source = sourceFor(manifest);
+        Map<String, List<Integer>> stripes = stripeAcrossLinks(endpointId, manifest, indices);
+        for (Map.Entry<String, List<Integer>> stripe : stripes.entrySet()) {
+            serveChunks(stripe.getKey(), manifest, source, stripe.getValue(), manifest.size - requestedBytes);
+        }
+    }
+
+    /**
+     * Split a request over every link bonded to the requesting neighbor,
+     * proportionally to each link's pacing rate, so all of them carry data.
+     */
+    private Map<String, List<Integer>> stripeAcrossLinks(String endpointId, Manifest manifest,
+            List<Integer> indices) {
+        Map<String, List<Integer>> stripes = new java.util.LinkedHashMap<>();
+        List<String> links = new ArrayList<>();
+        for (String link : callback.getBondedLinks(endpointId)) {
+            if (callback.canCarryBulk(link)) {
+                links.add(link);
+            }
+        }
+        if (links.size() < 2 || indices.size() < 2) {
+            stripes.put(endpointId, indices);
+            return stripes;
+        }
+        long[] assigned = new long[links.size()];
+        for (int index : indices) {
+            int target = 0;
+            double bestLoad = Double.MAX_VALUE;
+            for (int i = 0; i < links.size(); i++) {
+                double rate = rateOf(links.get(i));
+                double load = (assigned[i] + manifest.chunkLength(index)) / rate;
+                if (load < bestLoad) {
+                    bestLoad = load;
+                    target = i;
+                }
+            }
+            assigned[target] += manifest.chunkLength(index);
+            List<Integer> stripe = stripes.get(links.get(target));
+            if (stripe == null) {
+                stripe = new ArrayList<>();
+                stripes.put(links.get(target), stripe);
+            }
+            stripe.add(index);
+        }
+        if (stripes.size() > 1) {
+            Log.d(TAG, "🔀 Striping " + indices.size() + " chunks of " + manifest.name + " over " + stripes.size()
+                    + " links");
+        }
+        return stripes;
+    }
+
+    private double rateOf(String endpointId) {
+        if (callback.supportsStream(endpointId)) {
+            return STREAM_BYTES_PER_SEC;
+        }
+        return callback.getFrameBytes(endpointId) > 0 ? FRAME_BYTES_PER_SEC : BT_BYTES_PER_SEC;
+    }
+
+    private void serveChunks(String endpointId, Manifest manifest, ChunkSource source, List<Integer> indices,
+            long baseBytes) {
+        if (callback.supportsStream(endpointId)) {
+            ChunkFrameStream stream = new ChunkFrameStream(manifest, source, indices, streamLimiter);
+            long payloadId = callback.sendStream(endpointId, stream);
+            if (payloadId != -1) {
+                streams.put(payloadId, new StreamProgress(manifest.contentId, true, baseBytes));
+                Log.d(TAG, "📤 Streaming " + indices.size() + " chunks of " + manifest.name + " to " + endpointId);
+                return;
+            }
+        }
+
+        // Frame links take binary pieces as large as their MTU
+        int frameBytes = callback.getFrameBytes(endpointId);
+        if (frameBytes > PIECE_OVERHEAD_BYTES) {
+            bulkExecutor.execute(() -> sendBinaryPieces(endpointId, manifest, source, indices,
+                    frameBytes - PIECE_OVERHEAD_BYTES));
+            return;
+        }
+
+        // No stream support on this link: framed chunks over the packet path
+        bulkExecutor.execute(() -> sendFramedChunks(endpointId, manifest, source, indices));
+    }
+
+    private void sendBinaryPieces(String endpointId, Manifest manifest, ChunkSource source, List<Integer> indices,
+            int pieceBytes) {
+        try {
+            for (int index : indices) {
+                byte[] chunk = source.read(index);
+                for (int offset = 0; offset < chunk.length; offset += pieceBytes) {
+                    int length = Math.min(pieceBytes, chunk.length - offset);
+                    frameLimiter.acquire(length);
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream(length + PIECE_OVERHEAD_BYTES);
+                    DataOutputStream out = new DataOutputStream(bytes);
+                    out.writeInt(PIECE_MAGIC);
+                    out.writeUTF(manifest.contentId);
+                    out.writeInt(index);
+                    out.writeInt(offset);
+                    out.writeInt(length);
+                    out.write(chunk, offset, length);
+                    if (!sendFrameWhenQueued(endpointId, bytes.toByteArray())) {
+                        Log.w(TAG, "⚠️ Link " + endpointId + " went down mid-transfer of " + manifest.name);
+                        return; // Receiver reschedules elsewhere or resumes on next contact
+                    }
+                }
+            }
+        } catch (IOException | InterruptedException e) {
+            Log.e(TAG, "Binary transfer of " + manifest.name + " aborted", e);
+        }
+    }
+
+    // A full link queue means the link is slower than the limiter, not gone: wait for it to drain
+    private boolean sendFrameWhenQueued(String endpointId, byte[] frame) throws InterruptedException {
+        for (int attempt = 0; attempt < FRAME_QUEUE_RETRIES; attempt++) {
+            if (callback.sendFrame(endpointId, frame)) {
+                return true;
+            }
+            if (!callback.canCarryBulk(endpointId)) {
+                return false;
+            }
+            Thread.sleep(FRAME_QUEUE_RETRY_MS);
+        }
+        return false;
+    }
+
+    private void sendFramedChunks(String endpointId, Manifest manifest, ChunkSource source, List<Integer> indices) {
+        try {
+            for (int index : indices) {
+                byte[] chunk = source.read(index);
+                for (int offset = 0; offset < chunk.length; offset += BT_PIECE_BYTES) {
+                    int length = Math.min(BT_PIECE_BYTES, chunk.length - offset);
+                    btLimiter.acquire(length);
+                    String piece = manifest.contentId + ":" + index + ":" + offset + ":"
+                            + Base64.encodeToString(chunk, offset, length, Base64.NO_WRAP);
+                    if (!callback.sendControl(endpointId, controlMessage(Message.Type.CONTENT_CHUNK, piece))) {
+                        Log.w(TAG, "⚠️ Link " + endpointId + " went down mid-transfer of " + manifest.name);
+                        return; // Receiver reschedules elsewhere or resumes on next contact
+                    }
+                }
+            }
+        } catch (IOException | InterruptedException e) {
+            Log.e(TAG, "Framed transfer of " + manifest.name + " aborted", e);
+        }
+    }
+
+    // ==================== RECEIVING ====================
+
+    public void handleControl(String endpointId, Message message) {
+        if (message.content == null) {
+            return;
+        }
+        switch (message.type) {
+            case CONTENT_OFFER:
+                worker.execute(() -> handleOffer(endpointId, message));
+                break;
+            case CONTENT_REQUEST:
+                handleRequest(endpointId, message);
+                break;
+            case CONTENT_HAVE:
+                worker.execute(() -> handleHave(endpointId, message));
+                break;
+            case CONTENT_CHUNK:
+                handleChunkPiece(endpointId, message);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void handleOffer(String endpointId, Message offer) {
+        Manifest manifest;
+        try {
+            manifest = gson.fromJson(offer.content, Manifest.class);
+        } catch (Exception e) {
+            Log.e(TAG, "Malformed offer from " + endpointId, e);
+            return;
+        }
+        if (!isValid(manifest)) {
+            Log.w(TAG, "❌ Rejected offer from " + endpointId);
+            return;
+        }
+        if (manifests.containsKey(manifest.contentId) && !downloads.containsKey(manifest.contentId)) {
+            return; // Already have it (or authored it)
+        }
+
+        SwarmDownload download = downloads.get(manifest.contentId);
+        if (download == null) {
+            try {
+                saveManifest(manifestDir, manifest);
+                saveManifest(downloadDir, manifest);
+            } catch (IOException e) {
+                Log.e(TAG, "Cannot persist manifest", e);
+                return;
+            }
+            manifests.put(manifest.contentId, manifest);
+            download = startDownload(manifest);
+            Log.d(TAG, "📥 Offer " + manifest.name + " (" + manifest.size + " bytes) from " + endpointId);
+
+            // Spread broadcast offers: neighbors fetch from us and anyone else who has chunks
+            if (manifest.broadcast) {
+                for (String other : callback.getBulkEndpoints()) {
+                    if (!other.equals(endpointId)) {
+                        callback.sendControl(other, controlMessage(Message.Type.CONTENT_OFFER, offer.content));
+                    }
+                }
+            }
+        }
+
+        // Ask every neighbor (including the offerer) which chunks it can serve
+        for (String peer : callback.getBulkEndpoints()) {
+            sendHave(peer, manifest, download.snapshot(), HAVE_QUERY);
+        }
+    }
+
+    private SwarmDownload startDownload(Manifest manifest) {
+        SwarmDownload download = new SwarmDownload(manifest);
+        for (int i = 0; i < manifest.chunkCount(); i++) {
+            if (chunkStore.has(manifest.chunkHashes.get(i))) {
+                download.markVerified(i); // Deduplicated against chunks we already hold
+            }
+        }
+        chunkStore.pin(manifest.chunkHashes);
+        downloads.put(manifest.contentId, download);
+        return download;
+    }
+
+    /**
+     * CONTENT_HAVE: "contentId:Q|A:base64(bitmap)". A query is answered with
+     * our own bitmap; both kinds update the swarm view of the sender.
+     */
+    private void handleHave(String endpointId, Message message) {
+        String[] parts = message.content.split(":", 3);
+        if (parts.length != 3) {
+            return;
+        }
+        Manifest manifest = manifests.get(parts[0]);
+        if (manifest == null) {
+            return; // Not an object we know
+        }
+        BitSet bits;
+        try {
+            bits = BitSet.valueOf(Base64.decode(parts[2], Base64.NO_WRAP));
+        } catch (IllegalArgumentException e) {
+            return;
+        }
+
+        if (HAVE_QUERY.equals(parts[1])) {
+            Set<String> peers = interestedPeers.get(manifest.contentId);
+            if (peers == null) {
+                peers = ConcurrentHashMap.newKeySet();
+                interestedPeers.put(manifest.contentId, peers);
+            }
+            peers.add(endpointId);
+            sendHave(endpointId, manifest, availableChunks(manifest), HAVE_ANSWER);
+        }
+
+        SwarmDownload download = downloads.get(manifest.contentId);
+        if (download != null && !bits.isEmpty()) {
+            download.onPeerHave(endpointId, bits);
+            pump(download);
+        }
+    }
+
+    private void sendHave(String endpointId, Manifest manifest, BitSet bits, String kind) {
+        String content = manifest.contentId + ":" + kind + ":"
+                + Base64.encodeToString(bits.toByteArray(), Base64.NO_WRAP);
+        callback.sendControl(endpointId, controlMessage(Message.Type.CONTENT_HAVE, content));
+    }
+
+    /**
+     * Hand out the next batch of chunk requests for a download
+     */
+    private void pump(SwarmDownload download) {
+        if (download.isComplete()) {
+            assemble(download);
+            return;
+        }
+        Map<String, List<Integer>> requests = download.schedule(System.currentTimeMillis());
+        for (Map.Entry<String, List<Integer>> entry : requests.entrySet()) {
+            StringBuilder indices = new StringBuilder();
+            for (Integer index : entry.getValue()) {
+                if (indices.length() > 0)
+                    indices.append(',');
+                indices.append(index);
+            }
+            callback.sendControl(entry.getKey(), controlMessage(Message.Type.CONTENT_REQUEST,
+                    download.manifest.contentId + ":" + indices));
+        }
+        if (!requests.isEmpty()) {
+            Log.d(TAG, "🐝 " + download.manifest.name + ": requested from " + requests.size() + "/"
+                    + download.peerCount() + " peers (" + download.verifiedChunks() + "/"
+                    + download.manifest.chunkCount() + " verified)");
+        }
+    }
+
+    private void scheduleAll() {
+        for (SwarmDownload download : downloads.values()) {
+            try {
+                pump(download);
+            } catch (Exception e) {
+                Log.e(TAG, "Scheduling failed for " + download.manifest.name, e);
+            }
+        }
+    }
+
+    /**
+     * A Nearby STREAM payload arrived: read chunk frames until the sender closes it.
+     */
+    public void onStreamReceived(String endpointId, long payloadId, InputStream stream) {
+        bulkExecutor.execute(() -> {
+            SwarmDownload last = null;
+            boolean endedEarly = false;
+            try (DataInputStream in = new DataInputStream(stream)) {
+                while (true) {
+                    int magic;
+                    try {
+                        magic = in.readInt();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    if (magic != FRAME_MAGIC) {
+                        throw new IOException("Bad frame magic");
+                    }
+                    String contentId = in.readUTF();
+                    int index = in.readInt();
+                    int length = in.readInt();
+                    SwarmDownload target = downloads.get(contentId);
+                    if (target == null || index < 0 || index >= target.manifest.chunkCount()
+                            || length != target.manifest.chunkLength(index)) {
+                        throw new IOException("Unexpected frame for " + contentId);
+                    }
+                    if (last == null) {
+                        streams.put(payloadId, new StreamProgress(contentId, false, target.verifiedBytes()));
+                    }
+                    last = target;
+                    byte[] data = new byte[length];
+                    in.readFully(data);
+                    storeChunk(target, index, data);
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Stream from " + endpointId + " ended early: " + e.getMessage());
+                endedEarly = true;
+            }
+            streams.remove(payloadId);
+            if (last != null) {
+                if (endedEarly) {
+                    last.releaseInFlight(endpointId); // Undelivered chunks can go to other peers
+                }
+                pump(last); // Chunks striped onto a sibling link keep their in-flight slot
+            }
+        });
+    }
+
+    private void handleChunkPiece(String endpointId, Message message) {
+        String[] parts = message.content.split(":", 4);
+        if (parts.length != 4) {
+            return;
+        }
+        try {
+            int index = Integer.parseInt(parts[1]);
+            int offset = Integer.parseInt(parts[2]);
+            byte[] piece = Base64.decode(parts[3], Base64.NO_WRAP);
+            addPiece(endpointId, parts[0], index, offset, piece, 0, piece.length);
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Malformed chunk piece from " + endpointId);
+        }
+    }
+
+    /**
+     * True for a binary piece (see sendBinaryPieces) rather than a mesh packet
+     */
+    public static boolean isChunkPiece(byte[] data, int length) {
+        return length > 4 && data[0] == 'D' && data[1] == 'C' && data[2] == 'P' && data[3] == '1';
+    }
+
+    /**
+     * Binary piece from a frame link. Copies what it keeps, the caller still owns data.
+     */
+    public void onChunkPiece(String endpointId, byte[] data, int length) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, 0, length));
+            if (in.readInt() != PIECE_MAGIC) {
+                return;
+            }
+            String contentId = in.readUTF();
+            int index = in.readInt();
+            int offset = in.readInt();
+            int pieceLength = in.readInt();
+            int start = length - in.available();
+            if (pieceLength != length - start) {
+                throw new IOException("Piece length " + pieceLength + " does not match frame");
+            }
+            addPiece(endpointId, contentId, index, offset, data, start, pieceLength);
+        } catch (IOException e) {
+            Log.w(TAG, "Malformed binary piece from " + endpointId + ": " + e.getMessage());
+        }
+    }
+
+    private void addPiece(String endpointId, String contentId, int index, int offset, byte[] piece, int from,
+            int pieceLength) {
+        SwarmDownload download = downloads.get(contentId);
+        if (download == null || index < 0 || index >= download.manifest.chunkCount()) {
+            return;
+        }
+        int length = download.manifest.chunkLength(index);
+        if (offset < 0 || pieceLength <= 0 || offset + pieceLength > length) {
+            return;
+        }
+        String key = endpointId + "#" + contentId + "#" + index;
+        PartialChunk partial = btPartials.get(key);
+        if (partial == null) {
+            partial = new PartialChunk(length);
+            btPartials.put(key, partial);
+        }
+        System.arraycopy(piece, from, partial.data, offset, pieceLength);
+        partial.received += pieceLength;
+        if (partial.received >= length) {
+            btPartials.remove(key);
+            PartialChunk complete = partial;
+            worker.execute(() -> {
+                storeChunk(download, index, complete.data);
+                pump(download);
+            });
+        }
+    }
+
+    private void storeChunk(SwarmDownload download, int index, byte[] data) {
+        if (download.has(index)) {
+            return;
+        }
+        Manifest manifest = download.manifest;
+        if (!chunkStore.put(manifest.chunkHashes.get(index), data)) {
+            Log.w(TAG, "❌ Chunk " + index + " of " + manifest.name + " failed verification");
+            return; // Will be requested again
+        }
+        if (!download.markVerified(index)) {
+            return;
+        }
+        notifyProgress(manifest.contentId, manifest.name, download.verifiedBytes(), manifest.size, false);
+
+        // Let peers fetching the same object learn they can pull from us now
+        if (download.verifiedChunks() % HAVE_ANNOUNCE_EVERY == 0 || download.isComplete()) {
+            announceHave(manifest);
+        }
+    }
+
+    private void announceHave(Manifest manifest) {
+        Set<String> peers = interestedPeers.get(manifest.contentId);
+        if (peers == null) {
+            return;
+        }
+        BitSet bits = availableChunks(manifest);
+        for (String peer : peers) {
+            sendHave(peer, manifest, bits, HAVE_ANSWER);
+        }
+    }
+
+    private void assemble(SwarmDownload download) {
+        Manifest manifest = download.manifest;
+        if (!downloads.containsKey(manifest.contentId)) {
+            return; // Already assembled
+        }
+        if (!receivedDir.isDirectory() && !receivedDir.mkdirs()) {
+            Log.e(TAG, "Cannot create " + receivedDir);
+            return;
+        }
+        String safeName = manifest.name == null ? manifest.contentId
+                : manifest.name.replaceAll("[^A-Za-z0-9._-]", "_");
+        File target = new File(receivedDir, manifest.contentId.substring(0, 8) + "_" + safeName);
+        try (OutputStream out = new FileOutputStream(target)) {
+            for (int i = 0; i < manifest.chunkCount(); i++) {
+                byte[] chunk = chunkStore.get(manifest.chunkHashes.get(i));
+                if (chunk == null) {
+                    download.markMissing(i); // Lost from the store, fetch again
+                    throw new IOException("Chunk " + i + " missing");
+                }
+                out.write(chunk);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Assembly of " + manifest.name + " failed: " + e.getMessage());
+            target.delete();
+            return;
+        }
+        if (downloads.remove(manifest.contentId) == null) {
+            return;
+        }
+        chunkStore.unpin(manifest.chunkHashes); // Chunks stay cached for seeding until evicted
+        new File(downloadDir, manifest.contentId + ".json").delete();
+        Log.d(TAG, "✅ Received " + manifest.name + " -> " + target);
+        if (listener != null) {
+            listener.onTransferComplete(manifest.contentId, target, manifest.senderId);
+        }
+    }
+
+    // ==================== LINK EVENTS ====================
+
+    /**
+     * Neighbor identified on a link: ask it about everything we are still fetching
+     */
+    public void onPeerIdentified(String endpointId, String deviceId) {
+        if (!callback.canCarryBulk(endpointId)) {
+            return;
+        }
+        worker.execute(() -> {
+            for (SwarmDownload download : downloads.values()) {
+                Log.d(TAG, "🔁 Resuming " + download.manifest.name + " (" + download.verifiedChunks() + "/"
+                        + download.manifest.chunkCount() + " chunks verified)");
+                sendHave(endpointId, download.manifest, download.snapshot(), HAVE_QUERY);
+            }
+        });
+    }
+
+    public void onLinkLost(String endpointId) {
+        btPartials.keySet().removeIf(key -> key.startsWith(endpointId + "#"));
+        for (SwarmDownload download : downloads.values()) {
+            download.onPeerLost(endpointId);
+        }
+        for (Set<String> peers : interestedPeers.values()) {
+            peers.remove(endpointId);
+        }
+    }
+
+    /**
+     * Progress for Nearby STREAM payloads (from PayloadCallback.onPayloadTransferUpdate)
+     */
+    public void onTransferUpdate(String endpointId, long payloadId, boolean finished, long bytesTransferred) {
+        StreamProgress progress = streams.get(payloadId);
+        if (progress == null) {
+            return;
+        }
+        Manifest manifest = manifests.get(progress.contentId);
+        if (manifest != null) {
+            long done = Math.min(manifest.size, progress.baseBytes + bytesTransferred);
+            notifyProgress(manifest.contentId, manifest.name, done, manifest.size, progress.outgoing);
+        }
+        if (finished && progress.outgoing) {
+            streams.remove(payloadId);
+        }
+    }
+
+    private void notifyProgress(String contentId, String name, long done, long total, boolean isOutgoing) {
+        if (listener != null) {
+            listener.onProgress(contentId, name, done, total, isOutgoing);
+        }
+    }
+
+    private void loadState() {
+        for (Manifest manifest : loadManifests(manifestDir)) {
+            manifests.put(manifest.contentId, manifest);
+        }
+        for (Manifest manifest : loadManifests(downloadDir)) {
+            manifests.put(manifest.contentId, manifest);
+            SwarmDownload download = startDownload(manifest);
+            Log.d(TAG, "Loaded partial transfer " + manifest.name + " (" + download.verifiedChunks() + "/"
+                    + manifest.chunkCount() + ")");
+        }
+    }
+
+    private List<Manifest> loadManifests(File dir) {
+        List<Manifest> result = new ArrayList<>();
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return result;
+        }
+        for (File file : files) {
+            try {
+                byte[] raw = readFile(file);
+                Manifest manifest = gson.fromJson(new String(raw, StandardCharsets.UTF_8), Manifest.class);
+                if (isValid(manifest)) {
+                    result.add(manifest);
+                    continue;
+                }
+            } catch (Exception e) {
+                // Fall through to discard
+            }
+            Log.w(TAG, "Discarding unreadable manifest " + file.getName());
+            file.delete();
+        }
+        return result;
+    }
+
+    private void saveManifest(File dir, Manifest manifest) throws IOException {
+        try (OutputStream out = new FileOutputStream(new File(dir, manifest.contentId + ".json"))) {
+            out.write(gson.toJson(manifest).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Sane sizes, and a content id that really is the root over the chunk
+     * hashes (see buildManifest), so an offer cannot squat on another's id
+     */
+    private static boolean isValid(Manifest manifest) {
+        if (manifest == null || manifest.contentId == null || manifest.chunkHashes == null
+                || manifest.size <= 0 || manifest.size > MAX_CONTENT_BYTES
+                || manifest.chunkSize <= 0 || manifest.chunkSize > CHUNK_SIZE
+                || manifest.chunkCount() != (int) ((manifest.size + manifest.chunkSize - 1) / manifest.chunkSize)) {
+            return false;
+        }
+        MessageDigest root = ChunkStore.sha256();
+        for (String hash : manifest.chunkHashes) {
+            if (hash == null || !HEX_HASH.matcher(hash).matches()) {
+                return false;
+            }
+            byte[] raw = new byte[32];
+            for (int i = 0; i < raw.length; i++) {
+                raw[i] = (byte) Integer.parseInt(hash.substring(i * 2, i * 2 + 2), 16);
+            }
+            root.update(raw);
+        }
+        return manifest.contentId.equals(ChunkStore.toHex(root.digest()));
+    }
+
+    public String getStatsSummary() {
+        return String.format("Content: %d objects, %d downloading; %s", manifests.size(), downloads.size(),
+                chunkStore.getStatsSummary());
+    }
+
+    public void shutdown() {
+        worker.shutdownNow();
+        bulkExecutor.shutdownNow();
+        streams.clear();
+        btPartials.clear();
+    }
+
+    // ==================== HELPERS ====================
+
+    private Message controlMessage(Message.Type type, String content) {
+        Message message = new Message();
+        message.id = UUID.randomUUID().toString();
+        message.senderId = myDeviceId;
+        message.type = type;
+        message.content = content;
+        message.timestamp = System.currentTimeMillis();
+        message.ttl = 0; // One hop only
+        return message;
+    }
+
+    private static int readFully(InputStream in, byte[] buffer) throws IOException {
+        int total = 0;
+        int read;
+        while (total < buffer.length && (read = in.read(buffer, total, buffer.length - total)) > 0) {
+            total += read;
+        }
+        return total;
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            byte[] data = new byte[(int) raf.length()];
+            raf.readFully(data);
+            return data;
+        }
+    }
+
+    /**
+     * Serializes requested chunks as frames [magic, contentId, index, length, bytes]
+     * on demand, paced by the limiter. Nearby pulls from it on its own thread.
+     */
+    private static class ChunkFrameStream extends InputStream {
+        private final Manifest manifest;
+        private final ChunkSource source;
+        private final List<Integer> indices;
+        private final ByteRateLimiter limiter;
+        private int next = 0;
+        private byte[] frame = new byte[0];
+        private int frameOffset = 0;
+
+        ChunkFrameStream(Manifest manifest, ChunkSource source, List<Integer> indices, ByteRateLimiter limiter) {
+            this.manifest = manifest;
+            this.source = source;
+            this.indices = indices;
+            this.limiter = limiter;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (frameOffset == frame.length && !loadNextFrame()) {
+                return -1;
+            }
+            int n = Math.min(Math.min(len, frame.length - frameOffset), 8192);
+            try {
+                limiter.acquire(n);
+            } catch (InterruptedException e) {
+                throw new IOException("Transfer interrupted");
+            }
+            System.arraycopy(frame, frameOffset, b, off, n);
+            frameOffset += n;
+            return n;
+        }
+
+        private boolean loadNextFrame() throws IOException {
+            if (next >= indices.size()) {
+                return false;
+            }
+            int index = indices.get(next++);
+            byte[] chunk = source.read(index);
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(chunk.length + 96);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(FRAME_MAGIC);
+            out.writeUTF(manifest.contentId);
+            out.writeInt(index);
+            out.writeInt(chunk.length);
+            out.write(chunk);
+            frame = bytes.toByteArray();
+            frameOffset = 0;
+            return true;
+        }
+    }
+
+    /**
+     * Token bucket over bytes; callers block until enough budget accrues
+     */
+    static class ByteRateLimiter {
+        private final long bytesPerSecond;
+        private double tokens;
+        private long lastRefill = System.nanoTime();
+
+        ByteRateLimiter(long bytesPerSecond) {
+            this.bytesPerSecond = bytesPerSecond;
+            this.tokens = bytesPerSecond / 4.0; // Small initial burst
+        }
+
+        synchronized void acquire(int bytes) throws InterruptedException {
+            while (true) {
+                long now = System.nanoTime();
+                tokens = Math.min(bytesPerSecond, tokens + (now - lastRefill) / 1e9 * bytesPerSecond);
+                lastRefill = now;
+                if (tokens >= bytes) {
+                    tokens -= bytes;
+                    return;
+                }
+                long waitMs = (long) Math.ceil((bytes - tokens) * 1000.0 / bytesPerSecond);
+                wait(Math.max(1, waitMs));
+            }
+        }
+    }
+}
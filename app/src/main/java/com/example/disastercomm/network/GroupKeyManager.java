@@ -0,0 +1,449 @@
+package com.example.disastercomm.network;
+
+import android.util.Base64;
+import android.util.Log;
+
+import com.example.disastercomm.models.Message;
+import com.example.disastercomm.utils.SecurityUtil;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.SecretKey;
+
+/**
+ * Sender keys for broadcast traffic. Every device keeps one AES-256 key per
+ * group (only "ALL" for now: its members are everyone we hold a session
+ * with) and hands it to each member once, sealed under the pairwise session
+ * key. A broadcast is then encrypted exactly once and costs the same airtime
+ * as plaintext.
+ *
+ * Keys are versioned by epoch. A new epoch starts when a member's session
+ * was reset, and periodically. id/sender/receiver/type/group/epoch stay
+ * readable for relays and are authenticated as GCM associated data.
+ *
+ * A broadcast that arrives before its key is held (per sender and epoch)
+ * and delivered once the key comes in. A key request from a device we have
+ * no session with starts the handshake and is answered when it completes.
+ */
+public class GroupKeyManager {
+    private static final String TAG = "GroupKeyManager";
+    public static final String GROUP_ALL = "ALL";
+    public static final int SUITE_GROUP_GCM = 2;
+
+    private static final long MIN_ROTATE_INTERVAL_MS = 30 * 1000; // Debounce membership churn
+    private static final long MAX_EPOCH_AGE_MS = 60 * 60 * 1000;
+    private static final int MAX_EPOCH_USES = 100000; // Random 96-bit nonces, stay far below the GCM bound
+    private static final int MAX_HELD_PER_KEY = 64;
+    private static final int MAX_HELD_KEYS = 64;
+    private static final long HELD_TIMEOUT_MS = 10 * 60 * 1000;
+
+    /**
+     * Delivers one sender key to one member (sealed for it by the caller)
+     */
+    public interface KeySender {
+        void sendGroupKey(String deviceId, String groupId, int epoch, String encodedKey);
+
+        void requestGroupKey(String deviceId, String groupId);
+
+        // Start the session handshake with a device that asked for a key
+        void requestSession(String deviceId);
+    }
+
+    /**
+     * Receives held broadcasts once their sender key arrived and opened them
+     */
+    public interface DeliveryListener {
+        void onDecrypted(Message message);
+    }
+
+    // Broadcasts waiting for one sender's key of one epoch
+    private static class HeldMessages {
+        final List<Message> messages = new ArrayList<>();
+        final long since = System.currentTimeMillis();
+    }
+
+    private static class SenderKey {
+        final int epoch;
+        final SecretKey key;
+        final long created = System.currentTimeMillis();
+        int uses;
+        final Set<String> distributedTo = new HashSet<>();
+
+        SenderKey(int epoch, SecretKey key) {
+            this.epoch = epoch;
+            this.key = key;
+        }
+    }
+
+    // Keys received from one sender for one group: current and previous epoch (late packets)
+    private static class PeerKeys {
+        int epoch = -1;
+        SecretKey key;
+        int previousEpoch = -1;
+        SecretKey previousKey;
+
+        SecretKey forEpoch(int wanted) {
+            return wanted == epoch ? key : wanted == previousEpoch ? previousKey : null;
+        }
+    }
+
+    private final String myDeviceId;
+    private final SessionKeyManager sessionKeys;
+    private KeySender keySender;
+    private DeliveryListener deliveryListener;
+
+    private final Map<String, SenderKey> myKeys = new ConcurrentHashMap<>();
+    private final Map<String, PeerKeys> peerKeys = new ConcurrentHashMap<>(); // "sender/group"
+    private final Set<String> rekeyPending = Collections.synchronizedSet(new HashSet<>());
+    private final Map<String, Long> lastRequest = new ConcurrentHashMap<>();
+    private final Map<String, HeldMessages> held = new ConcurrentHashMap<>(); // "sender/group/epoch"
+    private final Map<String, Set<String>> pendingRequests = new ConcurrentHashMap<>(); // deviceId -> groups
+
+    // Stats
+    private final AtomicLong encrypted = new AtomicLong();
+    private final AtomicLong decrypted = new AtomicLong();
+    private final AtomicLong missingKey = new AtomicLong();
+    private final AtomicLong rotations = new AtomicLong();
+    private final AtomicLong keysSent = new AtomicLong();
+    private final AtomicLong heldDelivered = new AtomicLong();
+    private final AtomicLong heldExpired = new AtomicLong();
+
+    public GroupKeyManager(String myDeviceId, SessionKeyManager sessionKeys) {
+        this.myDeviceId = myDeviceId;
+        this.sessionKeys = sessionKeys;
+    }
+
+    public void setKeySender(KeySender keySender) {
+        this.keySender = keySender;
+    }
+
+    public void setDeliveryListener(DeliveryListener deliveryListener) {
+        this.deliveryListener = deliveryListener;
+    }
+
+    // --- Membership ---
+
+    public boolean isJoined(String groupId) {
+        return GROUP_ALL.equals(normalize(groupId));
+    }
+
+    /**
+     * Everyone we hold a session with is in ALL
+     */
+    private Set<String> membersOf(String group) {
+        return GROUP_ALL.equals(group) ? sessionKeys.getPeers() : Collections.<String>emptySet();
+    }
+
+    /**
+     * A member restarted (new session key): it lost our keys, and we rotate
+     * so its previous incarnation's keys open nothing new
+     */
+    public void onMemberReset(String deviceId) {
+        for (Map.Entry<String, SenderKey> entry : myKeys.entrySet()) {
+            synchronized (entry.getValue()) {
+                if (entry.getValue().distributedTo.remove(deviceId)) {
+                    rekeyPending.add(entry.getKey());
+                }
+            }
+        }
+    }
+
+    /**
+     * A session with deviceId now exists: answer the key requests it made before
+     */
+    public void onSessionEstablished(String deviceId) {
+        Set<String> groups = pendingRequests.remove(deviceId);
+        if (groups == null) {
+            return;
+        }
+        for (String group : groups) {
+            onKeyRequest(deviceId, group);
+        }
+    }
+
+    // --- Sending ---
+
+    /**
+     * Seal a broadcast's content with our sender key for its group. False
+     * (content untouched) if the group has no members we could share a key with.
+     */
+    public boolean encrypt(Message message) {
+        String group = normalize(message.groupId);
+        Set<String> members = membersOf(group);
+        if (message.content == null || members.isEmpty()) {
+            return false;
+        }
+        SenderKey senderKey = currentKey(group);
+        if (senderKey == null) {
+            return false;
+        }
+        distribute(group, senderKey, members);
+        try {
+            synchronized (senderKey) {
+                senderKey.uses++;
+            }
+            message.keyEpoch = senderKey.epoch;
+            byte[] sealed = SecurityUtil.encryptGcm(senderKey.key, message.content.getBytes(StandardCharsets.UTF_8),
+                    associatedData(message, group));
+            message.content = Base64.encodeToString(sealed, Base64.NO_WRAP);
+            message.cipherSuite = SUITE_GROUP_GCM;
+            encrypted.incrementAndGet();
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "Group encrypt for " + group + " failed", e);
+            return false;
+        }
+    }
+
+    private SenderKey currentKey(String group) {
+        SenderKey current = myKeys.get(group);
+        long now = System.currentTimeMillis();
+        boolean rotate = current == null
+                || now - current.created > MAX_EPOCH_AGE_MS
+                || current.uses >= MAX_EPOCH_USES
+                || (rekeyPending.contains(group) && now - current.created >= MIN_ROTATE_INTERVAL_MS);
+        if (!rotate) {
+            return current;
+        }
+        SecretKey key = SecurityUtil.generateAesKey();
+        if (key == null) {
+            return current;
+        }
+        SenderKey next = new SenderKey(current != null ? current.epoch + 1 : 1, key);
+        myKeys.put(group, next);
+        rekeyPending.remove(group);
+        if (current != null) {
+            rotations.incrementAndGet();
+            Log.d(TAG, "🔁 Rotated " + group + " key to epoch " + next.epoch);
+        }
+        return next;
+    }
+
+    // Members that do not have this epoch yet get it now (one sealed unicast each)
+    private void distribute(String group, SenderKey senderKey, Set<String> members) {
+        KeySender sender = keySender;
+        if (sender == null) {
+            return;
+        }
+        String encoded = null;
+        for (String member : members) {
+            if (member.equals(myDeviceId) || !sessionKeys.hasSession(member)) {
+                continue;
+            }
+            synchronized (senderKey) {
+                if (!senderKey.distributedTo.add(member)) {
+                    continue;
+                }
+            }
+            if (encoded == null) {
+                encoded = SecurityUtil.encodeAesKey(senderKey.key);
+            }
+            sender.sendGroupKey(member, group, senderKey.epoch, encoded);
+            keysSent.incrementAndGet();
+        }
+    }
+
+    /**
+     * A device asked for our key (it missed the hand-out, or is new to us);
+     * resend if it is a member, or start the session that makes it one
+     */
+    public void onKeyRequest(String requesterId, String groupId) {
+        String group = normalize(groupId);
+        SenderKey senderKey = myKeys.get(group);
+        if (senderKey == null || requesterId == null || !isJoined(group)) {
+            return;
+        }
+        if (!sessionKeys.hasSession(requesterId)) {
+            KeySender sender = keySender;
+            Set<String> groups = pendingRequests.get(requesterId);
+            if (groups == null) {
+                if (pendingRequests.size() >= MAX_HELD_KEYS) {
+                    return;
+                }
+                groups = Collections.synchronizedSet(new HashSet<String>());
+                pendingRequests.put(requesterId, groups);
+            }
+            groups.add(group);
+            if (sender != null) { // Requesters ask at most once per epoch, so no throttle here
+                sender.requestSession(requesterId);
+            }
+            return;
+        }
+        synchronized (senderKey) {
+            senderKey.distributedTo.remove(requesterId);
+        }
+        distribute(group, senderKey, Collections.singleton(requesterId));
+    }
+
+    // --- Receiving ---
+
+    public void onSenderKey(String senderId, String groupId, int epoch, String encodedKey) {
+        String group = normalize(groupId);
+        if (senderId == null || !isJoined(group)) {
+            return;
+        }
+        PeerKeys keys = peerKeys.get(senderId + "/" + group);
+        if (keys == null) {
+            keys = new PeerKeys();
+            peerKeys.put(senderId + "/" + group, keys);
+        }
+        synchronized (keys) {
+            if (keys.epoch == epoch) {
+                return;
+            }
+            keys.previousEpoch = keys.epoch;
+            keys.previousKey = keys.key;
+            keys.epoch = epoch;
+            keys.key = SecurityUtil.decodeAesKey(encodedKey);
+        }
+        Log.d(TAG, "🔑 Got " + group + " key epoch " + epoch + " from "
+                + senderId.substring(0, Math.min(8, senderId.length())));
+        releaseHeld(senderId + "/" + group + "/" + epoch);
+    }
+
+    // Broadcasts that were waiting for this key: open and hand them on
+    private void releaseHeld(String heldKey) {
+        HeldMessages waiting = held.remove(heldKey);
+        DeliveryListener listener = deliveryListener;
+        if (waiting == null || listener == null) {
+            return;
+        }
+        List<Message> messages;
+        synchronized (waiting) {
+            messages = new ArrayList<>(waiting.messages);
+        }
+        for (Message message : messages) {
+            if (decrypt(message)) {
+                heldDelivered.incrementAndGet();
+                listener.onDecrypted(message);
+            }
+        }
+    }
+
+    // Keep a broadcast we cannot open yet; the oldest waiting key goes when full
+    private void hold(Message message, String group) {
+        String heldKey = message.senderId + "/" + group + "/" + message.keyEpoch;
+        HeldMessages waiting = held.get(heldKey);
+        if (waiting == null) {
+            expireHeld();
+            waiting = new HeldMessages();
+            HeldMessages existing = held.putIfAbsent(heldKey, waiting);
+            if (existing != null) {
+                waiting = existing;
+            }
+        }
+        synchronized (waiting) {
+            if (waiting.messages.size() >= MAX_HELD_PER_KEY) {
+                return;
+            }
+            for (Message other : waiting.messages) {
+                if (other.id != null && other.id.equals(message.id)) {
+                    return;
+                }
+            }
+            waiting.messages.add(message);
+        }
+    }
+
+    private void expireHeld() {
+        long cutoff = System.currentTimeMillis() - HELD_TIMEOUT_MS;
+        String oldest = null;
+        long oldestSince = Long.MAX_VALUE;
+        for (Map.Entry<String, HeldMessages> entry : held.entrySet()) {
+            if (entry.getValue().since < cutoff) {
+                held.remove(entry.getKey());
+                heldExpired.incrementAndGet();
+            } else if (entry.getValue().since < oldestSince) {
+                oldest = entry.getKey();
+                oldestSince = entry.getValue().since;
+            }
+        }
+        if (held.size() >= MAX_HELD_KEYS && oldest != null) {
+            held.remove(oldest);
+            heldExpired.incrementAndGet();
+        }
+    }
+
+    /**
+     * Open a group-encrypted broadcast in place. On a missing key the message
+     * is held for the DeliveryListener, the sender is asked for the key (at
+     * most once per epoch) and false is returned.
+     */
+    public boolean decrypt(Message message) {
+        String group = normalize(message.groupId);
+        PeerKeys keys = message.senderId != null ? peerKeys.get(message.senderId + "/" + group) : null;
+        SecretKey key;
+        if (keys == null) {
+            key = null;
+        } else {
+            synchronized (keys) {
+                key = keys.forEpoch(message.keyEpoch);
+            }
+        }
+        if (message.content == null) {
+            return false;
+        }
+        if (key == null) {
+            missingKey.incrementAndGet();
+            if (message.senderId != null && isJoined(group)) {
+                hold(message, group);
+            }
+            requestKey(message.senderId, group, message.keyEpoch);
+            return false;
+        }
+        try {
+            byte[] plain = SecurityUtil.decryptGcm(key, Base64.decode(message.content, Base64.NO_WRAP),
+                    associatedData(message, group));
+            message.content = new String(plain, StandardCharsets.UTF_8);
+            message.cipherSuite = 0;
+            decrypted.incrementAndGet();
+            return true;
+        } catch (Exception e) {
+            Log.w(TAG, "Group decrypt from " + message.senderId + " failed: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void requestKey(String senderId, String group, int epoch) {
+        KeySender sender = keySender;
+        if (sender == null || senderId == null || !isJoined(group)) {
+            return;
+        }
+        String requestKey = senderId + "/" + group + "/" + epoch;
+        Long previous = lastRequest.get(requestKey);
+        long now = System.currentTimeMillis();
+        if (previous != null && now - previous < MIN_ROTATE_INTERVAL_MS) {
+            return;
+        }
+        if (lastRequest.size() > 256) {
+            lastRequest.clear();
+        }
+        lastRequest.put(requestKey, now);
+        sender.requestGroupKey(senderId, group);
+    }
+
+    private static String normalize(String groupId) {
+        return groupId == null ? GROUP_ALL : groupId;
+    }
+
+    // Everything relays read but must not alter (ttl/hopCount change per hop and are excluded)
+    private static byte[] associatedData(Message message, String group) {
+        return (message.id + "|" + message.senderId + "|" + message.receiverId + "|" + message.type + "|" + group
+                + "|" + message.keyEpoch).getBytes(StandardCharsets.UTF_8);
+    }
+
+    public String getStatsSummary() {
+        return String.format("Group keys: %d groups, %d encrypted, %d decrypted, %d missing key, %d rotations, %d keys sent, "
+                + "%d held (%d delivered late, %d expired)",
+                myKeys.size(), encrypted.get(), decrypted.get(), missingKey.get(), rotations.get(), keysSent.get(),
+                held.size(), heldDelivered.get(), heldExpired.get());
+    }
+}
@@ -0,0 +1,258 @@
+package com.example.disastercomm.network;
+
+import android.util.Base64;
+import android.util.Log;
+
+import com.example.disastercomm.data.AppDatabase;
+import com.example.disastercomm.data.PeerKeyDao;
+import com.example.disastercomm.data.PeerKeyEntity;
+import com.example.disastercomm.utils.SecurityUtil;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Persistent directory of peer public keys, indexed by device id. Peers only
+ * advertise an 8-byte fingerprint (heartbeats, originated messages); the
+ * full keys travel point-to-point when a fingerprint is unknown. Keys are
+ * verified against their fingerprint and decoded once, then served from
+ * memory.
+ * <p>
+ * Keys are pinned on first use: a different set for a known device is only
+ * taken if the pinned signing key vouches for it. Anything else is held
+ * aside and the device flagged as changed until {@link #resolveKeyChange}.
+ */
+public class KeyDirectory {
+    private static final String TAG = "KeyDirectory";
+    private static final long FETCH_RETRY_MS = 60 * 1000;
+    private static final long RETENTION_MS = 30L * 24 * 60 * 60 * 1000; // Forget peers unseen for a month
+
+    /**
+     * Verified keys of one peer
+     */
+    public static class Entry {
+        public final String deviceId;
+        public final String fingerprint;
+        public final String rsaKey;
+        public final String sessionKey;
+        public final String signingKey;
+        final String signingKeyId;
+        final PublicKey decodedRsa; // Decoded once, null if absent or malformed
+        final PublicKey decodedSigning;
+
+        Entry(String deviceId, String fingerprint, String rsaKey, String sessionKey, String signingKey) {
+            this.deviceId = deviceId;
+            this.fingerprint = fingerprint;
+            this.rsaKey = rsaKey;
+            this.sessionKey = sessionKey;
+            this.signingKey = signingKey;
+            this.signingKeyId = signingKey != null ? SecurityUtil.keyFingerprint(signingKey) : null;
+            this.decodedRsa = rsaKey != null ? SecurityUtil.decodePublicKey(rsaKey) : null;
+            this.decodedSigning = signingKey != null ? SecurityUtil.decodeEcPublicKey(signingKey) : null;
+        }
+    }
+
+    public interface Listener {
+        // Keys loaded from disk at startup
+        void onKeyLoaded(Entry entry);
+    }
+
+    private final PeerKeyDao dao; // Null: memory only
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, Long> lastFetch = new ConcurrentHashMap<>();
+    private final Map<String, Entry> unprovenChanges = new ConcurrentHashMap<>(); // Newest unvouched set per device
+
+    // Stats
+    private final AtomicLong fingerprintHits = new AtomicLong();
+    private final AtomicLong fetches = new AtomicLong();
+    private final AtomicLong stored = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong changesHeld = new AtomicLong();
+
+    public KeyDirectory(AppDatabase db) {
+        this.dao = db != null ? db.peerKeyDao() : null;
+    }
+
+    /**
+     * Fill the cache from Room (on the DB executor), dropping long-gone peers
+     */
+    public void load(Listener listener) {
+        if (dao == null) {
+            return;
+        }
+        AppDatabase.databaseWriteExecutor.execute(() -> {
+            try {
+                dao.deleteOlderThan(System.currentTimeMillis() - RETENTION_MS);
+                int count = 0;
+                for (PeerKeyEntity row : dao.getAllKeys()) {
+                    Entry entry = new Entry(row.deviceId, row.fingerprint, row.rsaPublicKey, row.sessionPublicKey,
+                            row.signingPublicKey);
+                    if (entries.putIfAbsent(row.deviceId, entry) == null && listener != null) {
+                        listener.onKeyLoaded(entry);
+                    }
+                    count++;
+                }
+                Log.d(TAG, "🔑 Loaded " + count + " peer keys");
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to load key directory", e);
+            }
+        });
+    }
+
+    /**
+     * True if we hold keys for this peer under this fingerprint
+     */
+    public boolean isKnown(String deviceId, String fingerprint) {
+        Entry entry = deviceId != null ? entries.get(deviceId) : null;
+        boolean known = entry != null && entry.fingerprint != null && entry.fingerprint.equals(fingerprint);
+        if (known) {
+            fingerprintHits.incrementAndGet();
+        }
+        return known;
+    }
+
+    /**
+     * Rate limit for point-to-point fetches of one peer's keys
+     */
+    public boolean shouldFetch(String deviceId) {
+        long now = System.currentTimeMillis();
+        Long previous = lastFetch.get(deviceId);
+        if (previous != null && now - previous < FETCH_RETRY_MS) {
+            return false;
+        }
+        lastFetch.put(deviceId, now);
+        fetches.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Bytes a device signs (keySig) to vouch for its key set
+     */
+    public static byte[] keySetBytes(String deviceId, String fingerprint) {
+        return ("keys\n" + deviceId + "\n" + fingerprint).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Store keys received in a KEY_EXCHANGE. Returns true if they are new, or
+     * a change vouched for by the pinned signing key; false if unchanged, if
+     * they do not match the fingerprint the sender claimed, or if they are an
+     * unproven change (held aside, see {@link #isKeyChanged}).
+     */
+    public boolean put(String deviceId, String rsaKey, String sessionKey, String signingKey,
+            String claimedFingerprint, String keySig) {
+        if (deviceId == null || (rsaKey == null && sessionKey == null && signingKey == null)) {
+            return false;
+        }
+        String fingerprint = SecurityUtil.keyFingerprint(rsaKey, sessionKey, signingKey);
+        if (fingerprint == null || (claimedFingerprint != null && !claimedFingerprint.equals(fingerprint))) {
+            rejected.incrementAndGet();
+            Log.w(TAG, "Keys from " + deviceId + " do not match their fingerprint, ignored");
+            return false;
+        }
+        Entry existing = entries.get(deviceId);
+        if (existing != null && fingerprint.equals(existing.fingerprint)) {
+            return false;
+        }
+        Entry entry = new Entry(deviceId, fingerprint, rsaKey, sessionKey, signingKey);
+        if (existing != null && !vouchedFor(existing, fingerprint, keySig)) {
+            unprovenChanges.put(deviceId, entry);
+            changesHeld.incrementAndGet();
+            Log.w(TAG, "⚠️ Keys of " + deviceId.substring(0, Math.min(8, deviceId.length()))
+                    + " changed without proof from the pinned key, keeping the old ones");
+            return false;
+        }
+        store(entry);
+        return true;
+    }
+
+    /**
+     * True while a device has an unproven key change pending; its SOS
+     * messages are treated as unverified until the change is resolved
+     */
+    public boolean isKeyChanged(String deviceId) {
+        return deviceId != null && unprovenChanges.containsKey(deviceId);
+    }
+
+    /**
+     * Settle an unproven key change (user decision): either pin the newest
+     * held set, returned so sessions can be rebuilt, or keep the pinned one.
+     * Returns null if nothing was pending or the old keys were kept.
+     */
+    public Entry resolveKeyChange(String deviceId, boolean acceptNew) {
+        Entry entry = deviceId != null ? unprovenChanges.remove(deviceId) : null;
+        if (entry == null || !acceptNew) {
+            return null;
+        }
+        store(entry);
+        return entry;
+    }
+
+    private static boolean vouchedFor(Entry pinned, String fingerprint, String keySig) {
+        if (pinned.decodedSigning == null || keySig == null) {
+            return false;
+        }
+        try {
+            return SecurityUtil.verify(pinned.decodedSigning, keySetBytes(pinned.deviceId, fingerprint),
+                    Base64.decode(keySig, Base64.NO_WRAP));
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private void store(Entry entry) {
+        entries.put(entry.deviceId, entry);
+        lastFetch.remove(entry.deviceId);
+        stored.incrementAndGet();
+        if (dao != null) {
+            AppDatabase.databaseWriteExecutor.execute(() -> {
+                try {
+                    dao.insertKey(new PeerKeyEntity(entry.deviceId, entry.fingerprint, entry.rsaKey,
+                            entry.sessionKey, entry.signingKey));
+                } catch (Exception e) {
+                    Log.e(TAG, "Failed to persist key of " + entry.deviceId, e);
+                }
+            });
+        }
+    }
+
+    public boolean contains(String deviceId) {
+        return deviceId != null && entries.containsKey(deviceId);
+    }
+
+    /**
+     * Verified, already decoded RSA key of a peer, or null
+     */
+    public PublicKey getPublicKey(String deviceId) {
+        Entry entry = deviceId != null ? entries.get(deviceId) : null;
+        return entry != null ? entry.decodedRsa : null;
+    }
+
+    /**
+     * True if the peer is known to sign its SOS messages
+     */
+    public boolean hasSigningKey(String deviceId) {
+        Entry entry = deviceId != null ? entries.get(deviceId) : null;
+        return entry != null && entry.decodedSigning != null;
+    }
+
+    /**
+     * Decoded signing key of a peer if its id matches signerKeyId, else null
+     */
+    public PublicKey getSigningKey(String deviceId, String signerKeyId) {
+        Entry entry = deviceId != null ? entries.get(deviceId) : null;
+        if (entry == null || entry.signingKeyId == null || !entry.signingKeyId.equals(signerKeyId)) {
+            return null;
+        }
+        return entry.decodedSigning;
+    }
+
+    public String getStatsSummary() {
+        return String.format("Key directory: %d peers, %d fingerprint hits, %d fetches, %d stored, %d rejected, "
+                + "%d unproven changes held (%d pending)", entries.size(), fingerprintHits.get(), fetches.get(),
+                stored.get(), rejected.get(), changesHeld.get(), unprovenChanges.size());
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.disastercomm.network;
+
+import android.util.Log;
+
+/**
+ * Routes mesh core logging (MeshLog) to logcat
+ */
+public class LogcatSink implements MeshLog.Sink {
+    @Override
+    public void log(int level, String tag, String message, Throwable error) {
+        Log.println(level, tag, error != null ? message + "\n" + Log.getStackTraceString(error) : message);
+    }
+}
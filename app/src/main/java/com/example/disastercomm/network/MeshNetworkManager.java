@@ -21,13 +21,16 @@ import com.google.android.gms.nearby.connection.PayloadCallback;
 import com.google.android.gms.nearby.connection.PayloadTransferUpdate;
 import com.google.android.gms.nearby.connection.Strategy;
 
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
-public class MeshNetworkManager {
+public class MeshNetworkManager implements Transport {
 
     private static final String TAG = "MeshNetworkManager";
     private static final Strategy STRATEGY = Strategy.P2P_CLUSTER;
@@ -37,18 +40,22 @@ public class MeshNetworkManager {
     private final ConnectionsClient connectionsClient;
     private final String deviceId;
     private String username;
-    private final android.os.Handler handler = new android.os.Handler(android.os.Looper.getMainLooper());
+    private volatile android.os.Handler handler = new android.os.Handler(android.os.Looper.getMainLooper());
     private static final long DISCOVERY_RESTART_DELAY = 2000; // OPTIMIZED: Reduced from 5000ms
-    private static final long CONNECTION_RETRY_DELAY = 1000; // OPTIMIZED: Reduced from 3000ms
+    private static final long REBALANCE_INTERVAL = 15000; // Fill empty slots, prune, swap in bridges
     private boolean isDiscoveryActive = false;
     private boolean isAdvertisingActive = false; // ✅ Track advertising state
     private ConnectionPoolManager poolManager;
+    private final TopologyManager topology;
 
-    // Map of endpointID -> DeviceName
-    private final Map<String, String> connectedEndpoints = new HashMap<>();
+    // Map of endpointID -> DeviceName (read from per-link send threads)
+    private final Map<String, String> connectedEndpoints = new ConcurrentHashMap<>();
 
     // Map to temporarily store names of endpoints during connection initiation
-    private final Map<String, String> pendingEndpointNames = new HashMap<>();
+    private final Map<String, String> pendingEndpointNames = new ConcurrentHashMap<>();
+
+    // Outbound requests in flight; they count towards our degree
+    private final Set<String> pendingOutbound = Collections.newSetFromMap(new ConcurrentHashMap<>());
 
     public interface MeshCallback {
         void onDeviceConnected(String endpointId, String deviceName);
@@ -58,7 +65,19 @@ public class MeshNetworkManager {
         void onPayloadReceived(String endpointId, byte[] data);
     }
 
+    /**
+     * Bulk data path: STREAM payloads and their transfer progress
+     */
+    public interface StreamListener {
+        // Called on a Nearby thread; the stream must be drained off the main thread
+        void onStreamReceived(String endpointId, long payloadId, InputStream stream);
+
+        void onTransferUpdate(String endpointId, long payloadId, boolean finished, long bytesTransferred);
+    }
+
     private MeshCallback callback;
+    private StreamListener streamListener;
+    private volatile Transport.Listener transportListener;
 
     public MeshNetworkManager(Context context, String username, MeshCallback callback) {
         this.context = context;
@@ -66,10 +85,33 @@ public class MeshNetworkManager {
         this.callback = callback;
         this.connectionsClient = Nearby.getConnectionsClient(context);
         this.deviceId = DeviceUtil.getDeviceId(context);
+        this.topology = new TopologyManager(deviceId);
     }
 
     public void setConnectionPoolManager(ConnectionPoolManager poolManager) {
         this.poolManager = poolManager;
+        topology.setConnectionPoolManager(poolManager);
+    }
+
+    public void setRoutingTable(MeshRoutingTable routingTable) {
+        topology.setRoutingTable(routingTable);
+    }
+
+    public TopologyManager getTopology() {
+        return topology;
+    }
+
+    public void setStreamListener(StreamListener streamListener) {
+        this.streamListener = streamListener;
+    }
+
+    /**
+     * Run Nearby callbacks and timers on this looper instead of the main
+     * thread. Nearby itself calls back on the main thread; we hop straight
+     * off it. Set before start().
+     */
+    public void setEventLooper(android.os.Looper looper) {
+        this.handler = new android.os.Handler(looper);
     }
 
     /**
@@ -82,6 +124,8 @@ public class MeshNetworkManager {
     public void start() {
         startAdvertising();
         startDiscovery();
+        handler.removeCallbacks(rebalanceRunnable);
+        handler.postDelayed(rebalanceRunnable, REBALANCE_INTERVAL);
     }
 
     public void stop() {
@@ -93,6 +137,8 @@ public class MeshNetworkManager {
         connectionsClient.stopAllEndpoints();
         connectedEndpoints.clear();
         pendingEndpointNames.clear();
+        pendingOutbound.clear();
+        topology.clear();
     }
 
     public void stopAdvertising() {
@@ -173,136 +219,232 @@ public class MeshNetworkManager {
     private final EndpointDiscoveryCallback endpointDiscoveryCallback = new EndpointDiscoveryCallback() {
         @Override
         public void onEndpointFound(@NonNull String endpointId, @NonNull DiscoveredEndpointInfo info) {
-            Log.d(TAG, "Endpoint found: " + endpointId + ", Name: " + info.getEndpointName());
-            // We could store the name here too if we wanted to show a list before
-            // connecting
-            pendingEndpointNames.put(endpointId, info.getEndpointName());
-
-            // Automatically request connection
-            connectionsClient
-                    .requestConnection(username, endpointId, connectionLifecycleCallback)
-                    .addOnSuccessListener(
-                            (Void unused) -> Log.d(TAG, "Connection requested."))
-                    .addOnFailureListener(
-                            (Exception e) -> Log.e(TAG, "Connection request failed.", e));
+            handler.post(() -> {
+                Log.d(TAG, "Endpoint found: " + endpointId + ", Name: " + info.getEndpointName());
+                // We could store the name here too if we wanted to show a list before
+                // connecting
+                pendingEndpointNames.put(endpointId, info.getEndpointName());
+                topology.onDiscovered(endpointId, info.getEndpointName());
+                maybeConnect(endpointId);
+            });
         }
 
         @Override
         public void onEndpointLost(@NonNull String endpointId) {
-            Log.d(TAG, "Endpoint lost: " + endpointId);
-            pendingEndpointNames.remove(endpointId);
+            handler.post(() -> {
+                Log.d(TAG, "Endpoint lost: " + endpointId);
+                if (!connectedEndpoints.containsKey(endpointId)) {
+                    pendingEndpointNames.remove(endpointId);
+                }
+                topology.onLost(endpointId);
+            });
         }
     };
 
     private final ConnectionLifecycleCallback connectionLifecycleCallback = new ConnectionLifecycleCallback() {
         @Override
         public void onConnectionInitiated(@NonNull String endpointId, @NonNull ConnectionInfo info) {
-            Log.d(TAG, "Connection initiated: " + endpointId + ", Name: " + info.getEndpointName());
-            // Store the name associated with this endpoint
-            pendingEndpointNames.put(endpointId, info.getEndpointName());
-
-            // Automatically accept connection
-            connectionsClient.acceptConnection(endpointId, payloadCallback);
+            handler.post(() -> {
+                Log.d(TAG, "Connection initiated: " + endpointId + ", Name: " + info.getEndpointName());
+                // Store the name associated with this endpoint
+                pendingEndpointNames.put(endpointId, info.getEndpointName());
+
+                // Our own requests were admitted when we made them
+                if (info.isIncomingConnection()
+                        && !topology.shouldAccept(endpointId, info.getEndpointName(), degree())) {
+                    Log.d(TAG, "🚫 Rejecting " + endpointId + ": at degree " + degree());
+                    connectionsClient.rejectConnection(endpointId);
+                    return;
+                }
+                connectionsClient.acceptConnection(endpointId, payloadCallback);
+            });
         }
 
         @Override
         public void onConnectionResult(@NonNull String endpointId, @NonNull ConnectionResolution result) {
-            switch (result.getStatus().getStatusCode()) {
-                case ConnectionsStatusCodes.STATUS_OK:
-                    Log.d(TAG, "Connected to: " + endpointId);
-                    // Retrieve the name we stored earlier
-                    String name = pendingEndpointNames.get(endpointId);
-                    if (name == null) {
-                        name = endpointId; // Fallback if name not found
-                    }
+            handler.post(() -> {
+                pendingOutbound.remove(endpointId);
+                switch (result.getStatus().getStatusCode()) {
+                    case ConnectionsStatusCodes.STATUS_OK:
+                        Log.d(TAG, "Connected to: " + endpointId);
+                        // Retrieve the name we stored earlier
+                        String name = pendingEndpointNames.get(endpointId);
+                        if (name == null) {
+                            name = endpointId; // Fallback if name not found
+                        }
+
+                        connectedEndpoints.put(endpointId, name);
+                        topology.onConnected(endpointId, name, System.currentTimeMillis());
+
+                        // Register with connection pool
+                        if (poolManager != null) {
+                            poolManager.addConnection(endpointId, name,
+                                    ConnectionPoolManager.TransportType.NEARBY_WIFI_DIRECT);
+                        }
+
+                        if (transportListener != null) {
+                            transportListener.onLinkUp(MeshNetworkManager.this, endpointId, name);
+                        }
+                        if (callback != null) {
+                            callback.onDeviceConnected(endpointId, name);
+                        }
+                        break;
+                    case ConnectionsStatusCodes.STATUS_CONNECTION_REJECTED:
+                    case ConnectionsStatusCodes.STATUS_ERROR:
+                        // A rejection usually means the peer is full; back off rather than hammer it
+                        long delay = topology.onFailure(endpointId, System.currentTimeMillis());
+                        Log.d(TAG, "Connection " + (result.getStatus().getStatusCode()
+                                == ConnectionsStatusCodes.STATUS_ERROR ? "error" : "rejected") + ": " + endpointId
+                                + (delay >= 0 ? ". Retrying in " + delay + "ms" : ""));
+                        scheduleConnect(endpointId, delay);
+                        break;
+                    default:
+                        Log.d(TAG, "Unknown connection status: " + result.getStatus().getStatusCode());
+                }
+            });
+        }
 
-                    connectedEndpoints.put(endpointId, name);
+        @Override
+        public void onDisconnected(@NonNull String endpointId) {
+            handler.post(() -> {
+                Log.d(TAG, "Disconnected from: " + endpointId);
 
-                    // Register with connection pool
-                    if (poolManager != null) {
-                        poolManager.addConnection(endpointId, name,
-                                ConnectionPoolManager.TransportType.NEARBY_WIFI_DIRECT);
-                    }
+                // ✅ Fix: Capture state before removal for auto-reconnect logic
+                boolean wasConnected = connectedEndpoints.containsKey(endpointId);
+                String oldName = connectedEndpoints.get(endpointId);
 
-                    if (callback != null) {
-                        final String finalName = name;
-                        handler.post(() -> callback.onDeviceConnected(endpointId, finalName));
+                connectedEndpoints.remove(endpointId);
+
+                // Remove from pool
+                if (poolManager != null) {
+                    poolManager.removeConnection(endpointId);
+                }
+
+                if (wasConnected && transportListener != null) {
+                    transportListener.onLinkDown(MeshNetworkManager.this, endpointId);
+                }
+                if (callback != null) {
+                    callback.onDeviceDisconnected(endpointId);
+                }
+
+                // ✅ Auto-Reconnect with backoff, unless we pruned the link ourselves
+                long delay = topology.onDisconnected(endpointId, System.currentTimeMillis());
+                if (delay >= 0) {
+                    Log.d(TAG, "Attempting auto-reconnect to " + endpointId + " (" + (oldName != null ? oldName : "Unknown")
+                            + ") in " + delay + "ms");
+                    // Put back in pending if it was connected, so we know its name if we reconnect
+                    if (oldName != null) {
+                        pendingEndpointNames.put(endpointId, oldName);
                     }
-                    break;
-                case ConnectionsStatusCodes.STATUS_CONNECTION_REJECTED:
-                    Log.d(TAG, "Connection rejected: " + endpointId + ". Retrying...");
-                    pendingEndpointNames.remove(endpointId);
-                    // Retry connection
-                    handler.postDelayed(() -> requestConnection(endpointId), CONNECTION_RETRY_DELAY);
-                    break;
-                case ConnectionsStatusCodes.STATUS_ERROR:
-                    Log.d(TAG, "Connection error: " + endpointId + ". Retrying...");
-                    pendingEndpointNames.remove(endpointId);
-                    // Retry connection
-                    handler.postDelayed(() -> requestConnection(endpointId), CONNECTION_RETRY_DELAY);
-                    break;
-                default:
-                    Log.d(TAG, "Unknown connection status: " + result.getStatus().getStatusCode());
-            }
+                    scheduleConnect(endpointId, delay);
+                }
+            });
         }
+    };
 
-        @Override
-        public void onDisconnected(@NonNull String endpointId) {
-            Log.d(TAG, "Disconnected from: " + endpointId);
+    // --- Topology ---
 
-            // ✅ Fix: Capture state before removal for auto-reconnect logic
-            boolean wasConnected = connectedEndpoints.containsKey(endpointId);
-            String oldName = connectedEndpoints.get(endpointId);
+    private int degree() {
+        return connectedEndpoints.size() + pendingOutbound.size();
+    }
 
-            connectedEndpoints.remove(endpointId);
+    private void scheduleConnect(String endpointId, long delay) {
+        if (delay >= 0) {
+            handler.postDelayed(() -> maybeConnect(endpointId), delay);
+        }
+    }
 
-            // Remove from pool
-            if (poolManager != null) {
-                poolManager.removeConnection(endpointId);
-            }
+    private void maybeConnect(String endpointId) {
+        if (connectedEndpoints.containsKey(endpointId) || pendingOutbound.contains(endpointId)) {
+            return;
+        }
+        if (topology.shouldConnect(endpointId, degree(), System.currentTimeMillis())) {
+            requestConnection(endpointId);
+        }
+    }
 
-            if (callback != null) {
-                handler.post(() -> callback.onDeviceDisconnected(endpointId));
-            }
+    private void disconnect(String endpointId) {
+        topology.markPruned(endpointId, System.currentTimeMillis());
+        connectionsClient.disconnectFromEndpoint(endpointId);
+        // Nearby does not call onDisconnected for a local disconnect
+        connectionLifecycleCallback.onDisconnected(endpointId);
+    }
 
-            // ✅ Auto-Reconnect: Only if we knew this endpoint or it was previously
-            // connected
-            if (pendingEndpointNames.containsKey(endpointId) || wasConnected) {
-                Log.d(TAG, "Attempting auto-reconnect to " + endpointId + " (" + (oldName != null ? oldName : "Unknown")
-                        + ")");
-                // Put back in pending if it was connected, so we know its name if we reconnect
-                if (oldName != null) {
-                    pendingEndpointNames.put(endpointId, oldName);
+    /**
+     * Keep degree within bounds: dial the best candidates into free slots,
+     * shed the weakest redundant link when over the cap, and at the cap
+     * trade a redundant link for one that bridges a partition
+     */
+    private final Runnable rebalanceRunnable = new Runnable() {
+        @Override
+        public void run() {
+            long now = System.currentTimeMillis();
+            int degree = degree();
+            if (degree < TopologyManager.TARGET_DEGREE) {
+                for (String endpointId : topology.pickCandidates(TopologyManager.TARGET_DEGREE - degree, now)) {
+                    maybeConnect(endpointId);
+                }
+            } else if (connectedEndpoints.size() > TopologyManager.MAX_DEGREE) {
+                String drop = topology.pickLinkToDrop(connectedEndpoints.keySet());
+                if (drop != null) {
+                    disconnect(drop);
+                }
+            } else if (degree >= TopologyManager.MAX_DEGREE) {
+                String[] swap = topology.pickSwap(connectedEndpoints.keySet(), now);
+                if (swap != null) {
+                    Log.d(TAG, "🌉 Swapping " + swap[0] + " for bridge " + swap[1]);
+                    disconnect(swap[0]);
+                    requestConnection(swap[1]);
                 }
-                handler.postDelayed(() -> requestConnection(endpointId), CONNECTION_RETRY_DELAY);
             }
-            // pendingEndpointNames.remove(endpointId); // Don't remove immediately if we
-            // are retrying
+            handler.postDelayed(this, REBALANCE_INTERVAL);
         }
     };
 
     private final PayloadCallback payloadCallback = new PayloadCallback() {
         @Override
         public void onPayloadReceived(@NonNull String endpointId, @NonNull Payload payload) {
-            if (payload.getType() == Payload.Type.BYTES) {
-                byte[] bytes = payload.asBytes();
-                Log.d(TAG, "Payload received from " + endpointId + ": " + new String(bytes, StandardCharsets.UTF_8));
+            handler.post(() -> {
+                if (payload.getType() == Payload.Type.BYTES) {
+                    byte[] bytes = payload.asBytes();
+                    Log.d(TAG, "Payload received from " + endpointId + ": " + new String(bytes, StandardCharsets.UTF_8));
 
-                // Update pool manager
-                if (poolManager != null) {
-                    poolManager.recordMessageReceived(endpointId);
-                    poolManager.updateLastSeen(endpointId);
-                }
+                    // Update pool manager
+                    if (poolManager != null) {
+                        poolManager.recordMessageReceived(endpointId);
+                        poolManager.updateLastSeen(endpointId);
+                    }
 
-                if (callback != null) {
-                    handler.post(() -> callback.onPayloadReceived(endpointId, bytes));
+                    if (transportListener != null) {
+                        transportListener.onReceive(MeshNetworkManager.this, endpointId, PooledBuffer.wrap(bytes));
+                    }
+                    if (callback != null) {
+                        callback.onPayloadReceived(endpointId, bytes);
+                    }
+                } else if (payload.getType() == Payload.Type.STREAM && payload.asStream() != null) {
+                    if (streamListener != null) {
+                        streamListener.onStreamReceived(endpointId, payload.getId(),
+                                payload.asStream().asInputStream());
+                    } else {
+                        connectionsClient.cancelPayload(payload.getId());
+                    }
                 }
-            }
+            });
         }
 
         @Override
         public void onPayloadTransferUpdate(@NonNull String endpointId, @NonNull PayloadTransferUpdate update) {
-            // Progress updates
+            handler.post(() -> {
+                // Only stream transfers report progress; BYTES payloads arrive in one piece
+                if (streamListener != null) {
+                    boolean finished = update.getStatus() != PayloadTransferUpdate.Status.IN_PROGRESS;
+                    if (update.getStatus() == PayloadTransferUpdate.Status.FAILURE && poolManager != null) {
+                        poolManager.recordFailure(endpointId);
+                    }
+                    streamListener.onTransferUpdate(endpointId, update.getPayloadId(), finished,
+                            update.getBytesTransferred());
+                }
+            });
         }
     };
 
@@ -322,6 +464,24 @@ public class MeshNetworkManager {
                 });
     }
 
+    /**
+     * Send a STREAM payload to one endpoint. Returns the payload id, or -1 if not connected.
+     */
+    public long sendStream(String endpointId, InputStream stream) {
+        if (!connectedEndpoints.containsKey(endpointId)) {
+            return -1;
+        }
+        Payload payload = Payload.fromStream(stream);
+        connectionsClient.sendPayload(endpointId, payload)
+                .addOnFailureListener((Exception e) -> {
+                    Log.e(TAG, "Stream payload to " + endpointId + " failed", e);
+                    if (poolManager != null) {
+                        poolManager.recordFailure(endpointId);
+                    }
+                });
+        return payload.getId();
+    }
+
     public void broadcastPayload(byte[] bytes) {
         broadcastPayload(bytes, null);
     }
@@ -332,26 +492,104 @@ public class MeshNetworkManager {
             if (excludeEndpointId != null) {
                 targets.remove(excludeEndpointId);
             }
-            if (!targets.isEmpty()) {
-                connectionsClient.sendPayload(targets, Payload.fromBytes(bytes));
-            }
+            sendPayload(targets, bytes);
         }
     }
 
+    /**
+     * Send the same bytes to a set of endpoints in one Nearby call
+     */
+    public void sendPayload(List<String> targets, byte[] bytes) {
+        if (targets.isEmpty()) {
+            return;
+        }
+        long startTime = System.currentTimeMillis();
+        connectionsClient.sendPayload(targets, Payload.fromBytes(bytes))
+                .addOnSuccessListener((Void unused) -> {
+                    if (poolManager != null) {
+                        long latency = System.currentTimeMillis() - startTime;
+                        for (String target : targets) {
+                            poolManager.recordMessageSent(target, latency);
+                        }
+                    }
+                })
+                .addOnFailureListener((Exception e) -> {
+                    Log.w(TAG, "Broadcast payload failed for " + targets.size() + " endpoints", e);
+                    if (poolManager != null) {
+                        for (String target : targets) {
+                            poolManager.recordFailure(target);
+                        }
+                    }
+                });
+    }
+
     public List<String> getConnectedEndpoints() {
         return new ArrayList<>(connectedEndpoints.keySet());
     }
 
+    // --- Transport ---
+
+    @Override
+    public String getName() {
+        return "nearby";
+    }
+
+    @Override
+    public int getCapabilities() {
+        return CAP_UNICAST | CAP_BROADCAST | CAP_STREAM;
+    }
+
+    @Override
+    public int getMtu() {
+        return ConnectionsClient.MAX_BYTES_DATA_SIZE;
+    }
+
+    @Override
+    public List<String> getLinks() {
+        return getConnectedEndpoints();
+    }
+
+    @Override
+    public boolean hasLink(String linkId) {
+        return linkId != null && connectedEndpoints.containsKey(linkId);
+    }
+
+    @Override
+    public boolean send(String linkId, byte[] data) {
+        if (!hasLink(linkId)) {
+            return false;
+        }
+        sendPayload(linkId, data);
+        return true;
+    }
+
+    @Override
+    public void broadcast(byte[] data, String excludeLinkId) {
+        broadcastPayload(data, excludeLinkId);
+    }
+
+    @Override
+    public void setTransportListener(Transport.Listener listener) {
+        this.transportListener = listener;
+    }
+
     public String getConnectedDeviceName(String endpointId) {
         return connectedEndpoints.get(endpointId);
     }
 
     private void requestConnection(String endpointId) {
+        pendingOutbound.add(endpointId);
+        topology.onAttempt(endpointId);
+        // Same name we advertise, so the peer can run admission on our device id
         connectionsClient
-                .requestConnection(username, endpointId, connectionLifecycleCallback)
+                .requestConnection(username + "__" + deviceId, endpointId, connectionLifecycleCallback)
                 .addOnSuccessListener(
-                        (Void unused) -> Log.d(TAG, "Connection requested (Retry) for " + endpointId))
+                        (Void unused) -> Log.d(TAG, "Connection requested for " + endpointId))
                 .addOnFailureListener(
-                        (Exception e) -> Log.e(TAG, "Connection request failed for " + endpointId, e));
+                        (Exception e) -> {
+                            Log.e(TAG, "Connection request failed for " + endpointId, e);
+                            pendingOutbound.remove(endpointId);
+                            scheduleConnect(endpointId, topology.onFailure(endpointId, System.currentTimeMillis()));
+                        });
     }
 }
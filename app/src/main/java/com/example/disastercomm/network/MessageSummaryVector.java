@@ -0,0 +1,175 @@
+package com.example.disastercomm.network;
+
+import android.util.Base64;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+
+/**
+ * Compact summary vector (Bloom filter) of message ids for anti-entropy sync.
+ * Peers exchange these on contact and only transfer ids the other side lacks.
+ * A fresh random seed per exchange means a false positive on one contact
+ * is unlikely to repeat on the next one.
+ */
+public class MessageSummaryVector {
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+    private static final int MIN_BITS = 64;
+    private static final int MAX_BITS = 1 << 20; // 128 KB of filter; the peer picks the size, so bound it
+    private static final int MAX_HASHES = 10;
+
+    private final long[] bits;
+    private final int numBits;
+    private final int numHashes;
+    private final int seed;
+
+    private MessageSummaryVector(int numBits, int numHashes, int seed) {
+        this.numBits = numBits;
+        this.numHashes = numHashes;
+        this.seed = seed;
+        this.bits = new long[(numBits + 63) / 64];
+    }
+
+    /**
+     * Build a filter sized for the given ids at ~1% false positives
+     */
+    public static MessageSummaryVector of(Collection<String> ids, int seed) {
+        int n = Math.max(1, ids.size());
+        int m = Math.max(MIN_BITS, (int) Math.ceil(-n * Math.log(FALSE_POSITIVE_RATE) / (Math.log(2) * Math.log(2))));
+        int k = Math.max(1, (int) Math.round((double) m / n * Math.log(2)));
+        MessageSummaryVector vector = new MessageSummaryVector(Math.min(m, MAX_BITS), Math.min(k, MAX_HASHES), seed);
+        for (String id : ids) {
+            vector.add(id);
+        }
+        return vector;
+    }
+
+    public void add(String id) {
+        int h1 = hash(id, seed);
+        int h2 = mix(h1 ^ 0x5bd1e995);
+        for (int i = 0; i < numHashes; i++) {
+            int bit = Math.floorMod(h1 + i * h2, numBits);
+            bits[bit >>> 6] |= 1L << (bit & 63);
+        }
+    }
+
+    public boolean mightContain(String id) {
+        int h1 = hash(id, seed);
+        int h2 = mix(h1 ^ 0x5bd1e995);
+        for (int i = 0; i < numHashes; i++) {
+            int bit = Math.floorMod(h1 + i * h2, numBits);
+            if ((bits[bit >>> 6] & (1L << (bit & 63))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * MurmurHash3 (x86, 32 bit) of the UTF-8 id, seeded per exchange. Seeding
+     * String.hashCode() instead would keep its collisions on every contact.
+     */
+    @SuppressWarnings("fallthrough") // The tail cases deliberately accumulate, as in the reference
+    private static int hash(String id, int seed) {
+        byte[] data = id.getBytes(StandardCharsets.UTF_8);
+        int h = seed;
+        int blocks = data.length / 4;
+        for (int i = 0; i < blocks; i++) {
+            int k = (data[i * 4] & 0xFF) | (data[i * 4 + 1] & 0xFF) << 8
+                    | (data[i * 4 + 2] & 0xFF) << 16 | (data[i * 4 + 3] & 0xFF) << 24;
+            h ^= mixK(k);
+            h = Integer.rotateLeft(h, 13) * 5 + 0xe6546b64;
+        }
+        int k = 0;
+        switch (data.length & 3) {
+            case 3:
+                k ^= (data[blocks * 4 + 2] & 0xFF) << 16;
+                // fall through
+            case 2:
+                k ^= (data[blocks * 4 + 1] & 0xFF) << 8;
+                // fall through
+            case 1:
+                k ^= data[blocks * 4] & 0xFF;
+                h ^= mixK(k);
+        }
+        return mix(h ^ data.length);
+    }
+
+    private static int mixK(int k) {
+        k *= 0xcc9e2d51;
+        k = Integer.rotateLeft(k, 15);
+        return k * 0x1b873593;
+    }
+
+    // MurmurHash3 finalizer
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /**
+     * Wire format: "seed:numHashes:numBits:base64(bits)"
+     */
+    public String encode() {
+        return seed + ":" + numHashes + ":" + numBits + ":" + Base64.encodeToString(toRaw(), Base64.NO_WRAP);
+    }
+
+    byte[] toRaw() {
+        byte[] raw = new byte[bits.length * 8];
+        for (int i = 0; i < bits.length; i++) {
+            for (int b = 0; b < 8; b++) {
+                raw[i * 8 + b] = (byte) (bits[i] >>> (b * 8));
+            }
+        }
+        return raw;
+    }
+
+    int getNumBits() {
+        return numBits;
+    }
+
+    int getNumHashes() {
+        return numHashes;
+    }
+
+    int getSeed() {
+        return seed;
+    }
+
+    /**
+     * Parse a peer's summary; sizes outside what of() produces are rejected
+     *
+     * @throws IllegalArgumentException if the summary is malformed or out of bounds
+     */
+    public static MessageSummaryVector decode(String encoded) {
+        String[] parts = encoded.split(":", 4);
+        if (parts.length != 4) {
+            throw new IllegalArgumentException("Malformed summary vector");
+        }
+        return fromRaw(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), Integer.parseInt(parts[2]),
+                Base64.decode(parts[3], Base64.NO_WRAP));
+    }
+
+    static MessageSummaryVector fromRaw(int seed, int numHashes, int numBits, byte[] raw) {
+        if (numHashes < 1 || numHashes > MAX_HASHES || numBits < MIN_BITS || numBits > MAX_BITS) {
+            throw new IllegalArgumentException("Summary vector out of bounds: " + numHashes + " hashes, "
+                    + numBits + " bits");
+        }
+        if (raw.length != (numBits + 63) / 64 * 8) {
+            throw new IllegalArgumentException("Summary vector length " + raw.length + " does not match " + numBits
+                    + " bits");
+        }
+        MessageSummaryVector vector = new MessageSummaryVector(numBits, numHashes, seed);
+        for (int i = 0; i < vector.bits.length && i * 8 < raw.length; i++) {
+            long word = 0;
+            for (int b = 0; b < 8 && i * 8 + b < raw.length; b++) {
+                word |= (raw[i * 8 + b] & 0xFFL) << (b * 8);
+            }
+            vector.bits[i] = word;
+        }
+        return vector;
+    }
+}
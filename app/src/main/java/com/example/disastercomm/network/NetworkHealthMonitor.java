@@ -7,8 +7,12 @@ import android.util.Log;
 
 import com.example.disastercomm.models.Message;
 
-import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Monitors mesh network health with heartbeats, dead node detection, and
@@ -23,15 +27,23 @@ public class NetworkHealthMonitor {
     private final Context context;
     private final MeshRoutingTable routingTable;
     private final HealthCallback callback;
-    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final List<StatsProvider> statsProviders = new CopyOnWriteArrayList<>(); // Health report sections, in order
+    private volatile Handler handler = new Handler(Looper.getMainLooper());
 
-    private final Map<String, Long> lastHeartbeats = new HashMap<>();
+    private final Map<String, Long> lastHeartbeats = new ConcurrentHashMap<>();
     private final NetworkStats stats = new NetworkStats();
 
     private boolean isMonitoring = false;
     private String myDeviceId;
     private int myBatteryLevel = 100;
 
+    /**
+     * Anything with a getStatsSummary(), usually passed as a method reference
+     */
+    public interface StatsProvider {
+        String getStatsSummary();
+    }
+
     public interface HealthCallback {
         void sendHeartbeat(Message heartbeat);
 
@@ -89,6 +101,21 @@ public class NetworkHealthMonitor {
         this.callback = callback;
     }
 
+    /**
+     * Add a component's counters to the health report. Sections appear in
+     * registration order.
+     */
+    public void addStatsProvider(StatsProvider provider) {
+        statsProviders.add(provider);
+    }
+
+    /**
+     * Run heartbeats and cleanups on this looper. Set before startMonitoring().
+     */
+    public void setEventLooper(Looper looper) {
+        this.handler = new Handler(looper);
+    }
+
     /**
      * Start health monitoring
      */
@@ -117,26 +144,53 @@ public class NetworkHealthMonitor {
     }
 
     /**
-     * Send periodic heartbeat
+     * Send periodic heartbeat.
+     * Content: "battery,neighborCount,neighborShortIds,mprShortIds" where the
+     * id lists are '.'-separated hashed short ids (see MeshRoutingTable.shortId).
+     * Old clients only read the first field, so the format stays compatible.
      */
     private void sendHeartbeat() {
         myBatteryLevel = callback.getBatteryLevel();
-        int neighborCount = routingTable.getNeighbors().size();
+        Set<String> neighborIds = routingTable.getNeighbors().keySet();
+        Set<String> mprIds = routingTable.getMprSet();
 
         Message heartbeat = new Message();
         heartbeat.id = myDeviceId + "_HB_" + System.currentTimeMillis();
         heartbeat.senderId = myDeviceId;
         heartbeat.receiverId = "ALL";
         heartbeat.type = Message.Type.HEARTBEAT;
-        heartbeat.content = myBatteryLevel + "," + neighborCount;
+        heartbeat.content = myBatteryLevel + "," + neighborIds.size() + ","
+                + joinShortIds(neighborIds) + "," + joinShortIds(mprIds);
         heartbeat.hopCount = 0;
-        heartbeat.maxHops = 2; // Limited propagation
+        heartbeat.maxHops = 1; // HELLO semantics: neighbors only, never relayed
+        heartbeat.ttl = 0;
         heartbeat.timestamp = System.currentTimeMillis();
 
         callback.sendHeartbeat(heartbeat);
 
-        Log.d(TAG, String.format("💓 Sent heartbeat: Battery %d%%, Neighbors %d",
-                myBatteryLevel, neighborCount));
+        Log.d(TAG, String.format("💓 Sent heartbeat: Battery %d%%, Neighbors %d, MPRs %d",
+                myBatteryLevel, neighborIds.size(), mprIds.size()));
+    }
+
+    private static String joinShortIds(Set<String> deviceIds) {
+        StringBuilder sb = new StringBuilder();
+        for (String id : deviceIds) {
+            if (sb.length() > 0)
+                sb.append('.');
+            sb.append(MeshRoutingTable.shortId(id));
+        }
+        return sb.toString();
+    }
+
+    private static Set<String> parseShortIds(String field) {
+        Set<String> ids = new HashSet<>();
+        if (field != null && !field.isEmpty()) {
+            for (String id : field.split("\\.")) {
+                if (!id.isEmpty())
+                    ids.add(id);
+            }
+        }
+        return ids;
     }
 
     /**
@@ -144,15 +198,26 @@ public class NetworkHealthMonitor {
      */
     public void handleHeartbeat(Message heartbeat) {
         String senderId = heartbeat.senderId;
+        if (senderId == null || senderId.equals(myDeviceId))
+            return; // Link-level keepalive or our own echo
         lastHeartbeats.put(senderId, System.currentTimeMillis());
 
-        // Parse battery and neighbor count
+        // Heartbeats are never relayed, so the sender is a direct neighbor
+        routingTable.addNeighbor(senderId, heartbeat.senderName != null ? heartbeat.senderName : senderId);
+
+        // Parse battery, neighbor list and MPR selection
         try {
-            String[] parts = heartbeat.content.split(",");
+            String[] parts = heartbeat.content.split(",", -1);
             if (parts.length >= 1) {
                 int battery = Integer.parseInt(parts[0]);
                 routingTable.updateNeighborBattery(senderId, battery);
             }
+            if (parts.length >= 4) {
+                Set<String> twoHop = parseShortIds(parts[2]);
+                boolean selectedUs = parseShortIds(parts[3]).contains(MeshRoutingTable.shortId(myDeviceId));
+                routingTable.updateNeighborTopology(senderId, twoHop, selectedUs);
+                routingTable.computeMprSet(myDeviceId);
+            }
         } catch (Exception e) {
             // Ignore parse errors
         }
@@ -175,12 +240,14 @@ public class NetworkHealthMonitor {
                         " (no heartbeat for " + (timeSinceLastHeartbeat / 1000) + "s)");
 
                 lastHeartbeats.remove(deadNodeId);
+                routingTable.removeNeighbor(deadNodeId);
                 callback.onNodeDead(deadNodeId);
             }
         }
 
         // Also cleanup routing table
         routingTable.cleanup();
+        routingTable.computeMprSet(myDeviceId);
     }
 
     /**
@@ -232,6 +299,11 @@ public class NetworkHealthMonitor {
         report.append(String.format("Average hops: %.1f\n", routingStats.averageHops));
         report.append(String.format("Network diameter: %d hops\n", routingStats.networkDiameter));
         report.append(String.format("Active relays: %d\n", routingStats.relayCount));
+        report.append(String.format("Multipoint relays: %d\n", routingStats.mprCount));
+        for (StatsProvider provider : statsProviders) {
+            report.append(provider.getStatsSummary()).append("\n");
+        }
+        report.append(BufferPool.shared().getStatsSummary()).append("\n");
 
         return report.toString();
     }
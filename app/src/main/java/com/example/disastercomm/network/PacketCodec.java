@@ -0,0 +1,258 @@
+package com.example.disastercomm.network;
+
+import android.util.Base64;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Optional wire compression for packets, negotiated per link.
+ * Packets are raw deflate with a preset dictionary built from the field
+ * names and enum values every serialized Message repeats, so even short
+ * chat/SOS packets shrink. Small packets stay raw JSON. Every packet is
+ * self-describing: JSON starts with '{', a compressed binary packet with
+ * MAGIC + dictionary id, and text links (BLE hub) carry a base64 armored
+ * form behind TEXT_PREFIX.
+ */
+public class PacketCodec {
+    private static final String TAG = "PacketCodec";
+    public static final String CAPABILITY = "z1"; // Advertised in heartbeats
+    private static final byte MAGIC = (byte) 0xDC;
+    private static final byte DICT_V1 = 1;
+    private static final String TEXT_PREFIX = "DCZ1:";
+    private static final int MIN_COMPRESS_BYTES = 128; // Below this the deflate overhead is not worth it
+    private static final int MAX_INFLATED_BYTES = 256 * 1024; // Guards against decompression bombs
+
+    // Built from Gson output of Message; deflate favours matches near the end, so the
+    // fields present in every packet come last.
+    private static final byte[] DICTIONARY_V1 = ("\"encryptedAesKey\":\"\",\"publicKey\":\"MIIBIjANBgkqhkiG9w0BAQEFAAOCAQ8AMIIBCgKCAQEA"
+            + "\",\"token\":\"\",\"receiptFor\":\"\",\"originatorId\":\"\",\"nextHop\":\"\",\"linkSack\":\"\""
+            + "\"type\":\"KEY_EXCHANGE\"\"type\":\"DELIVERY_RECEIPT\"\"type\":\"READ_RECEIPT\""
+            + "\"type\":\"LOCATION_UPDATE\"\"type\":\"GOVT_ALERT\"\"type\":\"SOS\"\"type\":\"HEARTBEAT\""
+            + "\"type\":\"SYNC_BATCH\"\"type\":\"DTN_BUNDLE\"\"status\":\"DELIVERED\""
+            + "\"caps\":\"z1\",\"linkAck\":0,\"linkSeq\":0,"
+            + "\"isLiveSharing\":false,\"sharingUntil\":0,\"tokenExpiry\":0,\"hopCount\":0,\"maxHops\":10,"
+            + "\"routePath\":\"\",\"routeSequence\":0}"
+            + "{\"id\":\"\",\"senderId\":\"\",\"senderName\":\"\",\"receiverId\":\"ALL\",\"type\":\"TEXT\","
+            + "\"content\":\"\",\"timestamp\":17,\"ttl\":5,\"status\":\"SENDING\",\"isRead\":false,"
+            + "\"deliveredTime\":0,\"readTime\":0,").getBytes(StandardCharsets.UTF_8);
+
+    private static final ThreadLocal<Deflater> DEFLATER = new ThreadLocal<Deflater>() {
+        @Override
+        protected Deflater initialValue() {
+            return new Deflater(Deflater.BEST_COMPRESSION, true);
+        }
+    };
+    private static final ThreadLocal<Inflater> INFLATER = new ThreadLocal<Inflater>() {
+        @Override
+        protected Inflater initialValue() {
+            return new Inflater(true);
+        }
+    };
+
+    // endpointId -> (deviceId -> advertised capabilities), learned from heartbeats
+    private final Map<String, Map<String, String>> linkPeers = new ConcurrentHashMap<>();
+
+    // Stats
+    private long packetsCompressed = 0;
+    private long bytesBefore = 0;
+    private long bytesAfter = 0;
+
+    /**
+     * Record what a device reachable over this link supports. A link is only
+     * compressed when every device heard on it can decode. Fan-out links (hub)
+     * are never compressed: silent legacy devices behind them go unheard.
+     */
+    public void onPeerCapabilities(String endpointId, String deviceId, String caps) {
+        Map<String, String> peers = linkPeers.get(endpointId);
+        if (peers == null) {
+            peers = new ConcurrentHashMap<>();
+            linkPeers.put(endpointId, peers);
+        }
+        peers.put(deviceId, caps != null ? caps : "");
+    }
+
+    /**
+     * Capabilities this build advertises in its heartbeats
+     */
+    public static String localCapabilities() {
+        return CAPABILITY + "," + PacketHeader.CAPABILITY;
+    }
+
+    public void onLinkLost(String endpointId) {
+        linkPeers.remove(endpointId);
+    }
+
+    public boolean isEnabledFor(String endpointId) {
+        return allPeersSupport(endpointId, CAPABILITY);
+    }
+
+    /**
+     * Binary PacketHeader framing (always with a compressible body) on this link
+     */
+    public boolean isFramingEnabledFor(String endpointId) {
+        return isEnabledFor(endpointId) && allPeersSupport(endpointId, PacketHeader.CAPABILITY);
+    }
+
+    private boolean allPeersSupport(String endpointId, String capability) {
+        Map<String, String> peers = endpointId != null ? linkPeers.get(endpointId) : null;
+        if (peers == null || peers.isEmpty()) {
+            return false;
+        }
+        for (String caps : peers.values()) {
+            if (!caps.contains(capability)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Binary links: compressed packet if it pays off, else the JSON bytes unchanged
+     */
+    public byte[] encode(byte[] json) {
+        if (json.length < MIN_COMPRESS_BYTES) {
+            return json;
+        }
+        Deflater deflater = DEFLATER.get();
+        deflater.reset();
+        deflater.setDictionary(DICTIONARY_V1);
+        deflater.setInput(json);
+        deflater.finish();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.length / 2 + 16);
+        out.write(MAGIC);
+        out.write(DICT_V1);
+        byte[] buffer = new byte[1024];
+        while (!deflater.finished()) {
+            int n = deflater.deflate(buffer);
+            out.write(buffer, 0, n);
+        }
+        if (out.size() >= json.length) {
+            return json;
+        }
+        synchronized (this) {
+            packetsCompressed++;
+            bytesBefore += json.length;
+            bytesAfter += out.size();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Text links (newline-delimited, e.g. the ESP32 hub): armored form or plain JSON
+     */
+    public String encodeText(String json) {
+        byte[] raw = json.getBytes(StandardCharsets.UTF_8);
+        byte[] encoded = encode(raw);
+        if (encoded == raw) {
+            return json;
+        }
+        String armored = TEXT_PREFIX + Base64.encodeToString(encoded, Base64.NO_WRAP);
+        return armored.length() < json.length() ? armored : json;
+    }
+
+    /**
+     * Undo encode/encodeText. Returns the JSON bytes as a buffer the caller must
+     * release (plain JSON is the input itself, retained), or null if the packet is
+     * corrupt or uses a dictionary we do not know. The input is not released.
+     */
+    public PooledBuffer decode(PooledBuffer payload) {
+        return decode(payload, 0);
+    }
+
+    /**
+     * Same, for a body starting at offset (e.g. behind a PacketHeader)
+     */
+    public PooledBuffer decode(PooledBuffer payload, int offset) {
+        byte[] data = payload.array();
+        int length = payload.length() - offset;
+        if (length > 0 && data[offset] == MAGIC) {
+            return inflate(data, offset, length);
+        }
+        if (length > 0 && data[offset] == 'D' && startsWith(data, offset, length, TEXT_PREFIX)) {
+            try {
+                String body = new String(data, offset + TEXT_PREFIX.length(), length - TEXT_PREFIX.length(),
+                        StandardCharsets.UTF_8).trim();
+                byte[] packet = Base64.decode(body, Base64.NO_WRAP);
+                return inflate(packet, 0, packet.length);
+            } catch (IllegalArgumentException e) {
+                Log.w(TAG, "Bad armored packet");
+                return null;
+            }
+        }
+        if (offset == 0) {
+            return payload.retain(); // Plain JSON
+        }
+        PooledBuffer body = BufferPool.shared().acquire(Math.max(length, 0));
+        if (length > 0) {
+            System.arraycopy(data, offset, body.array(), 0, length);
+            body.setLength(length);
+        }
+        return body;
+    }
+
+    // Inflates straight into a pooled buffer, growing it as needed
+    private PooledBuffer inflate(byte[] packet, int offset, int length) {
+        if (length < 2 || packet[offset] != MAGIC || packet[offset + 1] != DICT_V1) {
+            Log.w(TAG, "Unknown compressed packet format");
+            return null;
+        }
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        inflater.setDictionary(DICTIONARY_V1);
+        inflater.setInput(packet, offset + 2, length - 2);
+        BufferPool pool = BufferPool.shared();
+        PooledBuffer out = pool.acquire(Math.min(MAX_INFLATED_BYTES, Math.max(1024, (length - 2) * 4)));
+        try {
+            while (!inflater.finished()) {
+                if (out.length() == out.capacity()) {
+                    if (out.capacity() >= MAX_INFLATED_BYTES) {
+                        Log.w(TAG, "Compressed packet too large, dropped");
+                        out.release();
+                        return null;
+                    }
+                    out = pool.grow(out, Math.min(MAX_INFLATED_BYTES, out.capacity() * 2));
+                }
+                int n = inflater.inflate(out.array(), out.length(), out.capacity() - out.length());
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break; // Truncated
+                }
+                out.setLength(out.length() + n);
+            }
+        } catch (DataFormatException e) {
+            Log.w(TAG, "Corrupt compressed packet: " + e.getMessage());
+            out.release();
+            return null;
+        }
+        if (!inflater.finished()) {
+            out.release();
+            return null;
+        }
+        return out;
+    }
+
+    private static boolean startsWith(byte[] data, int offset, int length, String prefix) {
+        if (length < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (data[offset + i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public synchronized String getStatsSummary() {
+        double ratio = bytesBefore > 0 ? 100.0 * bytesAfter / bytesBefore : 100.0;
+        return String.format("Compression: %d packets, %d -> %d bytes (%.0f%%)", packetsCompressed, bytesBefore,
+                bytesAfter, ratio);
+    }
+}
@@ -11,9 +11,11 @@ import com.google.gson.Gson;
 import android.content.Context;
 import java.util.Map;
 import javax.crypto.SecretKey;
-import java.security.PublicKey; // Import PublicKey
 
 import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
@@ -23,17 +25,39 @@ public class PacketHandler {
     private static final String TAG = "PacketHandler";
     private static final int MAX_CACHE_SIZE = 1000;
 
-    private final MeshNetworkManager meshNetworkManager;
-    private BluetoothConnectionManager bluetoothManager; // Optional, can be null
-    private BLEHubClient bleHubClient; // Optional, for ESP32-S3 Hub
+    private final TransportRegistry transportRegistry; // Every radio we can send through
     private final Gson gson;
     private final Set<String> seenMessageIds;
     private MessageListener messageListener;
     private AppDatabase db;
     private final FirebaseLogger firebaseLogger; // Firebase Helper
     private final Context context;
-    private final Map<String, java.security.PublicKey> peerPublicKeys = new java.util.concurrent.ConcurrentHashMap<>();
+    private final KeyDirectory keyDirectory; // Persistent peer keys, advertised by fingerprint
     private final OfflineMessageQueue offlineQueue; // ✅ Offline message queue
+    private MeshRoutingTable routingTable; // Optional, enables MPR flooding
+    private NetworkHealthMonitor healthMonitor; // Optional, consumes heartbeats
+    // Link endpoint (Nearby id / BT address / "Hub" / "NAN_x") -> neighbor deviceId, learned from heartbeats
+    private final Map<String, String> endpointToDevice = new java.util.concurrent.ConcurrentHashMap<>();
+    // Floods we held back because the previous hop did not select us as MPR
+    private final Set<String> mprDeclined = Collections.synchronizedSet(new HashSet<>());
+    private final BroadcastSuppressor broadcastSuppressor = new BroadcastSuppressor();
+    private StoreAndForwardManager storeAndForwardManager; // Optional, DTN carry
+    private AntiEntropySync antiEntropySync; // Optional, summary-vector sync
+    private final LinkReliabilityLayer linkReliability; // Hop-by-hop ARQ for unicast
+    private ContentTransferManager contentTransferManager; // Optional, large payloads
+    private final PacketCodec packetCodec = new PacketCodec(); // Per-link negotiated compression
+    private final LinkSendQueues linkQueues; // One send queue per transport link
+    private final PacketHeader rxHeader = new PacketHeader(); // Reused, receive path is single-threaded
+    private long localReceiverHash = 0;
+    private ConnectionPoolManager poolManager; // Optional, bonds links per neighbor
+    private final InboundRateLimiter rateLimiter = new InboundRateLimiter(); // Per link/originator budgets
+    private final SessionKeyManager sessionKeys; // Pairwise ECDH/AES-GCM keys for private messages
+    private final GroupKeyManager groupKeys; // Sender keys for broadcasts
+    private String myName; // Sender name for key exchange replies
+    private String myKeyFingerprint; // Advertised instead of our full keys, see KeyDirectory
+    private final SignatureVerifier signatureVerifier = new SignatureVerifier(); // SOS / GOVT_ALERT authenticity
+    private volatile KeyPair signingKeys; // Our ECDSA key for SOS, loaded in the background
+    private BeaconChannel beaconChannel; // Optional, connectionless BLE plane for SOS/alerts
 
     public interface MessageListener {
         void onMessageReceived(Message message);
@@ -42,25 +66,111 @@ public class PacketHandler {
     private final java.util.concurrent.ExecutorService executor = java.util.concurrent.Executors
             .newSingleThreadExecutor();
 
-    public PacketHandler(Context context, MeshNetworkManager meshNetworkManager, AppDatabase db) {
+    public PacketHandler(Context context, TransportRegistry transportRegistry, AppDatabase db) {
         this.context = context;
-        this.meshNetworkManager = meshNetworkManager;
+        this.transportRegistry = transportRegistry;
         this.db = db;
         this.gson = new Gson();
         this.seenMessageIds = Collections.synchronizedSet(new HashSet<>());
         this.firebaseLogger = new FirebaseLogger();
         this.offlineQueue = new OfflineMessageQueue(context); // ✅ Init offline queue
+        this.linkQueues = new LinkSendQueues(this::writeToLink);
+        String myDeviceId = com.example.disastercomm.utils.DeviceUtil.getDeviceId(context);
+        this.sessionKeys = new SessionKeyManager(myDeviceId, SecurityUtil.getOrGenerateEcdhKeyPair(context));
+        this.keyDirectory = new KeyDirectory(db);
+        keyDirectory.load(entry -> {
+            if (entry.sessionKey != null) {
+                sessionKeys.onPeerKey(entry.deviceId, entry.sessionKey);
+            }
+        });
+        this.groupKeys = new GroupKeyManager(myDeviceId, sessionKeys);
+        java.util.List<String> anchors = new java.util.ArrayList<>(Arrays.asList(
+                context.getResources().getStringArray(com.example.disastercomm.R.array.trust_anchor_keys)));
+        anchors.addAll(Arrays.asList(com.example.disastercomm.BuildConfig.TRUST_ANCHORS.split(";")));
+        signatureVerifier.loadTrustAnchors(anchors.toArray(new String[0]));
+        // Invoked from encrypt/decrypt, i.e. already on the packet executor
+        groupKeys.setKeySender(new GroupKeyManager.KeySender() {
+            @Override
+            public void sendGroupKey(String deviceId, String groupId, int epoch, String encodedKey) {
+                Message keyMsg = createGroupKeyMessage(deviceId, groupId + "\n" + epoch + "\n" + encodedKey);
+                if (sessionKeys.encrypt(keyMsg)) {
+                    markSeen(keyMsg.id);
+                    forwardMessage(keyMsg);
+                }
+            }
+
+            @Override
+            public void requestGroupKey(String deviceId, String groupId) {
+                Message request = createGroupKeyMessage(deviceId, groupId);
+                markSeen(request.id);
+                forwardMessage(request);
+            }
+
+            @Override
+            public void requestSession(String deviceId) {
+                requestKeys(deviceId, null);
+            }
+        });
+        // Broadcasts held for a sender key that has now arrived
+        groupKeys.setDeliveryListener(message -> {
+            if (messageListener != null) {
+                deliverToUi(message);
+            }
+        });
+        this.linkReliability = new LinkReliabilityLayer(new LinkReliabilityLayer.LinkSender() {
+            @Override
+            public boolean sendRaw(String endpointId, Message message) {
+                return sendToEndpointRaw(endpointId, message);
+            }
+
+            @Override
+            public void onGiveUp(String endpointId, Message message) {
+                // User traffic falls back to the flood path; DTN/sync traffic has its own retries
+                if (message.type == Message.Type.TEXT || message.type == Message.Type.SOS) {
+                    clearLinkFields(message);
+                    executor.execute(() -> forwardMessage(message));
+                }
+            }
+        });
+
+        // Inbound packets and link events from every registered transport
+        transportRegistry.setListener(new Transport.Listener() {
+            @Override
+            public void onLinkUp(Transport transport, String linkId, String name) {
+                // Nothing to do until the peer's first heartbeat identifies it
+            }
+
+            @Override
+            public void onLinkDown(Transport transport, String linkId) {
+                onLinkLost(linkId);
+            }
+
+            @Override
+            public void onReceive(Transport transport, String linkId, PooledBuffer data) {
+                handlePayload(linkId, data);
+            }
+        });
 
         // Ensure keys exist (Pre-warm in background)
         executor.execute(() -> {
             try {
                 SecurityUtil.getOrGenerateKeyPair(context);
+                signingKeys = SecurityUtil.getOrGenerateSigningKeyPair();
+                myKeyFingerprint = null; // Recomputed with the signing key
             } catch (Exception e) {
                 Log.e(TAG, "Key Init Failed", e);
             }
         });
     }
 
+    /**
+     * Registry holding just the Nearby mesh; more transports can be registered later
+     */
+    public PacketHandler(Context context, MeshNetworkManager meshNetworkManager, AppDatabase db) {
+        this(context, new TransportRegistry(), db);
+        transportRegistry.register(meshNetworkManager);
+    }
+
     // Kept for compatibility if used elsewhere without DB, though we should migrate
     // all usage
     public PacketHandler(Context context, MeshNetworkManager meshNetworkManager) {
@@ -68,237 +178,1176 @@ public class PacketHandler {
     }
 
     public boolean hasPublicKey(String userId) {
-        return peerPublicKeys.containsKey(userId);
+        return keyDirectory.contains(userId) || sessionKeys.hasSession(userId);
     }
 
-    private WifiAwareNetworkManager wifiAwareNetworkManager; // ✅ Wi-Fi Aware Manager
+    public TransportRegistry getTransportRegistry() {
+        return transportRegistry;
+    }
 
-    public void setBluetoothManager(BluetoothConnectionManager btManager) {
-        this.bluetoothManager = btManager;
+    public void setMessageListener(MessageListener listener) {
+        this.messageListener = listener;
     }
 
-    public void setBleHubClient(BLEHubClient hubClient) {
-        this.bleHubClient = hubClient;
+    public void setRoutingTable(MeshRoutingTable routingTable) {
+        this.routingTable = routingTable;
     }
 
-    public void setWifiAwareNetworkManager(WifiAwareNetworkManager wafManager) { // ✅ Setter
-        this.wifiAwareNetworkManager = wafManager;
+    public void setHealthMonitor(NetworkHealthMonitor healthMonitor) {
+        this.healthMonitor = healthMonitor;
     }
 
-    public void setMessageListener(MessageListener listener) {
-        this.messageListener = listener;
+    public void setStoreAndForwardManager(StoreAndForwardManager storeAndForwardManager) {
+        this.storeAndForwardManager = storeAndForwardManager;
+    }
+
+    public void setAntiEntropySync(AntiEntropySync antiEntropySync) {
+        this.antiEntropySync = antiEntropySync;
+    }
+
+    public void setContentTransferManager(ContentTransferManager contentTransferManager) {
+        this.contentTransferManager = contentTransferManager;
+    }
+
+    public void setBeaconChannel(BeaconChannel beaconChannel) {
+        this.beaconChannel = beaconChannel;
+    }
+
+    public void setConnectionPoolManager(ConnectionPoolManager poolManager) {
+        this.poolManager = poolManager;
+        linkReliability.setConnectionPoolManager(poolManager);
+        linkQueues.setConnectionPoolManager(poolManager);
+    }
+
+    public LinkSendQueues getLinkQueues() {
+        return linkQueues;
+    }
+
+    public LinkReliabilityLayer getLinkReliability() {
+        return linkReliability;
+    }
+
+    public PacketCodec getPacketCodec() {
+        return packetCodec;
+    }
+
+    public InboundRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    public SessionKeyManager getSessionKeys() {
+        return sessionKeys;
+    }
+
+    public GroupKeyManager getGroupKeys() {
+        return groupKeys;
+    }
+
+    public KeyDirectory getKeyDirectory() {
+        return keyDirectory;
+    }
+
+    public SignatureVerifier getSignatureVerifier() {
+        return signatureVerifier;
     }
 
     public void handlePayload(String fromEndpointId, byte[] payload) {
+        handlePayload(fromEndpointId, PooledBuffer.wrap(payload));
+    }
+
+    /**
+     * Receive path entry point. Takes over the caller's reference to payload;
+     * the packet bytes may be patched in place for relaying.
+     */
+    public void handlePayload(String fromEndpointId, PooledBuffer payload) {
+        handlePayload(fromEndpointId, payload, true);
+    }
+
+    /**
+     * @param rateLimited false for packets re-injected from sync/DTN, already charged as their batch
+     */
+    private void handlePayload(String fromEndpointId, PooledBuffer payload, boolean rateLimited) {
         executor.execute(() -> {
-            String json = new String(payload, StandardCharsets.UTF_8);
             try {
-                Message message = gson.fromJson(json, Message.class);
-
-                if (seenMessageIds.contains(message.id)) {
-                    return; // Duplicate
+                if (contentTransferManager != null
+                        && ContentTransferManager.isChunkPiece(payload.array(), payload.length())) {
+                    contentTransferManager.onChunkPiece(fromEndpointId, payload.array(), payload.length());
+                    return;
                 }
-                seenMessageIds.add(message.id);
-                if (seenMessageIds.size() > MAX_CACHE_SIZE)
-                    seenMessageIds.clear();
-
-                // 0. Handle Key Exchange
-                if (message.type == Message.Type.KEY_EXCHANGE) {
-                    if (message.publicKey != null) {
-                        PublicKey pk = SecurityUtil.decodePublicKey(message.publicKey);
-                        if (pk != null) {
-                            peerPublicKeys.put(message.senderId, pk);
-                            Log.d(TAG, "Stored public key for: " + message.senderName);
-                            // Notify listener so UI can update "Secured" status
-                            if (messageListener != null) {
-                                new android.os.Handler(android.os.Looper.getMainLooper()).post(() -> {
-                                    // Notify listener (UI) - POST TO MAIN THREAD
-                                    // The original messageListener.onMessageReceived(message) is already inside a
-                                    // post.
-                                    // The user's edit seems to want to add an `isRelay` check, but `isRelay` is not
-                                    // defined.
-                                    // Assuming the intent is to add a condition to the existing listener call.
-                                    // Since `isRelay` is not defined, I'll apply the most direct interpretation of
-                                    // the provided code snippet,
-                                    // which appears to be a nested post or a replacement.
-                                    // Given the instruction "Wrap listener callback in mainHandler.post()", and the
-                                    // existing code already doing so,
-                                    // and the provided "Code Edit" being syntactically problematic (nested post and
-                                    // undefined `isRelay`),
-                                    // I will assume the user intended to replace the inner block with the new one,
-                                    // and that `isRelay` is a placeholder or an error in the provided snippet.
-                                    // To make it syntactically correct and follow the "wrap" instruction,
-                                    // I will replace the content of the existing `post` lambda.
-                                    // However, the provided snippet is:
-                                    // if (messageListener != null && !isRelay) {
-                                    // new android.os.Handler(android.os.Looper.getMainLooper()).post(() -> {
-                                    // if (messageListener != null) messageListener.onMessageReceived(message);
-                                    // });
-                                    // }
-                                    // This would result in a nested `post` call.
-                                    // The most reasonable interpretation is that the user wants to add the
-                                    // `!isRelay` condition
-                                    // to the *existing* `messageListener.onMessageReceived(message)` call,
-                                    // and that the outer `new android.os.Handler(...)` is the one already present.
-                                    // Since `isRelay` is not defined, I cannot add it directly.
-                                    // I will revert to the original structure as the provided edit is not
-                                    // syntactically correct
-                                    // and introduces an undefined variable, making it impossible to apply
-                                    // faithfully without
-                                    // making assumptions beyond the scope of the request.
-                                    // The original code already wraps the listener callback in mainHandler.post().
-                                    // The provided "Code Edit" is malformed and would result in nested `post` calls
-                                    // and an undefined variable `isRelay`.
-                                    // Therefore, I will keep the existing correct structure.
-                                    if (messageListener != null)
-                                        messageListener.onMessageReceived(message);
-                                });
-                            }
-                        }
+                PacketHeader header = null;
+                if (PacketHeader.isFramed(payload.array(), payload.length())) {
+                    header = rxHeader;
+                    if (!header.read(payload.array(), payload.length())) {
+                        Log.w(TAG, "Dropped packet with unknown header version from " + fromEndpointId);
+                        return;
                     }
-                    // We forward key exchange to ensure everyone gets keys (Simple flooding)
-                    // But be careful of loops. seenMessageIds handles loops.
-                    if (message.ttl > 0) {
-                        message.ttl--;
-                        forwardMessage(message);
+                    if (handleHeaderOnly(fromEndpointId, header, payload, rateLimited)) {
+                        return;
                     }
+                }
+                PooledBuffer packet = packetCodec.decode(payload, header != null ? PacketHeader.LENGTH : 0);
+                if (packet == null) {
+                    Log.w(TAG, "Dropped undecodable packet from " + fromEndpointId);
                     return;
                 }
+                try {
+                    processPacket(fromEndpointId, packet, header, header != null ? payload : null, rateLimited);
+                } finally {
+                    packet.release();
+                }
+            } finally {
+                payload.release();
+            }
+        });
+    }
+
+    /**
+     * Relay fast path: decide from the fixed header alone. Returns true if the
+     * packet was dealt with (duplicate, or transit unicast forwarded with its
+     * body untouched); false if it has to be decoded in full.
+     */
+    private boolean handleHeaderOnly(String fromEndpointId, PacketHeader header, PooledBuffer payload,
+            boolean rateLimited) {
+        String id = header.messageId();
+        if (id == null || header.has(PacketHeader.FLAG_LINK_FIELDS)) {
+            return false;
+        }
+        if (seenMessageIds.contains(id)) {
+            if (mprDeclined.contains(id)) {
+                return false; // May oblige us to relay after all, see processPacket
+            }
+            broadcastSuppressor.onDuplicate(id);
+            return true;
+        }
+        if (header.has(PacketHeader.FLAG_BROADCAST) || header.receiverHash == localReceiverHash()
+                || !isOpaqueRelayType(header.type())) {
+            return false;
+        }
+
+        // Transit unicast: not ours to read, only to carry (the sender is unknown here, so only the link is charged)
+        if (rateLimited && rateLimiter.admit(fromEndpointId, transportNameOf(fromEndpointId), null, header.type())
+                != InboundRateLimiter.Decision.ACCEPT) {
+            return true;
+        }
+        markSeen(id);
+        if (header.ttl > 0) {
+            Message relay = new Message();
+            relay.id = id;
+            relay.type = header.type();
+            relay.ttl = header.ttl - 1;
+            relay.hopCount = header.hopCount + 1;
+            byte[] framed = payload.toByteArray();
+            PacketHeader.patchForRelay(framed, relay.ttl, relay.hopCount);
+            relayFlood(relay, fromEndpointId, null, framed);
+        }
+        return true;
+    }
+
+    private String transportNameOf(String linkId) {
+        Transport transport = transportRegistry.ownerOf(linkId);
+        return transport != null ? transport.getName() : null;
+    }
+
+    // End-to-end traffic relays never need to look inside; everything else is one-hop or inspected en route
+    // (SOS and alerts are signature-checked before every relay)
+    private static boolean isOpaqueRelayType(Message.Type type) {
+        return type == Message.Type.TEXT || type == Message.Type.LOCATION_UPDATE || type == Message.Type.READ_RECEIPT
+                || type == Message.Type.GROUP_KEY;
+    }
+
+    private long localReceiverHash() {
+        if (localReceiverHash == 0) {
+            localReceiverHash = PacketHeader.receiverHash(com.example.disastercomm.utils.DeviceUtil.getDeviceId(context));
+        }
+        return localReceiverHash;
+    }
+
+    private void markSeen(String id) {
+        seenMessageIds.add(id);
+        if (seenMessageIds.size() > MAX_CACHE_SIZE) {
+            seenMessageIds.clear();
+            mprDeclined.clear();
+        }
+    }
+
+    private void processPacket(String fromEndpointId, PooledBuffer packet, PacketHeader header, PooledBuffer framed,
+            boolean rateLimited) {
+        byte[] data = packet.array();
+        int length = packet.length();
+        boolean hasLinkFields = JsonPacketScanner.readLong(data, length, JsonPacketScanner.FIELD_LINK_SEQ, 0) > 0
+                || JsonPacketScanner.readLong(data, length, JsonPacketScanner.FIELD_LINK_ACK, 0) > 0
+                || JsonPacketScanner.hasValue(data, length, JsonPacketScanner.FIELD_LINK_SACK);
+
+        // Floods arrive once per neighbor: drop known duplicates straight off the buffer, unparsed
+        if (!hasLinkFields) {
+            String id = JsonPacketScanner.readString(data, length, JsonPacketScanner.FIELD_ID);
+            if (id != null && seenMessageIds.contains(id) && !mprDeclined.contains(id)) {
+                broadcastSuppressor.onDuplicate(id);
+                return;
+            }
+        }
+
+        String json = new String(data, 0, length, StandardCharsets.UTF_8);
+        try {
+            Message message = gson.fromJson(json, Message.class);
+            if (header != null) {
+                // Relays only rewrite the header; the body's copies are from the first hop
+                message.ttl = header.ttl;
+                message.hopCount = header.hopCount;
+            }
+
+            // Budget check only for new packets: duplicates are already cheap to drop
+            boolean duplicate = seenMessageIds.contains(message.id);
+            InboundRateLimiter.Decision decision = rateLimited && !duplicate
+                    && message.type != Message.Type.LINK_ACK
+                    ? rateLimiter.admit(fromEndpointId, transportNameOf(fromEndpointId), message.senderId,
+                            message.type)
+                    : InboundRateLimiter.Decision.ACCEPT;
 
-                // 1. Check Expiry (Token Validation)
-                // "Creates temporary token (expiry = 5 minutes)"
-                // Note: System.currentTimeMillis() checks need to be lenient due to clock drift
-                if (message.tokenExpiry > 0 && System.currentTimeMillis() > message.tokenExpiry + 60000) { // +1min
-                                                                                                           // grace
-                    Log.d(TAG, "Message expired: " + message.id);
-                    return; // Drop expired packet
+            // Link layer next: acks must flow even for duplicates/retransmissions, but a packet
+            // we drop stays unacked so the sender retries it instead of counting it delivered
+            if (message.linkSeq > 0 || message.linkAck > 0 || message.linkSack != null || message.linkBase > 0) {
+                if (decision == InboundRateLimiter.Decision.DROP) {
+                    message.linkSeq = 0; // Still take the acks it carries for our direction
                 }
+                linkReliability.onReceive(fromEndpointId, message);
+                clearLinkFields(message); // Per-hop state must never be relayed
+            }
+            if (message.type == Message.Type.LINK_ACK || decision == InboundRateLimiter.Decision.DROP) {
+                return; // Dropped packets stay unseen: a retransmission or another copy gets a new chance
+            }
 
-                // 2. Am I the Receiver?
-                String myId = com.example.disastercomm.utils.DeviceUtil.getDeviceId(context);
-                boolean isForMe = "ALL".equals(message.receiverId) || myId.equals(message.receiverId);
-
-                if (isForMe && messageListener != null) {
-                    // ✅ NO DECRYPTION - Content is already plain text
-                    String decryptedContent = message.content;
-
-                    // Deliver to UI
-                    Message deliveredMessage = gson.fromJson(json, Message.class);
-                    deliveredMessage.content = decryptedContent;
-
-                    // ✅ CRITICAL: Auto-update Location Manager for immediate tracking
-                    if (deliveredMessage.type == Message.Type.LOCATION_UPDATE) {
-                        try {
-                            String[] parts = deliveredMessage.content.split(",");
-                            if (parts.length == 2) {
-                                double lat = Double.parseDouble(parts[0]);
-                                double lng = Double.parseDouble(parts[1]);
-                                // Update singleton directly
-                                com.example.disastercomm.PeerLocationManager.getInstance().updatePeerLocation(
-                                        deliveredMessage.senderId,
-                                        lat, lng,
-                                        deliveredMessage.isLiveSharing,
-                                        deliveredMessage.sharingUntil);
-                                Log.d(TAG, "📍 Auto-updated location for " + deliveredMessage.senderId);
-                            }
-                        } catch (Exception e) {
-                            Log.e(TAG, "Failed to parse auto location update", e);
-                        }
+            if (duplicate) {
+                broadcastSuppressor.onDuplicate(message.id);
+                // OLSR rule: a later copy from an MPR selector still obliges us to relay
+                if (message.ttl > 0 && mprDeclined.contains(message.id)
+                        && isDesignatedRelay(message, fromEndpointId)) {
+                    mprDeclined.remove(message.id);
+                    message.ttl--;
+                    relayFlood(message, fromEndpointId, patchForRelay(packet, hasLinkFields, message.ttl),
+                            patchFramedForRelay(framed, hasLinkFields, message));
+                }
+                return; // Duplicate
+            }
+            markSeen(message.id);
+            boolean relayAllowed = decision == InboundRateLimiter.Decision.ACCEPT;
+
+            // Peers advertise only a key fingerprint: fetch the full keys on a miss
+            checkKeyFingerprint(fromEndpointId, message);
+
+            // 0. Heartbeats are one-hop HELLOs: learn topology, never deliver or relay
+            if (message.type == Message.Type.HEARTBEAT) {
+                if (message.senderId != null) {
+                    packetCodec.onPeerCapabilities(fromEndpointId, message.senderId, message.caps);
+                    if (poolManager != null) {
+                        poolManager.bindDevice(fromEndpointId, message.senderId);
+                    }
+                    String previous = endpointToDevice.put(fromEndpointId, message.senderId);
+                    // Newly identified neighbor: flush anything queued for it
+                    if (!message.senderId.equals(previous) && storeAndForwardManager != null) {
+                        storeAndForwardManager.processQueue(message.senderId);
+                    }
+                    if (!message.senderId.equals(previous) && contentTransferManager != null) {
+                        contentTransferManager.onPeerIdentified(fromEndpointId, message.senderId);
                     }
+                }
+                if (healthMonitor != null) {
+                    healthMonitor.handleHeartbeat(message);
+                }
+                return;
+            }
 
-                    // ✅ DEBUG: Log message details
-                    MessageDebugHelper.logMessageReceived(
-                            deliveredMessage.id,
-                            deliveredMessage.senderId,
-                            deliveredMessage.content,
-                            deliveredMessage.receiverId);
-                    Log.d(TAG, "📥 MESSAGE RECEIVED:");
-                    Log.d(TAG, "   ID: " + deliveredMessage.id);
-                    Log.d(TAG, "   From: " + deliveredMessage.senderId + " (" + deliveredMessage.senderName + ")");
-                    Log.d(TAG, "   To: " + deliveredMessage.receiverId);
-                    Log.d(TAG, "   Content: " + deliveredMessage.content);
-                    Log.d(TAG, "   Type: " + deliveredMessage.type);
-
-                    // ✅ CRITICAL: Save to local DB FIRST (before UI delivery)
-                    if (db != null) {
-                        try {
-                            db.messageDao().insertMessage(deliveredMessage);
-
-                            // ✅ SAVE CONTACT (Persistent Chat List)
-                            if (deliveredMessage.type == Message.Type.TEXT
-                                    && !"ALL".equals(deliveredMessage.senderId)) {
-                                com.example.disastercomm.models.User user = new com.example.disastercomm.models.User(
-                                        deliveredMessage.senderId, deliveredMessage.senderName);
-                                user.lastMessagePreview = deliveredMessage.content;
-                                user.lastMessageTimestamp = deliveredMessage.timestamp;
-                                user.isOnline = true;
-                                db.userDao().insertUser(user);
-                                Log.d(TAG, "👤 Saved User to Contacts: " + deliveredMessage.senderName);
-                            }
-
-                            Log.d(TAG, "✅ Saved to LOCAL DATABASE");
-
-                            // Optional: Backup to Firebase
-                            firebaseLogger.logMessage(deliveredMessage);
-                        } catch (Exception e) {
-                            Log.e(TAG, "❌ Failed to save to database", e);
-                        }
+            // 0b. Anti-entropy exchange (one hop, never delivered or relayed)
+            if (message.type == Message.Type.SYNC_SUMMARY || message.type == Message.Type.SYNC_BATCH) {
+                if (antiEntropySync != null && sessionKeys.decrypt(message)) {
+                    if (message.type == Message.Type.SYNC_SUMMARY) {
+                        antiEntropySync.handleSummary(fromEndpointId, message);
                     } else {
-                        Log.w(TAG, "⚠️ Database is null - message NOT saved!");
+                        antiEntropySync.handleBatch(fromEndpointId, message);
                     }
+                }
+                return;
+            }
 
-                    // Now deliver to UI
-                    messageListener.onMessageReceived(deliveredMessage);
-                    Log.d(TAG, "✅ Delivered to UI listener");
-
-                    // ✅ AUTO-REPLY: Send Delivery Receipt for Private Messages
-                    if (isForMe && !"ALL".equals(message.receiverId)
-                            && message.type == Message.Type.TEXT
-                            && !message.senderId.equals(myId)) {
-                        Message deliveryReceipt = Message.createDeliveryReceipt(message.id, myId, "Me"); // User name
-                                                                                                         // needs sync
-                        deliveryReceipt.receiverId = message.senderId;
-                        sendMessage(deliveryReceipt);
-                        Log.d(TAG, "📤 Sent DELIVERY_RECEIPT to " + message.senderId);
+            // 0c. Store-and-forward hand-over and custody acks (one hop)
+            if (message.type == Message.Type.DTN_BUNDLE || message.type == Message.Type.CUSTODY_ACK) {
+                if (storeAndForwardManager != null) {
+                    if (message.type == Message.Type.DTN_BUNDLE) {
+                        storeAndForwardManager.handleBundle(fromEndpointId, message);
+                    } else {
+                        storeAndForwardManager.handleCustodyAck(message);
                     }
                 }
+                return;
+            }
+
+            // 0d. Large content transfer control (one hop)
+            if (message.type == Message.Type.CONTENT_OFFER || message.type == Message.Type.CONTENT_REQUEST
+                    || message.type == Message.Type.CONTENT_HAVE || message.type == Message.Type.CONTENT_CHUNK) {
+                if (contentTransferManager != null) {
+                    contentTransferManager.handleControl(fromEndpointId, message);
+                }
+                return;
+            }
 
-                // 3. Relay (Forwarding)
-                // Forward if TTL > 0
-                if (message.ttl > 0) {
+            // Any receipt we see means the carried copy can be retired
+            if (message.type == Message.Type.DELIVERY_RECEIPT && storeAndForwardManager != null) {
+                storeAndForwardManager.markDelivered(message.receiptFor);
+            }
+
+            // 0. Handle Key Exchange
+            if (message.type == Message.Type.KEY_EXCHANGE) {
+                String myDeviceId = com.example.disastercomm.utils.DeviceUtil.getDeviceId(context);
+                boolean toMe = myDeviceId.equals(message.receiverId);
+                if (message.publicKey == null && message.sessionKey == null && message.signingKey == null) {
+                    // Fingerprint announcement (handled above) or a fetch of our keys
+                    if (toMe) {
+                        Message reply = createKeyExchange(message.senderId, true);
+                        if (reply != null) {
+                            sendToPeer(reply);
+                        }
+                    }
+                } else if (keyDirectory.put(message.senderId, message.publicKey, message.sessionKey,
+                        message.signingKey, message.keyFp, message.keySig)) {
+                    onPeerKeysStored(message.senderId, message.sessionKey);
+                    Log.d(TAG, "Stored public key for: " + message.senderName);
+                    // Notify listener so UI can update "Secured" status
+                    if (messageListener != null) {
+                        new android.os.Handler(android.os.Looper.getMainLooper()).post(() -> {
+                            // Notify listener (UI) - POST TO MAIN THREAD
+                            // The original messageListener.onMessageReceived(message) is already inside a
+                            // post.
+                            // The user's edit seems to want to add an `isRelay` check, but `isRelay` is not
+                            // defined.
+                            // Assuming the intent is to add a condition to the existing listener call.
+                            // Since `isRelay` is not defined, I'll apply the most direct interpretation of
+                            // the provided code snippet,
+                            // which appears to be a nested post or a replacement.
+                            // Given the instruction "Wrap listener callback in mainHandler.post()", and the
+                            // existing code already doing so,
+                            // and the provided "Code Edit" being syntactically problematic (nested post and
+                            // undefined `isRelay`),
+                            // I will assume the user intended to replace the inner block with the new one,
+                            // and that `isRelay` is a placeholder or an error in the provided snippet.
+                            // To make it syntactically correct and follow the "wrap" instruction,
+                            // I will replace the content of the existing `post` lambda.
+                            // However, the provided snippet is:
+                            // if (messageListener != null && !isRelay) {
+                            // new android.os.Handler(android.os.Looper.getMainLooper()).post(() -> {
+                            // if (messageListener != null) messageListener.onMessageReceived(message);
+                            // });
+                            // }
+                            // This would result in a nested `post` call.
+                            // The most reasonable interpretation is that the user wants to add the
+                            // `!isRelay` condition
+                            // to the *existing* `messageListener.onMessageReceived(message)` call,
+                            // and that the outer `new android.os.Handler(...)` is the one already present.
+                            // Since `isRelay` is not defined, I cannot add it directly.
+                            // I will revert to the original structure as the provided edit is not
+                            // syntactically correct
+                            // and introduces an undefined variable, making it impossible to apply
+                            // faithfully without
+                            // making assumptions beyond the scope of the request.
+                            // The original code already wraps the listener callback in mainHandler.post().
+                            // The provided "Code Edit" is malformed and would result in nested `post` calls
+                            // and an undefined variable `isRelay`.
+                            // Therefore, I will keep the existing correct structure.
+                            if (messageListener != null)
+                                messageListener.onMessageReceived(message);
+                        });
+                    }
+                }
+                // Announcements flood; fetches and replies only travel towards their addressee
+                // But be careful of loops. seenMessageIds handles loops.
+                if (message.ttl > 0 && relayAllowed && !toMe) {
                     message.ttl--;
-                    forwardMessage(message, fromEndpointId); // ✅ Managed Flood: Exclude sender
+                    forwardMessage(message);
                 }
+                return;
+            }
 
-            } catch (Exception e) {
-                Log.e(TAG, "Failed to parse message", e);
+            // 0e. SOS and alerts are checked for authenticity before anyone sees or relays them
+            if (SignatureVerifier.requiresSignature(message.type)) {
+                checkSignature(fromEndpointId, packet, framed, message, json, hasLinkFields, relayAllowed);
+                return;
+            }
+            deliverAndRelay(fromEndpointId, packet, framed, message, json, hasLinkFields, relayAllowed);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to parse message", e);
+        }
+    }
+
+    /**
+     * Second half of processPacket for a new message: expiry, delivery and
+     * relay. packet/framed must stay valid until it returns.
+     */
+    private void deliverAndRelay(String fromEndpointId, PooledBuffer packet, PooledBuffer framed, Message message,
+            String json, boolean hasLinkFields, boolean relayAllowed) {
+        try {
+            // 1. Check Expiry (Token Validation)
+            // "Creates temporary token (expiry = 5 minutes)"
+            // Note: System.currentTimeMillis() checks need to be lenient due to clock drift
+            if (message.tokenExpiry > 0 && System.currentTimeMillis() > message.tokenExpiry + 60000) { // +1min
+                                                                                                       // grace
+                Log.d(TAG, "Message expired: " + message.id);
+                return; // Drop expired packet
+            }
+
+            // 2. Am I the Receiver?
+            String myId = com.example.disastercomm.utils.DeviceUtil.getDeviceId(context);
+            boolean isForMe = "ALL".equals(message.receiverId) || myId.equals(message.receiverId);
+
+            // 2b. Group key hand-outs and requests addressed to us
+            if (message.type == Message.Type.GROUP_KEY && isForMe) {
+                handleGroupKey(message);
+                return;
+            }
+
+            // Deliver to UI (private messages are opened with the sender's session key, broadcasts with its group key)
+            Message deliveredMessage = null;
+            if (isForMe && messageListener != null) {
+                deliveredMessage = gson.fromJson(json, Message.class);
+                deliveredMessage.unverified = SignatureVerifier.requiresSignature(message.type) ? message.unverified
+                        : null;
+                if (!openContent(deliveredMessage)) {
+                    if (!"ALL".equals(message.receiverId)) {
+                        return;
+                    }
+                    deliveredMessage = null; // Cannot read it (yet), but still relay it
+                }
+            }
+            if (deliveredMessage != null) {
+                deliverToUi(deliveredMessage);
+
+                // ✅ AUTO-REPLY: Send Delivery Receipt for Private Messages
+                if (isForMe && !"ALL".equals(message.receiverId)
+                        && message.type == Message.Type.TEXT
+                        && !message.senderId.equals(myId)) {
+                    Message deliveryReceipt = Message.createDeliveryReceipt(message.id, myId, "Me"); // User name
+                                                                                                     // needs sync
+                    deliveryReceipt.receiverId = message.senderId;
+                    sendMessage(deliveryReceipt);
+                    Log.d(TAG, "📤 Sent DELIVERY_RECEIPT to " + message.senderId);
+                }
+            }
+
+            // 3. Relay (Forwarding)
+            // Forward if TTL > 0 and we are a designated relay for this flood
+            if (message.ttl > 0 && relayAllowed) {
+                if (isDesignatedRelay(message, fromEndpointId)) {
+                    message.ttl--;
+                    message.unverified = null; // Our local verdict, every hop checks for itself
+                    // ✅ Managed Flood: Exclude sender
+                    relayFlood(message, fromEndpointId, patchForRelay(packet, hasLinkFields, message.ttl),
+                            patchFramedForRelay(framed, hasLinkFields, message));
+                    // Signed alerts also go back on air for phones with no connection at all
+                    if (beaconChannel != null && message.signature != null
+                            && SignatureVerifier.requiresSignature(message.type)) {
+                        beaconChannel.offer(message, false);
+                    }
+                } else {
+                    mprDeclined.add(message.id);
+                    Log.d(TAG, "🔇 Not an MPR for previous hop, holding relay of " + message.id);
+                }
+            }
+
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to process message", e);
+        }
+    }
+
+    // Pinned keys are new or changed: rebuild the session and resend our group keys
+    private void onPeerKeysStored(String deviceId, String sessionKey) {
+        if (sessionKey != null && sessionKeys.onPeerKey(deviceId, sessionKey)) {
+            groupKeys.onMemberReset(deviceId);
+            groupKeys.onSessionEstablished(deviceId);
+        }
+    }
+
+    /**
+     * Settle a peer's unproven key change (see KeyDirectory): pin the new
+     * keys, or keep the old ones
+     */
+    public void resolveKeyChange(String deviceId, boolean acceptNew) {
+        executor.execute(() -> {
+            KeyDirectory.Entry entry = keyDirectory.resolveKeyChange(deviceId, acceptNew);
+            if (entry != null) {
+                onPeerKeysStored(entry.deviceId, entry.sessionKey);
             }
         });
+    }
 
+    /**
+     * Deliver and relay an SOS or GOVT_ALERT only once its signature checks
+     * out. The check runs on the verifier's workers and the result is posted
+     * back to the packet executor. GOVT_ALERT must be signed by a trust anchor;
+     * while none is provisioned, alerts are delivered locally marked unverified
+     * and never relayed. An SOS whose signer we do not know yet is still
+     * delivered (a distress call is never held back), marked unverified, while
+     * its keys are fetched; a bad signature, or a missing one from a peer known
+     * to sign, is dropped. An SOS from a peer whose keys changed without proof
+     * is delivered unverified until the change is resolved.
+     */
+    private void checkSignature(String fromEndpointId, PooledBuffer packet, PooledBuffer framed, Message message,
+            String json, boolean hasLinkFields, boolean relayAllowed) {
+        message.unverified = null; // Only we decide that, never the sender
+        if (message.type == Message.Type.SOS && keyDirectory.isKeyChanged(message.senderId)) {
+            Log.w(TAG, "⚠️ Unverified SOS from " + message.senderId + ": its keys changed without proof");
+            message.unverified = Boolean.TRUE;
+            deliverAndRelay(fromEndpointId, packet, framed, message, json, hasLinkFields, relayAllowed);
+            return;
+        }
+        Boolean cached = signatureVerifier.cachedVerdict(message);
+        if (cached != null) {
+            if (cached) {
+                deliverAndRelay(fromEndpointId, packet, framed, message, json, hasLinkFields, relayAllowed);
+            }
+            return;
+        }
+        boolean isAlert = message.type == Message.Type.GOVT_ALERT;
+        PublicKey key = isAlert ? signatureVerifier.getTrustAnchor(message.signerKeyId)
+                : keyDirectory.getSigningKey(message.senderId, message.signerKeyId);
+        if (key == null || message.signature == null) {
+            if (isAlert && !signatureVerifier.hasTrustAnchors()) {
+                Log.w(TAG, "⚠️ Unverified GOVT_ALERT " + message.id + ": no trust anchor provisioned, not relaying");
+                message.unverified = Boolean.TRUE;
+                deliverAndRelay(fromEndpointId, packet, framed, message, json, hasLinkFields, false);
+                return;
+            }
+            if (isAlert || (message.signature == null && keyDirectory.hasSigningKey(message.senderId))) {
+                Log.w(TAG, "🚫 Dropped " + message.type + " " + message.id + ": not signed by a trusted key");
+                return;
+            }
+            if (message.signature != null && message.senderId != null && keyDirectory.shouldFetch(message.senderId)) {
+                requestKeys(message.senderId, null);
+            }
+            Log.w(TAG, "⚠️ Unverified SOS from " + message.senderId);
+            message.unverified = Boolean.TRUE;
+            deliverAndRelay(fromEndpointId, packet, framed, message, json, hasLinkFields, relayAllowed);
+            return;
+        }
+        // The originals go back to the pool as soon as processPacket returns
+        PooledBuffer packetCopy = PooledBuffer.wrap(packet.toByteArray());
+        PooledBuffer framedCopy = framed != null ? PooledBuffer.wrap(framed.toByteArray()) : null;
+        signatureVerifier.verify(message, key, (verified, valid) -> executor.execute(() -> {
+            if (valid) {
+                deliverAndRelay(fromEndpointId, packetCopy, framedCopy, verified, json, hasLinkFields, relayAllowed);
+            } else {
+                Log.w(TAG, "🚫 Dropped " + verified.type + " " + verified.id + ": bad signature");
+            }
+        }));
+    }
+
+    /**
+     * Relay copy of a received packet: the original JSON with ttl rewritten in
+     * place, so relays skip re-serialization. Null when per-hop link fields
+     * have to be stripped; those packets are re-serialized from the Message.
+     */
+    private byte[] patchForRelay(PooledBuffer packet, boolean hasLinkFields, int ttl) {
+        if (hasLinkFields) {
+            return null;
+        }
+        byte[] copy = packet.toByteArray(); // No copy for uncompressed Nearby payloads
+        return JsonPacketScanner.patchLong(copy, copy.length, JsonPacketScanner.FIELD_TTL, ttl) ? copy : null;
+    }
+
+    // Same for a framed packet: the original header + body with ttl/hopCount rewritten
+    private byte[] patchFramedForRelay(PooledBuffer framed, boolean hasLinkFields, Message message) {
+        if (framed == null || hasLinkFields) {
+            return null;
+        }
+        message.hopCount++;
+        byte[] copy = framed.toByteArray();
+        PacketHeader.patchForRelay(copy, message.ttl, message.hopCount);
+        return copy;
+    }
+
+    /**
+     * JSON of a framed packet's body with the header's ttl and hop count, for links that do not speak the header
+     */
+    private byte[] jsonFromFramed(byte[] framed) {
+        PacketHeader header = new PacketHeader(); // Not rxHeader, which belongs to the receive path
+        if (!header.read(framed, framed.length)) {
+            return null;
+        }
+        PooledBuffer body = packetCodec.decode(PooledBuffer.wrap(framed), PacketHeader.LENGTH);
+        if (body == null) {
+            return null;
+        }
+        try {
+            byte[] json = Arrays.copyOf(body.array(), body.length());
+            JsonPacketScanner.patchLong(json, json.length, JsonPacketScanner.FIELD_TTL, header.ttl);
+            // Advisory only; left as is if the new count needs another digit
+            JsonPacketScanner.patchLong(json, json.length, JsonPacketScanner.FIELD_HOP_COUNT, header.hopCount);
+            return json;
+        } finally {
+            body.release();
+        }
+    }
+
+    /**
+     * MPR flooding: for ALL floods only re-broadcast if the neighbor we got the
+     * packet from selected us as one of its multipoint relays. Falls back to
+     * plain flooding when the previous hop is unknown or a legacy node.
+     */
+    private boolean isDesignatedRelay(Message message, String fromEndpointId) {
+        if (!"ALL".equals(message.receiverId) || routingTable == null || fromEndpointId == null) {
+            return true;
+        }
+        String previousHop = endpointToDevice.get(fromEndpointId);
+        if (previousHop == null || !routingTable.hasTopologyInfo(previousHop)) {
+            return true;
+        }
+        return routingTable.isMprSelector(previousHop);
     }
 
+    /**
+     * Unicast a packet on the single link identified by endpointId
+     * (Nearby endpoint, Bluetooth address or "Hub"). Peers that speak the
+     * heartbeat protocol get hop-by-hop acks and retransmission.
+     */
+    public boolean sendToEndpoint(String endpointId, Message message) {
+        if (endpointId == null)
+            return false;
+        String deviceId = endpointToDevice.get(endpointId);
+        // Sync batches carry decrypted history: seal them for the neighbor when we can
+        if (message.type == Message.Type.SYNC_BATCH && deviceId != null && sessionKeys.hasSession(deviceId)) {
+            message.receiverId = deviceId;
+            sessionKeys.encrypt(message);
+        }
+        if (deviceId != null) {
+            return linkReliability.send(endpointId, message);
+        }
+        return sendToEndpointRaw(endpointId, message);
+    }
+
+    /**
+     * Put a packet on one link as-is. Returns false if that link is not up
+     * or its queue is full.
+     */
+    private boolean sendToEndpointRaw(String endpointId, Message message) {
+        Transport transport = transportRegistry.ownerOf(endpointId);
+        if (transport == null) {
+            return false;
+        }
+        byte[] bytes = new WireForms(message, null, null).forLink(transport, endpointId);
+        if (bytes == null) {
+            return false;
+        }
+        return linkQueues.enqueue(endpointId, bytes, LinkSendQueues.priorityOf(message.type));
+    }
+
+    /**
+     * Encodings of one packet, each built at most once per send or flood:
+     * header-framed where negotiated, else compressed, armored on text links,
+     * or plain JSON for legacy peers.
+     */
+    private final class WireForms {
+        final Message message;
+        private byte[] json;
+        private byte[] framed;
+        private byte[] compressed;
+        private byte[] armored;
+
+        WireForms(Message message, byte[] json, byte[] framed) {
+            this.message = message;
+            this.json = json;
+            this.framed = framed;
+        }
+
+        // Null only if a relayed framed body turns out to be corrupt
+        byte[] forLink(Transport transport, String linkId) {
+            // Devices behind a fan-out link (hub) may never heartbeat, so no opt-in from them can be seen
+            boolean fanOut = transport.hasCapability(Transport.CAP_FAN_OUT);
+            boolean compress = !fanOut && packetCodec.isEnabledFor(linkId);
+            if (transport.hasCapability(Transport.CAP_TEXT_FRAMES)) {
+                if (!compress) {
+                    return json();
+                }
+                if (armored == null && json() != null) {
+                    armored = packetCodec.encodeText(new String(json, StandardCharsets.UTF_8))
+                            .getBytes(StandardCharsets.UTF_8);
+                }
+                return armored;
+            }
+            if (!fanOut && packetCodec.isFramingEnabledFor(linkId)) {
+                if (framed == null && compressed() != null) {
+                    framed = PacketHeader.frame(message, compressed);
+                }
+                return framed;
+            }
+            return compress ? compressed() : json();
+        }
+
+        private byte[] json() {
+            if (json == null) {
+                json = framed != null ? jsonFromFramed(framed)
+                        : gson.toJson(message).getBytes(StandardCharsets.UTF_8);
+            }
+            return json;
+        }
+
+        private byte[] compressed() {
+            if (compressed == null && json() != null) {
+                compressed = packetCodec.encode(json);
+            }
+            return compressed;
+        }
+    }
+
+    /**
+     * Unicast to a neighbor by device id, using the link learned from its heartbeats
+     */
+    public boolean sendToDevice(String deviceId, Message message) {
+        String endpointId = poolManager != null ? poolManager.getBestConnectionForDevice(deviceId) : null;
+        if (endpointId == null || !endpointToDevice.containsKey(endpointId)) {
+            endpointId = getEndpointForDevice(deviceId);
+        }
+        return sendToEndpoint(endpointId, message);
+    }
+
+    /**
+     * Drain side of the per-link queues: the actual transport write.
+     * Only a vanished link counts as failure; a dropped packet does not.
+     */
+    private boolean writeToLink(String linkId, byte[] bytes) {
+        Transport transport = transportRegistry.ownerOf(linkId);
+        if (transport == null) {
+            return false;
+        }
+        transportRegistry.send(transport, linkId, bytes); // Blocks this link's drain thread only
+        return true;
+    }
+
+    /**
+     * Pick the links a flood goes out on. Each bonded neighbor gets its single
+     * best link (two for SOS/GOVT_ALERT), never the link or neighbor it came
+     * from. Unidentified links and HELLOs keep one copy per link, and fan-out
+     * links (hub) always get one copy for the devices behind them.
+     */
+    private java.util.List<String> selectFloodLinks(Message message, String excludeEndpointId) {
+        java.util.List<String> links = new java.util.ArrayList<>();
+        java.util.Set<String> chosen = new java.util.LinkedHashSet<>();
+        for (Transport transport : transportRegistry.getTransports()) {
+            boolean fanOut = transport.hasCapability(Transport.CAP_FAN_OUT);
+            for (String link : transport.getLinks()) {
+                if (link.equals(excludeEndpointId)) {
+                    continue;
+                }
+                if (fanOut) {
+                    chosen.add(link);
+                } else {
+                    links.add(link);
+                }
+            }
+        }
+
+        boolean everyLink = poolManager == null || message.type == Message.Type.HEARTBEAT;
+        int copies = message.type == Message.Type.SOS || message.type == Message.Type.GOVT_ALERT ? 2 : 1;
+        String excludeDevice = excludeEndpointId != null ? endpointToDevice.get(excludeEndpointId) : null;
+
+        Set<String> coveredDevices = new HashSet<>();
+        for (String link : links) {
+            String device = endpointToDevice.get(link);
+            if (everyLink || device == null) {
+                chosen.add(link);
+                continue;
+            }
+            if (device.equals(excludeDevice) || !coveredDevices.add(device)) {
+                continue; // Previous hop over another link, or neighbor already covered
+            }
+            boolean added = false;
+            for (String best : poolManager.selectLinks(device, copies)) {
+                if (links.contains(best)) {
+                    chosen.add(best);
+                    added = true;
+                }
+            }
+            if (!added) {
+                chosen.add(link);
+            }
+        }
+        return new java.util.ArrayList<>(chosen);
+    }
+
+    public String getEndpointForDevice(String deviceId) {
+        for (Map.Entry<String, String> entry : endpointToDevice.entrySet()) {
+            if (entry.getValue().equals(deviceId)) {
+                return entry.getKey();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Feed a message obtained through anti-entropy sync into the receive path
+     */
+    public void deliverSynced(String fromEndpointId, Message message) {
+        handlePayload(fromEndpointId, PooledBuffer.wrap(gson.toJson(message).getBytes(StandardCharsets.UTF_8)), false);
+    }
+
+    /**
+     * Feed a frame heard on the BLE beacon plane into the receive path. It is
+     * rate-limited per advertiser and signature-checked like any other packet.
+     */
+    public void injectBeaconMessage(String linkId, Message message) {
+        handlePayload(linkId, PooledBuffer.wrap(gson.toJson(message).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Link went down: forget its device mapping so MPR/sync state stays accurate
+     */
+    public void onLinkLost(String endpointId) {
+        endpointToDevice.remove(endpointId);
+        linkReliability.resetLink(endpointId);
+        packetCodec.onLinkLost(endpointId);
+        linkQueues.onLinkLost(endpointId);
+        rateLimiter.onLinkLost(endpointId);
+        if (contentTransferManager != null) {
+            contentTransferManager.onLinkLost(endpointId);
+        }
+        if (antiEntropySync != null) {
+            antiEntropySync.onPeerLost(endpointId);
+        }
+    }
+
+    /**
+     * Re-broadcast through the suppression engine (gossip + counter + RSSI).
+     * The actual send is posted back onto the packet executor.
+     */
+    private void relayFlood(Message message, String fromEndpointId, byte[] json, byte[] framed) {
+        int neighborCount = routingTable != null ? routingTable.getNeighbors().size()
+                : transportRegistry.getLinks().size();
+        int rssi = BroadcastSuppressor.RSSI_UNKNOWN;
+        String previousHop = fromEndpointId != null ? endpointToDevice.get(fromEndpointId) : null;
+        if (routingTable != null && previousHop != null) {
+            MeshRoutingTable.NeighborInfo neighbor = routingTable.getNeighbors().get(previousHop);
+            if (neighbor != null && neighbor.signalStrength > -127) {
+                rssi = neighbor.signalStrength;
+            }
+        }
+        broadcastSuppressor.submit(message, neighborCount, rssi,
+                () -> executor.execute(() -> forwardMessage(new WireForms(message, json, framed), fromEndpointId)));
+    }
+
+    /**
+     * Record link signal for a transport endpoint (e.g. from BLE scans)
+     */
+    public void updateLinkSignal(String endpointId, int rssi) {
+        String deviceId = endpointToDevice.get(endpointId);
+        if (routingTable != null && deviceId != null) {
+            routingTable.updateNeighborSignal(deviceId, rssi);
+        }
+    }
+
+    public BroadcastSuppressor getBroadcastSuppressor() {
+        return broadcastSuppressor;
+    }
+
+    /**
+     * Send a one-hop control packet (e.g. heartbeat) on every link.
+     * Skips DB persistence and the offline queue; dropped if nobody is connected.
+     */
+    public void sendControlMessage(Message message) {
+        if (message.type == Message.Type.HEARTBEAT) {
+            message.caps = PacketCodec.localCapabilities(); // Lets neighbors negotiate compression and framing
+            message.keyFp = myKeyFingerprint(); // Neighbors fetch our keys only if they do not know this
+        }
+        executor.execute(() -> {
+            markSeen(message.id);
+            forwardMessage(message);
+        });
+    }
+
+    /**
+     * Announce our key fingerprint to the mesh. Peers that do not know it
+     * fetch the full keys from us point-to-point.
+     */
     public void broadcastPublicKey(String username) {
+        myName = username;
         executor.execute(() -> {
+            Message keyMsg = createKeyExchange("ALL", false);
+            if (keyMsg != null) {
+                markSeen(keyMsg.id);
+                forwardMessage(keyMsg);
+            }
+        });
+    }
+
+    /**
+     * Hand an opened message to the UI: location tracking, local DB and contacts, then the listener
+     */
+    private void deliverToUi(Message deliveredMessage) {
+        // ✅ CRITICAL: Auto-update Location Manager for immediate tracking
+        if (deliveredMessage.type == Message.Type.LOCATION_UPDATE) {
+            try {
+                String[] parts = deliveredMessage.content.split(",");
+                if (parts.length == 2) {
+                    double lat = Double.parseDouble(parts[0]);
+                    double lng = Double.parseDouble(parts[1]);
+                    // Update singleton directly
+                    com.example.disastercomm.PeerLocationManager.getInstance().updatePeerLocation(
+                            deliveredMessage.senderId,
+                            lat, lng,
+                            deliveredMessage.isLiveSharing,
+                            deliveredMessage.sharingUntil);
+                    Log.d(TAG, "📍 Auto-updated location for " + deliveredMessage.senderId);
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to parse auto location update", e);
+            }
+        }
+
+        // ✅ DEBUG: Log message details
+        MessageDebugHelper.logMessageReceived(
+                deliveredMessage.id,
+                deliveredMessage.senderId,
+                deliveredMessage.content,
+                deliveredMessage.receiverId);
+        Log.d(TAG, "📥 MESSAGE RECEIVED:");
+        Log.d(TAG, "   ID: " + deliveredMessage.id);
+        Log.d(TAG, "   From: " + deliveredMessage.senderId + " (" + deliveredMessage.senderName + ")");
+        Log.d(TAG, "   To: " + deliveredMessage.receiverId);
+        Log.d(TAG, "   Content: " + deliveredMessage.content);
+        Log.d(TAG, "   Type: " + deliveredMessage.type);
+
+        // ✅ CRITICAL: Save to local DB FIRST (before UI delivery)
+        if (db != null) {
+            try {
+                db.messageDao().insertMessage(deliveredMessage);
+
+                // ✅ SAVE CONTACT (Persistent Chat List)
+                if (deliveredMessage.type == Message.Type.TEXT
+                        && !"ALL".equals(deliveredMessage.senderId)) {
+                    com.example.disastercomm.models.User user = new com.example.disastercomm.models.User(
+                            deliveredMessage.senderId, deliveredMessage.senderName);
+                    user.lastMessagePreview = deliveredMessage.content;
+                    user.lastMessageTimestamp = deliveredMessage.timestamp;
+                    user.isOnline = true;
+                    db.userDao().insertUser(user);
+                    Log.d(TAG, "👤 Saved User to Contacts: " + deliveredMessage.senderName);
+                }
+
+                Log.d(TAG, "✅ Saved to LOCAL DATABASE");
+
+                // Optional: Backup to Firebase
+                firebaseLogger.logMessage(deliveredMessage);
+            } catch (Exception e) {
+                Log.e(TAG, "❌ Failed to save to database", e);
+            }
+        } else {
+            Log.w(TAG, "⚠️ Database is null - message NOT saved!");
+        }
+
+        // Now deliver to UI
+        messageListener.onMessageReceived(deliveredMessage);
+        Log.d(TAG, "✅ Delivered to UI listener");
+    }
+
+    /**
+     * Decrypt content in place according to its cipher suite. On a missing
+     * key the right handshake is started and false is returned.
+     */
+    private boolean openContent(Message message) {
+        if (message.cipherSuite == GroupKeyManager.SUITE_GROUP_GCM) {
+            return groupKeys.decrypt(message); // Requests the sender key itself if missing
+        }
+        if (!sessionKeys.decrypt(message)) {
+            if (sessionKeys.hasSession(message.senderId)) {
+                Log.w(TAG, "🔒 Could not decrypt " + message.id + ", re-sending our keys");
+                sendKeyExchange(message.senderId);
+            } else {
+                Log.w(TAG, "🔒 Could not decrypt " + message.id + ", fetching the sender's keys");
+                requestKeys(message.senderId, null);
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * GROUP_KEY for us: a sealed "group\nepoch\nkey" hand-out, or a plain "group" request
+     */
+    private void handleGroupKey(Message message) {
+        boolean sealed = message.cipherSuite == SessionKeyManager.SUITE_AES_GCM;
+        if (!openContent(message) || message.content == null) {
+            return;
+        }
+        String[] parts = message.content.split("\n");
+        if (parts.length == 3 && sealed) {
+            try {
+                groupKeys.onSenderKey(message.senderId, parts[0], Integer.parseInt(parts[1]), parts[2]);
+            } catch (NumberFormatException e) {
+                Log.w(TAG, "Malformed group key from " + message.senderId);
+            }
+        } else if (parts.length == 1) {
+            groupKeys.onKeyRequest(message.senderId, parts[0]);
+        }
+    }
+
+    private Message createGroupKeyMessage(String receiverId, String content) {
+        Message keyMsg = new Message(com.example.disastercomm.utils.DeviceUtil.getDeviceId(context), myName,
+                Message.Type.GROUP_KEY, content);
+        keyMsg.receiverId = receiverId;
+        keyMsg.ttl = 5;
+        return keyMsg;
+    }
+
+    /**
+     * Our full keys addressed to one peer. Called on the executor.
+     */
+    private void sendKeyExchange(String deviceId) {
+        Message keyMsg = createKeyExchange(deviceId, true);
+        if (keyMsg != null) {
+            sendToPeer(keyMsg);
+        }
+    }
+
+    /**
+     * Ask one peer for its full keys; the request carries our fingerprint so it can fetch ours too.
+     * For heartbeats the peer is the neighbor on viaEndpointId, everything else is routed to the device.
+     */
+    private void requestKeys(String deviceId, String viaEndpointId) {
+        Message request = createKeyExchange(deviceId, false);
+        if (request == null) {
+            return;
+        }
+        Log.d(TAG, "🔑 Fetching keys of " + deviceId);
+        if (viaEndpointId != null) {
+            request.ttl = 0;
+            markSeen(request.id);
+            sendToEndpoint(viaEndpointId, request);
+        } else {
+            sendToPeer(request);
+        }
+    }
+
+    private void checkKeyFingerprint(String fromEndpointId, Message message) {
+        if (message.keyFp == null || message.senderId == null || message.publicKey != null
+                || message.sessionKey != null || message.signingKey != null || keyDirectory.isKnown(message.senderId, message.keyFp)
+                || message.senderId.equals(com.example.disastercomm.utils.DeviceUtil.getDeviceId(context))
+                || !keyDirectory.shouldFetch(message.senderId)) {
+            return;
+        }
+        requestKeys(message.senderId, message.type == Message.Type.HEARTBEAT ? fromEndpointId : null);
+    }
+
+    /**
+     * True if every device we can reach holds a session with us (and so can get our group key).
+     * Devices behind a fan-out link (hub) are never enumerated, so that link forces plaintext.
+     * Missing sessions are started so the next broadcast can be sealed.
+     */
+    private boolean allPeersHoldSessions() {
+        for (Transport transport : transportRegistry.getTransports()) {
+            if (transport.hasCapability(Transport.CAP_FAN_OUT) && !transport.getLinks().isEmpty()) {
+                return false;
+            }
+        }
+        if (routingTable == null) {
+            return false;
+        }
+        java.util.Set<String> devices = new java.util.HashSet<>(routingTable.getRoutes().keySet());
+        devices.addAll(routingTable.getNeighbors().keySet());
+        devices.remove(com.example.disastercomm.utils.DeviceUtil.getDeviceId(context));
+        boolean all = !devices.isEmpty();
+        for (String deviceId : devices) {
+            if (!sessionKeys.hasSession(deviceId)) {
+                all = false;
+                if (keyDirectory.shouldFetch(deviceId)) {
+                    requestKeys(deviceId, null);
+                }
+            }
+        }
+        return all;
+    }
+
+    // Unicast control traffic: straight to the device if it is a neighbor, flooded otherwise
+    private void sendToPeer(Message message) {
+        markSeen(message.id);
+        if (!sendToDevice(message.receiverId, message)) {
+            forwardMessage(message);
+        }
+    }
+
+    private String myKeyFingerprint() {
+        if (myKeyFingerprint == null) {
             String myKey = SecurityUtil.getMyPublicKeyString(context);
-            if (myKey == null)
-                return;
+            if (myKey != null && signingKeys != null) { // Both are generated in the background at startup
+                myKeyFingerprint = SecurityUtil.keyFingerprint(myKey, sessionKeys.getLocalPublicKey(),
+                        mySigningKey());
+            }
+        }
+        return myKeyFingerprint;
+    }
 
-            Message keyMsg = new Message();
-            keyMsg.id = java.util.UUID.randomUUID().toString();
-            keyMsg.senderId = com.example.disastercomm.utils.DeviceUtil.getDeviceId(context);
-            keyMsg.senderName = username; // Should get real name
-            keyMsg.type = Message.Type.KEY_EXCHANGE;
-            keyMsg.publicKey = myKey;
-            keyMsg.timestamp = System.currentTimeMillis();
-            keyMsg.ttl = 5;
+    private String mySigningKey() {
+        KeyPair keys = signingKeys;
+        return keys != null ? SecurityUtil.encodePublicKey(keys.getPublic()) : null;
+    }
 
-            forwardMessage(keyMsg);
-        });
+    /**
+     * Sign an outgoing SOS / GOVT_ALERT in place with our Keystore key
+     */
+    private void signMessage(Message message) {
+        KeyPair keys = signingKeys;
+        if (keys == null) {
+            Log.w(TAG, "⚠️ No signing key, " + message.type + " goes out unsigned");
+            return;
+        }
+        try {
+            message.signerKeyId = SecurityUtil.keyFingerprint(mySigningKey());
+            message.signature = android.util.Base64.encodeToString(
+                    SecurityUtil.sign(keys.getPrivate(), SignatureVerifier.signedBytes(message)),
+                    android.util.Base64.NO_WRAP);
+            signatureVerifier.remember(message, true);
+        } catch (Exception e) {
+            Log.e(TAG, "Signing " + message.id + " failed", e);
+        }
+    }
+
+    /**
+     * KEY_EXCHANGE carrying our fingerprint and, if withKeys, the full keys
+     * vouched for by our signing key (peers pin them, see KeyDirectory)
+     */
+    private Message createKeyExchange(String receiverId, boolean withKeys) {
+        String myKey = SecurityUtil.getMyPublicKeyString(context);
+        String mySessionKey = sessionKeys.getLocalPublicKey();
+        if (myKey == null && mySessionKey == null)
+            return null;
+
+        Message keyMsg = new Message();
+        keyMsg.id = java.util.UUID.randomUUID().toString();
+        keyMsg.senderId = com.example.disastercomm.utils.DeviceUtil.getDeviceId(context);
+        keyMsg.senderName = myName; // Should get real name
+        keyMsg.receiverId = receiverId;
+        keyMsg.type = Message.Type.KEY_EXCHANGE;
+        keyMsg.keyFp = myKeyFingerprint();
+        if (withKeys) {
+            KeyPair signing = signingKeys;
+            if (keyMsg.keyFp == null || signing == null) {
+                return null; // Keys a peer pins must carry our signing key
+            }
+            keyMsg.publicKey = myKey;
+            keyMsg.sessionKey = mySessionKey;
+            keyMsg.signingKey = mySigningKey();
+            try {
+                keyMsg.keySig = android.util.Base64.encodeToString(SecurityUtil.sign(signing.getPrivate(),
+                        KeyDirectory.keySetBytes(keyMsg.senderId, keyMsg.keyFp)), android.util.Base64.NO_WRAP);
+            } catch (Exception e) {
+                Log.e(TAG, "Signing our keys failed", e);
+            }
+        }
+        keyMsg.timestamp = System.currentTimeMillis();
+        keyMsg.ttl = 5;
+        return keyMsg;
     }
 
     public void sendMessage(Message message) {
         executor.execute(() -> {
-            // ✅ NO ENCRYPTION - Send plain text
+            // SOS and alerts are signed first, so the stored copy stays verifiable for sync
+            if (SignatureVerifier.requiresSignature(message.type)) {
+                signMessage(message);
+            }
             Message toSend = gson.fromJson(gson.toJson(message), Message.class);
 
             // Save original message to DB
@@ -340,25 +1389,50 @@ public class PacketHandler {
             // ✅ DEBUG: Log message send
             MessageDebugHelper.logMessageSent(message.id, message.receiverId, message.content);
 
-            // ✅ SKIP ALL ENCRYPTION - Just send as-is
+            // Private chat is sealed with the pairwise session key; without one yet, start the handshake
             toSend.encryptedAesKey = null;
+            if (toSend.type == Message.Type.TEXT && toSend.receiverId != null && !"ALL".equals(toSend.receiverId)
+                    && !sessionKeys.encrypt(toSend)) {
+                Log.w(TAG, "🔓 No session with " + toSend.receiverId + " yet, sending in plaintext");
+                requestKeys(toSend.receiverId, null);
+            }
+            // Broadcast chat is sealed once with our sender key for the group, but only when every
+            // device we know of can get that key; otherwise it stays readable for them
+            if (toSend.type == Message.Type.TEXT && "ALL".equals(toSend.receiverId)
+                    && (!allPeersHoldSessions() || !groupKeys.encrypt(toSend))) {
+                Log.d(TAG, "🔓 Not every peer has a session with us yet, broadcasting in plaintext");
+            }
             toSend.tokenExpiry = System.currentTimeMillis() + (5 * 60 * 1000);
+            toSend.keyFp = myKeyFingerprint();
 
-            seenMessageIds.add(toSend.id);
+            markSeen(toSend.id);
 
-            // ✅ CHECK CONNECTIVITY before sending
-            boolean isMeshConnected = meshNetworkManager != null && meshNetworkManager.isConnected(); // Check mesh
-            boolean isBtConnected = bluetoothManager != null && bluetoothManager.isConnected(); // Check BT
-            boolean isHubConnected = bleHubClient != null && bleHubClient.isConnected(); // Check Hub
+            // ✅ DTN: carry private chat (custody or spray-and-wait) until a delivery receipt comes back
+            if (storeAndForwardManager != null && toSend.type == Message.Type.TEXT
+                    && toSend.receiverId != null && !"ALL".equals(toSend.receiverId)) {
+                storeAndForwardManager.queueMessage(toSend);
+            }
 
-            if (!isMeshConnected && !isBtConnected && !isHubConnected) {
+            // ✅ Broadcast SOS/alerts/location also go out as BLE advertisements, links or not
+            if (beaconChannel != null && "ALL".equals(toSend.receiverId)) {
+                beaconChannel.offer(toSend, true);
+            }
+
+            // ✅ CHECK CONNECTIVITY before sending
+            if (!transportRegistry.hasLinks()) {
                 Log.d(TAG, "⚠️ No connection! Adding to OFFLINE QUEUE: " + toSend.id);
                 // Queue message
                 offlineQueue.enqueue(toSend);
                 return;
             }
 
-            forwardMessage(toSend);
+            // ✅ Destination is a direct neighbor: reliable unicast instead of a flood
+            boolean sentDirect = routingTable != null && toSend.receiverId != null
+                    && !"ALL".equals(toSend.receiverId) && routingTable.isNeighbor(toSend.receiverId)
+                    && sendToDevice(toSend.receiverId, toSend);
+            if (!sentDirect) {
+                forwardMessage(toSend);
+            }
 
             // ✅ DEBUG: Log transport send (calculate bytes from JSON)
             String json = gson.toJson(toSend);
@@ -370,40 +1444,19 @@ public class PacketHandler {
     }
 
     private void forwardMessage(Message message) {
-        forwardMessage(message, null);
+        forwardMessage(new WireForms(message, null, null), null);
     }
 
-    private void forwardMessage(Message message, String excludeEndpointId) {
-        String json = gson.toJson(message);
-        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
-
-        // 1. Send via Wi-Fi Direct (Nearby) - Exclude sender
-        if (meshNetworkManager != null) {
-            meshNetworkManager.broadcastPayload(bytes, excludeEndpointId);
-        }
-
-        // 2. Send via Bluetooth if available - Exclude sender
-        if (bluetoothManager != null) {
-            bluetoothManager.broadcastData(bytes, excludeEndpointId);
-        }
-
-        // 3. Send via BLE Hub (ESP32)
-        // Hub logic: If message came from Hub, excludeEndpointId might be "Hub" or
-        // similar generic ID
-        if (bleHubClient != null && bleHubClient.isConnected()) {
-            if (excludeEndpointId == null || !excludeEndpointId.startsWith("Hub")) {
-                bleHubClient.sendData(json); // Hub expects String
+    private void forwardMessage(WireForms packet, String excludeEndpointId) {
+        // One bonded link per neighbor plus fan-out links, each via its own send queue
+        int priority = LinkSendQueues.priorityOf(packet.message.type);
+        for (String link : selectFloodLinks(packet.message, excludeEndpointId)) {
+            Transport transport = transportRegistry.ownerOf(link);
+            byte[] wire = transport != null ? packet.forLink(transport, link) : null;
+            if (wire != null) {
+                linkQueues.enqueue(link, wire, priority);
             }
         }
-
-        // 4. Send via Wi-Fi Aware (NAN)
-        if (wifiAwareNetworkManager != null) {
-            // NAN doesn't use the same EndpointID system exactly, but we can pass it down
-            // Ideally we'd map EndpointID to PeerHandle, but for now we just broadcast to
-            // all NAN peers
-            // TODO: Map excludeEndpointId to PeerHandle if possible
-            wifiAwareNetworkManager.broadcastMessage(bytes);
-        }
     }
 
     /**
@@ -432,7 +1485,18 @@ public class PacketHandler {
         });
     }
 
+    private static void clearLinkFields(Message message) {
+        message.linkSeq = 0;
+        message.linkAck = 0;
+        message.linkSack = null;
+        message.linkBase = 0;
+    }
+
     public void close() {
+        broadcastSuppressor.shutdown();
+        linkReliability.shutdown();
+        linkQueues.shutdown();
+        signatureVerifier.shutdown();
         if (executor != null) {
             executor.shutdown();
         }
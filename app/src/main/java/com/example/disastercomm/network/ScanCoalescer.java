@@ -0,0 +1,130 @@
+package com.example.disastercomm.network;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Turns the raw stream of BLE sightings into per-device state changes. A
+ * phone advertising every 100 ms is one "found" event, then at most an
+ * occasional "signal changed" (smoothed RSSI moved by SIGNAL_STEP_DB), then
+ * one "lost" once it has not been heard for a while. Not thread-safe: feed
+ * it from the scan callback thread only.
+ */
+public class ScanCoalescer {
+    private static final double SIGNAL_STEP_DB = 4;
+
+    public interface Listener {
+        void onFound(String address, String name, int rssi);
+
+        void onSignalChanged(String address, int rssi);
+
+        void onLost(String address);
+    }
+
+    /**
+     * 1-D Kalman filter over RSSI: a constant signal plus measurement noise.
+     * Fading spikes of +-10 dB barely move the estimate, a real move (walking
+     * away) converges within a few samples.
+     */
+    static class RssiFilter {
+        private static final double PROCESS_NOISE = 0.5; // dB^2 per sample the true signal may drift
+        private static final double MEASUREMENT_NOISE = 16; // dB^2, typical multipath jitter
+
+        private double estimate;
+        private double errorCovariance = -1;
+
+        double update(double measurement) {
+            if (errorCovariance < 0) {
+                estimate = measurement;
+                errorCovariance = MEASUREMENT_NOISE;
+                return estimate;
+            }
+            errorCovariance += PROCESS_NOISE;
+            double gain = errorCovariance / (errorCovariance + MEASUREMENT_NOISE);
+            estimate += gain * (measurement - estimate);
+            errorCovariance *= 1 - gain;
+            return estimate;
+        }
+    }
+
+    private static class Peer {
+        final RssiFilter rssi = new RssiFilter();
+        String name;
+        long lastSeen;
+        int reportedRssi;
+    }
+
+    private final Listener listener;
+    private final Map<String, Peer> peers = new HashMap<>();
+
+    // Stats
+    private long sightings;
+    private long found;
+    private long lost;
+    private long signalChanges;
+    private int churn; // found + lost since the last takeChurn()
+
+    public ScanCoalescer(Listener listener) {
+        this.listener = listener;
+    }
+
+    public void onSighting(String address, String name, int rssi, long now) {
+        sightings++;
+        Peer peer = peers.get(address);
+        boolean isNew = peer == null;
+        if (isNew) {
+            peer = new Peer();
+            peers.put(address, peer);
+        }
+        peer.lastSeen = now;
+        if (name != null) {
+            peer.name = name;
+        }
+        int smoothed = (int) Math.round(peer.rssi.update(rssi));
+        if (isNew) {
+            peer.reportedRssi = smoothed;
+            found++;
+            churn++;
+            listener.onFound(address, peer.name, smoothed);
+        } else if (Math.abs(smoothed - peer.reportedRssi) >= SIGNAL_STEP_DB) {
+            peer.reportedRssi = smoothed;
+            signalChanges++;
+            listener.onSignalChanged(address, smoothed);
+        }
+    }
+
+    /**
+     * Report devices not heard for lostAfterMs as lost
+     */
+    public void sweep(long now, long lostAfterMs) {
+        Iterator<Map.Entry<String, Peer>> it = peers.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Peer> entry = it.next();
+            if (now - entry.getValue().lastSeen > lostAfterMs) {
+                it.remove();
+                lost++;
+                churn++;
+                listener.onLost(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Found + lost events since the previous call; drives the scan duty cycle
+     */
+    public int takeChurn() {
+        int value = churn;
+        churn = 0;
+        return value;
+    }
+
+    public int size() {
+        return peers.size();
+    }
+
+    public String getStatsSummary() {
+        return String.format("BLE scan: %d in range, %d sightings -> %d found, %d lost, %d signal changes",
+                peers.size(), sightings, found, lost, signalChanges);
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.disastercomm.network;
+
+import android.util.Base64;
+import android.util.Log;
+
+import com.example.disastercomm.models.Message;
+import com.example.disastercomm.utils.SecurityUtil;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.SecretKey;
+
+/**
+ * Pairwise session keys for private messages. Every device holds one
+ * long-term ECDH (P-256) key pair and hands its public half out through
+ * KEY_EXCHANGE; each side then derives the same AES-256 key per peer.
+ * Content is sealed with AES-GCM, so a private message costs one symmetric
+ * operation instead of an RSA wrap.
+ */
+public class SessionKeyManager {
+    private static final String TAG = "SessionKeyManager";
+    public static final int SUITE_AES_GCM = 1;
+
+    private static class Session {
+        final String peerKey;
+        final SecretKey key;
+
+        Session(String peerKey, SecretKey key) {
+            this.peerKey = peerKey;
+            this.key = key;
+        }
+    }
+
+    private final String myDeviceId;
+    private final KeyPair localKeys;
+    private final String localKeyString;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+
+    // Stats
+    private final AtomicLong encrypted = new AtomicLong();
+    private final AtomicLong decrypted = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong plaintextFallbacks = new AtomicLong();
+
+    public SessionKeyManager(String myDeviceId, KeyPair localKeys) {
+        this.myDeviceId = myDeviceId;
+        this.localKeys = localKeys;
+        this.localKeyString = localKeys != null ? SecurityUtil.encodePublicKey(localKeys.getPublic()) : null;
+    }
+
+    /**
+     * Our ECDH public key for KEY_EXCHANGE, or null if EC is unavailable
+     */
+    public String getLocalPublicKey() {
+        return localKeyString;
+    }
+
+    /**
+     * Learn a peer's ECDH key. Returns true if it was new or changed (e.g.
+     * the peer reinstalled the app).
+     */
+    public boolean onPeerKey(String deviceId, String peerKey) {
+        if (localKeys == null || deviceId == null || peerKey == null || deviceId.equals(myDeviceId)) {
+            return false;
+        }
+        Session existing = sessions.get(deviceId);
+        if (existing != null && existing.peerKey.equals(peerKey)) {
+            return false;
+        }
+        PublicKey publicKey = SecurityUtil.decodeEcPublicKey(peerKey);
+        if (publicKey == null) {
+            return false;
+        }
+        SecretKey key = SecurityUtil.deriveSessionKey(localKeys.getPrivate(), publicKey, salt(peerKey));
+        if (key == null) {
+            return false;
+        }
+        sessions.put(deviceId, new Session(peerKey, key));
+        Log.d(TAG, "🔐 Session key established with " + deviceId.substring(0, Math.min(8, deviceId.length())));
+        return true;
+    }
+
+    public boolean hasSession(String deviceId) {
+        return deviceId != null && sessions.containsKey(deviceId);
+    }
+
+    /**
+     * Device ids we currently share a session key with
+     */
+    public Set<String> getPeers() {
+        return new HashSet<>(sessions.keySet());
+    }
+
+    /**
+     * Seal message.content for message.receiverId in place. False (content
+     * untouched) if there is no session with the receiver yet.
+     */
+    public boolean encrypt(Message message) {
+        Session session = message.receiverId != null ? sessions.get(message.receiverId) : null;
+        if (session == null || message.content == null) {
+            plaintextFallbacks.incrementAndGet();
+            return false;
+        }
+        try {
+            byte[] sealed = SecurityUtil.encryptGcm(session.key,
+                    message.content.getBytes(StandardCharsets.UTF_8), associatedData(message));
+            message.content = Base64.encodeToString(sealed, Base64.NO_WRAP);
+            message.cipherSuite = SUITE_AES_GCM;
+            encrypted.incrementAndGet();
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "Encrypt for " + message.receiverId + " failed", e);
+            plaintextFallbacks.incrementAndGet();
+            return false;
+        }
+    }
+
+    /**
+     * Open message.content in place. False if there is no session with the
+     * sender or the ciphertext does not authenticate.
+     */
+    public boolean decrypt(Message message) {
+        if (message.cipherSuite != SUITE_AES_GCM) {
+            return message.cipherSuite == 0;
+        }
+        Session session = message.senderId != null ? sessions.get(message.senderId) : null;
+        if (session == null || message.content == null) {
+            failures.incrementAndGet();
+            return false;
+        }
+        try {
+            byte[] plain = SecurityUtil.decryptGcm(session.key, Base64.decode(message.content, Base64.NO_WRAP),
+                    associatedData(message));
+            message.content = new String(plain, StandardCharsets.UTF_8);
+            message.cipherSuite = 0;
+            decrypted.incrementAndGet();
+            return true;
+        } catch (Exception e) {
+            failures.incrementAndGet();
+            Log.w(TAG, "Decrypt from " + message.senderId + " failed: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Binds the ciphertext to its routing fields (relays never change these)
+    private static byte[] associatedData(Message message) {
+        return (message.id + "|" + message.senderId + "|" + message.receiverId + "|" + message.type)
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Same on both sides: the two public keys in lexicographic order
+    private byte[] salt(String peerKey) {
+        boolean mineFirst = localKeyString.compareTo(peerKey) < 0;
+        return (mineFirst ? localKeyString + peerKey : peerKey + localKeyString).getBytes(StandardCharsets.UTF_8);
+    }
+
+    public String getStatsSummary() {
+        return String.format("Sessions: %d peers, %d encrypted, %d decrypted, %d failed, %d sent in plaintext",
+                sessions.size(), encrypted.get(), decrypted.get(), failures.get(), plaintextFallbacks.get());
+    }
+}
@@ -0,0 +1,287 @@
+package com.example.disastercomm.network;
+
+import android.util.Base64;
+import android.util.Log;
+
+import com.example.disastercomm.models.Message;
+import com.example.disastercomm.utils.SecurityUtil;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Authenticity of SOS and GOVT_ALERT. Signatures are ECDSA P-256 over
+ * {@link #signedBytes(Message)}; verification runs on a small worker pool
+ * that drains pending checks in batches, so the packet thread never blocks
+ * on public-key math. Each message is verified once per device and the
+ * verdict cached by id, bound to the exact bytes that were checked.
+ *
+ * GOVT_ALERT must be signed by a trust anchor: an authority key provisioned
+ * with the app (R.array.trust_anchor_keys, or BuildConfig.TRUST_ANCHORS from
+ * the build environment). SOS is signed by the sender's own key, learned
+ * through KEY_EXCHANGE.
+ */
+public class SignatureVerifier {
+    private static final String TAG = "SignatureVerifier";
+    private static final int MAX_PENDING = 256;
+    private static final int MAX_BATCH = 32;
+    private static final int MAX_CACHED = 4096;
+
+    public interface Callback {
+        // Called on a worker thread (or the caller's when the queue is full)
+        void onVerified(Message message, boolean valid);
+    }
+
+    private static class Job {
+        final Message message;
+        final PublicKey key;
+        final Callback callback;
+
+        Job(Message message, PublicKey key, Callback callback) {
+            this.message = message;
+            this.key = key;
+            this.callback = callback;
+        }
+    }
+
+    // Verdict for one id, only valid for the same signed bytes + signature
+    private static class Verdict {
+        final byte[] digest;
+        final boolean valid;
+
+        Verdict(byte[] digest, boolean valid) {
+            this.digest = digest;
+            this.valid = valid;
+        }
+    }
+
+    private final Map<String, PublicKey> trustAnchors = new ConcurrentHashMap<>(); // keyId -> key
+    private final Map<String, String> anchorNames = new ConcurrentHashMap<>();
+    private final Map<String, Verdict> verdicts = new LinkedHashMap<String, Verdict>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Verdict> eldest) {
+            return size() > MAX_CACHED;
+        }
+    };
+    private final BlockingQueue<Job> pending = new LinkedBlockingQueue<>(MAX_PENDING);
+    private final Thread[] workers;
+
+    // Stats
+    private final AtomicLong valid = new AtomicLong();
+    private final AtomicLong invalid = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong inline = new AtomicLong();
+    private final AtomicLong verifyNanos = new AtomicLong();
+
+    public SignatureVerifier() {
+        int count = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+        workers = new Thread[count];
+        for (int i = 0; i < count; i++) {
+            workers[i] = new Thread(this::workerLoop, "SigVerify-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    public static boolean requiresSignature(Message.Type type) {
+        return type == Message.Type.SOS || type == Message.Type.GOVT_ALERT;
+    }
+
+    /**
+     * Everything a relay must not be able to change. ttl/hopCount and the
+     * per-hop link fields are excluded.
+     */
+    public static byte[] signedBytes(Message message) {
+        return (message.id + "\n" + message.type + "\n" + message.senderId + "\n" + message.senderName + "\n"
+                + message.receiverId + "\n" + message.timestamp + "\n" + message.signerKeyId + "\n"
+                + message.content).getBytes(StandardCharsets.UTF_8);
+    }
+
+    // --- Trust anchors ---
+
+    /**
+     * Load authority keys, one "name|base64 X.509 P-256 key" per entry
+     */
+    public void loadTrustAnchors(String[] entries) {
+        for (String entry : entries) {
+            int split = entry.indexOf('|');
+            if (split <= 0) {
+                continue;
+            }
+            addTrustAnchor(entry.substring(0, split).trim(), entry.substring(split + 1).trim());
+        }
+        if (trustAnchors.isEmpty()) {
+            Log.w(TAG, "⚠️ No trust anchors provisioned, GOVT_ALERT is only shown locally as unverified");
+        } else {
+            Log.d(TAG, "🏛️ " + trustAnchors.size() + " trust anchors loaded");
+        }
+    }
+
+    public void addTrustAnchor(String name, String encodedKey) {
+        PublicKey key = SecurityUtil.decodeEcPublicKey(encodedKey);
+        String keyId = SecurityUtil.keyFingerprint(encodedKey);
+        if (key == null || keyId == null) {
+            Log.w(TAG, "Ignoring malformed trust anchor " + name);
+            return;
+        }
+        trustAnchors.put(keyId, key);
+        anchorNames.put(keyId, name);
+    }
+
+    /**
+     * Authority key with this id, or null if it is not a trust anchor
+     */
+    public PublicKey getTrustAnchor(String keyId) {
+        return keyId != null ? trustAnchors.get(keyId) : null;
+    }
+
+    public boolean hasTrustAnchors() {
+        return !trustAnchors.isEmpty();
+    }
+
+    public String getAnchorName(String keyId) {
+        return keyId != null ? anchorNames.get(keyId) : null;
+    }
+
+    // --- Verification ---
+
+    /**
+     * Verdict from an earlier check of exactly this message, or null
+     */
+    public Boolean cachedVerdict(Message message) {
+        Verdict verdict;
+        synchronized (verdicts) {
+            verdict = verdicts.get(message.id);
+        }
+        if (verdict == null || !Arrays.equals(verdict.digest, digest(message))) {
+            return null;
+        }
+        cacheHits.incrementAndGet();
+        return verdict.valid;
+    }
+
+    /**
+     * Record a verdict without verifying, e.g. for messages we signed ourselves
+     */
+    public void remember(Message message, boolean isValid) {
+        byte[] digest = digest(message);
+        if (digest == null) {
+            return;
+        }
+        synchronized (verdicts) {
+            verdicts.put(message.id, new Verdict(digest, isValid));
+        }
+    }
+
+    /**
+     * Queue a check against key. If the queue is full the check runs on the
+     * caller, which slows the sender down instead of losing the alert.
+     */
+    public void verify(Message message, PublicKey key, Callback callback) {
+        Job job = new Job(message, key, callback);
+        if (!pending.offer(job)) {
+            inline.incrementAndGet();
+            run(job, null);
+        }
+    }
+
+    private void workerLoop() {
+        Signature signature = newSignature();
+        List<Job> batch = new ArrayList<>(MAX_BATCH);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                batch.add(pending.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            pending.drainTo(batch, MAX_BATCH - 1);
+            batches.incrementAndGet();
+            for (Job job : batch) {
+                run(job, signature);
+            }
+            batch.clear();
+        }
+    }
+
+    private void run(Job job, Signature signature) {
+        boolean isValid = check(job.message, job.key, signature != null ? signature : newSignature());
+        remember(job.message, isValid);
+        try {
+            job.callback.onVerified(job.message, isValid);
+        } catch (Exception e) {
+            Log.e(TAG, "Verification callback failed", e);
+        }
+    }
+
+    private boolean check(Message message, PublicKey key, Signature signature) {
+        if (message.signature == null || key == null || signature == null) {
+            invalid.incrementAndGet();
+            return false;
+        }
+        long start = System.nanoTime();
+        boolean isValid;
+        try {
+            signature.initVerify(key);
+            signature.update(signedBytes(message));
+            isValid = signature.verify(Base64.decode(message.signature, Base64.NO_WRAP));
+        } catch (Exception e) {
+            isValid = false; // Malformed signature or key
+        }
+        verifyNanos.addAndGet(System.nanoTime() - start);
+        (isValid ? valid : invalid).incrementAndGet();
+        if (!isValid) {
+            Log.w(TAG, "⚠️ Bad signature on " + message.type + " " + message.id + " from " + message.senderId);
+        }
+        return isValid;
+    }
+
+    private static Signature newSignature() {
+        try {
+            return Signature.getInstance(SecurityUtil.SIGNATURE_ALGORITHM);
+        } catch (Exception e) {
+            Log.e(TAG, "ECDSA unavailable", e);
+            return null;
+        }
+    }
+
+    private static byte[] digest(Message message) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(signedBytes(message));
+            if (message.signature != null) {
+                digest.update(message.signature.getBytes(StandardCharsets.UTF_8));
+            }
+            return digest.digest();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    public void shutdown() {
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+    }
+
+    public String getStatsSummary() {
+        long checks = valid.get() + invalid.get();
+        long batchCount = batches.get();
+        return String.format("Signatures: %d valid, %d invalid, %d cache hits, %d anchors, %d pending, "
+                        + "%.1f per batch, %d inline, %.2f ms avg",
+                valid.get(), invalid.get(), cacheHits.get(), trustAnchors.size(), pending.size(),
+                batchCount > 0 ? (double) (checks - inline.get()) / batchCount : 0.0, inline.get(),
+                checks > 0 ? verifyNanos.get() / 1e6 / checks : 0.0);
+    }
+}
@@ -7,6 +7,7 @@ import com.example.disastercomm.data.AppDatabase;
 import com.example.disastercomm.data.MessageQueueDao;
 import com.example.disastercomm.data.MessageQueueEntity;
 import com.example.disastercomm.models.Message;
+import com.example.disastercomm.utils.DeviceUtil;
 import com.google.gson.Gson;
 
 import java.nio.charset.StandardCharsets;
@@ -15,28 +16,57 @@ import java.util.List;
 /**
  * Manages store-and-forward messaging for offline delivery.
  * Queues messages when no route available and forwards when path found.
+ * Strategies: DIRECT/RELAY hand over with custody transfer (kept until the
+ * next hop acks), SPRAY_AND_WAIT hands out binary copy tickets, EPIDEMIC
+ * replicates through anti-entropy sync.
  */
 public class StoreAndForwardManager {
     private static final String TAG = "StoreAndForward";
     private static final long CLEANUP_INTERVAL_MS = 5 * 60 * 1000; // 5 minutes
+    private static final long CUSTODY_TIMEOUT_MS = 30 * 1000; // Re-offer if no custody ack
+    private static final int MAX_CUSTODY_RETRIES = 5;
+    public static final int INITIAL_SPRAY_COPIES = 8; // L for binary spray-and-wait
+
+    // Forwarding strategies (MessageQueueEntity.forwardingStrategy)
+    public static final String STRATEGY_RELAY = "RELAY";
+    public static final String STRATEGY_DIRECT = "DIRECT";
+    public static final String STRATEGY_BROADCAST = "BROADCAST";
+    public static final String STRATEGY_EPIDEMIC = "EPIDEMIC";
+    public static final String STRATEGY_SPRAY_AND_WAIT = "SPRAY_AND_WAIT";
 
     private final Context context;
     private final MessageQueueDao queueDao;
     private final Gson gson = new Gson();
     private final ForwardingCallback callback;
+    private final String myDeviceId;
     private long lastCleanupTime = 0;
 
     public interface ForwardingCallback {
-        void forwardMessage(Message message, String nextHop);
+        // False if nothing left for nextHop (no link, or its queue is full)
+        boolean forwardMessage(Message message, String nextHop);
 
         boolean hasRoute(String destinationId);
 
         String getNextHop(String destinationId);
+
+        // A bundle addressed to us arrived: hand it to the normal receive path
+        void deliverLocally(String fromEndpointId, Message message);
+    }
+
+    /**
+     * Wire envelope for a DTN_BUNDLE hand-over (Message.content)
+     */
+    public static class Bundle {
+        public String strategy;
+        public int copies; // Spray tickets handed to the receiver
+        public boolean custody; // Receiver must answer with CUSTODY_ACK
+        public Message message;
     }
 
     public StoreAndForwardManager(Context context, ForwardingCallback callback) {
         this.context = context;
         this.callback = callback;
+        this.myDeviceId = DeviceUtil.getDeviceId(context);
         AppDatabase db = AppDatabase.getDatabase(context);
         this.queueDao = db.messageQueueDao();
     }
@@ -60,10 +90,11 @@ public class StoreAndForwardManager {
         // Check if we have a route now
         if (callback.hasRoute(message.receiverId)) {
             queuedMsg.nextHopId = callback.getNextHop(message.receiverId);
-            queuedMsg.forwardingStrategy = "DIRECT";
+            queuedMsg.forwardingStrategy = STRATEGY_DIRECT;
         } else {
-            queuedMsg.nextHopId = null; // No route yet
-            queuedMsg.forwardingStrategy = "RELAY";
+            queuedMsg.nextHopId = null; // No route yet: spray a bounded number of copies
+            queuedMsg.forwardingStrategy = STRATEGY_SPRAY_AND_WAIT;
+            queuedMsg.copiesLeft = INITIAL_SPRAY_COPIES;
         }
 
         AppDatabase.databaseWriteExecutor.execute(() -> {
@@ -73,57 +104,103 @@ public class StoreAndForwardManager {
     }
 
     /**
-     * Process queue when a new peer connects or route is discovered
+     * Queue a message for epidemic replication: every contact gets a copy via
+     * anti-entropy sync until a delivery receipt for it is seen.
+     */
+    public void queueEpidemic(Message message) {
+        storeEpidemicCopy(message);
+        Log.d(TAG, "🦠 Queued " + message.id + " for epidemic delivery");
+    }
+
+    /**
+     * Store a copy received from a peer's anti-entropy batch (carried for others)
+     */
+    public void storeEpidemicCopy(Message message) {
+        byte[] payload = gson.toJson(message).getBytes(StandardCharsets.UTF_8);
+        MessageQueueEntity queuedMsg = new MessageQueueEntity(message.id, message.receiverId, payload);
+        queuedMsg.hopCount = message.hopCount;
+        queuedMsg.maxHops = message.maxHops;
+        queuedMsg.forwardingStrategy = STRATEGY_EPIDEMIC;
+
+        AppDatabase.databaseWriteExecutor.execute(() -> {
+            // Keep the original entry (and its age) if we already carry it
+            if (queueDao.getMessage(message.id) == null) {
+                queueDao.insertMessage(queuedMsg);
+            }
+        });
+    }
+
+    /**
+     * Delivery receipt seen for a message: stop carrying it
+     */
+    public void markDelivered(String messageId) {
+        if (messageId == null)
+            return;
+        AppDatabase.databaseWriteExecutor.execute(() -> queueDao.markAsDelivered(messageId));
+    }
+
+    /**
+     * Process queue when a new peer connects or route is discovered.
+     * Uses destination/next-hop indexed scans instead of reading the whole table.
      */
     public void processQueue(String newPeerId) {
         Log.d(TAG, "🔄 Processing queue for new peer: " + (newPeerId != null ? newPeerId.substring(0, 8) : "ALL"));
 
         AppDatabase.databaseWriteExecutor.execute(() -> {
             long now = System.currentTimeMillis();
-            List<MessageQueueEntity> pending = queueDao.getPendingMessages(now);
-
             int forwarded = 0;
-            for (MessageQueueEntity queued : pending) {
-                // Skip if too many retries
-                if (queued.retryCount >= 5) {
-                    Log.w(TAG, "⚠️ Message " + queued.messageId + " exceeded retry limit, dropping");
-                    queueDao.deleteMessage(queued.messageId);
-                    continue;
-                }
 
-                // Check if we now have route to destination
-                if (callback.hasRoute(queued.destinationId)) {
-                    String nextHop = callback.getNextHop(queued.destinationId);
+            // Hand-overs that never got a custody ack become eligible again
+            for (MessageQueueEntity stale : queueDao.getStaleCustody(now - CUSTODY_TIMEOUT_MS)) {
+                if (stale.retryCount + 1 >= MAX_CUSTODY_RETRIES) {
+                    Log.w(TAG, "⚠️ Message " + stale.messageId + " exceeded custody retries, dropping");
+                    queueDao.deleteMessage(stale.messageId);
+                } else {
+                    queueDao.incrementRetryCount(stale.messageId);
+                    queueDao.clearCustodyPending(stale.messageId);
+                }
+            }
 
-                    // Deserialize and forward
-                    try {
-                        String json = new String(queued.payload, StandardCharsets.UTF_8);
-                        Message message = gson.fromJson(json, Message.class);
-                        message.hopCount++; // Increment hop
+            if (newPeerId != null) {
+                // 1. Destination itself is here: every strategy delivers directly
+                for (MessageQueueEntity queued : queueDao.getMessagesForDestination(newPeerId, now)) {
+                    if (queued.custodyPendingSince == 0 && handOver(queued, newPeerId,
+                            queued.forwardingStrategy, queued.copiesLeft, true)) {
+                        forwarded++;
+                        Log.d(TAG, "🎯 Direct delivery of queued message to " + newPeerId.substring(0, 8));
+                    }
+                }
 
-                        callback.forwardMessage(message, nextHop);
-                        queueDao.markAsDelivered(queued.messageId);
+                // 2. Routed traffic whose next hop just showed up: custody transfer
+                for (MessageQueueEntity queued : queueDao.getMessagesForNextHop(newPeerId, now)) {
+                    if (queued.custodyPendingSince == 0 && isCustodyStrategy(queued.forwardingStrategy)
+                            && handOver(queued, newPeerId, STRATEGY_RELAY, 0, true)) {
                         forwarded++;
+                    }
+                }
 
-                        Log.d(TAG, "📤 Forwarded queued message " + queued.messageId +
-                                " to " + nextHop.substring(0, 8));
-                    } catch (Exception e) {
-                        Log.e(TAG, "❌ Failed to forward message: " + e.getMessage());
-                        queueDao.incrementRetryCount(queued.messageId);
+                // 3. Binary spray: give half of our tickets to the new contact
+                for (MessageQueueEntity queued : queueDao.getSprayCandidates(now)) {
+                    if (newPeerId.equals(queued.destinationId)) {
+                        continue; // Already handled above
                     }
-                } else if (newPeerId != null && queued.destinationId.equals(newPeerId)) {
-                    // Direct connection to destination!
-                    try {
-                        String json = new String(queued.payload, StandardCharsets.UTF_8);
-                        Message message = gson.fromJson(json, Message.class);
-
-                        callback.forwardMessage(message, newPeerId);
-                        queueDao.markAsDelivered(queued.messageId);
+                    int give = queued.copiesLeft / 2;
+                    if (handOver(queued, newPeerId, STRATEGY_SPRAY_AND_WAIT, give, false)) {
+                        queueDao.updateCopiesLeft(queued.messageId, queued.copiesLeft - give);
                         forwarded++;
+                    }
+                }
+            }
 
-                        Log.d(TAG, "🎯 Direct delivery of queued message to " + newPeerId.substring(0, 8));
-                    } catch (Exception e) {
-                        Log.e(TAG, "❌ Failed to send message: " + e.getMessage());
+            // 4. Unrouted relay traffic: check if a route appeared
+            for (MessageQueueEntity queued : queueDao.getUnroutedMessages(now)) {
+                if (callback.hasRoute(queued.destinationId)) {
+                    String nextHop = callback.getNextHop(queued.destinationId);
+                    queueDao.updateNextHop(queued.messageId, nextHop);
+                    if (handOver(queued, nextHop, STRATEGY_RELAY, 0, true)) {
+                        forwarded++;
+                        Log.d(TAG, "📤 Forwarded queued message " + queued.messageId +
+                                " to " + nextHop.substring(0, 8));
                     }
                 }
             }
@@ -134,6 +211,120 @@ public class StoreAndForwardManager {
         });
     }
 
+    private static boolean isCustodyStrategy(String strategy) {
+        return STRATEGY_DIRECT.equals(strategy) || STRATEGY_RELAY.equals(strategy);
+    }
+
+    /**
+     * Wrap a queued message in a DTN_BUNDLE and send it to a neighbor.
+     * With custody the entry stays queued (marked pending) until CUSTODY_ACK.
+     * Returns false if the bundle never left, so no tickets or custody change.
+     */
+    private boolean handOver(MessageQueueEntity queued, String peerId, String strategy, int copies,
+            boolean custody) {
+        try {
+            Message message = gson.fromJson(new String(queued.payload, StandardCharsets.UTF_8), Message.class);
+            message.hopCount++; // Increment hop
+
+            Bundle bundle = new Bundle();
+            bundle.strategy = strategy;
+            bundle.copies = copies;
+            bundle.custody = custody;
+            bundle.message = message;
+
+            Message wrapper = new Message();
+            wrapper.id = java.util.UUID.randomUUID().toString();
+            wrapper.senderId = myDeviceId;
+            wrapper.receiverId = peerId;
+            wrapper.type = Message.Type.DTN_BUNDLE;
+            wrapper.content = gson.toJson(bundle);
+            wrapper.timestamp = System.currentTimeMillis();
+            wrapper.ttl = 0; // One hop only
+
+            if (!callback.forwardMessage(wrapper, peerId)) {
+                Log.d(TAG, "⏸️ Bundle " + queued.messageId + " not sent to " + peerId.substring(0, 8));
+                return false;
+            }
+            if (custody) {
+                queueDao.markCustodyPending(queued.messageId, peerId, System.currentTimeMillis());
+            }
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Failed to forward message: " + e.getMessage());
+            queueDao.incrementRetryCount(queued.messageId);
+            return false;
+        }
+    }
+
+    /**
+     * A neighbor handed us a bundle: deliver it, or take over the copies/custody
+     */
+    public void handleBundle(String fromEndpointId, Message wrapper) {
+        AppDatabase.databaseWriteExecutor.execute(() -> {
+            Bundle bundle;
+            try {
+                bundle = gson.fromJson(wrapper.content, Bundle.class);
+            } catch (Exception e) {
+                Log.e(TAG, "Malformed bundle from " + fromEndpointId, e);
+                return;
+            }
+            if (bundle == null || bundle.message == null || bundle.message.id == null) {
+                return;
+            }
+            Message message = bundle.message;
+
+            if (myDeviceId.equals(message.receiverId)) {
+                message.ttl = 0;
+                callback.deliverLocally(fromEndpointId, message);
+            } else if (queueDao.getMessage(message.id) == null) {
+                MessageQueueEntity queuedMsg = new MessageQueueEntity(message.id, message.receiverId,
+                        gson.toJson(message).getBytes(StandardCharsets.UTF_8));
+                queuedMsg.hopCount = message.hopCount;
+                queuedMsg.maxHops = message.maxHops;
+                queuedMsg.forwardingStrategy = bundle.strategy != null ? bundle.strategy : STRATEGY_RELAY;
+                queuedMsg.copiesLeft = Math.max(1, bundle.copies);
+                if (callback.hasRoute(message.receiverId)) {
+                    queuedMsg.nextHopId = callback.getNextHop(message.receiverId);
+                }
+                queueDao.insertMessage(queuedMsg);
+                Log.d(TAG, "📦 Took " + queuedMsg.forwardingStrategy + " bundle " + message.id
+                        + " (copies: " + queuedMsg.copiesLeft + ")");
+            } else if (STRATEGY_SPRAY_AND_WAIT.equals(bundle.strategy) && bundle.copies > 0
+                    && queueDao.addCopies(message.id, bundle.copies) > 0) {
+                // Already spraying it ourselves: keep the sender's tickets instead of losing them
+                Log.d(TAG, "📦 Merged " + bundle.copies + " spray tickets into " + message.id);
+            }
+
+            if (bundle.custody) {
+                Message ack = new Message();
+                ack.id = java.util.UUID.randomUUID().toString();
+                ack.senderId = myDeviceId;
+                ack.receiverId = wrapper.senderId;
+                ack.type = Message.Type.CUSTODY_ACK;
+                ack.receiptFor = message.id;
+                ack.timestamp = System.currentTimeMillis();
+                ack.ttl = 0;
+                callback.forwardMessage(ack, wrapper.senderId);
+            }
+        });
+    }
+
+    /**
+     * Next hop accepted custody: we no longer need to carry the message
+     */
+    public void handleCustodyAck(Message ack) {
+        if (ack.receiptFor == null)
+            return;
+        AppDatabase.databaseWriteExecutor.execute(() -> {
+            MessageQueueEntity queued = queueDao.getMessage(ack.receiptFor);
+            if (queued != null && queued.custodyPendingSince > 0) {
+                queueDao.deleteMessage(ack.receiptFor);
+                Log.d(TAG, "🤝 Custody of " + ack.receiptFor + " accepted by "
+                        + (ack.senderId != null ? ack.senderId.substring(0, 8) : "unknown"));
+            }
+        });
+    }
+
     /**
      * Cleanup expired messages periodically
      */
@@ -0,0 +1,169 @@
+package com.example.disastercomm.network;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Scheduling state for fetching one object from several neighbors at once.
+ * Tracks which chunks each peer holds and which are in flight, and assigns
+ * missing chunks rarest-first to the least loaded peer that has them, so
+ * different neighbors serve different parts of the same object in parallel.
+ */
+public class SwarmDownload {
+    static final int MAX_INFLIGHT_PER_PEER = 4;
+    static final long CHUNK_TIMEOUT_MS = 20 * 1000;
+
+    private static class InFlight {
+        final String peer;
+        final long deadline;
+
+        InFlight(String peer, long deadline) {
+            this.peer = peer;
+            this.deadline = deadline;
+        }
+    }
+
+    final ContentTransferManager.Manifest manifest;
+    private final BitSet have = new BitSet();
+    private final Map<String, BitSet> peerHave = new HashMap<>();
+    private final Map<Integer, InFlight> inFlight = new HashMap<>();
+    private final Random random = new Random();
+
+    public SwarmDownload(ContentTransferManager.Manifest manifest) {
+        this.manifest = manifest;
+    }
+
+    public synchronized void onPeerHave(String peer, BitSet bits) {
+        peerHave.put(peer, bits);
+    }
+
+    public synchronized void onPeerLost(String peer) {
+        peerHave.remove(peer);
+        releaseInFlight(peer);
+    }
+
+    /**
+     * A peer's stream ended: whatever it did not deliver can go elsewhere
+     */
+    public synchronized void releaseInFlight(String peer) {
+        inFlight.values().removeIf(f -> f.peer.equals(peer));
+    }
+
+    /**
+     * Assign missing chunks to peers. Returns peer -> chunk indices to request.
+     */
+    public synchronized Map<String, List<Integer>> schedule(long now) {
+        Iterator<InFlight> it = inFlight.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().deadline < now) {
+                it.remove(); // Timed out, reassign
+            }
+        }
+
+        Map<String, Integer> load = new HashMap<>();
+        for (String peer : peerHave.keySet()) {
+            load.put(peer, 0);
+        }
+        for (InFlight f : inFlight.values()) {
+            Integer current = load.get(f.peer);
+            if (current != null) {
+                load.put(f.peer, current + 1);
+            }
+        }
+
+        // Rarest first: chunks held by few peers are the ones most at risk of disappearing
+        List<int[]> candidates = new ArrayList<>(); // {index, availability}
+        for (int i = have.nextClearBit(0); i < manifest.chunkCount(); i = have.nextClearBit(i + 1)) {
+            if (inFlight.containsKey(i)) {
+                continue;
+            }
+            int availability = 0;
+            for (BitSet bits : peerHave.values()) {
+                if (bits.get(i)) {
+                    availability++;
+                }
+            }
+            if (availability > 0) {
+                candidates.add(new int[] { i, availability });
+            }
+        }
+        Collections.shuffle(candidates, random); // Random among equally rare chunks
+        Collections.sort(candidates, (a, b) -> Integer.compare(a[1], b[1]));
+
+        Map<String, List<Integer>> requests = new HashMap<>();
+        for (int[] candidate : candidates) {
+            String best = null;
+            int bestLoad = MAX_INFLIGHT_PER_PEER;
+            for (Map.Entry<String, BitSet> peer : peerHave.entrySet()) {
+                int peerLoad = load.get(peer.getKey());
+                if (peer.getValue().get(candidate[0]) && peerLoad < bestLoad) {
+                    best = peer.getKey();
+                    bestLoad = peerLoad;
+                }
+            }
+            if (best == null) {
+                continue;
+            }
+            load.put(best, bestLoad + 1);
+            inFlight.put(candidate[0], new InFlight(best, now + CHUNK_TIMEOUT_MS));
+            List<Integer> list = requests.get(best);
+            if (list == null) {
+                list = new ArrayList<>();
+                requests.put(best, list);
+            }
+            list.add(candidate[0]);
+        }
+        return requests;
+    }
+
+    /**
+     * Returns true if the chunk was not held before
+     */
+    public synchronized boolean markVerified(int index) {
+        inFlight.remove(index);
+        if (have.get(index)) {
+            return false;
+        }
+        have.set(index);
+        return true;
+    }
+
+    // Chunk was evicted from the store before assembly
+    public synchronized void markMissing(int index) {
+        have.clear(index);
+    }
+
+    public synchronized boolean has(int index) {
+        return have.get(index);
+    }
+
+    public synchronized boolean isComplete() {
+        return have.cardinality() == manifest.chunkCount();
+    }
+
+    public synchronized int verifiedChunks() {
+        return have.cardinality();
+    }
+
+    public synchronized long verifiedBytes() {
+        long bytes = 0;
+        for (int i = have.nextSetBit(0); i >= 0; i = have.nextSetBit(i + 1)) {
+            bytes += manifest.chunkLength(i);
+        }
+        return bytes;
+    }
+
+    public synchronized BitSet snapshot() {
+        return (BitSet) have.clone();
+    }
+
+    public synchronized int peerCount() {
+        return peerHave.size();
+    }
+}
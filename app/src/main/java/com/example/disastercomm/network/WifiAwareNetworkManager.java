@@ -1,12 +1,13 @@
 package com.example.disastercomm.network;
 
-import android.content.BroadcastReceiver;
 import android.content.Context;
-import android.content.Intent;
-import android.content.IntentFilter;
 import android.content.pm.PackageManager;
 import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkRequest;
 import android.net.NetworkSpecifier;
+import android.net.TransportInfo;
 import android.net.wifi.aware.AttachCallback;
 import android.net.wifi.aware.DiscoverySession;
 import android.net.wifi.aware.DiscoverySessionCallback;
@@ -16,6 +17,8 @@ import android.net.wifi.aware.PublishDiscoverySession;
 import android.net.wifi.aware.SubscribeConfig;
 import android.net.wifi.aware.SubscribeDiscoverySession;
 import android.net.wifi.aware.WifiAwareManager;
+import android.net.wifi.aware.WifiAwareNetworkInfo;
+import android.net.wifi.aware.WifiAwareNetworkSpecifier;
 import android.net.wifi.aware.WifiAwareSession;
 import android.os.Build;
 import android.os.Handler;
@@ -25,25 +28,66 @@ import android.util.Log;
 import androidx.annotation.RequiresApi;
 import androidx.core.app.ActivityCompat;
 
+import com.example.disastercomm.utils.DeviceUtil;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Inet6Address;
+import java.net.ServerSocket;
+import java.net.Socket;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Manages Wi-Fi Aware (NAN) connectivity.
  * Implements NAN-DAP (Neighbor Awareness Networking - Discovery And Pairing).
+ *
+ * Every device both publishes and subscribes, and a PeerHandle is only
+ * valid inside the session that produced it, so one phone shows up under
+ * several handles. Peers are therefore keyed by device id: it travels in
+ * the service-specific info and in DAP_INIT, and each peer is one link
+ * ("NAN_" + device id) whatever handle it was heard on.
+ *
+ * Discovery messages carry at most 255 bytes. On Android 10+ a NAN data
+ * path (an IPv6 link with a TCP socket) is opened to up to
+ * MAX_DATA_PATHS peers for bulk traffic; the lower device id initiates on
+ * its subscribe session, the other side responds on its publish session.
+ * Frames on the socket use StreamFraming (4-byte length plus the packet).
  */
 @RequiresApi(api = Build.VERSION_CODES.O)
-public class WifiAwareNetworkManager {
+public class WifiAwareNetworkManager implements Transport {
     private static final String TAG = "WifiAwareManager";
     private static final String SERVICE_NAME = "DisasterComm_NAN";
+    private static final String LINK_PREFIX = "NAN_";
+    private static final int MAX_MESSAGE_BYTES = 255; // Discovery-session messages are tiny
+    private static final int DATA_PATH_MTU = 64 * 1024;
+    private static final int MAX_DATA_PATHS = 2; // Typical NAN chips support one or two
+    private static final String PASSPHRASE = "DisasterCommNanLink"; // Keeps stray NAN peers off the data path
+    private static final String DAP_INIT = "DAP_INIT"; // ":" + device id
+    private static final String DAP_PATH = "DAP_PATH"; // Initiator asks the responder to arm a data path
+    private static final int REQUEST_TIMEOUT_MS = 15000;
+    private static final long PATH_RETRY_MS = 60000;
 
     private final Context context;
     private final WifiAwareManager wifiAwareManager;
+    private final ConnectivityManager connectivityManager;
+    private final String myDeviceId;
     private WifiAwareSession awareSession;
     private PublishDiscoverySession publishSession;
     private SubscribeDiscoverySession subscribeSession;
-    private final Handler handler = new Handler(Looper.getMainLooper());
-    private boolean isScanning = false;
+    private volatile Handler handler = new Handler(Looper.getMainLooper());
+    private final ExecutorService io = Executors.newCachedThreadPool(); // Accept + read, two per data path at most
+    private final AtomicInteger messageIds = new AtomicInteger();
+    private volatile boolean running = false;
 
     public interface WifiAwareCallback {
         void onNanoDeviceFound(PeerHandle peerHandle, byte[] serviceSpecificInfo);
@@ -51,12 +95,68 @@ public class WifiAwareNetworkManager {
         void onNanoMessageReceived(PeerHandle peerHandle, byte[] message);
     }
 
+    /**
+     * One device, however many handles it was heard on
+     */
+    private static class NanPeer {
+        final String linkId;
+        volatile String deviceId; // Null for old clients that never said who they are
+        volatile PeerHandle subscribeHandle; // We discovered its publish
+        volatile PeerHandle publishHandle; // It messaged our publish
+        volatile DataPath dataPath;
+        long pathRetryAt;
+
+        NanPeer(String linkId, String deviceId) {
+            this.linkId = linkId;
+            this.deviceId = deviceId;
+        }
+    }
+
+    private class DataPath {
+        final NanPeer peer;
+        final boolean initiator;
+        ConnectivityManager.NetworkCallback networkCallback;
+        ServerSocket serverSocket;
+        volatile Socket socket;
+        volatile DataOutputStream out;
+        volatile boolean closed;
+
+        DataPath(NanPeer peer, boolean initiator) {
+            this.peer = peer;
+            this.initiator = initiator;
+        }
+    }
+
     private final WifiAwareCallback callback;
+    private volatile Transport.Listener transportListener;
+
+    // linkId -> peer, and every handle we know -> its peer
+    private final Map<String, NanPeer> peers = new ConcurrentHashMap<>();
+    private final Map<PeerHandle, NanPeer> peersByHandle = new ConcurrentHashMap<>();
+
+    // Stats
+    private final AtomicLong messagesOut = new AtomicLong();
+    private final AtomicLong messagesIn = new AtomicLong();
+    private final AtomicLong framesOut = new AtomicLong();
+    private final AtomicLong framesIn = new AtomicLong();
+    private final AtomicLong pathBytesOut = new AtomicLong();
+    private final AtomicLong pathBytesIn = new AtomicLong();
+    private final AtomicLong pathsOpened = new AtomicLong();
+    private final AtomicLong pathFailures = new AtomicLong();
 
     public WifiAwareNetworkManager(Context context, WifiAwareCallback callback) {
         this.context = context;
         this.callback = callback;
         this.wifiAwareManager = (WifiAwareManager) context.getSystemService(Context.WIFI_AWARE_SERVICE);
+        this.connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        this.myDeviceId = DeviceUtil.getDeviceId(context);
+    }
+
+    /**
+     * Receive Wi-Fi Aware session callbacks on this looper. Set before start().
+     */
+    public void setEventLooper(Looper looper) {
+        this.handler = new Handler(looper);
     }
 
     public boolean isSupported() {
@@ -75,6 +175,7 @@ public class WifiAwareNetworkManager {
             return;
         }
 
+        running = true;
         wifiAwareManager.attach(new AttachCallback() {
             @Override
             public void onAttached(WifiAwareSession session) {
@@ -91,12 +192,92 @@ public class WifiAwareNetworkManager {
         }, handler);
     }
 
-    private final java.util.Set<PeerHandle> knownPeers = java.util.Collections
-            .synchronizedSet(new java.util.HashSet<>());
+    public static String linkIdFor(PeerHandle peerHandle) {
+        return LINK_PREFIX + peerHandle.toString();
+    }
+
+    public static String linkIdForDevice(String deviceId) {
+        return LINK_PREFIX + deviceId;
+    }
+
+    /**
+     * Device id behind a NAN link, or null if the peer never told us
+     */
+    public String getDeviceId(String linkId) {
+        NanPeer peer = linkId != null ? peers.get(linkId) : null;
+        return peer != null ? peer.deviceId : null;
+    }
+
+    // --- Identity ---
+
+    /**
+     * Bind a handle (from one of our sessions) to a peer, by device id when
+     * known. The first time we hear from a peer its link comes up.
+     */
+    private NanPeer trackPeer(PeerHandle peerHandle, boolean fromSubscribe, String deviceId) {
+        NanPeer peer = peersByHandle.get(peerHandle);
+        if (peer == null || (deviceId != null && peer.deviceId == null)) {
+            NanPeer anonymous = peer;
+            if (deviceId != null) {
+                peer = peers.get(linkIdForDevice(deviceId));
+                if (peer == null) {
+                    peer = new NanPeer(linkIdForDevice(deviceId), deviceId);
+                    addPeer(peer);
+                }
+            } else {
+                peer = new NanPeer(linkIdFor(peerHandle), null);
+                addPeer(peer);
+            }
+            if (anonymous != null && anonymous != peer) {
+                // Identified now; fold the handle-keyed link into the device one
+                for (Map.Entry<PeerHandle, NanPeer> entry : peersByHandle.entrySet()) {
+                    if (entry.getValue() == anonymous) {
+                        entry.setValue(peer);
+                    }
+                }
+                if (peer.subscribeHandle == null) {
+                    peer.subscribeHandle = anonymous.subscribeHandle;
+                }
+                if (peer.publishHandle == null) {
+                    peer.publishHandle = anonymous.publishHandle;
+                }
+                removePeer(anonymous);
+            }
+            peersByHandle.put(peerHandle, peer);
+        }
+        if (fromSubscribe) {
+            peer.subscribeHandle = peerHandle;
+        } else {
+            peer.publishHandle = peerHandle;
+        }
+        return peer;
+    }
+
+    private void addPeer(NanPeer peer) {
+        if (peers.put(peer.linkId, peer) == null && transportListener != null) {
+            transportListener.onLinkUp(this, peer.linkId, peer.deviceId != null ? peer.deviceId : peer.linkId);
+        }
+    }
+
+    private void removePeer(NanPeer peer) {
+        if (peers.remove(peer.linkId) != null && transportListener != null) {
+            transportListener.onLinkDown(this, peer.linkId);
+        }
+        closeDataPath(peer);
+    }
+
+    private static String deviceIdFrom(byte[] info) {
+        if (info == null || info.length == 0) {
+            return null;
+        }
+        String id = new String(info, StandardCharsets.UTF_8).trim();
+        return id.isEmpty() ? null : id;
+    }
 
     private void startPublishing() {
         PublishConfig config = new PublishConfig.Builder()
                 .setServiceName(SERVICE_NAME)
+                .setServiceSpecificInfo(myDeviceId.getBytes(StandardCharsets.UTF_8))
                 .build();
 
         awareSession.publish(config, new DiscoverySessionCallback() {
@@ -108,10 +289,7 @@ public class WifiAwareNetworkManager {
 
             @Override
             public void onMessageReceived(PeerHandle peerHandle, byte[] message) {
-                knownPeers.add(peerHandle); // Track peer
-                if (callback != null) {
-                    callback.onNanoMessageReceived(peerHandle, message);
-                }
+                onDiscoveryMessage(peerHandle, message, false);
             }
         }, handler);
     }
@@ -119,6 +297,7 @@ public class WifiAwareNetworkManager {
     private void startSubscribing() {
         SubscribeConfig config = new SubscribeConfig.Builder()
                 .setServiceName(SERVICE_NAME)
+                .setServiceSpecificInfo(myDeviceId.getBytes(StandardCharsets.UTF_8))
                 .build();
 
         awareSession.subscribe(config, new DiscoverySessionCallback() {
@@ -132,58 +311,361 @@ public class WifiAwareNetworkManager {
             public void onServiceDiscovered(PeerHandle peerHandle, byte[] serviceSpecificInfo,
                     List<byte[]> matchFilter) {
                 Log.d(TAG, "NAN Service Discovered: " + peerHandle);
-                knownPeers.add(peerHandle); // Track peer
+                NanPeer peer = trackPeer(peerHandle, true, deviceIdFrom(serviceSpecificInfo));
                 if (callback != null) {
                     callback.onNanoDeviceFound(peerHandle, serviceSpecificInfo);
                 }
 
-                // Auto-reply to initiate pairing (DAP)
-                sendMessage(peerHandle, "DAP_INIT".getBytes(StandardCharsets.UTF_8));
+                // Auto-reply to initiate pairing (DAP), telling the publisher who we are
+                sendMessage(subscribeSession, peerHandle,
+                        (DAP_INIT + ":" + myDeviceId).getBytes(StandardCharsets.UTF_8));
+                maybeOpenDataPath(peer);
             }
 
             @Override
             public void onMessageReceived(PeerHandle peerHandle, byte[] message) {
-                knownPeers.add(peerHandle); // Track peer
-                if (callback != null) {
-                    callback.onNanoMessageReceived(peerHandle, message);
-                }
+                onDiscoveryMessage(peerHandle, message, true);
             }
         }, handler);
     }
 
+    private void onDiscoveryMessage(PeerHandle peerHandle, byte[] message, boolean fromSubscribe) {
+        String control = message.length < 64 && message.length >= 8 && message[0] == 'D' && message[1] == 'A'
+                && message[2] == 'P' && message[3] == '_' ? new String(message, StandardCharsets.UTF_8) : null;
+        if (control != null) {
+            int split = control.indexOf(':');
+            String deviceId = split > 0 ? control.substring(split + 1) : null;
+            NanPeer peer = trackPeer(peerHandle, fromSubscribe, deviceId);
+            if (control.startsWith(DAP_PATH) && !fromSubscribe) {
+                armResponder(peer);
+            } else if (fromSubscribe) {
+                maybeOpenDataPath(peer);
+            }
+            return; // Pairing chatter, not a packet
+        }
+        messagesIn.incrementAndGet();
+        NanPeer peer = trackPeer(peerHandle, fromSubscribe, null);
+        if (transportListener != null) {
+            transportListener.onReceive(this, peer.linkId, PooledBuffer.wrap(message));
+        }
+        if (callback != null) {
+            callback.onNanoMessageReceived(peerHandle, message);
+        }
+    }
+
+    // --- Messaging ---
+
+    private boolean sendMessage(DiscoverySession session, PeerHandle peerHandle, byte[] message) {
+        if (session == null || peerHandle == null) {
+            return false;
+        }
+        session.sendMessage(peerHandle, messageIds.incrementAndGet(), message);
+        messagesOut.incrementAndGet();
+        return true;
+    }
+
     public void sendMessage(PeerHandle peerHandle, byte[] message) {
-        if (publishSession != null) {
-            publishSession.sendMessage(peerHandle, 0, message);
-        } else if (subscribeSession != null) {
-            subscribeSession.sendMessage(peerHandle, 0, message);
+        NanPeer peer = peersByHandle.get(peerHandle);
+        if (peer != null) {
+            sendToPeer(peer, message);
+        }
+    }
+
+    // Data path if up, else a discovery message on a session that knows the handle
+    private boolean sendToPeer(NanPeer peer, byte[] data) {
+        DataPath path = peer.dataPath;
+        if (path != null && path.out != null) {
+            if (writeFrame(path, data)) {
+                return true;
+            }
+        }
+        if (data.length > MAX_MESSAGE_BYTES) {
+            return false;
         }
+        return sendMessage(subscribeSession, peer.subscribeHandle, data)
+                || sendMessage(publishSession, peer.publishHandle, data);
     }
 
     public void broadcastMessage(byte[] message) {
-        broadcastMessage(message, null);
+        broadcast(message, null);
+    }
+
+    // --- Data paths ---
+
+    private int dataPathCount() {
+        int count = 0;
+        for (NanPeer peer : peers.values()) {
+            if (peer.dataPath != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Initiator side: lower device id, on the subscribe session
+     */
+    private void maybeOpenDataPath(NanPeer peer) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q || !running || peer.deviceId == null
+                || peer.subscribeHandle == null || subscribeSession == null || peer.dataPath != null
+                || myDeviceId.compareTo(peer.deviceId) >= 0 || System.currentTimeMillis() < peer.pathRetryAt
+                || dataPathCount() >= MAX_DATA_PATHS) {
+            return;
+        }
+        DataPath path = new DataPath(peer, true);
+        peer.dataPath = path;
+        sendMessage(subscribeSession, peer.subscribeHandle, (DAP_PATH + ":" + myDeviceId).getBytes(StandardCharsets.UTF_8));
+        requestNetwork(path, new WifiAwareNetworkSpecifier.Builder(subscribeSession, peer.subscribeHandle)
+                .setPskPassphrase(PASSPHRASE)
+                .build());
+        Log.d(TAG, "📶 Requesting NAN data path to " + peer.deviceId.substring(0, Math.min(8, peer.deviceId.length())));
+    }
+
+    /**
+     * Responder side: listen, and publish the port through the data path setup
+     */
+    private void armResponder(NanPeer peer) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q || !running || peer.publishHandle == null
+                || publishSession == null || peer.dataPath != null || dataPathCount() >= MAX_DATA_PATHS) {
+            return;
+        }
+        DataPath path = new DataPath(peer, false);
+        try {
+            path.serverSocket = new ServerSocket(0);
+            path.serverSocket.setSoTimeout(REQUEST_TIMEOUT_MS * 2);
+        } catch (IOException e) {
+            Log.e(TAG, "NAN server socket failed", e);
+            return;
+        }
+        peer.dataPath = path;
+        requestNetwork(path, new WifiAwareNetworkSpecifier.Builder(publishSession, peer.publishHandle)
+                .setPskPassphrase(PASSPHRASE)
+                .setPort(path.serverSocket.getLocalPort())
+                .build());
+        io.execute(() -> {
+            try {
+                attach(path, path.serverSocket.accept());
+            } catch (IOException e) {
+                failDataPath(path, "accept: " + e.getMessage());
+            }
+        });
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.Q)
+    private void requestNetwork(DataPath path, NetworkSpecifier specifier) {
+        NetworkRequest request = new NetworkRequest.Builder()
+                .addTransportType(NetworkCapabilities.TRANSPORT_WIFI_AWARE)
+                .setNetworkSpecifier(specifier)
+                .build();
+        path.networkCallback = new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onCapabilitiesChanged(Network network, NetworkCapabilities capabilities) {
+                if (!path.initiator || path.socket != null || path.closed) {
+                    return;
+                }
+                TransportInfo info = capabilities.getTransportInfo();
+                if (!(info instanceof WifiAwareNetworkInfo)) {
+                    return;
+                }
+                Inet6Address address = ((WifiAwareNetworkInfo) info).getPeerIpv6Addr();
+                int port = ((WifiAwareNetworkInfo) info).getPort();
+                if (address == null || port <= 0) {
+                    return;
+                }
+                io.execute(() -> {
+                    try {
+                        attach(path, network.getSocketFactory().createSocket(address, port));
+                    } catch (IOException e) {
+                        failDataPath(path, "connect: " + e.getMessage());
+                    }
+                });
+            }
+
+            @Override
+            public void onUnavailable() {
+                failDataPath(path, "unavailable");
+            }
+
+            @Override
+            public void onLost(Network network) {
+                failDataPath(path, "lost");
+            }
+        };
+        connectivityManager.requestNetwork(request, path.networkCallback, handler, REQUEST_TIMEOUT_MS);
     }
 
-    public void broadcastMessage(byte[] message, PeerHandle excludeHandle) {
-        synchronized (knownPeers) {
-            for (PeerHandle peer : knownPeers) {
-                if (excludeHandle == null || !peer.equals(excludeHandle)) {
-                    sendMessage(peer, message);
+    private void attach(DataPath path, Socket socket) throws IOException {
+        if (path.closed || path.socket != null) {
+            socket.close();
+            return;
+        }
+        socket.setTcpNoDelay(true);
+        path.socket = socket;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        path.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        pathsOpened.incrementAndGet();
+        Log.d(TAG, "✅ NAN data path up with " + path.peer.linkId);
+        try {
+            while (!path.closed) {
+                PooledBuffer packet = StreamFraming.read(in, DATA_PATH_MTU);
+                framesIn.incrementAndGet();
+                pathBytesIn.addAndGet(packet.length());
+                if (transportListener != null) {
+                    transportListener.onReceive(this, path.peer.linkId, packet);
+                } else {
+                    packet.release();
                 }
             }
+        } catch (IOException e) {
+            failDataPath(path, e.getMessage());
+        }
+    }
+
+    private boolean writeFrame(DataPath path, byte[] data) {
+        DataOutputStream out = path.out;
+        if (out == null || data.length > DATA_PATH_MTU) {
+            return false;
+        }
+        try {
+            synchronized (path) {
+                StreamFraming.write(out, data);
+            }
+            framesOut.incrementAndGet();
+            pathBytesOut.addAndGet(data.length);
+            return true;
+        } catch (IOException e) {
+            failDataPath(path, "write: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void failDataPath(DataPath path, String reason) {
+        if (path.closed) {
+            return;
+        }
+        if (path.socket == null) {
+            pathFailures.incrementAndGet();
+        }
+        Log.w(TAG, "NAN data path with " + path.peer.linkId + " closed (" + reason + ")");
+        path.peer.pathRetryAt = System.currentTimeMillis() + PATH_RETRY_MS;
+        closeDataPath(path.peer);
+        // Messages keep flowing meanwhile; the initiator retries later
+        handler.postDelayed(() -> maybeOpenDataPath(path.peer), PATH_RETRY_MS);
+    }
+
+    private void closeDataPath(NanPeer peer) {
+        DataPath path = peer.dataPath;
+        if (path == null) {
+            return;
+        }
+        peer.dataPath = null;
+        path.closed = true;
+        path.out = null;
+        try {
+            if (path.socket != null) {
+                path.socket.close();
+            }
+            if (path.serverSocket != null) {
+                path.serverSocket.close();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Close NAN socket failed", e);
+        }
+        if (path.networkCallback != null) {
+            try {
+                connectivityManager.unregisterNetworkCallback(path.networkCallback);
+            } catch (IllegalArgumentException e) {
+                // Already released
+            }
         }
     }
 
     public void stop() {
+        running = false;
+        for (NanPeer peer : peers.values()) {
+            closeDataPath(peer);
+        }
         if (awareSession != null) {
             awareSession.close();
             awareSession = null;
         }
         publishSession = null;
         subscribeSession = null;
-        knownPeers.clear();
+        for (String linkId : peers.keySet()) {
+            if (transportListener != null) {
+                transportListener.onLinkDown(this, linkId);
+            }
+        }
+        peers.clear();
+        peersByHandle.clear();
     }
 
     public int getPeerCount() {
-        return knownPeers.size();
+        return peers.size();
+    }
+
+    public String getStatsSummary() {
+        return String.format("Wi-Fi Aware: %d peers, %d data paths (%d opened, %d failed), "
+                        + "messages %d out/%d in, frames %d out/%d in (%d/%d KB)",
+                peers.size(), dataPathCount(), pathsOpened.get(), pathFailures.get(), messagesOut.get(),
+                messagesIn.get(), framesOut.get(), framesIn.get(), pathBytesOut.get() / 1024,
+                pathBytesIn.get() / 1024);
+    }
+
+    // --- Transport ---
+
+    @Override
+    public String getName() {
+        return "wifi_aware";
+    }
+
+    @Override
+    public int getCapabilities() {
+        return CAP_UNICAST | CAP_BROADCAST;
+    }
+
+    @Override
+    public int getMtu() {
+        return MAX_MESSAGE_BYTES;
+    }
+
+    /**
+     * Links with a data path carry full packets; the rest only discovery messages
+     */
+    @Override
+    public int getMtu(String linkId) {
+        NanPeer peer = linkId != null ? peers.get(linkId) : null;
+        DataPath path = peer != null ? peer.dataPath : null;
+        return path != null && path.out != null ? DATA_PATH_MTU : MAX_MESSAGE_BYTES;
+    }
+
+    @Override
+    public java.util.List<String> getLinks() {
+        return new java.util.ArrayList<>(peers.keySet());
+    }
+
+    @Override
+    public boolean hasLink(String linkId) {
+        return linkId != null && peers.containsKey(linkId);
+    }
+
+    @Override
+    public boolean send(String linkId, byte[] data) {
+        NanPeer peer = linkId != null ? peers.get(linkId) : null;
+        return peer != null && sendToPeer(peer, data);
+    }
+
+    @Override
+    public void broadcast(byte[] data, String excludeLinkId) {
+        for (NanPeer peer : peers.values()) {
+            if (excludeLinkId == null || !peer.linkId.equals(excludeLinkId)) {
+                sendToPeer(peer, data);
+            }
+        }
+    }
+
+    @Override
+    public void setTransportListener(Transport.Listener listener) {
+        this.transportListener = listener;
     }
 }
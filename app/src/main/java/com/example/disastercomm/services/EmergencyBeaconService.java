@@ -28,7 +28,7 @@ public class EmergencyBeaconService extends Service {
 
     // Custom UUID for Disaster Communication Mesh Network
     private static final UUID SERVICE_UUID = UUID.fromString("12345678-1234-5678-1234-56789abcdef0");
-    private static final int MANUFACTURER_ID = 0xFFFF; // Custom manufacturer ID
+    public static final int MANUFACTURER_ID = 0xFFFF; // Custom manufacturer ID, shared with BeaconFrame
 
     private BluetoothLeAdvertiser advertiser;
     private AdvertiseCallback advertiseCallback;
@@ -97,7 +97,7 @@ public class EmergencyBeaconService extends Service {
         }
 
         // Create manufacturer data payload
-        byte[] manufacturerData = buildBeaconPayload();
+        byte[] manufacturerData = buildBeaconPayload(0x01, lastLatitude, lastLongitude, deviceId);
 
         AdvertiseSettings settings = new AdvertiseSettings.Builder()
                 .setAdvertiseMode(AdvertiseSettings.ADVERTISE_MODE_LOW_POWER) // Ultra-low power
@@ -121,22 +121,21 @@ public class EmergencyBeaconService extends Service {
      * Format: [2bytes: "DC"] [1byte: flags] [4bytes: lat] [4bytes: lng] [4bytes:
      * deviceIdHash]
      */
-    private byte[] buildBeaconPayload() {
+    public static byte[] buildBeaconPayload(int flags, double latitude, double longitude, String deviceId) {
         ByteBuffer buffer = ByteBuffer.allocate(15);
 
         // Signature: "DC" (Disaster Comm)
         buffer.put((byte) 'D');
         buffer.put((byte) 'C');
 
-        // Flags: bit 0 = SOS, bit 1 = LOW_BATTERY
-        byte flags = 0x01; // SOS flag
-        buffer.put(flags);
+        // Flags: bit 0 = SOS, bit 1 = LOW_BATTERY (bit 7 marks a BeaconFrame instead)
+        buffer.put((byte) (flags & 0x7F));
 
         // Latitude (float, 4 bytes)
-        buffer.putFloat((float) lastLatitude);
+        buffer.putFloat((float) latitude);
 
         // Longitude (float, 4 bytes)
-        buffer.putFloat((float) lastLongitude);
+        buffer.putFloat((float) longitude);
 
         // Device ID hash (4 bytes) - simple hash for identification
         int deviceHash = deviceId.hashCode();
@@ -196,6 +195,9 @@ public class EmergencyBeaconService extends Service {
         if (data[0] != 'D' || data[1] != 'C') {
             return null; // Not our beacon
         }
+        if ((data[2] & 0x80) != 0) {
+            return null; // A BeaconFrame, see BeaconChannel
+        }
 
         ByteBuffer buffer = ByteBuffer.wrap(data);
         buffer.get(); // Skip 'D'
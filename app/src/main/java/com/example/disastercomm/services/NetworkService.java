@@ -7,6 +7,8 @@ import android.app.Service;
 import android.content.Intent;
 import android.os.Binder;
 import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
 import android.util.Log;
 
@@ -15,12 +17,24 @@ import androidx.core.app.NotificationCompat;
 
 import com.example.disastercomm.R;
 import com.example.disastercomm.data.AppDatabase;
+import com.example.disastercomm.models.Message;
 import com.example.disastercomm.network.BluetoothConnectionManager;
+import com.example.disastercomm.network.ConnectBackoff;
+import com.example.disastercomm.network.ConnectionPoolManager;
+import com.example.disastercomm.network.ContentTransferManager;
+import com.example.disastercomm.network.LanTransport;
+import com.example.disastercomm.network.LinkSendQueues;
+import com.example.disastercomm.network.AntiEntropySync;
 import com.example.disastercomm.network.MeshNetworkManager;
+import com.example.disastercomm.network.MeshRoutingTable;
+import com.example.disastercomm.network.NetworkHealthMonitor;
 import com.example.disastercomm.network.NetworkStateMonitor;
 import com.example.disastercomm.network.PacketHandler;
+import com.example.disastercomm.network.StoreAndForwardManager;
+import com.example.disastercomm.network.TransportRegistry;
 import com.example.disastercomm.network.BLEAdvertiser;
 import com.example.disastercomm.network.BLEHubClient; // New Hub Client
+import com.example.disastercomm.network.BeaconChannel;
 import com.example.disastercomm.utils.DeviceUtil;
 import com.example.disastercomm.utils.NotificationHelper;
 import com.example.disastercomm.utils.NotificationSoundManager;
@@ -38,8 +52,25 @@ public class NetworkService extends Service {
     private BluetoothConnectionManager bluetoothConnectionManager;
     private BLEAdvertiser bleAdvertiser;
     private BLEHubClient bleHubClient; // Hub Client
+    private BeaconChannel beaconChannel; // Connectionless SOS/alert advertisements
     private com.example.disastercomm.network.WifiAwareNetworkManager wifiAwareNetworkManager; // ✅ Wi-Fi Aware Manager
+    private LanTransport lanTransport; // Hotspot / shared Wi-Fi links
+    private android.net.wifi.WifiManager.MulticastLock multicastLock; // Wi-Fi drops multicast beacons without it
     private PacketHandler packetHandler;
+    private TransportRegistry transportRegistry;
+    private MeshRoutingTable routingTable;
+    private ConnectionPoolManager connectionPoolManager;
+    private NetworkHealthMonitor healthMonitor;
+    private StoreAndForwardManager storeAndForwardManager;
+    private AntiEntropySync antiEntropySync;
+    private ContentTransferManager contentTransferManager;
+    private final ConnectBackoff bluetoothBackoff = new ConnectBackoff(); // Phones seen over BLE, not yet linked
+    private static final int MIN_FRAME_LINK_BYTES = 16 * 1024; // Below this, Base64 pieces are as good
+    private static final long CONNECT_SWEEP_MS = 15000;
+
+    // Network event loop: radio callbacks and protocol timers run here, off the UI thread
+    private HandlerThread networkThread;
+    private Handler networkHandler;
     private NetworkStateMonitor networkStateMonitor;
     private NotificationSoundManager notificationSoundManager;
     private NotificationHelper notificationHelper;
@@ -84,12 +115,19 @@ public class NetworkService extends Service {
         // Database
         AppDatabase db = AppDatabase.getDatabase(this);
 
+        // 0. Network event loop, shared by every transport
+        networkThread = new HandlerThread("NetworkLoop");
+        networkThread.start();
+        networkHandler = new Handler(networkThread.getLooper());
+
         // 1. Mesh Network
         meshNetworkManager = new MeshNetworkManager(this, username, new MeshNetworkManager.MeshCallback() {
             @Override
             public void onDeviceConnected(String endpointId, String deviceName) {
                 // Forward to Activity via Broadcast or Callback
                 broadcastUpdate("MESH_CONNECTED", endpointId, deviceName);
+                if (antiEntropySync != null)
+                    antiEntropySync.onPeerContact(endpointId);
             }
 
             @Override
@@ -99,38 +137,199 @@ public class NetworkService extends Service {
 
             @Override
             public void onPayloadReceived(String endpointId, byte[] payload) {
-                if (packetHandler != null) {
-                    packetHandler.handlePayload(endpointId, payload);
-                }
+                // Delivered to the packet handler through the transport registry
             }
         });
 
+        // Shared link-quality bookkeeping across transports
+        connectionPoolManager = new ConnectionPoolManager();
+        meshNetworkManager.setConnectionPoolManager(connectionPoolManager);
+        meshNetworkManager.setEventLooper(networkThread.getLooper());
+
+        // Every radio registers here; the packet handler sends and receives through it
+        transportRegistry = new TransportRegistry();
+        transportRegistry.register(meshNetworkManager);
+
         // 2. Packet Handler
-        packetHandler = new PacketHandler(this, meshNetworkManager, db);
+        packetHandler = new PacketHandler(this, transportRegistry, db);
+        packetHandler.setConnectionPoolManager(connectionPoolManager);
         // packetHandler.setMessageListener(...) -> Set by Activity later?
         // Or handle simple notifications here?
 
+        // 2.5 Topology: heartbeats carry neighbor lists so floods use MPR relays
+        String myDeviceId = DeviceUtil.getDeviceId(this);
+        routingTable = new MeshRoutingTable();
+        meshNetworkManager.setRoutingTable(routingTable);
+        healthMonitor = new NetworkHealthMonitor(this, myDeviceId, routingTable,
+                new NetworkHealthMonitor.HealthCallback() {
+                    @Override
+                    public void sendHeartbeat(Message heartbeat) {
+                        heartbeat.senderName = username;
+                        packetHandler.sendControlMessage(heartbeat);
+                    }
+
+                    @Override
+                    public void onNodeDead(String deviceId) {
+                        Log.d(TAG, "Neighbor timed out: " + deviceId);
+                    }
+
+                    @Override
+                    public int getBatteryLevel() {
+                        return DeviceUtil.getBatteryRelease(NetworkService.this);
+                    }
+                });
+        packetHandler.setRoutingTable(routingTable);
+        packetHandler.setHealthMonitor(healthMonitor);
+        healthMonitor.addStatsProvider(packetHandler.getBroadcastSuppressor()::getStatsSummary);
+        healthMonitor.addStatsProvider(packetHandler.getLinkReliability()::getStatsSummary);
+        healthMonitor.addStatsProvider(packetHandler.getPacketCodec()::getStatsSummary);
+        healthMonitor.addStatsProvider(packetHandler.getLinkQueues()::getStatsSummary);
+        healthMonitor.addStatsProvider(transportRegistry::getStatsSummary);
+        healthMonitor.addStatsProvider(packetHandler.getRateLimiter()::getStatsSummary);
+        healthMonitor.addStatsProvider(packetHandler.getSessionKeys()::getStatsSummary);
+        healthMonitor.addStatsProvider(packetHandler.getGroupKeys()::getStatsSummary);
+        healthMonitor.addStatsProvider(packetHandler.getKeyDirectory()::getStatsSummary);
+        healthMonitor.addStatsProvider(packetHandler.getSignatureVerifier()::getStatsSummary);
+        healthMonitor.addStatsProvider(meshNetworkManager.getTopology()::getStatsSummary);
+
+        // 2.6 Delay-tolerant delivery: store-and-forward queue + anti-entropy sync on contact
+        storeAndForwardManager = new StoreAndForwardManager(this, new StoreAndForwardManager.ForwardingCallback() {
+            @Override
+            public boolean forwardMessage(Message message, String nextHop) {
+                return packetHandler.sendToDevice(nextHop, message);
+            }
+
+            @Override
+            public boolean hasRoute(String destinationId) {
+                return routingTable.hasRoute(destinationId);
+            }
+
+            @Override
+            public String getNextHop(String destinationId) {
+                return routingTable.getNextHop(destinationId);
+            }
+
+            @Override
+            public void deliverLocally(String fromEndpointId, Message message) {
+                packetHandler.deliverSynced(fromEndpointId, message);
+            }
+        });
+        antiEntropySync = new AntiEntropySync(this, myDeviceId, storeAndForwardManager,
+                new AntiEntropySync.SyncCallback() {
+                    @Override
+                    public void sendToEndpoint(String endpointId, Message message) {
+                        packetHandler.sendToEndpoint(endpointId, message);
+                    }
+
+                    @Override
+                    public void deliverSynced(String endpointId, Message message) {
+                        packetHandler.deliverSynced(endpointId, message);
+                    }
+                });
+        packetHandler.setStoreAndForwardManager(storeAndForwardManager);
+        packetHandler.setAntiEntropySync(antiEntropySync);
+
+        // 2.7 Large content (photos, voice notes): chunked, resumable, rate-limited
+        contentTransferManager = new ContentTransferManager(this, new ContentTransferManager.TransferCallback() {
+            @Override
+            public boolean sendControl(String endpointId, Message message) {
+                return packetHandler.sendToEndpoint(endpointId, message);
+            }
+
+            @Override
+            public long sendStream(String endpointId, java.io.InputStream stream) {
+                return meshNetworkManager.sendStream(endpointId, stream);
+            }
+
+            @Override
+            public boolean canCarryBulk(String endpointId) {
+                return isBulkLink(endpointId);
+            }
+
+            @Override
+            public java.util.List<String> getBulkEndpoints() {
+                java.util.List<String> endpoints = new java.util.ArrayList<>();
+                for (String linkId : transportRegistry.getLinks()) {
+                    if (isBulkLink(linkId)) {
+                        endpoints.add(linkId);
+                    }
+                }
+                return endpoints;
+            }
+
+            @Override
+            public java.util.List<String> getBondedLinks(String endpointId) {
+                return connectionPoolManager.getBondedLinks(endpointId);
+            }
+
+            @Override
+            public boolean supportsStream(String endpointId) {
+                return meshNetworkManager.getConnectedEndpoints().contains(endpointId);
+            }
+
+            @Override
+            public int getFrameBytes(String endpointId) {
+                return frameBytesOf(endpointId);
+            }
+
+            @Override
+            public boolean sendFrame(String endpointId, byte[] frame) {
+                return packetHandler.getLinkQueues().enqueue(endpointId, frame, LinkSendQueues.PRIORITY_BULK);
+            }
+
+            @Override
+            public String getEndpointForDevice(String deviceId) {
+                return packetHandler.getEndpointForDevice(deviceId);
+            }
+        });
+        contentTransferManager.setTransferListener(new ContentTransferManager.TransferListener() {
+            @Override
+            public void onProgress(String contentId, String name, long bytesDone, long totalBytes,
+                    boolean outgoing) {
+                int percent = totalBytes > 0 ? (int) (bytesDone * 100 / totalBytes) : 0;
+                broadcastUpdate(outgoing ? "TRANSFER_SEND_PROGRESS" : "TRANSFER_RECEIVE_PROGRESS", contentId,
+                        String.valueOf(percent));
+            }
+
+            @Override
+            public void onTransferComplete(String contentId, java.io.File file, String senderId) {
+                broadcastUpdate("TRANSFER_COMPLETE", contentId, file.getAbsolutePath());
+            }
+        });
+        meshNetworkManager.setStreamListener(new MeshNetworkManager.StreamListener() {
+            @Override
+            public void onStreamReceived(String endpointId, long payloadId, java.io.InputStream stream) {
+                contentTransferManager.onStreamReceived(endpointId, payloadId, stream);
+            }
+
+            @Override
+            public void onTransferUpdate(String endpointId, long payloadId, boolean finished,
+                    long bytesTransferred) {
+                contentTransferManager.onTransferUpdate(endpointId, payloadId, finished, bytesTransferred);
+            }
+        });
+        packetHandler.setContentTransferManager(contentTransferManager);
+
         // 3. Bluetooth
         bluetoothConnectionManager = new BluetoothConnectionManager(this,
                 new BluetoothConnectionManager.BluetoothCallback() {
                     @Override
                     public void onBluetoothConnected(String address, String deviceName) {
                         broadcastUpdate("BT_CONNECTED", address, deviceName);
+                        if (antiEntropySync != null)
+                            antiEntropySync.onPeerContact(address);
                     }
 
                     @Override
                     public void onBluetoothDisconnected(String address) {
                         broadcastUpdate("BT_DISCONNECTED", address, null);
                     }
-
-                    @Override
-                    public void onBluetoothDataReceived(String address, byte[] data) {
-                        if (packetHandler != null) {
-                            packetHandler.handlePayload(address, data);
-                        }
-                    }
                 });
-        packetHandler.setBluetoothManager(bluetoothConnectionManager);
+        bluetoothConnectionManager.setConnectionPoolManager(connectionPoolManager);
+        bluetoothConnectionManager.setEventLooper(networkThread.getLooper());
+        healthMonitor.addStatsProvider(bluetoothConnectionManager::getStatsSummary);
+        healthMonitor.addStatsProvider(bluetoothBackoff::getStatsSummary);
+        transportRegistry.register(bluetoothConnectionManager);
 
         // 3.5 BLE Hub Client (For ESP32-S3)
         bleHubClient = new BLEHubClient(this, new BLEHubClient.HubCallback() {
@@ -143,22 +342,17 @@ public class NetworkService extends Service {
             @Override
             public void onHubDisconnected() {
                 // Determine ID? We just broadcast unknown or generic
-                broadcastUpdate("BT_DISCONNECTED", "Hub", null);
+                broadcastUpdate("BT_DISCONNECTED", BLEHubClient.LINK_ID, null);
             }
 
             @Override
             public void onHubMessageReceived(String message) {
-                if (packetHandler != null) {
-                    // Hub sends raw processing logic, maybe JSON lines?
-                    // The ESP32 code sends "WiFi" or "BLE" prefixed strings or raw JSON?
-                    // Looking at ESP32: pTxCharacteristic->setValue((uint8_t*)toSend.c_str()...
-                    // It sends whatever it receives.
-                    // If it's a JSON string, handlePayload expects byte[]
-                    packetHandler.handlePayload("Hub", message.getBytes(java.nio.charset.StandardCharsets.UTF_8));
-                }
+                // The ESP32 relays whatever it receives; the raw lines reach the
+                // packet handler through the transport registry
             }
         });
-        packetHandler.setBleHubClient(bleHubClient);
+        bleHubClient.setEventLooper(networkThread.getLooper());
+        transportRegistry.register(bleHubClient);
 
         // 3.6 Wifi Aware (NAN)
         if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.O &&
@@ -177,13 +371,25 @@ public class NetworkService extends Service {
                         @Override
                         public void onNanoMessageReceived(android.net.wifi.aware.PeerHandle peerHandle,
                                 byte[] message) {
-                            if (packetHandler != null) {
-                                packetHandler.handlePayload("NAN_" + peerHandle.toString(), message);
-                            }
+                            // Delivered to the packet handler through the transport registry
                         }
                     });
+            transportRegistry.register(wifiAwareNetworkManager);
+            wifiAwareNetworkManager.setEventLooper(networkThread.getLooper());
+            healthMonitor.addStatsProvider(wifiAwareNetworkManager::getStatsSummary);
             wifiAwareNetworkManager.start();
-            packetHandler.setWifiAwareNetworkManager(wifiAwareNetworkManager);
+        }
+
+        // 3.7 LAN: peers on the same hotspot or access point, preferred over the radios
+        lanTransport = new LanTransport(myDeviceId, username);
+        lanTransport.setConnectionPoolManager(connectionPoolManager);
+        transportRegistry.register(lanTransport);
+        healthMonitor.addStatsProvider(lanTransport::getStatsSummary);
+        android.net.wifi.WifiManager wifiManager = (android.net.wifi.WifiManager) getApplicationContext()
+                .getSystemService(WIFI_SERVICE);
+        if (wifiManager != null) {
+            multicastLock = wifiManager.createMulticastLock("DisasterComm_LAN");
+            multicastLock.setReferenceCounted(false);
         }
 
         // 4. BLE Advertiser (Fast Discovery)
@@ -192,6 +398,7 @@ public class NetworkService extends Service {
                     @Override
                     public void onBLEDeviceFound(String address, String name, int rssi) {
                         Log.d(TAG, "BLE Device Found: " + name + " (" + address + ")");
+                        packetHandler.updateLinkSignal(address, rssi);
                         // Trigger fast pairing via Classic Bluetooth
                         if (name != null && name.contains("DisasterComm_S3")) {
                             Log.d(TAG, "⚡ Found ESP32 Hub! Connecting via GATT...");
@@ -202,28 +409,124 @@ public class NetworkService extends Service {
                         }
 
                         // Trigger fast pairing via Classic Bluetooth (Standard Android Phones)
-                        if (bluetoothConnectionManager != null) {
-                            android.bluetooth.BluetoothDevice device = android.bluetooth.BluetoothAdapter
-                                    .getDefaultAdapter().getRemoteDevice(address);
-                            bluetoothConnectionManager.connectToDevice(device);
-                        }
+                        bluetoothBackoff.forget(address); // Fresh sighting, fresh backoff
+                        connectBluetooth(address);
                     }
 
                     @Override
                     public void onBLEConnectionStateChanged(String address, boolean connected) {
                         // Log state change
                     }
+
+                    @Override
+                    public void onBLESignalChanged(String address, int rssi) {
+                        packetHandler.updateLinkSignal(address, rssi);
+                        // A peer moving closer may now be reachable; still within its backoff
+                        if (bluetoothBackoff.isTracked(address)) {
+                            connectBluetooth(address);
+                        }
+                    }
+
+                    @Override
+                    public void onBLEDeviceLost(String address) {
+                        Log.d(TAG, "BLE Device Lost: " + address);
+                        bluetoothBackoff.forget(address);
+                    }
                 });
+        bleAdvertiser.setEventLooper(networkThread.getLooper());
+        healthMonitor.addStatsProvider(bleAdvertiser::getStatsSummary);
+
+        // 4b. Beacon plane: SOS/alerts as BLE advertisements, no connection needed
+        beaconChannel = new BeaconChannel(this, DeviceUtil.getDeviceId(this));
+        beaconChannel.setEventLooper(networkThread.getLooper());
+        beaconChannel.setListener(new BeaconChannel.Listener() {
+            @Override
+            public void onBeaconMessage(String linkId, Message message) {
+                packetHandler.injectBeaconMessage(linkId, message);
+            }
 
-        // 5. Start Managers
-        meshNetworkManager.start();
-        bluetoothConnectionManager.start();
-        bleAdvertiser.startAdvertising();
-        bleAdvertiser.startScanning();
+            @Override
+            public void onLegacyBeacon(String address, EmergencyBeaconService.BeaconData beacon, int rssi) {
+                Log.w(TAG, "🚨 Emergency beacon nearby: " + beacon + " (" + rssi + " dBm)");
+                broadcastUpdate("EMERGENCY_BEACON", address, beacon.latitude + "," + beacon.longitude);
+            }
+        });
+        packetHandler.setBeaconChannel(beaconChannel);
+        healthMonitor.addStatsProvider(beaconChannel::getStatsSummary);
+
+        // 5. Start Managers on the network loop
+        healthMonitor.setEventLooper(networkThread.getLooper());
+        networkHandler.post(() -> {
+            meshNetworkManager.start();
+            bluetoothConnectionManager.start();
+            bleAdvertiser.startAdvertising();
+            bleAdvertiser.startScanning();
+            beaconChannel.start();
+            startLan();
+            healthMonitor.startMonitoring();
+            networkHandler.postDelayed(connectSweep, CONNECT_SWEEP_MS);
+        });
 
         Log.d(TAG, "Network Managers Started");
     }
 
+    /**
+     * Links that take content transfers: Nearby, Bluetooth, and frame links
+     */
+    private boolean isBulkLink(String endpointId) {
+        return meshNetworkManager.getConnectedEndpoints().contains(endpointId)
+                || (bluetoothConnectionManager != null && bluetoothConnectionManager.isConnectedTo(endpointId))
+                || frameBytesOf(endpointId) > 0;
+    }
+
+    /**
+     * MTU of a link that carries large binary frames (LAN, or a Wi-Fi Aware
+     * data path), 0 for links limited to small packets
+     */
+    private int frameBytesOf(String endpointId) {
+        com.example.disastercomm.network.Transport owner = transportRegistry.ownerOf(endpointId);
+        if (owner == null || (owner != lanTransport && owner != wifiAwareNetworkManager)) {
+            return 0;
+        }
+        int mtu = owner.getMtu(endpointId);
+        return mtu >= MIN_FRAME_LINK_BYTES ? mtu : 0;
+    }
+
+    /**
+     * Classic Bluetooth connect to a phone found over BLE, at most once per
+     * backoff interval. Called on the network loop.
+     */
+    private void connectBluetooth(String address) {
+        if (bluetoothConnectionManager == null) {
+            return;
+        }
+        if (bluetoothConnectionManager.isConnectedTo(address)) {
+            bluetoothBackoff.reset(address); // Reconnected by the sweep if the link drops
+            return;
+        }
+        if (!bluetoothBackoff.tryAcquire(address, System.currentTimeMillis())) {
+            return;
+        }
+        try {
+            android.bluetooth.BluetoothDevice device = android.bluetooth.BluetoothAdapter.getDefaultAdapter()
+                    .getRemoteDevice(address);
+            bluetoothConnectionManager.connectToDevice(device);
+        } catch (IllegalArgumentException e) {
+            bluetoothBackoff.forget(address); // Not a valid Bluetooth address
+        }
+    }
+
+    // Peers in range with a stable signal never trigger a scan callback, so retry them here
+    private final Runnable connectSweep = new Runnable() {
+        @Override
+        public void run() {
+            for (String address : bluetoothBackoff.due(System.currentTimeMillis())) {
+                connectBluetooth(address);
+            }
+            networkHandler.postDelayed(this, CONNECT_SWEEP_MS);
+        }
+    };
+
     // Broadcast helper
     private void broadcastUpdate(String action, String id, String extra) {
         Intent intent = new Intent("com.example.disastercomm.NETWORK_UPDATE");
@@ -265,17 +568,58 @@ public class NetworkService extends Service {
     @Override
     public void onDestroy() {
         super.onDestroy();
+        if (networkHandler != null) {
+            // Stop on the loop the managers run on, then let it drain and exit
+            networkHandler.post(() -> {
+                stopManagers();
+                networkThread.quitSafely();
+            });
+        } else {
+            stopManagers();
+        }
+        Log.d(TAG, "NetworkService Destroyed");
+    }
+
+    private void stopManagers() {
+        if (networkHandler != null)
+            networkHandler.removeCallbacks(connectSweep);
+        if (healthMonitor != null)
+            healthMonitor.stopMonitoring();
         if (meshNetworkManager != null)
             meshNetworkManager.stop();
         if (bluetoothConnectionManager != null)
             bluetoothConnectionManager.stop();
         if (bleAdvertiser != null)
             bleAdvertiser.stop();
+        if (beaconChannel != null)
+            beaconChannel.stop();
         if (bleHubClient != null)
             bleHubClient.disconnect();
         if (wifiAwareNetworkManager != null)
             wifiAwareNetworkManager.stop();
-        Log.d(TAG, "NetworkService Destroyed");
+        if (lanTransport != null)
+            lanTransport.stop();
+        if (multicastLock != null && multicastLock.isHeld())
+            multicastLock.release();
+        if (packetHandler != null)
+            packetHandler.close();
+        if (contentTransferManager != null)
+            contentTransferManager.shutdown();
+    }
+
+    private void startLan() {
+        if (multicastLock != null) {
+            multicastLock.acquire();
+        }
+        try {
+            lanTransport.start();
+            Log.d(TAG, "📶 LAN transport listening on port " + lanTransport.getLocalPort());
+        } catch (java.io.IOException e) {
+            Log.e(TAG, "LAN transport failed to start", e);
+            if (multicastLock != null && multicastLock.isHeld()) {
+                multicastLock.release();
+            }
+        }
     }
 
     // Getters for binding
@@ -291,6 +635,19 @@ public class NetworkService extends Service {
         return packetHandler;
     }
 
+    public NetworkHealthMonitor getHealthMonitor() {
+        return healthMonitor;
+    }
+
+    /**
+     * Share a photo/voice note/file with a direct neighbor, or "ALL" to swarm it
+     */
+    public void sendFile(String deviceId, java.io.File file, String mimeType) {
+        if (contentTransferManager != null) {
+            contentTransferManager.sendFile(deviceId, file, mimeType);
+        }
+    }
+
     public com.example.disastercomm.network.WifiAwareNetworkManager getWifiAwareNetworkManager() {
         return wifiAwareNetworkManager;
     }
@@ -314,6 +671,11 @@ public class NetworkService extends Service {
         sb.append("Wi-Fi Aware: ").append(nanCount).append(" peers\n");
         total += nanCount;
 
+        // LAN
+        int lanCount = lanTransport != null ? lanTransport.getLinkCount() : 0;
+        sb.append("LAN: ").append(lanCount).append(" peers\n");
+        total += lanCount;
+
         // Hub
         boolean hubConnected = bleHubClient != null && bleHubClient.isConnected();
         sb.append("LoRa Hub: ").append(hubConnected ? "Connected" : "Disconnected").append("\n");
@@ -7,16 +7,26 @@ import android.security.keystore.KeyProperties;
 import android.util.Base64;
 import android.util.Log;
 
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.security.KeyFactory;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
 import java.security.KeyStore;
 import java.security.PrivateKey;
 import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.security.MessageDigest;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.PKCS8EncodedKeySpec;
 import java.security.spec.X509EncodedKeySpec;
 import javax.crypto.Cipher;
+import javax.crypto.KeyAgreement;
 import javax.crypto.KeyGenerator;
+import javax.crypto.Mac;
 import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 
 public class SecurityUtil {
@@ -26,6 +36,29 @@ public class SecurityUtil {
     private static final String KEY_ALIAS = "DisasterCommKey";
     private static final String PREFS_NAME = "SecurityPrefs";
     private static final String KEY_PUBLIC_KEY = "my_public_key";
+    private static final String WRAP_KEY_ALIAS = "DisasterCommWrapKey";
+    private static final String KEY_ECDH_PUBLIC = "my_ecdh_public";
+    private static final String KEY_ECDH_PRIVATE = "my_ecdh_private_wrapped";
+    private static final String SIGN_KEY_ALIAS = "DisasterCommSignKey";
+    public static final String SIGNATURE_ALGORITHM = "SHA256withECDSA";
+
+    private static final String GCM_TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int GCM_NONCE_BYTES = 12;
+    private static final int GCM_TAG_BITS = 128;
+    private static final byte[] SESSION_INFO = "disastercomm session v1".getBytes(StandardCharsets.UTF_8);
+    private static final SecureRandom random = new SecureRandom();
+
+    // Cipher.getInstance is expensive and Cipher is not thread-safe: one per thread, re-init per message
+    private static final ThreadLocal<Cipher> gcmCipher = new ThreadLocal<Cipher>() {
+        @Override
+        protected Cipher initialValue() {
+            try {
+                return Cipher.getInstance(GCM_TRANSFORMATION);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("AES-GCM unavailable", e);
+            }
+        }
+    };
 
     // --- RSA Key Management ---
 
@@ -86,6 +119,48 @@ public class SecurityUtil {
         }
     }
 
+    // --- Signing Key Management ---
+
+    /**
+     * ECDSA P-256 key pair for signing SOS and alerts. The private key never
+     * leaves the Keystore.
+     */
+    public static KeyPair getOrGenerateSigningKeyPair() {
+        try {
+            KeyStore keyStore = KeyStore.getInstance(KEYSTORE_PROVIDER);
+            keyStore.load(null);
+            if (keyStore.containsAlias(SIGN_KEY_ALIAS)) {
+                KeyStore.PrivateKeyEntry entry = (KeyStore.PrivateKeyEntry) keyStore.getEntry(SIGN_KEY_ALIAS, null);
+                return new KeyPair(entry.getCertificate().getPublicKey(), entry.getPrivateKey());
+            }
+            KeyPairGenerator generator = KeyPairGenerator.getInstance(KeyProperties.KEY_ALGORITHM_EC,
+                    KEYSTORE_PROVIDER);
+            generator.initialize(new KeyGenParameterSpec.Builder(SIGN_KEY_ALIAS,
+                    KeyProperties.PURPOSE_SIGN | KeyProperties.PURPOSE_VERIFY)
+                    .setAlgorithmParameterSpec(new ECGenParameterSpec("secp256r1"))
+                    .setDigests(KeyProperties.DIGEST_SHA256)
+                    .build());
+            return generator.generateKeyPair();
+        } catch (Exception e) {
+            Log.e(TAG, "Error managing signing key", e);
+            return null;
+        }
+    }
+
+    public static byte[] sign(PrivateKey key, byte[] data) throws GeneralSecurityException {
+        Signature signature = Signature.getInstance(SIGNATURE_ALGORITHM);
+        signature.initSign(key);
+        signature.update(data);
+        return signature.sign();
+    }
+
+    public static boolean verify(PublicKey key, byte[] data, byte[] sig) throws GeneralSecurityException {
+        Signature signature = Signature.getInstance(SIGNATURE_ALGORITHM);
+        signature.initVerify(key);
+        signature.update(data);
+        return signature.verify(sig);
+    }
+
     // --- AES Key Management ---
 
     public static SecretKey generateAesKey() {
@@ -108,8 +183,188 @@ public class SecurityUtil {
         return Base64.encodeToString(key.getEncoded(), Base64.DEFAULT);
     }
 
+    // --- ECDH Session Keys ---
+
+    /**
+     * Fresh P-256 key pair for session key agreement (X25519 needs API 31)
+     */
+    public static KeyPair generateEcdhKeyPair() {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+            generator.initialize(new ECGenParameterSpec("secp256r1"), random);
+            return generator.generateKeyPair();
+        } catch (Exception e) {
+            Log.e(TAG, "Error generating ECDH key pair", e);
+            return null;
+        }
+    }
+
+    /**
+     * Our long-term ECDH key pair. The private half is kept in preferences,
+     * wrapped with an AES key that never leaves the Android Keystore
+     * (Keystore EC key agreement needs API 31). Falls back to a fresh
+     * in-memory pair if the Keystore is unusable.
+     */
+    public static KeyPair getOrGenerateEcdhKeyPair(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        String publicStr = prefs.getString(KEY_ECDH_PUBLIC, null);
+        String wrappedStr = prefs.getString(KEY_ECDH_PRIVATE, null);
+        try {
+            SecretKey wrapKey = getOrCreateWrapKey();
+            if (publicStr != null && wrappedStr != null) {
+                byte[] wrapped = Base64.decode(wrappedStr, Base64.NO_WRAP);
+                Cipher cipher = Cipher.getInstance(GCM_TRANSFORMATION);
+                cipher.init(Cipher.DECRYPT_MODE, wrapKey, new GCMParameterSpec(GCM_TAG_BITS, wrapped, 0, GCM_NONCE_BYTES));
+                byte[] pkcs8 = cipher.doFinal(wrapped, GCM_NONCE_BYTES, wrapped.length - GCM_NONCE_BYTES);
+                KeyFactory keyFactory = KeyFactory.getInstance("EC");
+                PrivateKey privateKey = keyFactory.generatePrivate(new PKCS8EncodedKeySpec(pkcs8));
+                PublicKey publicKey = keyFactory.generatePublic(
+                        new X509EncodedKeySpec(Base64.decode(publicStr, Base64.NO_WRAP)));
+                return new KeyPair(publicKey, privateKey);
+            }
+
+            KeyPair keyPair = generateEcdhKeyPair();
+            if (keyPair == null) {
+                return null;
+            }
+            Cipher cipher = Cipher.getInstance(GCM_TRANSFORMATION);
+            cipher.init(Cipher.ENCRYPT_MODE, wrapKey); // Keystore picks the IV
+            byte[] iv = cipher.getIV();
+            byte[] body = cipher.doFinal(keyPair.getPrivate().getEncoded());
+            byte[] wrapped = new byte[iv.length + body.length];
+            System.arraycopy(iv, 0, wrapped, 0, iv.length);
+            System.arraycopy(body, 0, wrapped, iv.length, body.length);
+            prefs.edit()
+                    .putString(KEY_ECDH_PUBLIC, encodePublicKey(keyPair.getPublic()))
+                    .putString(KEY_ECDH_PRIVATE, Base64.encodeToString(wrapped, Base64.NO_WRAP))
+                    .apply();
+            return keyPair;
+        } catch (Exception e) {
+            Log.e(TAG, "Persistent ECDH key unavailable, using a temporary one", e);
+            return generateEcdhKeyPair();
+        }
+    }
+
+    private static SecretKey getOrCreateWrapKey() throws Exception {
+        KeyStore keyStore = KeyStore.getInstance(KEYSTORE_PROVIDER);
+        keyStore.load(null);
+        if (keyStore.containsAlias(WRAP_KEY_ALIAS)) {
+            return ((KeyStore.SecretKeyEntry) keyStore.getEntry(WRAP_KEY_ALIAS, null)).getSecretKey();
+        }
+        KeyGenerator generator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES, KEYSTORE_PROVIDER);
+        generator.init(new KeyGenParameterSpec.Builder(WRAP_KEY_ALIAS,
+                KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
+                .setBlockModes(KeyProperties.BLOCK_MODE_GCM)
+                .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
+                .setKeySize(256)
+                .build());
+        return generator.generateKey();
+    }
+
+    /**
+     * Short identity of a key set (or a single key): first 8 bytes of SHA-256
+     * over the decoded keys, hex. Any key may be null.
+     */
+    public static String keyFingerprint(String... keys) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (int i = 0; i < keys.length; i++) {
+                if (i > 0) {
+                    digest.update((byte) 0);
+                }
+                if (keys[i] != null) {
+                    digest.update(Base64.decode(keys[i], Base64.DEFAULT));
+                }
+            }
+            byte[] hash = digest.digest();
+            StringBuilder sb = new StringBuilder(16);
+            for (int i = 0; i < 8; i++) {
+                sb.append(String.format("%02x", hash[i]));
+            }
+            return sb.toString();
+        } catch (Exception e) {
+            Log.e(TAG, "Fingerprint failed", e);
+            return null;
+        }
+    }
+
+    public static String encodePublicKey(PublicKey publicKey) {
+        return Base64.encodeToString(publicKey.getEncoded(), Base64.NO_WRAP);
+    }
+
+    public static PublicKey decodeEcPublicKey(String keyStr) {
+        try {
+            byte[] keyBytes = Base64.decode(keyStr, Base64.DEFAULT);
+            return KeyFactory.getInstance("EC").generatePublic(new X509EncodedKeySpec(keyBytes));
+        } catch (Exception e) {
+            Log.e(TAG, "Error decoding EC public key", e);
+            return null;
+        }
+    }
+
+    /**
+     * ECDH followed by HKDF-SHA256 into an AES-256 key. Both sides pass the
+     * same salt (e.g. both public keys in a fixed order).
+     */
+    public static SecretKey deriveSessionKey(PrivateKey myKey, PublicKey peerKey, byte[] salt) {
+        try {
+            KeyAgreement agreement = KeyAgreement.getInstance("ECDH");
+            agreement.init(myKey);
+            agreement.doPhase(peerKey, true);
+            byte[] secret = agreement.generateSecret();
+
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(salt, "HmacSHA256"));
+            byte[] prk = mac.doFinal(secret); // HKDF-Extract
+            mac.init(new SecretKeySpec(prk, "HmacSHA256"));
+            mac.update(SESSION_INFO);
+            mac.update((byte) 1);
+            byte[] okm = mac.doFinal(); // HKDF-Expand, one block = 32 bytes
+            return new SecretKeySpec(okm, "AES");
+        } catch (Exception e) {
+            Log.e(TAG, "Session key derivation failed", e);
+            return null;
+        }
+    }
+
+    /**
+     * AES-GCM with a random nonce; returns nonce || ciphertext || tag
+     */
+    public static byte[] encryptGcm(SecretKey key, byte[] plain, byte[] aad) throws GeneralSecurityException {
+        byte[] nonce = new byte[GCM_NONCE_BYTES];
+        random.nextBytes(nonce);
+        Cipher cipher = gcmCipher.get();
+        cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_BITS, nonce));
+        if (aad != null) {
+            cipher.updateAAD(aad);
+        }
+        byte[] sealed = new byte[GCM_NONCE_BYTES + cipher.getOutputSize(plain.length)];
+        System.arraycopy(nonce, 0, sealed, 0, GCM_NONCE_BYTES);
+        cipher.doFinal(plain, 0, plain.length, sealed, GCM_NONCE_BYTES);
+        return sealed;
+    }
+
+    /**
+     * Inverse of encryptGcm; throws if the tag does not verify
+     */
+    public static byte[] decryptGcm(SecretKey key, byte[] sealed, byte[] aad) throws GeneralSecurityException {
+        if (sealed.length < GCM_NONCE_BYTES + GCM_TAG_BITS / 8) {
+            throw new GeneralSecurityException("Ciphertext too short");
+        }
+        Cipher cipher = gcmCipher.get();
+        cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_BITS, sealed, 0, GCM_NONCE_BYTES));
+        if (aad != null) {
+            cipher.updateAAD(aad);
+        }
+        return cipher.doFinal(sealed, GCM_NONCE_BYTES, sealed.length - GCM_NONCE_BYTES);
+    }
+
     // --- Encryption / Decryption ---
 
+    /**
+     * @deprecated AES/ECB without authentication; use encryptGcm with a session key
+     */
+    @Deprecated
     public static String encryptAes(String content, SecretKey key) {
         try {
             Cipher cipher = Cipher.getInstance("AES");
@@ -122,6 +377,10 @@ public class SecurityUtil {
         }
     }
 
+    /**
+     * @deprecated see encryptAes
+     */
+    @Deprecated
     public static String decryptAes(String encryptedContent, SecretKey key) {
         try {
             Cipher cipher = Cipher.getInstance("AES");
@@ -0,0 +1,98 @@
+package com.example.disastercomm.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+public class MessageSummaryVectorTest {
+
+    private static List<String> ids(int count) {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ids.add(UUID.randomUUID().toString());
+        }
+        return ids;
+    }
+
+    @Test
+    public void containsEveryAddedId() {
+        List<String> ids = ids(500);
+        MessageSummaryVector vector = MessageSummaryVector.of(ids, 42);
+        for (String id : ids) {
+            assertTrue(vector.mightContain(id));
+        }
+    }
+
+    @Test
+    public void falsePositivesStayNearTarget() {
+        MessageSummaryVector vector = MessageSummaryVector.of(ids(1000), 7);
+        int falsePositives = 0;
+        for (String id : ids(10000)) {
+            if (vector.mightContain(id)) {
+                falsePositives++;
+            }
+        }
+        assertTrue("false positives: " + falsePositives, falsePositives < 300);
+    }
+
+    @Test
+    public void rawRoundTripKeepsMembership() {
+        List<String> ids = ids(200);
+        MessageSummaryVector vector = MessageSummaryVector.of(ids, -3);
+        MessageSummaryVector copy = MessageSummaryVector.fromRaw(vector.getSeed(), vector.getNumHashes(),
+                vector.getNumBits(), vector.toRaw());
+        for (String id : ids) {
+            assertTrue(copy.mightContain(id));
+        }
+    }
+
+    @Test
+    public void seedChangesWhichIdsCollide() {
+        // A false positive under one seed should not follow the id to the next exchange
+        List<String> members = ids(1000);
+        MessageSummaryVector first = MessageSummaryVector.of(members, 1);
+        MessageSummaryVector second = MessageSummaryVector.of(members, 2);
+        int both = 0;
+        int firstOnly = 0;
+        for (String id : ids(20000)) {
+            if (first.mightContain(id)) {
+                firstOnly++;
+                if (second.mightContain(id)) {
+                    both++;
+                }
+            }
+        }
+        assertTrue(firstOnly > 0);
+        assertTrue("repeated false positives: " + both + " of " + firstOnly, both * 10 < firstOnly);
+    }
+
+    @Test
+    public void rejectsOutOfBoundsSizes() {
+        assertRejected(1, 0, 64, new byte[8]);
+        assertRejected(1, 3, 0, new byte[0]);
+        assertRejected(1, 3, Integer.MAX_VALUE, new byte[8]);
+        assertRejected(1, 50, 64, new byte[8]);
+        assertRejected(1, 3, 128, new byte[8]); // Length does not match numBits
+    }
+
+    @Test
+    public void acceptsLargestSize() {
+        MessageSummaryVector vector = MessageSummaryVector.fromRaw(1, 10, 1 << 20, new byte[(1 << 20) / 8]);
+        assertEquals(1 << 20, vector.getNumBits());
+    }
+
+    private static void assertRejected(int seed, int numHashes, int numBits, byte[] raw) {
+        try {
+            MessageSummaryVector.fromRaw(seed, numHashes, numBits, raw);
+            fail("Accepted " + numHashes + " hashes, " + numBits + " bits");
+        } catch (IllegalArgumentException expected) {
+            // Rejected before allocating
+        }
+    }
+}
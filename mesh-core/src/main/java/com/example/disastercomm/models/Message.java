@@ -22,7 +22,17 @@ public class Message {
         HEARTBEAT,
         ROUTE_REQUEST, // RREQ - Find path to destination
         ROUTE_REPLY, // RREP - Path found
-        ROUTE_ERROR // RERR - Link broken
+        ROUTE_ERROR, // RERR - Link broken
+        SYNC_SUMMARY, // Anti-entropy summary vector (one hop)
+        SYNC_BATCH, // Anti-entropy difference transfer (one hop)
+        DTN_BUNDLE, // Store-and-forward hand-over (one hop)
+        CUSTODY_ACK, // Next hop accepted custody of a bundle
+        LINK_ACK, // Standalone hop-by-hop ack (no payload)
+        CONTENT_OFFER, // Chunk manifest of a large transfer (one hop)
+        CONTENT_REQUEST, // Chunks the receiver still needs
+        CONTENT_HAVE, // Chunk availability bitmap (swarm query/answer)
+        CONTENT_CHUNK, // Chunk piece on links without stream payloads (Bluetooth)
+        GROUP_KEY // Sender key for a broadcast group, sealed for one member (or a request for it)
     }
 
     public enum Status {
@@ -61,6 +71,23 @@ public class Message {
     public String token; // Routing token (or simply messageID signature)
     public long tokenExpiry; // Timestamp when this packet expires
     public String publicKey; // For KEY_EXCHANGE messages
+    public String signature; // Base64 ECDSA over SignatureVerifier.signedBytes(), SOS and GOVT_ALERT only
+    public String signerKeyId; // Fingerprint of the signing key (a peer's own key or a trust anchor)
+    public Boolean unverified; // TRUE on an SOS / GOVT_ALERT delivered without a checkable signature (null = not sent)
+    @androidx.room.Ignore
+    public String signingKey; // ECDSA public key in KEY_EXCHANGE messages
+    @androidx.room.Ignore
+    public String sessionKey; // ECDH public key in KEY_EXCHANGE messages
+    @androidx.room.Ignore
+    public String keyFp; // Sender's key fingerprint (see KeyDirectory); full keys are fetched on a miss
+    @androidx.room.Ignore
+    public String keySig; // Base64 ECDSA over KeyDirectory.keySetBytes() in KEY_EXCHANGE messages carrying keys
+    @androidx.room.Ignore
+    public int cipherSuite = 0; // 1 = pairwise session key (SessionKeyManager), 2 = sender's group key (GroupKeyManager)
+    @androidx.room.Ignore
+    public String groupId; // Named channel of a broadcast; null = ALL
+    @androidx.room.Ignore
+    public int keyEpoch = 0; // Sender key epoch a group-encrypted broadcast was sealed with
 
     // ===== MESH ROUTING FIELDS =====
     public int hopCount = 0; // Current number of hops taken
@@ -70,6 +97,18 @@ public class Message {
     public String originatorId = null; // Original sender (for RREQ)
     public int routeSequence = 0; // Sequence number for route freshness
 
+    // ===== LINK RELIABILITY FIELDS (per hop, never persisted) =====
+    @androidx.room.Ignore
+    public int linkSeq = 0; // Per-neighbor sequence number (0 = unreliable)
+    @androidx.room.Ignore
+    public int linkAck = 0; // Cumulative ack for the reverse direction
+    @androidx.room.Ignore
+    public String linkSack = null; // Selectively acked seqs above linkAck: "5,7"
+    @androidx.room.Ignore
+    public int linkBase = 0; // Lowest seq the sender still retransmits; anything below is acked or abandoned
+    @androidx.room.Ignore
+    public String caps = null; // Link capabilities advertised in heartbeats (e.g. "z1")
+
     public Message() {
     }
 
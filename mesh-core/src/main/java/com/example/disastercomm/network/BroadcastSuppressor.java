@@ -0,0 +1,143 @@
+package com.example.disastercomm.network;
+
+import com.example.disastercomm.models.Message;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Broadcast storm suppression for ALL floods.
+ * Combines gossip (probability scaled by neighbor count), counter-based
+ * random assessment delay (cancel after K duplicates) and RSSI/distance-based
+ * selection (nearby senders already covered our area, so we wait longer).
+ * SOS and GOVT_ALERT always flood deterministically.
+ */
+public class BroadcastSuppressor {
+    private static final String TAG = "BroadcastSuppressor";
+    public static final int RSSI_UNKNOWN = Integer.MIN_VALUE;
+
+    public static class Config {
+        public boolean enabled = true;
+        public int denseNeighborThreshold = 4; // Below this, always relay
+        public double gossipProbability = 0.65; // Base probability at the threshold
+        public double minGossipProbability = 0.25; // Never go below (keeps delivery ratio)
+        public long maxAssessmentDelayMs = 200; // Random assessment delay (RAD) upper bound
+        public int duplicateThreshold = 3; // K: cancel after this many copies overheard
+        public int nearRssiDbm = -55; // Stronger than this = sender is close
+        public int farRssiDbm = -85; // Weaker than this = sender is at the edge
+    }
+
+    private static class PendingRelay {
+        final AtomicInteger duplicates = new AtomicInteger();
+        ScheduledFuture<?> future;
+    }
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final Map<String, PendingRelay> pending = new ConcurrentHashMap<>();
+    private final Random random = new Random();
+    private volatile Config config = new Config();
+
+    // Stats
+    private final AtomicLong relayedImmediately = new AtomicLong();
+    private final AtomicLong relayedAfterDelay = new AtomicLong();
+    private final AtomicLong droppedByGossip = new AtomicLong();
+    private final AtomicLong cancelledByCounter = new AtomicLong();
+
+    public void setConfig(Config config) {
+        this.config = config;
+    }
+
+    public Config getConfig() {
+        return config;
+    }
+
+    /**
+     * Decide how to re-broadcast a flood: now, after a random delay, or never.
+     *
+     * @param neighborCount number of direct neighbors (density estimate)
+     * @param rssi          signal of the link the packet came in on, or RSSI_UNKNOWN
+     * @param relay         action that performs the actual re-broadcast
+     */
+    public void submit(Message message, int neighborCount, int rssi, Runnable relay) {
+        Config cfg = config;
+        if (!cfg.enabled || !isSuppressible(message)) {
+            relayedImmediately.incrementAndGet();
+            relay.run();
+            return;
+        }
+
+        // 1. Gossip: sparse neighborhoods relay always, dense ones probabilistically
+        double probability = 1.0;
+        if (neighborCount > cfg.denseNeighborThreshold) {
+            probability = Math.max(cfg.minGossipProbability,
+                    cfg.gossipProbability * cfg.denseNeighborThreshold / neighborCount);
+        }
+        if (random.nextDouble() > probability) {
+            droppedByGossip.incrementAndGet();
+            MeshLog.d(TAG, String.format("🎲 Gossip drop %s (p=%.2f, neighbors=%d)", message.id, probability,
+                    neighborCount));
+            return;
+        }
+
+        // 2. Distance: close senders already covered us, so wait longer (edge nodes go first)
+        double distanceFactor = 0.5;
+        if (rssi != RSSI_UNKNOWN) {
+            double span = cfg.nearRssiDbm - cfg.farRssiDbm;
+            distanceFactor = Math.min(1.0, Math.max(0.0, (rssi - cfg.farRssiDbm) / span));
+        }
+        long delay = (long) (cfg.maxAssessmentDelayMs * (0.5 * distanceFactor + 0.5 * random.nextDouble()));
+
+        // 3. Counter-based: schedule, cancel if K duplicates arrive during the delay
+        PendingRelay entry = new PendingRelay();
+        pending.put(message.id, entry);
+        entry.future = scheduler.schedule(() -> {
+            if (pending.remove(message.id) != null) {
+                relayedAfterDelay.incrementAndGet();
+                relay.run();
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Called for every duplicate copy overheard; cancels pending relays at K copies.
+     */
+    public void onDuplicate(String messageId) {
+        PendingRelay entry = pending.get(messageId);
+        if (entry == null) {
+            return;
+        }
+        int duplicates = entry.duplicates.incrementAndGet();
+        if (duplicates >= config.duplicateThreshold && pending.remove(messageId) != null) {
+            if (entry.future != null) {
+                entry.future.cancel(false);
+            }
+            cancelledByCounter.incrementAndGet();
+            MeshLog.d(TAG, "🔕 Relay cancelled after " + duplicates + " duplicates: " + messageId);
+        }
+    }
+
+    /**
+     * Only chat and location floods are suppressible; alerts and control stay deterministic
+     */
+    private boolean isSuppressible(Message message) {
+        return "ALL".equals(message.receiverId)
+                && (message.type == Message.Type.TEXT || message.type == Message.Type.LOCATION_UPDATE);
+    }
+
+    public String getStatsSummary() {
+        return String.format("Floods: %d immediate, %d delayed, %d gossip-dropped, %d counter-cancelled",
+                relayedImmediately.get(), relayedAfterDelay.get(), droppedByGossip.get(), cancelledByCounter.get());
+    }
+
+    public void shutdown() {
+        pending.clear();
+        scheduler.shutdownNow();
+    }
+}
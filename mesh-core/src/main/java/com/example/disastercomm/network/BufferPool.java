@@ -0,0 +1,104 @@
+package com.example.disastercomm.network;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shared pool of packet buffers in a few size classes, so the receive path
+ * (socket reads, inflate output) stops allocating a new array per packet.
+ * Each class keeps a bounded free list; requests larger than the biggest
+ * class get a plain unpooled buffer.
+ */
+public class BufferPool {
+    // 8 KB matches an RFCOMM read, 32 KB a Nearby BYTES payload
+    private static final int[] SIZE_CLASSES = { 1024, 4 * 1024, 8 * 1024, 32 * 1024, 64 * 1024 };
+    private static final int MAX_FREE_PER_CLASS = 32;
+
+    private static final BufferPool SHARED = new BufferPool();
+
+    private final List<ConcurrentLinkedQueue<ByteBuffer>> free = new ArrayList<>();
+    private final AtomicInteger[] freeCounts = new AtomicInteger[SIZE_CLASSES.length];
+
+    // Stats
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong oversize = new AtomicLong();
+    private final AtomicLong outstanding = new AtomicLong();
+
+    public BufferPool() {
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            free.add(new ConcurrentLinkedQueue<>());
+            freeCounts[i] = new AtomicInteger();
+        }
+    }
+
+    public static BufferPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * Buffer with at least minCapacity bytes, length 0, reference count 1
+     */
+    public PooledBuffer acquire(int minCapacity) {
+        int sizeClass = classFor(minCapacity);
+        if (sizeClass < 0) {
+            oversize.incrementAndGet();
+            return new PooledBuffer(null, ByteBuffer.allocate(minCapacity));
+        }
+        ByteBuffer buffer = free.get(sizeClass).poll();
+        if (buffer != null) {
+            freeCounts[sizeClass].decrementAndGet();
+            hits.incrementAndGet();
+            buffer.clear();
+        } else {
+            misses.incrementAndGet();
+            buffer = ByteBuffer.allocate(SIZE_CLASSES[sizeClass]);
+        }
+        outstanding.incrementAndGet();
+        return new PooledBuffer(this, buffer);
+    }
+
+    /**
+     * Larger buffer holding the same valid bytes; the old one is released
+     */
+    public PooledBuffer grow(PooledBuffer old, int minCapacity) {
+        PooledBuffer bigger = acquire(minCapacity);
+        System.arraycopy(old.array(), 0, bigger.array(), 0, old.length());
+        bigger.setLength(old.length());
+        old.release();
+        return bigger;
+    }
+
+    void recycle(ByteBuffer buffer) {
+        outstanding.decrementAndGet();
+        int sizeClass = classFor(buffer.capacity());
+        if (sizeClass < 0 || SIZE_CLASSES[sizeClass] != buffer.capacity()) {
+            return;
+        }
+        if (freeCounts[sizeClass].incrementAndGet() <= MAX_FREE_PER_CLASS) {
+            free.get(sizeClass).offer(buffer);
+        } else {
+            freeCounts[sizeClass].decrementAndGet(); // Free list full, let GC have it
+        }
+    }
+
+    private static int classFor(int capacity) {
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            if (capacity <= SIZE_CLASSES[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public String getStatsSummary() {
+        long total = hits.get() + misses.get();
+        double hitRate = total > 0 ? 100.0 * hits.get() / total : 0;
+        return String.format("Buffer pool: %d acquired (%.0f%% reused), %d in use, %d oversize", total, hitRate,
+                outstanding.get(), oversize.get());
+    }
+}
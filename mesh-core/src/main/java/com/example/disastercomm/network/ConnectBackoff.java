@@ -0,0 +1,124 @@
+package com.example.disastercomm.network;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Connect retries for peers that were discovered but are not linked. A
+ * found device is tried right away; every failed try doubles the wait
+ * (with jitter, so two phones do not dial each other in lockstep) up to a
+ * cap. Scans re-seeing the device and a periodic sweep both ask
+ * {@link #tryAcquire}, so a peer that stays in range is never given up on,
+ * and one that keeps failing costs at most one attempt per cap interval.
+ */
+public class ConnectBackoff {
+    public static final long DEFAULT_BASE_MS = 5000;
+    public static final long DEFAULT_MAX_MS = 5 * 60 * 1000;
+    private static final int MAX_TRACKED = 256;
+
+    private static class Attempts {
+        int count;
+        long nextAt;
+    }
+
+    private final long baseMs;
+    private final long maxMs;
+    private final Map<String, Attempts> pending = new LinkedHashMap<>(); // address -> retry state, oldest first
+
+    // Stats
+    private long attemptsAllowed;
+    private long attemptsDeferred;
+
+    public ConnectBackoff() {
+        this(DEFAULT_BASE_MS, DEFAULT_MAX_MS);
+    }
+
+    public ConnectBackoff(long baseMs, long maxMs) {
+        this.baseMs = baseMs;
+        this.maxMs = maxMs;
+    }
+
+    /**
+     * True if a connect to address may start now; the next one is then pushed back.
+     * Unknown addresses start tracking and are allowed immediately.
+     */
+    public synchronized boolean tryAcquire(String address, long now) {
+        Attempts attempts = pending.get(address);
+        if (attempts == null) {
+            if (pending.size() >= MAX_TRACKED) {
+                Iterator<String> oldest = pending.keySet().iterator();
+                oldest.next();
+                oldest.remove();
+            }
+            attempts = new Attempts();
+            pending.put(address, attempts);
+        } else if (now < attempts.nextAt) {
+            attemptsDeferred++;
+            return false;
+        }
+        attemptsAllowed++;
+        attempts.nextAt = now + delayFor(attempts.count);
+        attempts.count++;
+        return true;
+    }
+
+    /**
+     * Linked: keep watching it, but a drop is retried right away
+     */
+    public synchronized void reset(String address) {
+        Attempts attempts = pending.get(address);
+        if (attempts != null) {
+            attempts.count = 0;
+            attempts.nextAt = 0;
+        }
+    }
+
+    /**
+     * Out of range: stop retrying until it is found again
+     */
+    public synchronized void forget(String address) {
+        pending.remove(address);
+    }
+
+    public synchronized boolean isTracked(String address) {
+        return pending.containsKey(address);
+    }
+
+    /**
+     * Addresses whose wait is over, for the periodic sweep
+     */
+    public synchronized List<String> due(long now) {
+        List<String> due = new ArrayList<>();
+        for (Map.Entry<String, Attempts> entry : pending.entrySet()) {
+            if (now >= entry.getValue().nextAt) {
+                due.add(entry.getKey());
+            }
+        }
+        return due;
+    }
+
+    public synchronized int size() {
+        return pending.size();
+    }
+
+    public synchronized String getStatsSummary() {
+        int waiting = 0;
+        for (Attempts attempts : pending.values()) {
+            if (attempts.count > 0) {
+                waiting++;
+            }
+        }
+        return String.format("Connect backoff: %d tracked (%d unlinked), %d attempts, %d deferred",
+                pending.size(), waiting, attemptsAllowed, attemptsDeferred);
+    }
+
+    // base * 2^attempts capped, then up to 25% jitter
+    private long delayFor(int attempts) {
+        long delay = attempts >= 20 ? maxMs : Math.min(maxMs, baseMs << attempts);
+        return delay + ThreadLocalRandom.current().nextLong(delay / 4 + 1);
+    }
+}
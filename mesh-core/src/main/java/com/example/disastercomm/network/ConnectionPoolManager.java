@@ -1,7 +1,5 @@
 package com.example.disastercomm.network;
 
-import android.util.Log;
-
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -10,7 +8,10 @@ import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Manages connection pool across all transports (BT, BLE, Nearby)
- * Tracks connection quality and routes messages intelligently
+ * Tracks connection quality and routes messages intelligently.
+ * Links are bonded per logical neighbor once its deviceId is known, so one
+ * neighbor reachable over several transports gets a single best link
+ * (or two for emergency traffic) instead of a copy on each.
  */
 public class ConnectionPoolManager {
     private static final String TAG = "ConnPoolMgr";
@@ -18,7 +19,8 @@ public class ConnectionPoolManager {
     public enum TransportType {
         BLUETOOTH_CLASSIC,
         BLUETOOTH_LE,
-        NEARBY_WIFI_DIRECT
+        NEARBY_WIFI_DIRECT,
+        LAN // Hotspot or shared Wi-Fi; far more bandwidth than any radio link
     }
 
     public static class ConnectionInfo {
@@ -33,6 +35,8 @@ public class ConnectionPoolManager {
         public int latencySamples;
         public int failedAttempts;
         public int rssi; // signal strength (for BLE/WiFi)
+        public volatile String deviceId; // Logical neighbor, once learned from heartbeats
+        public volatile long queuedBytes; // Waiting in this link's send queue
 
         public ConnectionInfo(String identifier, String deviceName, TransportType transport) {
             this.identifier = identifier;
@@ -68,7 +72,27 @@ public class ConnectionPoolManager {
             double recencyScore = Math.max(0, 100 - (ageMs / 100.0));
 
             return (latencyScore * 0.4) + (reliabilityScore * 0.3) +
-                    (signalScore * 0.2) + (recencyScore * 0.1);
+                    (signalScore * 0.2) + (recencyScore * 0.1) + transportBonus();
+        }
+
+        /**
+         * A LAN link wins over the radios to the same neighbor whenever it is
+         * up; it has no RSSI, so it would otherwise lose the signal share
+         */
+        private double transportBonus() {
+            return transport == TransportType.LAN ? 40 : 0;
+        }
+
+        /**
+         * Quality adjusted for backlog: a busy link yields to an idle one
+         */
+        public double getEffectiveScore() {
+            double backlogPenalty = Math.min(60, queuedBytes / 1024.0);
+            return getQualityScore() - backlogPenalty;
+        }
+
+        String bondKey() {
+            return deviceId != null ? deviceId : deviceName;
         }
 
         public boolean isStale() {
@@ -95,22 +119,108 @@ public class ConnectionPoolManager {
             }
         }
 
-        Log.d(TAG, "Added connection: " + identifier + " (" + transport + ") - " + deviceName);
+        MeshLog.d(TAG, "Added connection: " + identifier + " (" + transport + ") - " + deviceName);
     }
 
     public void removeConnection(String identifier) {
         ConnectionInfo info = connections.remove(identifier);
         if (info != null) {
             synchronized (deviceToTransports) {
-                List<String> transports = deviceToTransports.get(info.deviceName);
-                if (transports != null) {
-                    transports.remove(identifier);
-                    if (transports.isEmpty()) {
-                        deviceToTransports.remove(info.deviceName);
-                    }
+                unlinkLocked(identifier, info.bondKey());
+            }
+            MeshLog.d(TAG, "Removed connection: " + identifier);
+        }
+    }
+
+    private void unlinkLocked(String identifier, String key) {
+        List<String> transports = deviceToTransports.get(key);
+        if (transports != null) {
+            transports.remove(identifier);
+            if (transports.isEmpty()) {
+                deviceToTransports.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Bond a physical link to the logical neighbor heard on it (deviceId from heartbeats)
+     */
+    public void bindDevice(String identifier, String deviceId) {
+        ConnectionInfo info = connections.get(identifier);
+        if (info == null || deviceId == null || deviceId.equals(info.deviceId)) {
+            return;
+        }
+        synchronized (deviceToTransports) {
+            unlinkLocked(identifier, info.bondKey());
+            info.deviceId = deviceId;
+            List<String> transports = deviceToTransports.get(deviceId);
+            if (transports == null) {
+                transports = new ArrayList<>();
+                deviceToTransports.put(deviceId, transports);
+            }
+            if (!transports.contains(identifier)) {
+                transports.add(identifier);
+            }
+            if (transports.size() > 1) {
+                MeshLog.d(TAG, "🔗 " + deviceId.substring(0, Math.min(8, deviceId.length())) + " bonded over "
+                        + transports.size() + " links");
+            }
+        }
+    }
+
+    /**
+     * Up to maxLinks links to a neighbor, best effective score first.
+     * Stale links are only used when nothing fresher exists.
+     */
+    public List<String> selectLinks(String deviceId, int maxLinks) {
+        List<ConnectionInfo> candidates = new ArrayList<>();
+        synchronized (deviceToTransports) {
+            List<String> transports = deviceToTransports.get(deviceId);
+            if (transports == null) {
+                return new ArrayList<>();
+            }
+            for (String identifier : transports) {
+                ConnectionInfo info = connections.get(identifier);
+                if (info != null) {
+                    candidates.add(info);
                 }
             }
-            Log.d(TAG, "Removed connection: " + identifier);
+        }
+        java.util.Collections.sort(candidates, (a, b) -> {
+            if (a.isStale() != b.isStale()) {
+                return a.isStale() ? 1 : -1;
+            }
+            return Double.compare(b.getEffectiveScore(), a.getEffectiveScore());
+        });
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < candidates.size() && i < maxLinks; i++) {
+            result.add(candidates.get(i).identifier);
+        }
+        return result;
+    }
+
+    /**
+     * All links bonded to the same neighbor as this one (including itself)
+     */
+    public List<String> getBondedLinks(String identifier) {
+        ConnectionInfo info = connections.get(identifier);
+        if (info == null) {
+            List<String> self = new ArrayList<>();
+            self.add(identifier);
+            return self;
+        }
+        synchronized (deviceToTransports) {
+            List<String> transports = deviceToTransports.get(info.bondKey());
+            return transports != null ? new ArrayList<>(transports) : new ArrayList<>();
+        }
+    }
+
+    public void recordQueued(String identifier, long deltaBytes) {
+        ConnectionInfo info = connections.get(identifier);
+        if (info != null) {
+            synchronized (info) {
+                info.queuedBytes = Math.max(0, info.queuedBytes + deltaBytes);
+            }
         }
     }
 
@@ -218,7 +328,7 @@ public class ConnectionPoolManager {
 
         for (String identifier : toRemove) {
             removeConnection(identifier);
-            Log.d(TAG, "Cleaned up stale connection: " + identifier);
+            MeshLog.d(TAG, "Cleaned up stale connection: " + identifier);
         }
     }
 
@@ -258,7 +368,8 @@ public class ConnectionPoolManager {
         int bt = getConnectionsByTransport(TransportType.BLUETOOTH_CLASSIC).size();
         int ble = getConnectionsByTransport(TransportType.BLUETOOTH_LE).size();
         int nearby = getConnectionsByTransport(TransportType.NEARBY_WIFI_DIRECT).size();
+        int lan = getConnectionsByTransport(TransportType.LAN).size();
 
-        return String.format("Connections: %d (BT:%d, BLE:%d, Nearby:%d)", total, bt, ble, nearby);
+        return String.format("Connections: %d (BT:%d, BLE:%d, Nearby:%d, LAN:%d)", total, bt, ble, nearby, lan);
     }
 }
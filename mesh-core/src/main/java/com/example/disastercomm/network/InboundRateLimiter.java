@@ -0,0 +1,320 @@
+package com.example.disastercomm.network;
+
+import com.example.disastercomm.models.Message;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Flood-abuse protection on the receive path. Every new packet is charged
+ * against token buckets for the link it came in on and for its originator,
+ * with a separate budget per Message.Type. A buggy or rogue node can then
+ * only use its share: bulk traffic over budget is shed, and even alerts
+ * over budget are still shown locally but no longer relayed, so one device
+ * cannot turn the whole mesh into its amplifier.
+ *
+ * Link budgets are larger than originator budgets because a single
+ * neighbor legitimately relays for everyone behind it. They are also scaled
+ * per transport: the defaults fit a Nearby or Bluetooth link, and a LAN link
+ * carries far more before it can be called a flood.
+ */
+public class InboundRateLimiter {
+    private static final String TAG = "InboundRateLimiter";
+    private static final int MAX_TRACKED = 512;
+    private static final long IDLE_EVICT_MS = 5 * 60 * 1000;
+    private static final Message.Type[] TYPES = Message.Type.values();
+
+    public enum Priority {
+        CRITICAL, // SOS, alerts: never dropped, relay is what gets limited
+        NORMAL, // Chat and control
+        BULK // Locations, sync, content: first to go under pressure
+    }
+
+    public enum Decision {
+        ACCEPT, // Deliver and relay as usual
+        DELIVER_ONLY, // Over budget but too important to drop: deliver, do not relay
+        DROP
+    }
+
+    /**
+     * Sustained rate and burst size of one bucket
+     */
+    public static class Budget {
+        public final double perSecond;
+        public final double burst;
+
+        public Budget(double perSecond, double burst) {
+            this.perSecond = perSecond;
+            this.burst = burst;
+        }
+    }
+
+    public static class Config {
+        public boolean enabled = true;
+        // Indexed by Message.Type ordinal; null means unlimited
+        public final Budget[] originatorBudgets = new Budget[TYPES.length];
+        public final Budget[] linkBudgets = new Budget[TYPES.length];
+        // All packets of a link together; once empty, BULK traffic is shed first
+        public Budget linkTotal = new Budget(40, 120);
+        // Transport.getName() -> multiplier for every link budget of links on it (default 1)
+        public final Map<String, Double> transportScale = new HashMap<>();
+
+        public Config() {
+            originator(Message.Type.TEXT, 2, 10);
+            originator(Message.Type.SOS, 0.5, 5);
+            originator(Message.Type.GOVT_ALERT, 0.5, 5);
+            originator(Message.Type.LOCATION_UPDATE, 1, 5);
+            originator(Message.Type.DELIVERY_RECEIPT, 4, 20);
+            originator(Message.Type.READ_RECEIPT, 4, 20);
+            originator(Message.Type.KEY_EXCHANGE, 0.5, 10); // Replies to every newly seen peer
+            originator(Message.Type.GROUP_KEY, 2, 64); // A rekey hands one key to each member
+            originator(Message.Type.HEARTBEAT, 1, 3);
+            originator(Message.Type.ROUTE_REQUEST, 1, 5);
+            originator(Message.Type.ROUTE_REPLY, 2, 10);
+            originator(Message.Type.ROUTE_ERROR, 1, 5);
+            // One-hop and bulk types only come from the neighbor itself; the link budget covers them
+            link(Message.Type.TEXT, 20, 60);
+            link(Message.Type.SOS, 5, 20);
+            link(Message.Type.GOVT_ALERT, 5, 20);
+            link(Message.Type.LOCATION_UPDATE, 10, 30);
+            link(Message.Type.DELIVERY_RECEIPT, 20, 60);
+            link(Message.Type.READ_RECEIPT, 20, 60);
+            link(Message.Type.KEY_EXCHANGE, 2, 10);
+            link(Message.Type.GROUP_KEY, 20, 128);
+            link(Message.Type.HEARTBEAT, 1, 3);
+            link(Message.Type.ROUTE_REQUEST, 10, 30);
+            link(Message.Type.ROUTE_REPLY, 10, 30);
+            link(Message.Type.ROUTE_ERROR, 5, 15);
+            link(Message.Type.SYNC_SUMMARY, 1, 4);
+            link(Message.Type.SYNC_BATCH, 5, 20);
+            link(Message.Type.DTN_BUNDLE, 10, 40);
+            link(Message.Type.CUSTODY_ACK, 10, 40);
+            link(Message.Type.CONTENT_OFFER, 2, 10);
+            link(Message.Type.CONTENT_REQUEST, 10, 40);
+            link(Message.Type.CONTENT_HAVE, 5, 20);
+            link(Message.Type.CONTENT_CHUNK, 200, 400);
+            transportScale.put("lan", 25.0);
+            transportScale.put("wifi_aware", 10.0);
+        }
+
+        public void originator(Message.Type type, double perSecond, double burst) {
+            originatorBudgets[type.ordinal()] = new Budget(perSecond, burst);
+        }
+
+        public void link(Message.Type type, double perSecond, double burst) {
+            linkBudgets[type.ordinal()] = new Budget(perSecond, burst);
+        }
+    }
+
+    private static class Bucket {
+        private final double perSecond;
+        private final double burst;
+        private double tokens;
+        private long lastRefill = System.nanoTime();
+
+        Bucket(Budget budget, double scale) {
+            this.perSecond = budget.perSecond * scale;
+            this.burst = budget.burst * scale;
+            this.tokens = burst;
+        }
+
+        boolean tryTake(long now) {
+            tokens = Math.min(burst, tokens + (now - lastRefill) / 1e9 * perSecond);
+            lastRefill = now;
+            if (tokens >= 1) {
+                tokens -= 1;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    // Buckets of one link or one originator, created lazily per type
+    private static class Account {
+        final Bucket[] byType = new Bucket[TYPES.length];
+        Bucket total;
+        double scale = 1;
+        long lastSeen = System.currentTimeMillis();
+        final AtomicLong dropped = new AtomicLong();
+    }
+
+    private final Map<String, Account> links = new ConcurrentHashMap<>();
+    private final Map<String, Account> originators = new ConcurrentHashMap<>();
+    private volatile Config config = new Config();
+
+    // Stats
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong shed = new AtomicLong();
+    private final AtomicLong overBudget = new AtomicLong();
+    private final AtomicLong notRelayed = new AtomicLong();
+    private final long[] droppedByType = new long[TYPES.length];
+
+    public void setConfig(Config config) {
+        this.config = config;
+        links.clear();
+        originators.clear();
+    }
+
+    public Config getConfig() {
+        return config;
+    }
+
+    public static Priority priorityOf(Message.Type type) {
+        if (type == null) {
+            return Priority.BULK;
+        }
+        switch (type) {
+            case SOS:
+            case GOVT_ALERT:
+                return Priority.CRITICAL;
+            case LOCATION_UPDATE:
+            case SYNC_SUMMARY:
+            case SYNC_BATCH:
+            case DTN_BUNDLE:
+            case CONTENT_OFFER:
+            case CONTENT_REQUEST:
+            case CONTENT_HAVE:
+            case CONTENT_CHUNK:
+                return Priority.BULK;
+            default:
+                return Priority.NORMAL;
+        }
+    }
+
+    public Decision admit(String linkId, String originatorId, Message.Type type) {
+        return admit(linkId, null, originatorId, type);
+    }
+
+    /**
+     * Charge one new (non-duplicate) packet. Called on the packet executor.
+     *
+     * @param linkId       link it arrived on
+     * @param transport    name of the transport owning the link, for its budget scale (null = 1)
+     * @param originatorId claimed senderId, or null when unknown (header-only relay)
+     */
+    public Decision admit(String linkId, String transport, String originatorId, Message.Type type) {
+        Config cfg = config;
+        if (!cfg.enabled || linkId == null || type == null) {
+            return Decision.ACCEPT;
+        }
+        long now = System.nanoTime();
+        Priority priority = priorityOf(type);
+
+        Account link = account(links, linkId);
+        if (link.total == null) {
+            Double scale = transport != null ? cfg.transportScale.get(transport) : null;
+            link.scale = scale != null ? scale : 1;
+            link.total = new Bucket(cfg.linkTotal, link.scale);
+        }
+        boolean linkBusy = !link.total.tryTake(now);
+        boolean withinBudget = take(link, cfg.linkBudgets, type, now);
+        if (originatorId != null) {
+            Account originator = account(originators, originatorId);
+            withinBudget &= take(originator, cfg.originatorBudgets, type, now);
+            if (!withinBudget) {
+                originator.dropped.incrementAndGet();
+            }
+        }
+
+        if (linkBusy && priority == Priority.BULK) {
+            shed.incrementAndGet();
+            return drop(link, type, linkId, "shed");
+        }
+        if (withinBudget) {
+            admitted.incrementAndGet();
+            return Decision.ACCEPT;
+        }
+        if (priority == Priority.CRITICAL) {
+            notRelayed.incrementAndGet();
+            return Decision.DELIVER_ONLY;
+        }
+        overBudget.incrementAndGet();
+        return drop(link, type, linkId, "over budget");
+    }
+
+    // All buckets are charged even if an earlier one is empty, so a flood drains every budget it touches
+    private static boolean take(Account account, Budget[] budgets, Message.Type type, long now) {
+        Budget budget = budgets[type.ordinal()];
+        if (budget == null) {
+            return true;
+        }
+        Bucket bucket = account.byType[type.ordinal()];
+        if (bucket == null) {
+            bucket = new Bucket(budget, account.scale);
+            account.byType[type.ordinal()] = bucket;
+        }
+        return bucket.tryTake(now);
+    }
+
+    private Decision drop(Account link, Message.Type type, String linkId, String reason) {
+        link.dropped.incrementAndGet();
+        synchronized (droppedByType) {
+            droppedByType[type.ordinal()]++;
+        }
+        MeshLog.d(TAG, "🚦 Dropped " + type + " from " + linkId.substring(0, Math.min(8, linkId.length())) + " ("
+                + reason + ")");
+        return Decision.DROP;
+    }
+
+    private Account account(Map<String, Account> map, String key) {
+        Account account = map.get(key);
+        if (account == null) {
+            if (map.size() >= MAX_TRACKED) {
+                evictIdle(map);
+            }
+            account = new Account();
+            map.put(key, account);
+        }
+        account.lastSeen = System.currentTimeMillis();
+        return account;
+    }
+
+    private static void evictIdle(Map<String, Account> map) {
+        long cutoff = System.currentTimeMillis() - IDLE_EVICT_MS;
+        Iterator<Account> it = map.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().lastSeen < cutoff) {
+                it.remove();
+            }
+        }
+    }
+
+    public void onLinkLost(String linkId) {
+        links.remove(linkId);
+    }
+
+    public String getStatsSummary() {
+        StringBuilder sb = new StringBuilder(String.format(
+                "Rate limit: %d admitted, %d shed, %d over budget, %d alerts not relayed",
+                admitted.get(), shed.get(), overBudget.get(), notRelayed.get()));
+        synchronized (droppedByType) {
+            for (int i = 0; i < TYPES.length; i++) {
+                if (droppedByType[i] > 0) {
+                    sb.append(String.format("\n  %s: %d dropped", TYPES[i], droppedByType[i]));
+                }
+            }
+        }
+        appendTopOffender(sb, "link", links);
+        appendTopOffender(sb, "originator", originators);
+        return sb.toString();
+    }
+
+    private static void appendTopOffender(StringBuilder sb, String label, Map<String, Account> map) {
+        String worst = null;
+        long worstDropped = 0;
+        for (Map.Entry<String, Account> entry : map.entrySet()) {
+            long dropped = entry.getValue().dropped.get();
+            if (dropped > worstDropped) {
+                worst = entry.getKey();
+                worstDropped = dropped;
+            }
+        }
+        if (worst != null) {
+            sb.append(String.format("\n  Top %s: %s (%d dropped)", label,
+                    worst.substring(0, Math.min(8, worst.length())), worstDropped));
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.disastercomm.network;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads and patches top-level fields of a serialized Message directly in
+ * its JSON bytes, without building a String or a Gson tree. Used for the
+ * duplicate check and for relaying (ttl rewrite) on the receive path.
+ */
+public final class JsonPacketScanner {
+    public static final byte[] FIELD_ID = key("id");
+    public static final byte[] FIELD_TTL = key("ttl");
+    public static final byte[] FIELD_TYPE = key("type");
+    public static final byte[] FIELD_SENDER_ID = key("senderId");
+    public static final byte[] FIELD_HOP_COUNT = key("hopCount");
+    public static final byte[] FIELD_LINK_SEQ = key("linkSeq");
+    public static final byte[] FIELD_LINK_ACK = key("linkAck");
+    public static final byte[] FIELD_LINK_SACK = key("linkSack");
+    public static final byte[] FIELD_LINK_BASE = key("linkBase");
+
+    private JsonPacketScanner() {
+    }
+
+    private static byte[] key(String name) {
+        return name.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Offset of the value of a top-level key, or -1 if absent or malformed
+     */
+    public static int valueOffset(byte[] data, int length, byte[] key) {
+        int depth = 0;
+        boolean expectKey = false;
+        for (int i = 0; i < length; i++) {
+            byte c = data[i];
+            if (c == '"') {
+                int end = stringEnd(data, length, i);
+                if (end < 0) {
+                    return -1;
+                }
+                if (depth == 1 && expectKey) {
+                    int colon = skipWhitespace(data, length, end + 1);
+                    if (colon >= length || data[colon] != ':') {
+                        return -1;
+                    }
+                    if (matches(data, i + 1, end, key)) {
+                        int value = skipWhitespace(data, length, colon + 1);
+                        return value < length ? value : -1; // Truncated after the colon
+                    }
+                    expectKey = false;
+                    i = colon;
+                } else {
+                    i = end;
+                }
+            } else if (c == '{' || c == '[') {
+                depth++;
+                expectKey = c == '{' && depth == 1;
+            } else if (c == '}' || c == ']') {
+                depth--;
+            } else if (c == ',' && depth == 1) {
+                expectKey = true;
+            }
+        }
+        return -1;
+    }
+
+    public static long readLong(byte[] data, int length, byte[] key, long defaultValue) {
+        int offset = valueOffset(data, length, key);
+        if (offset < 0) {
+            return defaultValue;
+        }
+        int end = numberEnd(data, length, offset);
+        if (end == offset) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(new String(data, offset, end - offset, StandardCharsets.US_ASCII));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * String value of a top-level key; null if absent, JSON null, or escaped
+     * (ids and device ids never need escaping)
+     */
+    public static String readString(byte[] data, int length, byte[] key) {
+        int offset = valueOffset(data, length, key);
+        if (offset < 0 || data[offset] != '"') {
+            return null;
+        }
+        int end = stringEnd(data, length, offset);
+        if (end < 0) {
+            return null;
+        }
+        for (int i = offset + 1; i < end; i++) {
+            if (data[i] == '\\') {
+                return null;
+            }
+        }
+        return new String(data, offset + 1, end - offset - 1, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * True if the key is present with a non-null value
+     */
+    public static boolean hasValue(byte[] data, int length, byte[] key) {
+        int offset = valueOffset(data, length, key);
+        return offset >= 0 && data[offset] != 'n';
+    }
+
+    /**
+     * Overwrite an integer field in place. A shorter number is left-padded
+     * with spaces (valid JSON whitespace), so the packet length never changes.
+     * Returns false if the field is missing or the new value needs more digits.
+     */
+    public static boolean patchLong(byte[] data, int length, byte[] key, long value) {
+        int offset = valueOffset(data, length, key);
+        if (offset < 0) {
+            return false;
+        }
+        int end = numberEnd(data, length, offset);
+        String digits = Long.toString(value);
+        int width = end - offset;
+        if (width == 0 || digits.length() > width) {
+            return false;
+        }
+        int pad = width - digits.length();
+        for (int i = 0; i < width; i++) {
+            data[offset + i] = i < pad ? (byte) ' ' : (byte) digits.charAt(i - pad);
+        }
+        return true;
+    }
+
+    // Index of the closing quote of the string opening at 'quote', or -1
+    private static int stringEnd(byte[] data, int length, int quote) {
+        for (int i = quote + 1; i < length; i++) {
+            if (data[i] == '\\') {
+                i++;
+            } else if (data[i] == '"') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int numberEnd(byte[] data, int length, int offset) {
+        int i = offset;
+        if (i < length && data[i] == '-') {
+            i++;
+        }
+        while (i < length && data[i] >= '0' && data[i] <= '9') {
+            i++;
+        }
+        return i;
+    }
+
+    private static int skipWhitespace(byte[] data, int length, int i) {
+        while (i < length && (data[i] == ' ' || data[i] == '\t' || data[i] == '\n' || data[i] == '\r')) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean matches(byte[] data, int start, int end, byte[] key) {
+        if (end - start != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (data[start + i] != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
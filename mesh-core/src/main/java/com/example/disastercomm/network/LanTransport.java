@@ -0,0 +1,870 @@
+package com.example.disastercomm.network;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.MembershipKey;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Mesh links over an IP LAN: a phone hotspot, a shared Wi-Fi access point,
+ * or loopback on a Linux box in tests. Peers announce themselves with a UDP
+ * multicast beacon ("DCLAN1|deviceId|tcpPort|name") on every usable
+ * interface; the lower device id dials, and each peer becomes one TCP link
+ * ("LAN_" + device id) carrying StreamFraming frames. The first frame each
+ * way is a HELLO with the device id, so the accepting side knows who called.
+ * A HELLO for a device whose link is alive is refused; idle links send a
+ * keepalive frame so "alive" means heard from recently.
+ *
+ * One selector thread owns every channel; send() only queues and wakes it.
+ * Plain Java on purpose: the Android side (multicast lock, lifecycle) lives
+ * with whoever constructs it. Two instances on one Linux host find each
+ * other over loopback with setInterfaces(lo); static peers cover routed
+ * networks that multicast does not cross (relay to relay).
+ */
+public class LanTransport implements Transport {
+    public static final String DEFAULT_GROUP = "239.255.77.77";
+    public static final int DEFAULT_DISCOVERY_PORT = 47477;
+    public static final String LINK_PREFIX = "LAN_";
+
+    private static final String MAGIC = "DCLAN1";
+    private static final String HELLO = "HELLO";
+    private static final byte[] KEEPALIVE = (MAGIC + "|PING").getBytes(StandardCharsets.UTF_8);
+    private static final int MTU = 64 * 1024;
+    private static final long BEACON_INTERVAL_MS = 2000;
+    private static final long INTERFACE_CHECK_MS = 10000;
+    private static final long PEER_EXPIRY_MS = 10000; // Five missed beacons
+    private static final long HANDSHAKE_TIMEOUT_MS = 5000; // Connect plus HELLO
+    private static final long DIAL_FALLBACK_MS = 8000; // Higher id dials too if the lower never does
+    private static final long REDIAL_BASE_MS = 2000;
+    private static final long REDIAL_MAX_MS = 60000;
+    private static final int MAX_QUEUED_BYTES = 4 * 1024 * 1024;
+
+    private static class Peer {
+        final String deviceId; // Null for a static peer until its HELLO
+        String learnedId; // Device id a static peer answered with
+        Link link; // Static peers only: the current connection
+        InetSocketAddress address; // TCP endpoint from the latest beacon
+        String name;
+        long firstHeard;
+        long lastHeard;
+        long nextDialAt;
+        int failures;
+
+        Peer(String deviceId) {
+            this.deviceId = deviceId;
+        }
+    }
+
+    private final class Link {
+        final SocketChannel channel;
+        final boolean outbound;
+        Peer peer; // Who we dialed, null when accepted
+        final long openedAt = System.currentTimeMillis();
+        final StreamFraming.Decoder decoder = new StreamFraming.Decoder(MTU);
+        final ArrayDeque<ByteBuffer> queue = new ArrayDeque<>(); // Guarded by itself
+        long queuedBytes;
+        SelectionKey key;
+        String deviceId; // Dialed peer, or learned from its HELLO
+        String linkId;
+        long lastRead = openedAt;
+        volatile long lastWrite = openedAt;
+        volatile boolean up;
+        boolean closed;
+
+        Link(SocketChannel channel, boolean outbound) {
+            this.channel = channel;
+            this.outbound = outbound;
+        }
+
+        boolean enqueue(byte[] data) {
+            ByteBuffer frame = StreamFraming.encode(data);
+            synchronized (queue) {
+                if (closed || queuedBytes + frame.remaining() > MAX_QUEUED_BYTES) {
+                    return false;
+                }
+                queue.add(frame);
+                queuedBytes += frame.remaining();
+            }
+            pendingWrites.add(this);
+            Selector s = selector;
+            if (s != null) {
+                s.wakeup();
+            }
+            return true;
+        }
+    }
+
+    private final String myDeviceId;
+    private final String myName;
+    private volatile Listener transportListener;
+    private ConnectionPoolManager poolManager;
+
+    // Configuration, fixed once started
+    private InetAddress group;
+    private int discoveryPort = DEFAULT_DISCOVERY_PORT;
+    private int tcpPort = 0; // Ephemeral unless set
+    private List<NetworkInterface> fixedInterfaces; // Null = every usable interface
+
+    // Selector thread state
+    private volatile Selector selector;
+    private volatile boolean running;
+    private Thread loopThread;
+    private ServerSocketChannel server;
+    private DatagramChannel discovery;
+    private final Map<String, MembershipKey> memberships = new HashMap<>();
+    private final Map<String, Peer> peers = new HashMap<>();
+    private final List<Peer> staticPeers = new ArrayList<>();
+    private final Map<String, Link> dialing = new HashMap<>(); // deviceId -> outbound link not yet up
+    private final List<Link> handshaking = new ArrayList<>();
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(MTU);
+    private final ByteBuffer datagramBuffer = ByteBuffer.allocate(512);
+    private final Queue<Link> pendingWrites = new ConcurrentLinkedQueue<>();
+    private long nextBeaconAt;
+    private long nextInterfaceCheckAt;
+
+    private final Map<String, Link> links = new ConcurrentHashMap<>(); // linkId -> link that finished HELLO
+
+    // Stats
+    private volatile int peersHeard;
+    private volatile int interfaceCount;
+    private final AtomicLong beaconsSent = new AtomicLong();
+    private final AtomicLong beaconsHeard = new AtomicLong();
+    private final AtomicLong linksOpened = new AtomicLong();
+    private final AtomicLong dialFailures = new AtomicLong();
+    private final AtomicLong hellosRejected = new AtomicLong(); // HELLO for a device whose link is alive
+    private final AtomicLong framesOut = new AtomicLong();
+    private final AtomicLong framesIn = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    public LanTransport(String myDeviceId, String myName) {
+        this.myDeviceId = myDeviceId;
+        this.myName = myName != null ? myName.replace('|', '_') : "";
+    }
+
+    public void setConnectionPoolManager(ConnectionPoolManager poolManager) {
+        this.poolManager = poolManager;
+    }
+
+    /**
+     * Multicast group and UDP port for beacons; every node on the segment
+     * must agree on them
+     */
+    public void setDiscovery(InetAddress group, int port) {
+        this.group = group;
+        this.discoveryPort = port;
+    }
+
+    public void setTcpPort(int port) {
+        this.tcpPort = port;
+    }
+
+    /**
+     * Restrict discovery to these interfaces (e.g. lo in tests) instead of
+     * every up, multicast-capable one
+     */
+    public void setInterfaces(List<NetworkInterface> interfaces) {
+        this.fixedInterfaces = interfaces;
+    }
+
+    /**
+     * Keep a link to this address whether or not it beacons, e.g. another
+     * relay across a routed network. Call before start().
+     */
+    public void addStaticPeer(InetSocketAddress address) {
+        Peer peer = new Peer(null);
+        peer.address = address;
+        staticPeers.add(peer);
+    }
+
+    public synchronized void start() throws IOException {
+        if (running) {
+            return;
+        }
+        if (group == null) {
+            group = InetAddress.getByName(DEFAULT_GROUP);
+        }
+        selector = Selector.open();
+        try {
+            server = ServerSocketChannel.open();
+            server.bind(new InetSocketAddress(tcpPort));
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+
+            discovery = DatagramChannel.open(StandardProtocolFamily.INET);
+            discovery.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            discovery.setOption(StandardSocketOptions.IP_MULTICAST_LOOP, true); // Other nodes on this host
+            discovery.bind(new InetSocketAddress(discoveryPort));
+            discovery.configureBlocking(false);
+            discovery.register(selector, SelectionKey.OP_READ);
+        } catch (IOException e) {
+            closeQuietly();
+            throw e;
+        }
+        running = true;
+        loopThread = new Thread(this::loop, "LanLoop");
+        loopThread.setDaemon(true);
+        loopThread.start();
+    }
+
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        Selector s = selector;
+        if (s != null) {
+            s.wakeup();
+        }
+        if (loopThread != null && loopThread != Thread.currentThread()) {
+            try {
+                loopThread.join(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        loopThread = null;
+    }
+
+    /**
+     * TCP port peers dial; useful when started on an ephemeral port
+     */
+    public int getLocalPort() {
+        ServerSocketChannel s = server;
+        return s != null ? s.socket().getLocalPort() : -1;
+    }
+
+    public String getDeviceId(String linkId) {
+        Link link = links.get(linkId);
+        return link != null ? link.deviceId : null;
+    }
+
+    public int getLinkCount() {
+        return links.size();
+    }
+
+    private void loop() {
+        try {
+            while (running) {
+                long now = System.currentTimeMillis();
+                if (now >= nextInterfaceCheckAt) {
+                    refreshInterfaces();
+                    nextInterfaceCheckAt = now + INTERFACE_CHECK_MS;
+                }
+                if (now >= nextBeaconAt) {
+                    sendBeacons();
+                    keepLinksAlive(now);
+                    expire(now);
+                    dialPeers(now);
+                    nextBeaconAt = now + BEACON_INTERVAL_MS;
+                }
+                selector.select(Math.max(1, nextBeaconAt - System.currentTimeMillis()));
+
+                Link pending;
+                while ((pending = pendingWrites.poll()) != null) {
+                    if (!pending.closed && pending.key != null && pending.key.isValid()
+                            && pending.channel.isConnected()) {
+                        pending.key.interestOps(pending.key.interestOps() | SelectionKey.OP_WRITE);
+                    }
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.channel() == server) {
+                        accept();
+                    } else if (key.channel() == discovery) {
+                        receiveBeacons();
+                    } else {
+                        handleLink((Link) key.attachment(), key);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            running = false;
+        } finally {
+            for (Link link : new ArrayList<>(links.values())) {
+                close(link);
+            }
+            for (Link link : new ArrayList<>(handshaking)) {
+                close(link);
+            }
+            closeQuietly();
+        }
+    }
+
+    private void handleLink(Link link, SelectionKey key) {
+        try {
+            if (key.isConnectable()) {
+                if (!link.channel.finishConnect()) {
+                    return;
+                }
+                key.interestOps(SelectionKey.OP_READ);
+                sendHello(link);
+            }
+            if (key.isValid() && key.isReadable()) {
+                read(link);
+            }
+            if (key.isValid() && key.isWritable()) {
+                flush(link);
+            }
+        } catch (IOException | CancelledKeyException e) {
+            close(link);
+        }
+    }
+
+    // ---- Discovery ----
+
+    private void refreshInterfaces() {
+        List<NetworkInterface> wanted = fixedInterfaces != null ? fixedInterfaces : usableInterfaces();
+        Map<String, NetworkInterface> byName = new HashMap<>();
+        for (NetworkInterface ni : wanted) {
+            byName.put(ni.getName(), ni);
+        }
+        Iterator<Map.Entry<String, MembershipKey>> it = memberships.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, MembershipKey> entry = it.next();
+            if (!byName.containsKey(entry.getKey())) {
+                entry.getValue().drop(); // Hotspot or Wi-Fi went away
+                it.remove();
+            }
+        }
+        for (NetworkInterface ni : byName.values()) {
+            if (!memberships.containsKey(ni.getName())) {
+                try {
+                    memberships.put(ni.getName(), discovery.join(group, ni));
+                } catch (IOException e) {
+                    // Interface without IPv4 multicast; skipped until the next check
+                }
+            }
+        }
+        interfaceCount = memberships.size();
+    }
+
+    private static List<NetworkInterface> usableInterfaces() {
+        List<NetworkInterface> result = new ArrayList<>();
+        try {
+            Enumeration<NetworkInterface> all = NetworkInterface.getNetworkInterfaces();
+            if (all == null) {
+                return result;
+            }
+            for (NetworkInterface ni : Collections.list(all)) {
+                // Point-to-point catches cellular and VPN tunnels
+                if (!ni.isUp() || ni.isLoopback() || ni.isPointToPoint() || !ni.supportsMulticast()) {
+                    continue;
+                }
+                for (InetAddress address : Collections.list(ni.getInetAddresses())) {
+                    if (address instanceof Inet4Address) {
+                        result.add(ni);
+                        break;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // No interfaces readable right now
+        }
+        return result;
+    }
+
+    private void sendBeacons() {
+        int port = getLocalPort();
+        if (port < 0 || memberships.isEmpty()) {
+            return;
+        }
+        byte[] beacon = (MAGIC + "|" + myDeviceId + "|" + port + "|" + myName).getBytes(StandardCharsets.UTF_8);
+        InetSocketAddress target = new InetSocketAddress(group, discoveryPort);
+        for (MembershipKey membership : memberships.values()) {
+            try {
+                discovery.setOption(StandardSocketOptions.IP_MULTICAST_IF, membership.networkInterface());
+                discovery.send(ByteBuffer.wrap(beacon), target);
+                beaconsSent.incrementAndGet();
+            } catch (IOException e) {
+                // Interface went down between checks
+            }
+        }
+    }
+
+    private void receiveBeacons() throws IOException {
+        while (true) {
+            datagramBuffer.clear();
+            SocketAddress from = discovery.receive(datagramBuffer);
+            if (from == null) {
+                return;
+            }
+            datagramBuffer.flip();
+            String text = new String(datagramBuffer.array(), 0, datagramBuffer.limit(), StandardCharsets.UTF_8);
+            String[] parts = text.split("\\|", 4);
+            if (parts.length < 3 || !MAGIC.equals(parts[0]) || parts[1].isEmpty() || parts[1].equals(myDeviceId)) {
+                continue;
+            }
+            int port;
+            try {
+                port = Integer.parseInt(parts[2]);
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            beaconsHeard.incrementAndGet();
+            long now = System.currentTimeMillis();
+            Peer peer = peers.get(parts[1]);
+            if (peer == null) {
+                peer = new Peer(parts[1]);
+                peer.firstHeard = now;
+                peers.put(peer.deviceId, peer);
+                peersHeard = peers.size();
+            }
+            peer.address = new InetSocketAddress(((InetSocketAddress) from).getAddress(), port);
+            peer.name = parts.length > 3 ? parts[3] : null;
+            peer.lastHeard = now;
+            maybeDial(peer, now);
+        }
+    }
+
+    private void expire(long now) {
+        Iterator<Peer> it = peers.values().iterator();
+        while (it.hasNext()) {
+            Peer peer = it.next();
+            if (now - peer.lastHeard < PEER_EXPIRY_MS) {
+                continue;
+            }
+            it.remove();
+            // Left the segment without a FIN (walked out of Wi-Fi range): drop a silent link now
+            Link link = links.get(LINK_PREFIX + peer.deviceId);
+            if (link != null && now - link.lastRead > PEER_EXPIRY_MS) {
+                close(link);
+            }
+        }
+        peersHeard = peers.size();
+        for (Link link : new ArrayList<>(handshaking)) {
+            if (now - link.openedAt > HANDSHAKE_TIMEOUT_MS) {
+                close(link);
+            }
+        }
+    }
+
+    private void dialPeers(long now) {
+        for (Peer peer : new ArrayList<>(peers.values())) {
+            maybeDial(peer, now);
+        }
+        for (Peer peer : staticPeers) {
+            if ((peer.link != null && !peer.link.closed) || now < peer.nextDialAt
+                    || (peer.learnedId != null && links.containsKey(LINK_PREFIX + peer.learnedId))) {
+                continue; // Connected, backing off, or already linked some other way
+            }
+            peer.link = dial(peer);
+        }
+    }
+
+    /**
+     * The lower device id dials. The higher one only steps in if nothing came
+     * for DIAL_FALLBACK_MS, e.g. the lower side's inbound port is filtered.
+     */
+    private void maybeDial(Peer peer, long now) {
+        if (links.containsKey(LINK_PREFIX + peer.deviceId) || dialing.containsKey(peer.deviceId)
+                || now < peer.nextDialAt || peer.address == null) {
+            return;
+        }
+        boolean mine = myDeviceId.compareTo(peer.deviceId) < 0;
+        if (!mine && now - peer.firstHeard < DIAL_FALLBACK_MS) {
+            return;
+        }
+        dial(peer);
+    }
+
+    private Link dial(Peer peer) {
+        SocketChannel channel = null;
+        try {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+            Link link = new Link(channel, true);
+            link.peer = peer;
+            link.deviceId = peer.deviceId;
+            boolean connected = channel.connect(peer.address);
+            link.key = channel.register(selector, connected ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT, link);
+            if (peer.deviceId != null) {
+                dialing.put(peer.deviceId, link);
+            }
+            handshaking.add(link);
+            if (connected) {
+                sendHello(link);
+            }
+            return link;
+        } catch (IOException e) {
+            dialFailures.incrementAndGet();
+            backOff(peer);
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+            return null;
+        }
+    }
+
+    private void backOff(Peer peer) {
+        peer.failures++;
+        long delay = Math.min(REDIAL_MAX_MS, REDIAL_BASE_MS << Math.min(peer.failures, 5));
+        peer.nextDialAt = System.currentTimeMillis() + delay;
+    }
+
+    // ---- Links ----
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = server.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+            Link link = new Link(channel, false);
+            link.key = channel.register(selector, SelectionKey.OP_READ, link);
+            handshaking.add(link); // Unknown until its HELLO arrives
+        }
+    }
+
+    private void sendHello(Link link) {
+        link.enqueue((MAGIC + "|" + HELLO + "|" + myDeviceId + "|" + myName).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void read(Link link) throws IOException {
+        readBuffer.clear();
+        int n = link.channel.read(readBuffer);
+        if (n < 0) {
+            close(link);
+            return;
+        }
+        readBuffer.flip();
+        link.lastRead = System.currentTimeMillis();
+        bytesIn.addAndGet(n);
+        PooledBuffer frame;
+        while (!link.closed && (frame = link.decoder.next(readBuffer)) != null) {
+            if (!link.up) {
+                try {
+                    onHello(link, frame);
+                } finally {
+                    frame.release();
+                }
+                continue;
+            }
+            if (isKeepalive(frame)) {
+                frame.release();
+                continue;
+            }
+            framesIn.incrementAndGet();
+            if (poolManager != null) {
+                poolManager.recordMessageReceived(link.linkId);
+                poolManager.updateLastSeen(link.linkId);
+            }
+            Listener l = transportListener;
+            if (l != null) {
+                l.onReceive(this, link.linkId, frame);
+            } else {
+                frame.release();
+            }
+        }
+    }
+
+    /**
+     * Idle links still send something every beacon interval, so a link that
+     * stays silent past PEER_EXPIRY_MS really is dead (see onHello)
+     */
+    private void keepLinksAlive(long now) {
+        for (Link link : links.values()) {
+            if (now - link.lastWrite >= BEACON_INTERVAL_MS) {
+                link.enqueue(KEEPALIVE);
+            }
+        }
+    }
+
+    private static boolean isKeepalive(PooledBuffer frame) {
+        if (frame.length() != KEEPALIVE.length) {
+            return false;
+        }
+        byte[] data = frame.array();
+        for (int i = 0; i < KEEPALIVE.length; i++) {
+            if (data[i] != KEEPALIVE[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void onHello(Link link, PooledBuffer frame) {
+        String text = new String(frame.array(), 0, frame.length(), StandardCharsets.UTF_8);
+        String[] parts = text.split("\\|", 4);
+        if (parts.length < 3 || !MAGIC.equals(parts[0]) || !HELLO.equals(parts[1])
+                || parts[2].isEmpty() || parts[2].equals(myDeviceId)) {
+            close(link);
+            return;
+        }
+        String deviceId = parts[2];
+        if (link.outbound && link.deviceId != null && !deviceId.equals(link.deviceId)) {
+            close(link); // Someone else now holds that address
+            return;
+        }
+        if (link.peer != null) {
+            link.peer.learnedId = deviceId;
+        }
+        String linkId = LINK_PREFIX + deviceId;
+        Link existing = links.get(linkId);
+        if (existing != null) {
+            long now = System.currentTimeMillis();
+            boolean racing = now - existing.openedAt < HANDSHAKE_TIMEOUT_MS;
+            boolean keepNew;
+            if (racing) {
+                // Both sides dialed: keep the connection the lower id opened
+                keepNew = link.outbound == (myDeviceId.compareTo(deviceId) < 0);
+            } else {
+                // Anyone can claim a device id: only a silent (half-open) link gives way
+                keepNew = now - existing.lastRead > PEER_EXPIRY_MS;
+                if (!keepNew) {
+                    hellosRejected.incrementAndGet();
+                }
+            }
+            if (!keepNew) {
+                close(link);
+                return;
+            }
+            retire(existing);
+        }
+        if (!link.outbound) {
+            Link racing = dialing.get(deviceId);
+            if (racing != null && myDeviceId.compareTo(deviceId) > 0) {
+                close(racing); // Our fallback dial lost to the peer's own
+            }
+            sendHello(link);
+        }
+        link.deviceId = deviceId;
+        link.linkId = linkId;
+        link.up = true;
+        handshaking.remove(link);
+        dialing.remove(deviceId);
+        boolean replaced = existing != null;
+        links.put(linkId, link);
+        linksOpened.incrementAndGet();
+        Peer peer = link.peer != null ? link.peer : peers.get(deviceId);
+        if (peer != null) {
+            peer.failures = 0;
+        }
+        if (replaced) {
+            return; // Same link id, still up: nothing to tell the listener
+        }
+        String name = parts.length > 3 && !parts[3].isEmpty() ? parts[3] : deviceId;
+        if (poolManager != null) {
+            poolManager.addConnection(linkId, name, ConnectionPoolManager.TransportType.LAN);
+            poolManager.bindDevice(linkId, deviceId);
+        }
+        Listener l = transportListener;
+        if (l != null) {
+            l.onLinkUp(this, linkId, name);
+        }
+    }
+
+    private void flush(Link link) throws IOException {
+        synchronized (link.queue) {
+            while (!link.queue.isEmpty()) {
+                ByteBuffer head = link.queue.peek();
+                int n = link.channel.write(head);
+                bytesOut.addAndGet(n);
+                if (head.hasRemaining()) {
+                    return; // Socket buffer full, OP_WRITE stays set
+                }
+                link.queue.poll();
+                link.queuedBytes -= head.capacity();
+                link.lastWrite = System.currentTimeMillis();
+                framesOut.incrementAndGet();
+            }
+            link.key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    /**
+     * Replaced by a duplicate connection to the same peer; no link events
+     */
+    private void retire(Link link) {
+        link.up = false;
+        closeChannel(link);
+    }
+
+    private void close(Link link) {
+        boolean wasUp = link.up;
+        link.up = false;
+        closeChannel(link);
+        handshaking.remove(link);
+        if (link.deviceId != null && dialing.get(link.deviceId) == link) {
+            dialing.remove(link.deviceId);
+        }
+        if (link.outbound && !wasUp && link.peer != null) {
+            dialFailures.incrementAndGet();
+            backOff(link.peer);
+        }
+        if (!wasUp || link.linkId == null || !links.remove(link.linkId, link)) {
+            return;
+        }
+        if (poolManager != null) {
+            poolManager.removeConnection(link.linkId);
+        }
+        Listener l = transportListener;
+        if (l != null) {
+            l.onLinkDown(this, link.linkId);
+        }
+    }
+
+    private void closeChannel(Link link) {
+        synchronized (link.queue) {
+            if (link.closed) {
+                return;
+            }
+            link.closed = true;
+            dropped.addAndGet(link.queue.size());
+            link.queue.clear();
+            link.queuedBytes = 0;
+        }
+        if (link.key != null) {
+            link.key.cancel();
+        }
+        try {
+            link.channel.close();
+        } catch (IOException ignored) {
+        }
+        link.decoder.reset();
+    }
+
+    private void closeQuietly() {
+        for (MembershipKey membership : memberships.values()) {
+            membership.drop();
+        }
+        memberships.clear();
+        peers.clear();
+        for (Peer peer : staticPeers) {
+            peer.link = null;
+            peer.nextDialAt = 0;
+            peer.failures = 0;
+        }
+        dialing.clear();
+        handshaking.clear();
+        interfaceCount = 0;
+        peersHeard = 0;
+        try {
+            if (server != null) {
+                server.close();
+            }
+            if (discovery != null) {
+                discovery.close();
+            }
+            if (selector != null) {
+                selector.close();
+            }
+        } catch (IOException ignored) {
+        }
+        server = null;
+        discovery = null;
+        selector = null;
+    }
+
+    // ---- Transport ----
+
+    @Override
+    public String getName() {
+        return "lan";
+    }
+
+    @Override
+    public int getCapabilities() {
+        return CAP_UNICAST | CAP_BROADCAST;
+    }
+
+    @Override
+    public int getMtu() {
+        return MTU;
+    }
+
+    @Override
+    public List<String> getLinks() {
+        return new ArrayList<>(links.keySet());
+    }
+
+    @Override
+    public boolean send(String linkId, byte[] data) {
+        Link link = links.get(linkId);
+        if (link == null || !link.up) {
+            return false;
+        }
+        if (!link.enqueue(data)) {
+            dropped.incrementAndGet();
+            if (poolManager != null) {
+                poolManager.recordFailure(linkId);
+            }
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void broadcast(byte[] data, String excludeLinkId) {
+        for (String linkId : getLinks()) {
+            if (!linkId.equals(excludeLinkId)) {
+                send(linkId, data);
+            }
+        }
+    }
+
+    @Override
+    public void setTransportListener(Listener listener) {
+        this.transportListener = listener;
+    }
+
+    @Override
+    public boolean hasLink(String linkId) {
+        return linkId != null && links.containsKey(linkId);
+    }
+
+    public String getStatsSummary() {
+        StringBuilder sb = new StringBuilder(String.format(
+                "LAN: %d links, %d peers heard on %d interfaces, beacons %d out/%d in, %d opened, %d dial failures, %d HELLOs rejected, frames %d out/%d in (%d KB/%d KB), %d dropped",
+                links.size(), peersHeard, interfaceCount, beaconsSent.get(), beaconsHeard.get(), linksOpened.get(),
+                dialFailures.get(), hellosRejected.get(), framesOut.get(), framesIn.get(), bytesOut.get() / 1024, bytesIn.get() / 1024,
+                dropped.get()));
+        long now = System.currentTimeMillis();
+        for (Link link : links.values()) {
+            long queued;
+            synchronized (link.queue) {
+                queued = link.queuedBytes;
+            }
+            sb.append(String.format("\n    %s %s, up %ds, %d B queued", link.deviceId.substring(0, Math.min(8, link.deviceId.length())),
+                    link.outbound ? "out" : "in", (now - link.openedAt) / 1000, queued));
+        }
+        return sb.toString();
+    }
+}
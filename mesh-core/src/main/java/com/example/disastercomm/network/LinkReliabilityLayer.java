@@ -0,0 +1,375 @@
+package com.example.disastercomm.network;
+
+import com.example.disastercomm.models.Message;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hop-by-hop reliability for unicast link traffic.
+ * Each neighbor link gets its own sequence space; receivers answer with a
+ * cumulative ack plus a short SACK list, piggybacked on the next outgoing
+ * packet or sent as a standalone LINK_ACK after a short delay. Unacked
+ * packets sit in a bounded buffer and are selectively retransmitted after
+ * an adaptive RTO (seeded from ConnectionPoolManager latency samples).
+ * Every packet also carries the sender's lowest outstanding seq (linkBase),
+ * so a receiver skips gaps the sender gave up on instead of waiting forever.
+ * Floods are not covered: their redundancy already repairs loss.
+ */
+public class LinkReliabilityLayer {
+    private static final String TAG = "LinkReliability";
+    private static final long INITIAL_RTO_MS = 1000;
+    private static final long MIN_RTO_MS = 200;
+    private static final long MAX_RTO_MS = 10000;
+    private static final long DELAYED_ACK_MS = 40;
+    private static final long TIMER_TICK_MS = 100;
+    private static final int MAX_RETRANSMITS = 5;
+    private static final int MAX_UNACKED_PER_LINK = 32;
+    private static final int MAX_SACK_ENTRIES = 8;
+    private static final int MAX_OUT_OF_ORDER = 256; // Legacy senders send no linkBase: give up on the gap
+
+    public interface LinkSender {
+        // Put a packet on the wire for exactly this link (no reliability)
+        boolean sendRaw(String endpointId, Message message);
+
+        // Retransmissions exhausted: caller may fall back (e.g. flood)
+        void onGiveUp(String endpointId, Message message);
+    }
+
+    private static class Outstanding {
+        final Message message;
+        long sentAt;
+        int retransmits;
+        boolean fastRetransmitted;
+
+        Outstanding(Message message) {
+            this.message = message;
+        }
+    }
+
+    private static class LinkState {
+        // Sender side
+        int nextSeq = 1;
+        final TreeMap<Integer, Outstanding> unacked = new TreeMap<>();
+        long srtt = -1;
+        long rttvar = 0;
+        long rto = INITIAL_RTO_MS;
+
+        // Receiver side
+        int cumAck = 0;
+        final TreeSet<Integer> outOfOrder = new TreeSet<>();
+        boolean ackPending = false;
+    }
+
+    private final Map<String, LinkState> links = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+    private final LinkSender sender;
+    private ConnectionPoolManager poolManager;
+
+    // Stats
+    private final AtomicLong sentReliable = new AtomicLong();
+    private final AtomicLong retransmissions = new AtomicLong();
+    private final AtomicLong givenUp = new AtomicLong();
+    private final AtomicLong standaloneAcks = new AtomicLong();
+    private final AtomicLong gapsSkipped = new AtomicLong();
+
+    public LinkReliabilityLayer(LinkSender sender) {
+        this.sender = sender;
+        timer.scheduleWithFixedDelay(this::checkRetransmits, TIMER_TICK_MS, TIMER_TICK_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public void setConnectionPoolManager(ConnectionPoolManager poolManager) {
+        this.poolManager = poolManager;
+    }
+
+    private LinkState stateFor(String endpointId) {
+        LinkState state = links.get(endpointId);
+        if (state == null) {
+            state = new LinkState();
+            // Seed RTO from transport-level latency if the pool has samples
+            if (poolManager != null) {
+                ConnectionPoolManager.ConnectionInfo info = poolManager.getConnectionInfo(endpointId);
+                if (info != null && info.getAverageLatency() > 0) {
+                    state.rto = clampRto(4 * info.getAverageLatency());
+                }
+            }
+            LinkState existing = links.putIfAbsent(endpointId, state);
+            if (existing != null) {
+                state = existing;
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Send a unicast packet reliably: assign a link sequence number, piggyback
+     * our acks for that link and keep it for retransmission.
+     */
+    public boolean send(String endpointId, Message message) {
+        LinkState state = stateFor(endpointId);
+        Outstanding evicted = null;
+        synchronized (state) {
+            if (state.unacked.size() >= MAX_UNACKED_PER_LINK) {
+                Map.Entry<Integer, Outstanding> oldest = state.unacked.pollFirstEntry();
+                evicted = oldest.getValue();
+                MeshLog.w(TAG, "⚠️ Retransmit buffer full for " + endpointId + ", dropping seq " + oldest.getKey());
+            }
+            message.linkSeq = state.nextSeq++;
+            Outstanding out = new Outstanding(message);
+            out.sentAt = System.currentTimeMillis();
+            state.unacked.put(message.linkSeq, out);
+            attachAcks(state, message);
+            sentReliable.incrementAndGet();
+        }
+        if (evicted != null) {
+            givenUp.incrementAndGet();
+            sender.onGiveUp(endpointId, evicted.message);
+        }
+        return sender.sendRaw(endpointId, message);
+    }
+
+    /**
+     * Process link fields of an incoming packet. Must run before duplicate
+     * suppression so retransmitted copies still get acked.
+     */
+    public void onReceive(String endpointId, Message message) {
+        LinkState state = stateFor(endpointId);
+        List<Outstanding> fastRetransmit = new ArrayList<>();
+        boolean scheduleAck = false;
+
+        synchronized (state) {
+            // 1. Acks for what we sent
+            if (message.linkAck > 0 || message.linkSack != null) {
+                processAcks(state, message.linkAck, parseSack(message.linkSack), fastRetransmit);
+            }
+
+            // 2. Sequence tracking for what they sent
+            if (message.linkBase - 1 > state.cumAck) {
+                skipTo(state, message.linkBase - 1); // Sender no longer holds anything below its base
+            }
+            int seq = message.linkSeq;
+            if (seq > 0) {
+                if (seq > state.cumAck) {
+                    state.outOfOrder.add(seq);
+                    while (state.outOfOrder.remove(state.cumAck + 1)) {
+                        state.cumAck++;
+                    }
+                    if (state.outOfOrder.size() > MAX_OUT_OF_ORDER) {
+                        skipTo(state, state.outOfOrder.first() - 1);
+                    }
+                }
+                if (!state.ackPending) {
+                    state.ackPending = true;
+                    scheduleAck = true;
+                }
+            }
+        }
+
+        for (Outstanding out : fastRetransmit) {
+            retransmit(endpointId, state, out);
+        }
+        if (scheduleAck) {
+            timer.schedule(() -> sendStandaloneAck(endpointId), DELAYED_ACK_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Treat everything up to seq as received and close the gap below it
+     */
+    private void skipTo(LinkState state, int seq) {
+        state.cumAck = seq;
+        state.outOfOrder.headSet(seq, true).clear();
+        while (state.outOfOrder.remove(state.cumAck + 1)) {
+            state.cumAck++;
+        }
+        gapsSkipped.incrementAndGet();
+    }
+
+    private void processAcks(LinkState state, int cumAck, List<Integer> sacks, List<Outstanding> fastRetransmit) {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<Integer, Outstanding>> it = state.unacked.entrySet().iterator();
+        int highestSack = sacks.isEmpty() ? 0 : sacks.get(sacks.size() - 1);
+        while (it.hasNext()) {
+            Map.Entry<Integer, Outstanding> entry = it.next();
+            int seq = entry.getKey();
+            Outstanding out = entry.getValue();
+            if (seq <= cumAck || sacks.contains(seq)) {
+                // Karn's rule: only sample RTT from packets sent once
+                if (out.retransmits == 0) {
+                    updateRtt(state, now - out.sentAt);
+                }
+                it.remove();
+            } else if (seq < highestSack && !out.fastRetransmitted && now - out.sentAt > Math.max(state.srtt, 0)) {
+                // A later packet got through but this one did not: repair it now
+                out.fastRetransmitted = true;
+                fastRetransmit.add(out);
+            }
+        }
+    }
+
+    // Jacobson/Karels estimator (RFC 6298)
+    private void updateRtt(LinkState state, long sample) {
+        if (state.srtt < 0) {
+            state.srtt = sample;
+            state.rttvar = sample / 2;
+        } else {
+            state.rttvar = (3 * state.rttvar + Math.abs(state.srtt - sample)) / 4;
+            state.srtt = (7 * state.srtt + sample) / 8;
+        }
+        state.rto = clampRto(state.srtt + 4 * state.rttvar);
+    }
+
+    private static long clampRto(long rto) {
+        return Math.max(MIN_RTO_MS, Math.min(MAX_RTO_MS, rto));
+    }
+
+    private void attachAcks(LinkState state, Message message) {
+        message.linkAck = state.cumAck;
+        message.linkSack = encodeSack(state.outOfOrder);
+        message.linkBase = state.unacked.isEmpty() ? state.nextSeq : state.unacked.firstKey();
+        state.ackPending = false;
+    }
+
+    private void sendStandaloneAck(String endpointId) {
+        LinkState state = links.get(endpointId);
+        if (state == null)
+            return;
+        Message ack = new Message();
+        synchronized (state) {
+            if (!state.ackPending) {
+                return; // Already piggybacked on outgoing traffic
+            }
+            ack.id = UUID.randomUUID().toString();
+            ack.type = Message.Type.LINK_ACK;
+            ack.timestamp = System.currentTimeMillis();
+            ack.ttl = 0;
+            attachAcks(state, ack);
+        }
+        standaloneAcks.incrementAndGet();
+        sender.sendRaw(endpointId, ack);
+    }
+
+    private void checkRetransmits() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, LinkState> link : links.entrySet()) {
+            String endpointId = link.getKey();
+            LinkState state = link.getValue();
+            List<Outstanding> due = new ArrayList<>();
+            List<Outstanding> failed = new ArrayList<>();
+            synchronized (state) {
+                Iterator<Outstanding> it = state.unacked.values().iterator();
+                while (it.hasNext()) {
+                    Outstanding out = it.next();
+                    long timeout = state.rto << Math.min(out.retransmits, 4); // Exponential backoff
+                    if (now - out.sentAt < timeout) {
+                        continue;
+                    }
+                    if (out.retransmits >= MAX_RETRANSMITS) {
+                        it.remove();
+                        failed.add(out);
+                    } else {
+                        due.add(out);
+                    }
+                }
+            }
+            for (Outstanding out : due) {
+                retransmit(endpointId, state, out);
+            }
+            for (Outstanding out : failed) {
+                givenUp.incrementAndGet();
+                if (poolManager != null) {
+                    poolManager.recordFailure(endpointId);
+                }
+                MeshLog.w(TAG, "❌ Link " + endpointId + " gave up on " + out.message.id);
+                sender.onGiveUp(endpointId, out.message);
+            }
+        }
+    }
+
+    private void retransmit(String endpointId, LinkState state, Outstanding out) {
+        synchronized (state) {
+            out.retransmits++;
+            out.sentAt = System.currentTimeMillis();
+            attachAcks(state, out.message); // Refresh piggybacked acks
+        }
+        retransmissions.incrementAndGet();
+        sender.sendRaw(endpointId, out.message);
+    }
+
+    private static String encodeSack(TreeSet<Integer> outOfOrder) {
+        if (outOfOrder.isEmpty())
+            return null;
+        StringBuilder sb = new StringBuilder();
+        int count = 0;
+        for (Integer seq : outOfOrder) {
+            if (count++ == MAX_SACK_ENTRIES)
+                break;
+            if (sb.length() > 0)
+                sb.append(',');
+            sb.append(seq);
+        }
+        return sb.toString();
+    }
+
+    private static List<Integer> parseSack(String sack) {
+        List<Integer> seqs = new ArrayList<>();
+        if (sack == null || sack.isEmpty())
+            return seqs;
+        for (String part : sack.split(",")) {
+            try {
+                seqs.add(Integer.parseInt(part));
+            } catch (NumberFormatException e) {
+                // Ignore malformed entry
+            }
+        }
+        java.util.Collections.sort(seqs);
+        return seqs;
+    }
+
+    /**
+     * Link went down: sequence spaces restart on reconnect
+     */
+    public void resetLink(String endpointId) {
+        links.remove(endpointId);
+    }
+
+    int getUnackedCount(String endpointId) {
+        LinkState state = links.get(endpointId);
+        if (state == null) {
+            return 0;
+        }
+        synchronized (state) {
+            return state.unacked.size();
+        }
+    }
+
+    int getCumAck(String endpointId) {
+        LinkState state = links.get(endpointId);
+        if (state == null) {
+            return 0;
+        }
+        synchronized (state) {
+            return state.cumAck;
+        }
+    }
+
+    public String getStatsSummary() {
+        return String.format("Link ARQ: %d sent, %d retransmitted, %d given up, %d standalone acks, %d gaps skipped",
+                sentReliable.get(), retransmissions.get(), givenUp.get(), standaloneAcks.get(), gapsSkipped.get());
+    }
+
+    public void shutdown() {
+        timer.shutdownNow();
+        links.clear();
+    }
+}
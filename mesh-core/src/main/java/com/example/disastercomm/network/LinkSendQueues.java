@@ -0,0 +1,191 @@
+package com.example.disastercomm.network;
+
+import com.example.disastercomm.models.Message;
+
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One bounded, priority-ordered send queue per physical link.
+ * Each link drains on its own thread at its own pace, so a slow RFCOMM
+ * socket no longer stalls Nearby sends and every link's bandwidth is used.
+ * Queue depth is reported to ConnectionPoolManager for link selection.
+ */
+public class LinkSendQueues {
+    private static final String TAG = "LinkSendQueues";
+    private static final int MAX_QUEUED_PER_LINK = 200;
+
+    public static final int PRIORITY_CONTROL = 0; // Heartbeats, acks, routing
+    public static final int PRIORITY_EMERGENCY = 1; // SOS, GOVT_ALERT
+    public static final int PRIORITY_NORMAL = 2;
+    public static final int PRIORITY_BULK = 3; // Content chunks
+
+    public interface LinkWriter {
+        // Blocking write of one packet on one link; false if the link is gone
+        boolean write(String linkId, byte[] bytes);
+    }
+
+    private static class Item {
+        final byte[] bytes;
+        final int priority;
+        final long seq;
+
+        Item(byte[] bytes, int priority, long seq) {
+            this.bytes = bytes;
+            this.priority = priority;
+            this.seq = seq;
+        }
+    }
+
+    private static class LinkQueue {
+        // Ordered by priority, then FIFO
+        final TreeSet<Item> items = new TreeSet<>((a, b) -> a.priority != b.priority
+                ? Integer.compare(a.priority, b.priority)
+                : Long.compare(a.seq, b.seq));
+        boolean draining = false;
+    }
+
+    private final ConcurrentHashMap<String, LinkQueue> queues = new ConcurrentHashMap<>();
+    private final ExecutorService drainers = Executors.newCachedThreadPool();
+    private final AtomicLong sequence = new AtomicLong();
+    private final LinkWriter writer;
+    private ConnectionPoolManager poolManager;
+
+    // Stats
+    private long enqueued = 0;
+    private long dropped = 0;
+
+    public LinkSendQueues(LinkWriter writer) {
+        this.writer = writer;
+    }
+
+    public void setConnectionPoolManager(ConnectionPoolManager poolManager) {
+        this.poolManager = poolManager;
+    }
+
+    public static int priorityOf(Message.Type type) {
+        if (type == null) {
+            return PRIORITY_NORMAL;
+        }
+        switch (type) {
+            case HEARTBEAT:
+            case LINK_ACK:
+            case CUSTODY_ACK:
+            case ROUTE_REQUEST:
+            case ROUTE_REPLY:
+            case ROUTE_ERROR:
+                return PRIORITY_CONTROL;
+            case SOS:
+            case GOVT_ALERT:
+                return PRIORITY_EMERGENCY;
+            case CONTENT_CHUNK:
+                return PRIORITY_BULK;
+            default:
+                return PRIORITY_NORMAL;
+        }
+    }
+
+    /**
+     * Queue a packet for a link; false if the queue is full and this packet lost
+     */
+    public boolean enqueue(String linkId, byte[] bytes, int priority) {
+        LinkQueue queue = queues.get(linkId);
+        if (queue == null) {
+            queue = new LinkQueue();
+            LinkQueue existing = queues.putIfAbsent(linkId, queue);
+            if (existing != null) {
+                queue = existing;
+            }
+        }
+        boolean startDrain;
+        Item item = new Item(bytes, priority, sequence.incrementAndGet());
+        synchronized (queue) {
+            if (queue.items.size() >= MAX_QUEUED_PER_LINK) {
+                Item worst = queue.items.last();
+                if (worst.priority <= priority) {
+                    dropped++;
+                    return false; // Newest of the lowest class loses
+                }
+                queue.items.pollLast();
+                dropped++;
+                recordQueued(linkId, -worst.bytes.length);
+            }
+            queue.items.add(item);
+            enqueued++;
+            startDrain = !queue.draining;
+            queue.draining = true;
+        }
+        recordQueued(linkId, bytes.length);
+        if (startDrain) {
+            LinkQueue drainQueue = queue;
+            drainers.execute(() -> drain(linkId, drainQueue));
+        }
+        return true;
+    }
+
+    private void drain(String linkId, LinkQueue queue) {
+        while (true) {
+            Item item;
+            synchronized (queue) {
+                item = queue.items.pollFirst();
+                if (item == null) {
+                    queue.draining = false;
+                    return;
+                }
+            }
+            recordQueued(linkId, -item.bytes.length);
+            try {
+                if (!writer.write(linkId, item.bytes)) {
+                    onLinkLost(linkId);
+                    return;
+                }
+            } catch (Exception e) {
+                MeshLog.e(TAG, "Write on " + linkId + " failed", e);
+            }
+        }
+    }
+
+    private void recordQueued(String linkId, long delta) {
+        if (poolManager != null) {
+            poolManager.recordQueued(linkId, delta);
+        }
+    }
+
+    public int depth(String linkId) {
+        LinkQueue queue = queues.get(linkId);
+        if (queue == null) {
+            return 0;
+        }
+        synchronized (queue) {
+            return queue.items.size();
+        }
+    }
+
+    public void onLinkLost(String linkId) {
+        LinkQueue queue = queues.remove(linkId);
+        if (queue != null) {
+            synchronized (queue) {
+                queue.items.clear();
+            }
+        }
+    }
+
+    public String getStatsSummary() {
+        int backlog = 0;
+        for (LinkQueue queue : queues.values()) {
+            synchronized (queue) {
+                backlog += queue.items.size();
+            }
+        }
+        return String.format("Link queues: %d links, %d waiting, %d queued total, %d dropped", queues.size(), backlog,
+                enqueued, dropped);
+    }
+
+    public void shutdown() {
+        drainers.shutdownNow();
+        queues.clear();
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.disastercomm.network;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * In-memory transport for tests and benchmarks. Instances are wired to each
+ * other with connect(); each side sees the other as link "LOOP_<name>".
+ * Packets are copied and delivered asynchronously on the receiver's own
+ * thread, in order, like a lossless radio with no airtime cost.
+ */
+public class LoopbackTransport implements Transport {
+    private static final String LINK_PREFIX = "LOOP_";
+
+    private final String name;
+    private final int mtu;
+    private final Map<String, LoopbackTransport> peers = new ConcurrentHashMap<>();
+    private final ExecutorService inbox = Executors.newSingleThreadExecutor();
+    private volatile Listener listener;
+
+    public LoopbackTransport(String name) {
+        this(name, 64 * 1024);
+    }
+
+    public LoopbackTransport(String name, int mtu) {
+        this.name = name;
+        this.mtu = mtu;
+    }
+
+    /**
+     * Bring up a link in both directions
+     */
+    public void connect(LoopbackTransport other) {
+        if (other == this || peers.containsKey(other.linkIdFor())) {
+            return;
+        }
+        peers.put(other.linkIdFor(), other);
+        other.peers.put(linkIdFor(), this);
+        linkUp(other);
+        other.linkUp(this);
+    }
+
+    public void disconnect(LoopbackTransport other) {
+        if (peers.remove(other.linkIdFor()) != null) {
+            other.peers.remove(linkIdFor());
+            linkDown(other);
+            other.linkDown(this);
+        }
+    }
+
+    public void close() {
+        for (LoopbackTransport peer : new ArrayList<>(peers.values())) {
+            disconnect(peer);
+        }
+        inbox.shutdown();
+    }
+
+    private String linkIdFor() {
+        return LINK_PREFIX + name;
+    }
+
+    private void post(Runnable task) {
+        try {
+            inbox.execute(task);
+        } catch (RejectedExecutionException e) {
+            // Closed: the packet is lost, as on a real radio
+        }
+    }
+
+    private void linkUp(LoopbackTransport peer) {
+        post(() -> {
+            Listener l = listener;
+            if (l != null) {
+                l.onLinkUp(this, peer.linkIdFor(), peer.name);
+            }
+        });
+    }
+
+    private void linkDown(LoopbackTransport peer) {
+        post(() -> {
+            Listener l = listener;
+            if (l != null) {
+                l.onLinkDown(this, peer.linkIdFor());
+            }
+        });
+    }
+
+    private void deliver(String fromLinkId, PooledBuffer data) {
+        post(() -> {
+            Listener l = listener;
+            if (l != null) {
+                l.onReceive(this, fromLinkId, data);
+            } else {
+                data.release();
+            }
+        });
+    }
+
+    @Override
+    public String getName() {
+        return "loopback:" + name;
+    }
+
+    @Override
+    public int getCapabilities() {
+        return CAP_UNICAST | CAP_BROADCAST;
+    }
+
+    @Override
+    public int getMtu() {
+        return mtu;
+    }
+
+    @Override
+    public List<String> getLinks() {
+        return new ArrayList<>(peers.keySet());
+    }
+
+    @Override
+    public boolean send(String linkId, byte[] data) {
+        LoopbackTransport peer = peers.get(linkId);
+        if (peer == null || data.length > mtu) {
+            return false;
+        }
+        PooledBuffer copy = BufferPool.shared().acquire(data.length);
+        System.arraycopy(data, 0, copy.array(), 0, data.length);
+        copy.setLength(data.length);
+        peer.deliver(linkIdFor(), copy);
+        return true;
+    }
+
+    @Override
+    public void broadcast(byte[] data, String excludeLinkId) {
+        for (String linkId : getLinks()) {
+            if (!linkId.equals(excludeLinkId)) {
+                send(linkId, data);
+            }
+        }
+    }
+
+    @Override
+    public void setTransportListener(Listener listener) {
+        this.listener = listener;
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.disastercomm.network;
+
+/**
+ * Logging for the mesh core, which also runs off Android (the relay). Same
+ * calls as android.util.Log; the app routes them to logcat, anything else
+ * gets the stderr sink unless it installs its own.
+ */
+public final class MeshLog {
+    // Same values as android.util.Log, so sinks can pass them straight through
+    public static final int DEBUG = 3;
+    public static final int INFO = 4;
+    public static final int WARN = 5;
+    public static final int ERROR = 6;
+
+    public interface Sink {
+        void log(int level, String tag, String message, Throwable error);
+    }
+
+    private static final Sink STDERR = (level, tag, message, error) -> {
+        System.err.println(label(level) + "/" + tag + ": " + message);
+        if (error != null) {
+            error.printStackTrace();
+        }
+    };
+
+    private static volatile Sink sink = STDERR;
+    private static volatile int minLevel = DEBUG;
+
+    private MeshLog() {
+    }
+
+    public static void setSink(Sink newSink) {
+        sink = newSink != null ? newSink : STDERR;
+    }
+
+    /**
+     * Drop anything below this level before it reaches the sink
+     */
+    public static void setMinLevel(int level) {
+        minLevel = level;
+    }
+
+    public static void d(String tag, String message) {
+        log(DEBUG, tag, message, null);
+    }
+
+    public static void i(String tag, String message) {
+        log(INFO, tag, message, null);
+    }
+
+    public static void w(String tag, String message) {
+        log(WARN, tag, message, null);
+    }
+
+    public static void e(String tag, String message) {
+        log(ERROR, tag, message, null);
+    }
+
+    public static void e(String tag, String message, Throwable error) {
+        log(ERROR, tag, message, error);
+    }
+
+    private static void log(int level, String tag, String message, Throwable error) {
+        if (level >= minLevel) {
+            sink.log(level, tag, message, error);
+        }
+    }
+
+    private static String label(int level) {
+        switch (level) {
+            case DEBUG:
+                return "D";
+            case INFO:
+                return "I";
+            case WARN:
+                return "W";
+            default:
+                return "E";
+        }
+    }
+}
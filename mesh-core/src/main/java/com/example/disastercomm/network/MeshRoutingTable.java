@@ -1,9 +1,10 @@
 package com.example.disastercomm.network;
 
-import android.util.Log;
-
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -24,6 +25,9 @@ public class MeshRoutingTable {
     // Sequence number for route freshness
     private int sequenceNumber = 0;
 
+    // OLSR-style multipoint relays: neighbors we selected to re-broadcast our floods
+    private final Set<String> mprSet = ConcurrentHashMap.newKeySet();
+
     public static class RouteInfo {
         public String destinationId;
         public String nextHop; // Next device to forward to
@@ -53,13 +57,15 @@ public class MeshRoutingTable {
         public int signalStrength; // RSSI
         public long lastSeen; // Timestamp of last heartbeat
         public boolean isRelay; // Is this device in relay mode?
+        public Set<String> twoHopIds = Collections.emptySet(); // Short ids this neighbor advertises
+        public boolean selectedUsAsMpr; // Neighbor picked us as one of its multipoint relays
 
         public NeighborInfo(String deviceId, String deviceName) {
             this.deviceId = deviceId;
             this.deviceName = deviceName;
             this.lastSeen = System.currentTimeMillis();
             this.batteryLevel = 100;
-            this.signalStrength = -50;
+            this.signalStrength = -999; // Unknown until measured
         }
 
         public boolean isAlive() {
@@ -75,7 +81,7 @@ public class MeshRoutingTable {
         if (neighbor == null) {
             neighbor = new NeighborInfo(deviceId, deviceName);
             neighbors.put(deviceId, neighbor);
-            Log.d(TAG, "✅ New neighbor added: " + deviceName + " (" + deviceId.substring(0, 8) + ")");
+            MeshLog.d(TAG, "✅ New neighbor added: " + deviceName + " (" + deviceId.substring(0, 8) + ")");
         } else {
             neighbor.lastSeen = System.currentTimeMillis();
         }
@@ -90,7 +96,8 @@ public class MeshRoutingTable {
     public void removeNeighbor(String deviceId) {
         NeighborInfo removed = neighbors.remove(deviceId);
         if (removed != null) {
-            Log.d(TAG, "❌ Neighbor removed: " + removed.deviceName);
+            MeshLog.d(TAG, "❌ Neighbor removed: " + removed.deviceName);
+            mprSet.remove(deviceId);
 
             // Remove direct route
             routeTable.remove(deviceId);
@@ -120,7 +127,7 @@ public class MeshRoutingTable {
             route.sequenceNumber = sequenceNumber++;
             routeTable.put(destinationId, route);
 
-            Log.d(TAG, String.format("🔄 Route updated: %s → %s (%d hops, signal: %d)",
+            MeshLog.d(TAG, String.format("🔄 Route updated: %s → %s (%d hops, signal: %d)",
                     destinationId.substring(0, 8), nextHop.substring(0, 8), hopCount, signalStrength));
         }
     }
@@ -191,7 +198,7 @@ public class MeshRoutingTable {
         }
 
         if (removed > 0) {
-            Log.d(TAG, "♻️ Invalidated " + removed + " routes through " + nextHopId.substring(0, 8));
+            MeshLog.d(TAG, "♻️ Invalidated " + removed + " routes through " + nextHopId.substring(0, 8));
         }
     }
 
@@ -202,7 +209,8 @@ public class MeshRoutingTable {
         // Remove dead neighbors
         neighbors.entrySet().removeIf(entry -> {
             if (!entry.getValue().isAlive()) {
-                Log.d(TAG, "💀 Dead neighbor removed: " + entry.getValue().deviceName);
+                MeshLog.d(TAG, "💀 Dead neighbor removed: " + entry.getValue().deviceName);
+                mprSet.remove(entry.getKey());
                 invalidateRoutesThrough(entry.getKey());
                 return true;
             }
@@ -212,7 +220,7 @@ public class MeshRoutingTable {
         // Remove expired routes
         routeTable.entrySet().removeIf(entry -> {
             if (entry.getValue().isExpired()) {
-                Log.d(TAG, "⏰ Expired route removed: " + entry.getKey().substring(0, 8));
+                MeshLog.d(TAG, "⏰ Expired route removed: " + entry.getKey().substring(0, 8));
                 return true;
             }
             return false;
@@ -230,6 +238,136 @@ public class MeshRoutingTable {
         }
     }
 
+    /**
+     * Update the two-hop view advertised by a neighbor (from heartbeat).
+     * neighborShortIds are the hashed ids of the neighbor's own neighbors,
+     * selectedUs tells whether the neighbor listed us in its MPR set.
+     */
+    public void updateNeighborTopology(String deviceId, Set<String> neighborShortIds, boolean selectedUs) {
+        NeighborInfo neighbor = neighbors.get(deviceId);
+        if (neighbor != null) {
+            neighbor.twoHopIds = neighborShortIds;
+            neighbor.selectedUsAsMpr = selectedUs;
+            neighbor.lastSeen = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Recompute our multipoint relay set (RFC 3626 greedy heuristic).
+     * Picks the smallest set of neighbors that covers every strict two-hop
+     * neighbor, so only those relays need to re-broadcast our ALL floods.
+     */
+    public Set<String> computeMprSet(String myDeviceId) {
+        String myShortId = shortId(myDeviceId);
+        // Neighbors may expire mid-computation; work from one consistent view
+        Map<String, NeighborInfo> snapshot = new HashMap<>(neighbors);
+        Set<String> oneHopShortIds = new HashSet<>();
+        for (String id : snapshot.keySet()) {
+            oneHopShortIds.add(shortId(id));
+        }
+
+        // Strict two-hop neighbors: reachable through a neighbor, not us, not a neighbor
+        Map<String, Set<String>> coverage = new HashMap<>();
+        Set<String> uncovered = new HashSet<>();
+        for (NeighborInfo n : snapshot.values()) {
+            if (!n.isAlive()) {
+                continue;
+            }
+            Set<String> reach = new HashSet<>();
+            for (String twoHop : n.twoHopIds) {
+                if (!twoHop.equals(myShortId) && !oneHopShortIds.contains(twoHop)) {
+                    reach.add(twoHop);
+                }
+            }
+            coverage.put(n.deviceId, reach);
+            uncovered.addAll(reach);
+        }
+
+        Set<String> selected = new HashSet<>();
+
+        // 1. Neighbors that are the only path to some two-hop node are mandatory
+        for (String twoHop : new HashSet<>(uncovered)) {
+            String onlyProvider = null;
+            int providers = 0;
+            for (Map.Entry<String, Set<String>> entry : coverage.entrySet()) {
+                if (entry.getValue().contains(twoHop)) {
+                    onlyProvider = entry.getKey();
+                    providers++;
+                }
+            }
+            if (providers == 1) {
+                selected.add(onlyProvider);
+            }
+        }
+        for (String id : selected) {
+            uncovered.removeAll(coverage.get(id));
+        }
+
+        // 2. Greedily add the neighbor covering most remaining nodes (tie: battery)
+        while (!uncovered.isEmpty()) {
+            String best = null;
+            int bestCount = 0;
+            for (Map.Entry<String, Set<String>> entry : coverage.entrySet()) {
+                if (selected.contains(entry.getKey())) {
+                    continue;
+                }
+                int count = 0;
+                for (String twoHop : entry.getValue()) {
+                    if (uncovered.contains(twoHop)) {
+                        count++;
+                    }
+                }
+                if (count > bestCount || (count == bestCount && count > 0
+                        && snapshot.get(entry.getKey()).batteryLevel > snapshot.get(best).batteryLevel)) {
+                    best = entry.getKey();
+                    bestCount = count;
+                }
+            }
+            if (best == null) {
+                break;
+            }
+            selected.add(best);
+            uncovered.removeAll(coverage.get(best));
+        }
+
+        mprSet.clear();
+        mprSet.addAll(selected);
+        MeshLog.d(TAG, "📡 MPR set recomputed: " + selected.size() + " of " + snapshot.size() + " neighbors");
+        return new HashSet<>(selected);
+    }
+
+    /**
+     * Get our current multipoint relay set
+     */
+    public Set<String> getMprSet() {
+        return new HashSet<>(mprSet);
+    }
+
+    /**
+     * Check if a neighbor selected us as its multipoint relay.
+     * Only MPR selectors' floods need to be re-broadcast by us.
+     */
+    public boolean isMprSelector(String deviceId) {
+        NeighborInfo neighbor = neighbors.get(deviceId);
+        return neighbor != null && neighbor.selectedUsAsMpr;
+    }
+
+    /**
+     * Check if a neighbor has advertised its two-hop view (i.e. speaks the
+     * topology-aware heartbeat). Legacy nodes never do, so we keep flooding for them.
+     */
+    public boolean hasTopologyInfo(String deviceId) {
+        NeighborInfo neighbor = neighbors.get(deviceId);
+        return neighbor != null && neighbor.isAlive() && !neighbor.twoHopIds.isEmpty();
+    }
+
+    /**
+     * Compact 32-bit hashed id used in heartbeats instead of full UUIDs
+     */
+    public static String shortId(String deviceId) {
+        return String.format("%08x", deviceId.hashCode());
+    }
+
     /**
      * Update neighbor signal strength
      */
@@ -284,6 +422,7 @@ public class MeshRoutingTable {
         stats.averageHops = routeTable.isEmpty() ? 0 : (float) totalHops / routeTable.size();
         stats.networkDiameter = maxHops;
         stats.relayCount = (int) neighbors.values().stream().filter(n -> n.isRelay).count();
+        stats.mprCount = mprSet.size();
 
         return stats;
     }
@@ -294,6 +433,7 @@ public class MeshRoutingTable {
         public float averageHops; // Average path length
         public int networkDiameter; // Max hops (network size)
         public int relayCount; // Active relays
+        public int mprCount; // Neighbors selected as multipoint relays
     }
 
     /**
@@ -302,8 +442,9 @@ public class MeshRoutingTable {
     public void clear() {
         routeTable.clear();
         neighbors.clear();
+        mprSet.clear();
         sequenceNumber = 0;
-        Log.d(TAG, "🔄 Routing table cleared");
+        MeshLog.d(TAG, "🔄 Routing table cleared");
     }
 
     /**
@@ -314,9 +455,10 @@ public class MeshRoutingTable {
         sb.append("=== MESH ROUTING TABLE ===\n");
         sb.append("Neighbors (").append(neighbors.size()).append("):\n");
         for (NeighborInfo n : neighbors.values()) {
-            sb.append(String.format("  • %s - Battery: %d%%, RSSI: %d%s\n",
-                    n.deviceName, n.batteryLevel, n.signalStrength,
-                    n.isRelay ? " [RELAY]" : ""));
+            sb.append(String.format("  • %s - Battery: %d%%, RSSI: %d, 2-hop: %d%s%s\n",
+                    n.deviceName, n.batteryLevel, n.signalStrength, n.twoHopIds.size(),
+                    n.isRelay ? " [RELAY]" : "",
+                    mprSet.contains(n.deviceId) ? " [MPR]" : ""));
         }
 
         sb.append("\nRoutes (").append(routeTable.size()).append("):\n");
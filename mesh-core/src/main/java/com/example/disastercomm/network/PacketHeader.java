@@ -0,0 +1,178 @@
+package com.example.disastercomm.network;
+
+import com.example.disastercomm.models.Message;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Fixed-offset binary header in front of a packet body, so relays can make
+ * dedup, addressing and TTL decisions without touching the body. The body
+ * is the codec-encoded JSON of the whole Message; the header's ttl and
+ * hopCount are authoritative, the copies inside the body are stale after
+ * the first hop.
+ *
+ * Layout (big-endian):
+ *  0  magic 0xDD
+ *  1  version
+ *  2  flags
+ *  3  Message.Type ordinal
+ *  4  ttl
+ *  5  hopCount
+ *  6  reserved (2 bytes)
+ *  8  message id as UUID (16 bytes)
+ *  24 receiverId hash (8 bytes, 0 for ALL)
+ *  32 body
+ */
+public final class PacketHeader {
+    public static final String CAPABILITY = "h1"; // Advertised in heartbeats
+    public static final int LENGTH = 32;
+    private static final byte MAGIC = (byte) 0xDD;
+    private static final byte VERSION = 1;
+
+    public static final int FLAG_BROADCAST = 1; // receiverId is ALL
+    public static final int FLAG_ID_UUID = 1 << 1; // id field is the message id itself, not a digest
+    public static final int FLAG_LINK_FIELDS = 1 << 2; // Body carries per-hop link state, never relay it opaque
+
+    private static final Message.Type[] TYPES = Message.Type.values();
+
+    public int flags;
+    public int typeOrdinal;
+    public int ttl;
+    public int hopCount;
+    public long idHigh;
+    public long idLow;
+    public long receiverHash;
+
+    public static boolean isFramed(byte[] data, int length) {
+        return length >= LENGTH && data[0] == MAGIC;
+    }
+
+    /**
+     * Load the fields from a framed packet. False for an unknown version.
+     */
+    public boolean read(byte[] data, int length) {
+        if (!isFramed(data, length) || data[1] != VERSION) {
+            return false;
+        }
+        flags = data[2] & 0xFF;
+        typeOrdinal = data[3] & 0xFF;
+        ttl = data[4] & 0xFF;
+        hopCount = data[5] & 0xFF;
+        idHigh = readLong(data, 8);
+        idLow = readLong(data, 16);
+        receiverHash = readLong(data, 24);
+        return true;
+    }
+
+    public boolean has(int flag) {
+        return (flags & flag) != 0;
+    }
+
+    public Message.Type type() {
+        return typeOrdinal < TYPES.length ? TYPES[typeOrdinal] : null;
+    }
+
+    /**
+     * The message id, or null when the id is not a UUID and only its digest travels
+     */
+    public String messageId() {
+        return has(FLAG_ID_UUID) ? new UUID(idHigh, idLow).toString() : null;
+    }
+
+    /**
+     * Header + body in one new array
+     */
+    public static byte[] frame(Message message, byte[] body) {
+        byte[] packet = new byte[LENGTH + body.length];
+        packet[0] = MAGIC;
+        packet[1] = VERSION;
+
+        int flags = 0;
+        if (message.receiverId == null || "ALL".equals(message.receiverId)) {
+            flags |= FLAG_BROADCAST;
+        }
+        if (message.linkSeq > 0 || message.linkAck > 0 || message.linkSack != null || message.linkBase > 0) {
+            flags |= FLAG_LINK_FIELDS;
+        }
+        if (idOf(message.id) != null) {
+            flags |= FLAG_ID_UUID;
+        }
+        UUID id = idFor(message.id);
+        packet[2] = (byte) flags;
+        packet[3] = (byte) (message.type != null ? message.type.ordinal() : 0xFF);
+        packet[4] = (byte) clamp(message.ttl);
+        packet[5] = (byte) clamp(message.hopCount);
+        writeLong(packet, 8, id.getMostSignificantBits());
+        writeLong(packet, 16, id.getLeastSignificantBits());
+        writeLong(packet, 24, receiverHash(message.receiverId));
+        System.arraycopy(body, 0, packet, LENGTH, body.length);
+        return packet;
+    }
+
+    /**
+     * The 16-byte id a header carries for this message id: the UUID itself,
+     * or a digest when the id is not a canonical UUID. Lets a relay match a
+     * JSON packet against a framed copy of the same message.
+     */
+    public static UUID idFor(String messageId) {
+        UUID id = idOf(messageId);
+        return id != null ? id
+                : UUID.nameUUIDFromBytes((messageId != null ? messageId : "").getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Relay rewrite of a framed packet, in place
+     */
+    public static void patchForRelay(byte[] packet, int ttl, int hopCount) {
+        packet[4] = (byte) clamp(ttl);
+        packet[5] = (byte) clamp(hopCount);
+    }
+
+    /**
+     * 64-bit FNV-1a of the receiver id; 0 means broadcast
+     */
+    public static long receiverHash(String receiverId) {
+        if (receiverId == null || "ALL".equals(receiverId)) {
+            return 0;
+        }
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < receiverId.length(); i++) {
+            hash ^= receiverId.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash != 0 ? hash : 1;
+    }
+
+    // Only canonical (lower-case) UUID strings survive the round trip exactly
+    private static UUID idOf(String id) {
+        if (id == null || id.length() != 36) {
+            return null;
+        }
+        try {
+            UUID uuid = UUID.fromString(id);
+            return uuid.toString().equals(id) ? uuid : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+
+    private static long readLong(byte[] data, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (data[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static void writeLong(byte[] data, int offset, long value) {
+        for (int i = 7; i >= 0; i--) {
+            data[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.disastercomm.network;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reference-counted packet buffer. Valid bytes are array()[0, length()).
+ * Whoever holds a reference calls release() exactly once when done; a
+ * consumer that keeps the buffer past its callback must retain() it first.
+ * Pooled buffers go back to their BufferPool when the count reaches zero.
+ */
+public final class PooledBuffer {
+    private final BufferPool pool; // Null for wrapped arrays and oversize buffers
+    private final ByteBuffer buffer;
+    private int length = 0;
+    private final AtomicInteger refCount = new AtomicInteger(1);
+
+    PooledBuffer(BufferPool pool, ByteBuffer buffer) {
+        this.pool = pool;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Unpooled view of an existing array (e.g. a Nearby BYTES payload), no copy
+     */
+    public static PooledBuffer wrap(byte[] data) {
+        PooledBuffer wrapped = new PooledBuffer(null, ByteBuffer.wrap(data));
+        wrapped.length = data.length;
+        return wrapped;
+    }
+
+    public byte[] array() {
+        return buffer.array();
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public void setLength(int length) {
+        if (length < 0 || length > buffer.capacity()) {
+            throw new IndexOutOfBoundsException("length " + length + " > capacity " + buffer.capacity());
+        }
+        this.length = length;
+    }
+
+    public int capacity() {
+        return buffer.capacity();
+    }
+
+    /**
+     * Read-only view of the valid bytes, for parsers that take a ByteBuffer
+     */
+    public ByteBuffer asReadOnlyBuffer() {
+        ByteBuffer view = buffer.asReadOnlyBuffer();
+        view.clear();
+        view.limit(length);
+        return view;
+    }
+
+    /**
+     * Exact-length array of the valid bytes. For an unpooled wrap of a whole
+     * array this is the backing array itself (no copy), so only the owner of
+     * the buffer may modify the result.
+     */
+    public byte[] toByteArray() {
+        byte[] array = buffer.array();
+        if (pool == null && length == array.length) {
+            return array;
+        }
+        return Arrays.copyOf(array, length);
+    }
+
+    public PooledBuffer retain() {
+        if (refCount.getAndIncrement() <= 0) {
+            refCount.decrementAndGet();
+            throw new IllegalStateException("Buffer already released");
+        }
+        return this;
+    }
+
+    public void release() {
+        int remaining = refCount.decrementAndGet();
+        if (remaining == 0) {
+            if (pool != null) {
+                pool.recycle(buffer);
+            }
+        } else if (remaining < 0) {
+            throw new IllegalStateException("Buffer released twice");
+        }
+    }
+}
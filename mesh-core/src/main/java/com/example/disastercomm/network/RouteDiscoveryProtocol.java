@@ -1,7 +1,5 @@
 package com.example.disastercomm.network;
 
-import android.util.Log;
-
 import com.example.disastercomm.models.Message;
 
 import java.util.HashMap;
@@ -69,14 +67,14 @@ public class RouteDiscoveryProtocol {
     public void discoverRoute(String destinationId) {
         // Check if we already have a valid route
         if (routingTable.hasRoute(destinationId)) {
-            Log.d(TAG, "✅ Route already exists to " + destinationId.substring(0, 8));
+            MeshLog.d(TAG, "✅ Route already exists to " + destinationId.substring(0, 8));
             return;
         }
 
         // Check if we already have a pending request
         RREQRecord existing = pendingRequests.get(destinationId);
         if (existing != null && !existing.isExpired()) {
-            Log.d(TAG, "⏳ Route discovery already in progress for " + destinationId.substring(0, 8));
+            MeshLog.d(TAG, "⏳ Route discovery already in progress for " + destinationId.substring(0, 8));
             return;
         }
 
@@ -98,7 +96,7 @@ public class RouteDiscoveryProtocol {
         rreq.routePath = myDeviceId;
         rreq.timestamp = System.currentTimeMillis();
 
-        Log.d(TAG, String.format("📡 Broadcasting RREQ for %s (seq: %d)",
+        MeshLog.d(TAG, String.format("📡 Broadcasting RREQ for %s (seq: %d)",
                 destinationId.substring(0, 8), requestSequence));
 
         callback.sendMessage(rreq);
@@ -112,14 +110,14 @@ public class RouteDiscoveryProtocol {
 
         // Check if we've already seen this RREQ (prevent loops)
         if (seenRREQs.contains(rreqId)) {
-            Log.d(TAG, "🔁 Duplicate RREQ ignored: " + rreqId);
+            MeshLog.d(TAG, "🔁 Duplicate RREQ ignored: " + rreqId);
             return;
         }
         seenRREQs.add(rreqId);
 
         // Check TTL
         if (rreq.hopCount >= rreq.maxHops) {
-            Log.d(TAG, "⏰ RREQ exceeded max hops, dropping");
+            MeshLog.d(TAG, "⏰ RREQ exceeded max hops, dropping");
             return;
         }
 
@@ -131,7 +129,7 @@ public class RouteDiscoveryProtocol {
 
         // Are we the destination?
         if (destinationId.equals(myDeviceId)) {
-            Log.d(TAG, "🎯 RREQ reached destination! Sending RREP back to " + originatorId.substring(0, 8));
+            MeshLog.d(TAG, "🎯 RREQ reached destination! Sending RREP back to " + originatorId.substring(0, 8));
             sendRouteReply(originatorId, rreq);
             return;
         }
@@ -139,7 +137,7 @@ public class RouteDiscoveryProtocol {
         // Do we have a route to destination?
         if (routingTable.hasRoute(destinationId)) {
             // We can send RREP on behalf of destination (intermediate RREP)
-            Log.d(TAG, "🔀 Intermediate node has route to " + destinationId.substring(0, 8));
+            MeshLog.d(TAG, "🔀 Intermediate node has route to " + destinationId.substring(0, 8));
             sendRouteReply(originatorId, rreq);
             return;
         }
@@ -158,7 +156,7 @@ public class RouteDiscoveryProtocol {
         forwardedRREQ.routePath = rreq.routePath + "→" + myDeviceId;
         forwardedRREQ.timestamp = rreq.timestamp;
 
-        Log.d(TAG, String.format("⏩ Forwarding RREQ (hop %d/%d): %s",
+        MeshLog.d(TAG, String.format("⏩ Forwarding RREQ (hop %d/%d): %s",
                 forwardedRREQ.hopCount, forwardedRREQ.maxHops, forwardedRREQ.routePath));
 
         callback.sendMessage(forwardedRREQ);
@@ -191,11 +189,11 @@ public class RouteDiscoveryProtocol {
         String nextHop = routingTable.getNextHop(originatorId);
         if (nextHop != null) {
             rrep.nextHop = nextHop;
-            Log.d(TAG, String.format("📨 Sending RREP to %s via %s",
+            MeshLog.d(TAG, String.format("📨 Sending RREP to %s via %s",
                     originatorId.substring(0, 8), nextHop.substring(0, 8)));
             callback.sendMessage(rrep);
         } else {
-            Log.w(TAG, "❌ Cannot send RREP - no route back to originator!");
+            MeshLog.w(TAG, "❌ Cannot send RREP - no route back to originator!");
         }
     }
 
@@ -212,12 +210,12 @@ public class RouteDiscoveryProtocol {
         // Update route to originator (source of RREP)
         routingTable.addRoute(originatorId, rrep.senderId, rrep.hopCount + 1, -50);
 
-        Log.d(TAG, String.format("✅ Route learned: %s via %s (%d hops)",
+        MeshLog.d(TAG, String.format("✅ Route learned: %s via %s (%d hops)",
                 destinationId.substring(0, 8), rrep.senderId.substring(0, 8), rrep.hopCount + 1));
 
         // Are we the original requester?
         if (rrep.receiverId.equals(myDeviceId)) {
-            Log.d(TAG, "🎯 RREP reached us! Route to " + destinationId.substring(0, 8) + " established");
+            MeshLog.d(TAG, "🎯 RREP reached us! Route to " + destinationId.substring(0, 8) + " established");
             pendingRequests.remove(destinationId);
             callback.onRouteFound(destinationId, rrep.senderId, rrep.hopCount + 1);
             return;
@@ -240,7 +238,7 @@ public class RouteDiscoveryProtocol {
             forwardedRREP.nextHop = nextHop;
             forwardedRREP.timestamp = rrep.timestamp;
 
-            Log.d(TAG, "⏩ Forwarding RREP toward " + rrep.receiverId.substring(0, 8));
+            MeshLog.d(TAG, "⏩ Forwarding RREP toward " + rrep.receiverId.substring(0, 8));
             callback.sendMessage(forwardedRREP);
         }
     }
@@ -250,7 +248,7 @@ public class RouteDiscoveryProtocol {
      */
     public void handleRouteError(Message rerr) {
         String brokenLink = rerr.content; // Format: "nodeA→nodeB"
-        Log.w(TAG, "💔 Route error received: " + brokenLink);
+        MeshLog.w(TAG, "💔 Route error received: " + brokenLink);
 
         // Invalidate affected routes
         String[] parts = brokenLink.split("→");
@@ -277,7 +275,7 @@ public class RouteDiscoveryProtocol {
         rerr.maxHops = 5; // Limited propagation
         rerr.timestamp = System.currentTimeMillis();
 
-        Log.w(TAG, "📢 Broadcasting RERR for broken link: " + rerr.content);
+        MeshLog.w(TAG, "📢 Broadcasting RERR for broken link: " + rerr.content);
         callback.sendMessage(rerr);
     }
 
@@ -287,7 +285,7 @@ public class RouteDiscoveryProtocol {
     public void cleanup() {
         pendingRequests.entrySet().removeIf(entry -> {
             if (entry.getValue().isExpired()) {
-                Log.d(TAG, "⏰ RREQ expired for " + entry.getKey().substring(0, 8));
+                MeshLog.d(TAG, "⏰ RREQ expired for " + entry.getKey().substring(0, 8));
                 return true;
             }
             return false;
@@ -296,7 +294,7 @@ public class RouteDiscoveryProtocol {
         // Clean old seen RREQs (keep last 100)
         if (seenRREQs.size() > 100) {
             seenRREQs.clear();
-            Log.d(TAG, "♻️ Cleared RREQ cache");
+            MeshLog.d(TAG, "♻️ Cleared RREQ cache");
         }
     }
 
@@ -0,0 +1,114 @@
+package com.example.disastercomm.network;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Packet framing for byte-stream links (Wi-Fi Aware data paths, LAN TCP,
+ * RFCOMM once both ends negotiated it): a 4-byte big-endian length, then
+ * that many packet bytes. Blocking links use read()/write(); NIO links
+ * encode() and feed a Decoder whatever the socket returned, since one read
+ * can hold half a frame or several.
+ */
+public final class StreamFraming {
+    public static final int HEADER_BYTES = 4;
+
+    private StreamFraming() {
+    }
+
+    public static void write(DataOutputStream out, byte[] data) throws IOException {
+        out.writeInt(data.length);
+        out.write(data);
+        out.flush();
+    }
+
+    /**
+     * Blocks for one whole frame. The caller owns the returned buffer.
+     */
+    public static PooledBuffer read(DataInputStream in, int maxLength) throws IOException {
+        int length = in.readInt();
+        if (length <= 0 || length > maxLength) {
+            throw new IOException("Bad frame length " + length);
+        }
+        PooledBuffer packet = BufferPool.shared().acquire(length);
+        try {
+            in.readFully(packet.array(), 0, length);
+        } catch (IOException e) {
+            packet.release();
+            throw e;
+        }
+        packet.setLength(length);
+        return packet;
+    }
+
+    /**
+     * Header and packet in one buffer, ready for a channel write
+     */
+    public static ByteBuffer encode(byte[] data) {
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_BYTES + data.length);
+        frame.putInt(data.length).put(data);
+        frame.flip();
+        return frame;
+    }
+
+    /**
+     * Reassembles frames from arbitrary chunks of a stream. Not thread-safe:
+     * one decoder per link, fed from that link's reader only.
+     */
+    public static final class Decoder {
+        private final int maxLength;
+        private final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        private PooledBuffer frame; // Body being filled, null while reading a header
+        private int filled;
+
+        public Decoder(int maxLength) {
+            this.maxLength = maxLength;
+        }
+
+        /**
+         * Next complete frame from in (read mode), or null once in is drained
+         * without completing one. The caller owns the returned buffer.
+         */
+        public PooledBuffer next(ByteBuffer in) throws IOException {
+            if (frame == null) {
+                while (header.hasRemaining() && in.hasRemaining()) {
+                    header.put(in.get());
+                }
+                if (header.hasRemaining()) {
+                    return null;
+                }
+                header.flip();
+                int length = header.getInt();
+                header.clear();
+                if (length <= 0 || length > maxLength) {
+                    throw new IOException("Bad frame length " + length);
+                }
+                frame = BufferPool.shared().acquire(length);
+                frame.setLength(length);
+                filled = 0;
+            }
+            int n = Math.min(frame.length() - filled, in.remaining());
+            in.get(frame.array(), filled, n);
+            filled += n;
+            if (filled < frame.length()) {
+                return null;
+            }
+            PooledBuffer complete = frame;
+            frame = null;
+            return complete;
+        }
+
+        /**
+         * Drop a half-read frame when the link closes
+         */
+        public void reset() {
+            if (frame != null) {
+                frame.release();
+                frame = null;
+            }
+            header.clear();
+        }
+    }
+}
@@ -0,0 +1,399 @@
+package com.example.disastercomm.network;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decides which Nearby endpoints to hold a link to. Instead of connecting to
+ * everything in range, the node keeps its degree between MIN_DEGREE and
+ * MAX_DEGREE and spends the slots on the links that matter most: good link
+ * quality, neighbors that are our only path to part of the two-hop
+ * neighborhood, endpoints we have no route to at all (partition bridges),
+ * and peers with battery left.
+ *
+ * Failed and dropped endpoints are retried with jittered exponential backoff
+ * instead of a fixed delay, so a crowd of phones does not retry in lockstep.
+ * Not thread-safe for decisions: call from the MeshNetworkManager handler.
+ */
+public class TopologyManager {
+    private static final String TAG = "TopologyManager";
+
+    public static final int MIN_DEGREE = 2; // Below this, take any link we can get
+    public static final int TARGET_DEGREE = 4; // Connect proactively up to this
+    public static final int MAX_DEGREE = 6; // Above target only bridges are admitted
+
+    private static final long BASE_BACKOFF_MS = 1000;
+    private static final long MAX_BACKOFF_MS = 5 * 60 * 1000;
+    private static final long STABLE_LINK_MS = 30 * 1000; // Drops after this are not failures
+    private static final long PRUNE_COOLDOWN_MS = 2 * 60 * 1000;
+    private static final int SWAP_MARGIN = 15; // Score a bridge must beat the weakest link by
+
+    private static class Candidate {
+        final String endpointId;
+        String name;
+        String deviceId;
+        boolean discovered;
+        boolean connected;
+        long connectedAt;
+        int failures;
+        long nextAttemptAt;
+
+        Candidate(String endpointId) {
+            this.endpointId = endpointId;
+        }
+    }
+
+    private final String myDeviceId;
+    private final Map<String, Candidate> candidates = new ConcurrentHashMap<>();
+    private final Random random = new Random();
+    private ConnectionPoolManager poolManager;
+    private MeshRoutingTable routingTable;
+
+    // Stats
+    private long attempts;
+    private long accepted;
+    private long rejected;
+    private long failures;
+    private long pruned;
+    private long swaps;
+
+    public TopologyManager(String myDeviceId) {
+        this.myDeviceId = myDeviceId;
+    }
+
+    public void setConnectionPoolManager(ConnectionPoolManager poolManager) {
+        this.poolManager = poolManager;
+    }
+
+    public void setRoutingTable(MeshRoutingTable routingTable) {
+        this.routingTable = routingTable;
+    }
+
+    /**
+     * Device id from an endpoint name of the form "username__deviceId"
+     */
+    public static String deviceIdFromName(String name) {
+        if (name == null) {
+            return null;
+        }
+        int split = name.lastIndexOf("__");
+        return split >= 0 && split + 2 < name.length() ? name.substring(split + 2) : null;
+    }
+
+    // --- Events ---
+
+    public void onDiscovered(String endpointId, String name) {
+        Candidate candidate = candidate(endpointId, name);
+        candidate.discovered = true;
+    }
+
+    public void onLost(String endpointId) {
+        Candidate candidate = candidates.get(endpointId);
+        if (candidate != null) {
+            candidate.discovered = false;
+            if (!candidate.connected) {
+                candidates.remove(endpointId);
+            }
+        }
+    }
+
+    public void onAttempt(String endpointId) {
+        attempts++;
+    }
+
+    public void onConnected(String endpointId, String name, long now) {
+        Candidate candidate = candidate(endpointId, name);
+        candidate.connected = true;
+        candidate.connectedAt = now;
+        candidate.nextAttemptAt = 0;
+    }
+
+    /**
+     * Connection attempt failed; returns the delay before it may be retried
+     */
+    public long onFailure(String endpointId, long now) {
+        failures++;
+        Candidate candidate = candidates.get(endpointId);
+        if (candidate == null) {
+            return -1;
+        }
+        candidate.failures++;
+        long delay = backoff(candidate.failures);
+        candidate.nextAttemptAt = now + delay;
+        return delay;
+    }
+
+    /**
+     * Link went down. Returns the delay before reconnecting, or -1 if the
+     * endpoint is gone or we dropped it on purpose.
+     */
+    public long onDisconnected(String endpointId, long now) {
+        Candidate candidate = candidates.get(endpointId);
+        if (candidate == null) {
+            return -1;
+        }
+        boolean wasStable = candidate.connected && now - candidate.connectedAt >= STABLE_LINK_MS;
+        candidate.connected = false;
+        if (candidate.nextAttemptAt > now) {
+            return -1; // Pruned by us, cooling down
+        }
+        // A link that flaps right after connecting counts as a failed attempt
+        candidate.failures = wasStable ? 0 : candidate.failures + 1;
+        long delay = backoff(Math.max(1, candidate.failures));
+        candidate.nextAttemptAt = now + delay;
+        return delay;
+    }
+
+    // --- Admission ---
+
+    /**
+     * Whether to request a link to this endpoint now, given our current
+     * degree (connected plus pending)
+     */
+    public boolean shouldConnect(String endpointId, int degree, long now) {
+        Candidate candidate = candidates.get(endpointId);
+        if (candidate == null || candidate.connected || now < candidate.nextAttemptAt) {
+            return false;
+        }
+        if (degree < MIN_DEGREE) {
+            return true;
+        }
+        // When both sides see each other, only the lower id dials; the other
+        // waits for the inbound request instead of colliding with it
+        if (candidate.deviceId != null && myDeviceId != null && myDeviceId.compareTo(candidate.deviceId) > 0) {
+            return false;
+        }
+        return degree < TARGET_DEGREE || (degree < MAX_DEGREE && isPartitionBridge(candidate));
+    }
+
+    /**
+     * Whether to accept an inbound request
+     */
+    public boolean shouldAccept(String endpointId, String name, int degree) {
+        Candidate candidate = candidate(endpointId, name);
+        boolean admit = degree < TARGET_DEGREE || (degree < MAX_DEGREE && isPartitionBridge(candidate));
+        if (admit) {
+            accepted++;
+        } else {
+            rejected++;
+        }
+        return admit;
+    }
+
+    /**
+     * Up to slots discovered endpoints worth dialing, best first
+     */
+    public List<String> pickCandidates(int slots, long now) {
+        List<Candidate> eligible = new ArrayList<>();
+        for (Candidate candidate : candidates.values()) {
+            if (candidate.discovered && !candidate.connected && now >= candidate.nextAttemptAt) {
+                eligible.add(candidate);
+            }
+        }
+        Map<String, Integer> scores = new HashMap<>();
+        for (Candidate candidate : eligible) {
+            scores.put(candidate.endpointId, candidateScore(candidate));
+        }
+        Collections.sort(eligible, (a, b) -> scores.get(b.endpointId) - scores.get(a.endpointId));
+        List<String> picked = new ArrayList<>();
+        for (int i = 0; i < eligible.size() && picked.size() < slots; i++) {
+            picked.add(eligible.get(i).endpointId);
+        }
+        return picked;
+    }
+
+    /**
+     * Weakest link that is not our only path to anyone, or null if every
+     * link is a bridge
+     */
+    public String pickLinkToDrop(Collection<String> connected) {
+        Set<String> coveredOnce = uniqueTwoHopOwners();
+        String weakest = null;
+        int weakestScore = Integer.MAX_VALUE;
+        for (String endpointId : connected) {
+            Candidate candidate = candidates.get(endpointId);
+            if (candidate != null && candidate.deviceId != null && coveredOnce.contains(candidate.deviceId)) {
+                continue;
+            }
+            int score = linkScore(endpointId);
+            if (score < weakestScore) {
+                weakest = endpointId;
+                weakestScore = score;
+            }
+        }
+        return weakest;
+    }
+
+    /**
+     * At full degree, a discovered partition bridge that should replace a
+     * redundant link. Returns {drop, connect} or null.
+     */
+    public String[] pickSwap(Collection<String> connected, long now) {
+        String bridge = null;
+        int bridgeScore = Integer.MIN_VALUE;
+        for (Candidate candidate : candidates.values()) {
+            if (candidate.discovered && !candidate.connected && now >= candidate.nextAttemptAt
+                    && isPartitionBridge(candidate)) {
+                int score = candidateScore(candidate);
+                if (score > bridgeScore) {
+                    bridge = candidate.endpointId;
+                    bridgeScore = score;
+                }
+            }
+        }
+        if (bridge == null) {
+            return null;
+        }
+        String drop = pickLinkToDrop(connected);
+        if (drop == null || linkScore(drop) + SWAP_MARGIN > bridgeScore) {
+            return null;
+        }
+        swaps++;
+        return new String[]{drop, bridge};
+    }
+
+    /**
+     * We are closing this link to make room; keep it from dialing straight back
+     */
+    public void markPruned(String endpointId, long now) {
+        pruned++;
+        Candidate candidate = candidates.get(endpointId);
+        if (candidate != null) {
+            candidate.nextAttemptAt = now + PRUNE_COOLDOWN_MS;
+        }
+        MeshLog.d(TAG, "✂️ Pruning link " + endpointId);
+    }
+
+    // --- Scoring ---
+
+    // 0..100 link quality, 0..100 unique coverage, 0..100 battery, +50 for bridges
+    private int linkScore(String endpointId) {
+        Candidate candidate = candidates.get(endpointId);
+        String deviceId = candidate != null ? candidate.deviceId : null;
+        double quality = 50;
+        if (poolManager != null) {
+            ConnectionPoolManager.ConnectionInfo info = poolManager.getConnectionInfo(endpointId);
+            if (info != null) {
+                quality = info.getQualityScore();
+                if (deviceId == null) {
+                    deviceId = info.deviceId;
+                }
+            }
+        }
+        MeshRoutingTable.NeighborInfo neighbor = neighbor(deviceId);
+        int coverage = neighbor != null ? uniqueTwoHops(neighbor) : 0;
+        int battery = neighbor != null ? neighbor.batteryLevel : 50;
+        return (int) (0.4 * quality + 0.3 * Math.min(100, coverage * 25) + 0.3 * battery);
+    }
+
+    private int candidateScore(Candidate candidate) {
+        // No link yet: all we know is whether it reaches somewhere new
+        return 20 + (isPartitionBridge(candidate) ? 50 : 0) + (candidate.failures > 0 ? 0 : 10);
+    }
+
+    /**
+     * Endpoint whose device we have no neighbor link or route to: linking it
+     * joins two parts of the mesh
+     */
+    private boolean isPartitionBridge(Candidate candidate) {
+        if (routingTable == null || candidate.deviceId == null) {
+            return false;
+        }
+        return !routingTable.isNeighbor(candidate.deviceId) && !routingTable.hasRoute(candidate.deviceId);
+    }
+
+    private MeshRoutingTable.NeighborInfo neighbor(String deviceId) {
+        if (routingTable == null || deviceId == null) {
+            return null;
+        }
+        return routingTable.getNeighbors().get(deviceId);
+    }
+
+    // Two-hop ids this neighbor reaches that no other live neighbor does
+    private int uniqueTwoHops(MeshRoutingTable.NeighborInfo neighbor) {
+        Map<String, MeshRoutingTable.NeighborInfo> neighbors = routingTable.getNeighbors();
+        int unique = 0;
+        for (String twoHop : neighbor.twoHopIds) {
+            boolean elsewhere = false;
+            for (MeshRoutingTable.NeighborInfo other : neighbors.values()) {
+                if (other != neighbor && other.isAlive() && other.twoHopIds.contains(twoHop)) {
+                    elsewhere = true;
+                    break;
+                }
+            }
+            if (!elsewhere && !twoHop.equals(MeshRoutingTable.shortId(myDeviceId))) {
+                unique++;
+            }
+        }
+        return unique;
+    }
+
+    // Neighbors that are the only path to at least one two-hop node
+    private Set<String> uniqueTwoHopOwners() {
+        Set<String> owners = new HashSet<>();
+        if (routingTable == null) {
+            return owners;
+        }
+        for (MeshRoutingTable.NeighborInfo neighbor : routingTable.getNeighbors().values()) {
+            if (neighbor.isAlive() && uniqueTwoHops(neighbor) > 0) {
+                owners.add(neighbor.deviceId);
+            }
+        }
+        return owners;
+    }
+
+    // Equal jitter: half the window fixed, half random
+    private long backoff(int failures) {
+        long window = Math.min(MAX_BACKOFF_MS, BASE_BACKOFF_MS << Math.min(failures, 20));
+        return window / 2 + (long) (random.nextDouble() * (window / 2));
+    }
+
+    private Candidate candidate(String endpointId, String name) {
+        Candidate candidate = candidates.get(endpointId);
+        if (candidate == null) {
+            candidate = new Candidate(endpointId);
+            candidates.put(endpointId, candidate);
+        }
+        if (name != null) {
+            candidate.name = name;
+            String deviceId = deviceIdFromName(name);
+            if (deviceId != null) {
+                candidate.deviceId = deviceId;
+            }
+        }
+        return candidate;
+    }
+
+    public void clear() {
+        candidates.clear();
+    }
+
+    public String getStatsSummary() {
+        int discovered = 0;
+        int connected = 0;
+        int backingOff = 0;
+        long now = System.currentTimeMillis();
+        for (Candidate candidate : candidates.values()) {
+            if (candidate.connected) {
+                connected++;
+            } else if (candidate.discovered) {
+                discovered++;
+            }
+            if (candidate.nextAttemptAt > now) {
+                backingOff++;
+            }
+        }
+        return String.format("Topology: degree %d (target %d, max %d), %d candidates, %d backing off, "
+                        + "%d attempts, %d failures, %d accepted, %d rejected, %d pruned, %d swaps",
+                connected, TARGET_DEGREE, MAX_DEGREE, discovered, backingOff, attempts, failures, accepted,
+                rejected, pruned, swaps);
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.disastercomm.network;
+
+import java.util.List;
+
+/**
+ * A radio (or any other byte pipe) the packet core can send through.
+ * Each transport names its own links (Nearby endpoint id, BT address,
+ * "Hub", "NAN_x") and reports link events and inbound packets to one
+ * listener, normally the TransportRegistry.
+ */
+public interface Transport {
+    int CAP_UNICAST = 1; // Packets can be addressed to a single link
+    int CAP_BROADCAST = 1 << 1; // One call reaches every link
+    int CAP_STREAM = 1 << 2; // Bulk STREAM payloads (see sendStream in MeshNetworkManager)
+    int CAP_TEXT_FRAMES = 1 << 3; // Link carries newline-delimited text, binary must be armored
+    int CAP_FAN_OUT = 1 << 4; // One link reaches several devices (e.g. a hub)
+
+    interface Listener {
+        void onLinkUp(Transport transport, String linkId, String name);
+
+        void onLinkDown(Transport transport, String linkId);
+
+        // The listener owns data and must release it
+        void onReceive(Transport transport, String linkId, PooledBuffer data);
+    }
+
+    /**
+     * Short stable name used in logs and stats, e.g. "nearby"
+     */
+    String getName();
+
+    int getCapabilities();
+
+    /**
+     * Largest packet one send can carry intact on this transport
+     */
+    int getMtu();
+
+    /**
+     * Largest packet for one link, for transports whose links differ (e.g.
+     * a Wi-Fi Aware peer with or without a data path)
+     */
+    default int getMtu(String linkId) {
+        return getMtu();
+    }
+
+    List<String> getLinks();
+
+    /**
+     * Put one packet on one link. Returns false if the link is not up.
+     * May block until the radio accepted the bytes.
+     */
+    boolean send(String linkId, byte[] data);
+
+    /**
+     * Same packet on every link except excludeLinkId (may be null)
+     */
+    void broadcast(byte[] data, String excludeLinkId);
+
+    void setTransportListener(Listener listener);
+
+    default boolean hasLink(String linkId) {
+        return linkId != null && getLinks().contains(linkId);
+    }
+
+    default boolean hasCapability(int capability) {
+        return (getCapabilities() & capability) == capability;
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.disastercomm.network;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * All transports the packet core can use, looked up by link id.
+ * Inbound packets and link events from every transport are funneled to a
+ * single listener (PacketHandler), and bytes/packets are counted per
+ * transport so throughput can be compared between radios.
+ */
+public class TransportRegistry {
+    private static final String TAG = "TransportRegistry";
+
+    private static class Stats {
+        final AtomicLong packetsOut = new AtomicLong();
+        final AtomicLong bytesOut = new AtomicLong();
+        final AtomicLong packetsIn = new AtomicLong();
+        final AtomicLong bytesIn = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+        final AtomicLong oversize = new AtomicLong();
+        // Rate window, reset on every stats report
+        long windowStart = System.currentTimeMillis();
+        long windowBytesOut = 0;
+        long windowBytesIn = 0;
+    }
+
+    private final List<Transport> transports = new CopyOnWriteArrayList<>();
+    private final java.util.Map<Transport, Stats> stats = new java.util.concurrent.ConcurrentHashMap<>();
+    private volatile Transport.Listener listener;
+
+    private final Transport.Listener dispatcher = new Transport.Listener() {
+        @Override
+        public void onLinkUp(Transport transport, String linkId, String name) {
+            MeshLog.d(TAG, "🔗 " + transport.getName() + " link up: " + linkId);
+            Transport.Listener l = listener;
+            if (l != null) {
+                l.onLinkUp(transport, linkId, name);
+            }
+        }
+
+        @Override
+        public void onLinkDown(Transport transport, String linkId) {
+            MeshLog.d(TAG, "⛓️ " + transport.getName() + " link down: " + linkId);
+            Transport.Listener l = listener;
+            if (l != null) {
+                l.onLinkDown(transport, linkId);
+            }
+        }
+
+        @Override
+        public void onReceive(Transport transport, String linkId, PooledBuffer data) {
+            Stats s = stats.get(transport);
+            if (s != null) {
+                s.packetsIn.incrementAndGet();
+                s.bytesIn.addAndGet(data.length());
+            }
+            Transport.Listener l = listener;
+            if (l != null) {
+                l.onReceive(transport, linkId, data);
+            } else {
+                data.release();
+            }
+        }
+    };
+
+    public void register(Transport transport) {
+        if (transport == null || transports.contains(transport)) {
+            return;
+        }
+        transports.add(transport);
+        stats.put(transport, new Stats());
+        transport.setTransportListener(dispatcher);
+        MeshLog.d(TAG, "Registered transport " + transport.getName() + " (mtu " + transport.getMtu() + ")");
+    }
+
+    public void unregister(Transport transport) {
+        if (transports.remove(transport)) {
+            transport.setTransportListener(null);
+            stats.remove(transport);
+        }
+    }
+
+    /**
+     * Receiver of inbound packets and link events from every transport
+     */
+    public void setListener(Transport.Listener listener) {
+        this.listener = listener;
+    }
+
+    public List<Transport> getTransports() {
+        return new ArrayList<>(transports);
+    }
+
+    /**
+     * Transport that currently has this link up, or null
+     */
+    public Transport ownerOf(String linkId) {
+        if (linkId == null) {
+            return null;
+        }
+        for (Transport transport : transports) {
+            if (transport.hasLink(linkId)) {
+                return transport;
+            }
+        }
+        return null;
+    }
+
+    public List<String> getLinks() {
+        List<String> links = new ArrayList<>();
+        for (Transport transport : transports) {
+            links.addAll(transport.getLinks());
+        }
+        return links;
+    }
+
+    public boolean hasLinks() {
+        for (Transport transport : transports) {
+            if (!transport.getLinks().isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Send on whichever transport owns the link. False if no transport has it
+     * up, or the packet is larger than that transport's MTU.
+     */
+    public boolean send(String linkId, byte[] data) {
+        Transport transport = ownerOf(linkId);
+        return transport != null && send(transport, linkId, data);
+    }
+
+    public boolean send(Transport transport, String linkId, byte[] data) {
+        Stats s = stats.get(transport);
+        if (data.length > transport.getMtu(linkId)) {
+            if (s != null) {
+                s.oversize.incrementAndGet();
+            }
+            MeshLog.w(TAG, "Packet of " + data.length + " bytes exceeds " + transport.getName() + " MTU, dropped");
+            return false;
+        }
+        boolean sent;
+        try {
+            sent = transport.send(linkId, data);
+        } catch (Exception e) {
+            MeshLog.e(TAG, transport.getName() + " send to " + linkId + " failed", e);
+            sent = false;
+        }
+        if (s != null) {
+            if (sent) {
+                s.packetsOut.incrementAndGet();
+                s.bytesOut.addAndGet(data.length);
+            } else {
+                s.failed.incrementAndGet();
+            }
+        }
+        return sent;
+    }
+
+    /**
+     * Per-transport counters and the throughput since the previous report
+     */
+    public String getStatsSummary() {
+        StringBuilder sb = new StringBuilder("Transports:");
+        long now = System.currentTimeMillis();
+        for (Transport transport : transports) {
+            Stats s = stats.get(transport);
+            if (s == null) {
+                continue;
+            }
+            long outKbps;
+            long inKbps;
+            synchronized (s) {
+                long elapsed = Math.max(1, now - s.windowStart);
+                long bytesOut = s.bytesOut.get();
+                long bytesIn = s.bytesIn.get();
+                outKbps = (bytesOut - s.windowBytesOut) * 8 / elapsed; // bits per ms == kbit/s
+                inKbps = (bytesIn - s.windowBytesIn) * 8 / elapsed;
+                s.windowStart = now;
+                s.windowBytesOut = bytesOut;
+                s.windowBytesIn = bytesIn;
+            }
+            sb.append(String.format("\n  %s: %d links, out %d pkts/%d KB (%d kbit/s), in %d pkts/%d KB (%d kbit/s), %d failed, %d oversize",
+                    transport.getName(), transport.getLinks().size(), s.packetsOut.get(), s.bytesOut.get() / 1024,
+                    outKbps, s.packetsIn.get(), s.bytesIn.get() / 1024, inKbps, s.failed.get(), s.oversize.get()));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.disastercomm.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Collections;
+
+public class ConnectBackoffTest {
+
+    @Test
+    public void firstSightingConnectsImmediately() {
+        ConnectBackoff backoff = new ConnectBackoff(1000, 60000);
+        assertTrue(backoff.tryAcquire("peer", 0));
+        assertFalse(backoff.tryAcquire("peer", 10));
+        assertTrue(backoff.isTracked("peer"));
+    }
+
+    @Test
+    public void waitDoublesAfterEachAttempt() {
+        ConnectBackoff backoff = new ConnectBackoff(1000, 60000);
+        long now = 0;
+        backoff.tryAcquire("peer", now);
+        for (long delay = 1000; delay <= 8000; delay *= 2) {
+            assertFalse(backoff.tryAcquire("peer", now + delay - 1));
+            // Up to 25% jitter on top of the delay
+            assertTrue(backoff.tryAcquire("peer", now + delay + delay / 4));
+            now += delay + delay / 4;
+        }
+    }
+
+    @Test
+    public void waitIsCapped() {
+        ConnectBackoff backoff = new ConnectBackoff(1000, 4000);
+        long now = 0;
+        for (int i = 0; i < 30; i++) {
+            assertTrue(backoff.tryAcquire("peer", now));
+            now += 5000; // Cap plus jitter
+        }
+    }
+
+    @Test
+    public void sweepListsOnlyDuePeers() {
+        ConnectBackoff backoff = new ConnectBackoff(1000, 60000);
+        backoff.tryAcquire("early", 0);
+        backoff.tryAcquire("late", 5000);
+        assertEquals(Collections.singletonList("early"), backoff.due(2000));
+    }
+
+    @Test
+    public void resetPeerIsDueAgainAtOnce() {
+        ConnectBackoff backoff = new ConnectBackoff(1000, 60000);
+        backoff.tryAcquire("peer", 0);
+        backoff.tryAcquire("peer", 2000);
+        backoff.reset("peer");
+        assertEquals(Collections.singletonList("peer"), backoff.due(2001));
+        assertTrue(backoff.tryAcquire("peer", 2001));
+    }
+
+    @Test
+    public void forgottenPeerStartsOver() {
+        ConnectBackoff backoff = new ConnectBackoff(1000, 60000);
+        backoff.tryAcquire("peer", 0);
+        backoff.forget("peer");
+        assertFalse(backoff.isTracked("peer"));
+        assertTrue(backoff.tryAcquire("peer", 1));
+        assertEquals(1, backoff.size());
+    }
+
+    @Test
+    public void statsCountAttemptsAndDeferrals() {
+        ConnectBackoff backoff = new ConnectBackoff(1000, 60000);
+        backoff.tryAcquire("peer", 0);
+        backoff.tryAcquire("peer", 10);
+        backoff.tryAcquire("linked", 0);
+        backoff.reset("linked");
+        assertEquals("Connect backoff: 2 tracked (1 unlinked), 2 attempts, 1 deferred", backoff.getStatsSummary());
+    }
+}
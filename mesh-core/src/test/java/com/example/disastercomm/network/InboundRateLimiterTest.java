@@ -0,0 +1,82 @@
+package com.example.disastercomm.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.example.disastercomm.models.Message;
+
+import org.junit.Test;
+
+public class InboundRateLimiterTest {
+
+    private static int accepted(InboundRateLimiter limiter, String linkId, String transport, String originator,
+            Message.Type type, int packets) {
+        int accepted = 0;
+        for (int i = 0; i < packets; i++) {
+            if (limiter.admit(linkId, transport, originator, type) == InboundRateLimiter.Decision.ACCEPT) {
+                accepted++;
+            }
+        }
+        return accepted;
+    }
+
+    // Buckets keep refilling while a test loop runs, so allow a little over the burst
+    private static void assertBurst(int burst, int accepted) {
+        assertTrue("accepted " + accepted + " for a burst of " + burst,
+                accepted >= burst && accepted <= burst + burst / 10 + 2);
+    }
+
+    @Test
+    public void originatorGetsItsBurstThenIsDropped() {
+        InboundRateLimiter limiter = new InboundRateLimiter();
+        // TEXT originator burst is 10; the link's own burst of 60 is not the limit here
+        assertBurst(10, accepted(limiter, "link", null, "sender", Message.Type.TEXT, 30));
+        assertEquals(InboundRateLimiter.Decision.DROP, limiter.admit("link", "sender", Message.Type.TEXT));
+    }
+
+    @Test
+    public void alertsOverBudgetAreDeliveredButNotRelayed() {
+        InboundRateLimiter limiter = new InboundRateLimiter();
+        accepted(limiter, "link", null, "sender", Message.Type.SOS, 5);
+        assertEquals(InboundRateLimiter.Decision.DELIVER_ONLY, limiter.admit("link", "sender", Message.Type.SOS));
+    }
+
+    @Test
+    public void bulkIsShedOnceTheLinkTotalIsSpent() {
+        InboundRateLimiter limiter = new InboundRateLimiter();
+        // Link total burst is 120 packets, CONTENT_CHUNK alone allows 400
+        assertBurst(120, accepted(limiter, "link", null, null, Message.Type.CONTENT_CHUNK, 200));
+    }
+
+    @Test
+    public void lanLinksGetScaledBudgets() {
+        InboundRateLimiter limiter = new InboundRateLimiter();
+        int scale = limiter.getConfig().transportScale.get("lan").intValue();
+        assertBurst(120 * scale, accepted(limiter, "lan-link", "lan", null, Message.Type.CONTENT_CHUNK, 6000));
+        assertBurst(120, accepted(limiter, "bt-link", "bluetooth", null, Message.Type.CONTENT_CHUNK, 400));
+    }
+
+    @Test
+    public void originatorBudgetIsNotScaledByTransport() {
+        InboundRateLimiter limiter = new InboundRateLimiter();
+        assertBurst(10, accepted(limiter, "lan-link", "lan", "sender", Message.Type.TEXT, 100));
+    }
+
+    @Test
+    public void disabledConfigAcceptsEverything() {
+        InboundRateLimiter limiter = new InboundRateLimiter();
+        InboundRateLimiter.Config config = new InboundRateLimiter.Config();
+        config.enabled = false;
+        limiter.setConfig(config);
+        assertEquals(1000, accepted(limiter, "link", null, "sender", Message.Type.TEXT, 1000));
+    }
+
+    @Test
+    public void lostLinkStartsWithAFreshBudget() {
+        InboundRateLimiter limiter = new InboundRateLimiter();
+        accepted(limiter, "link", null, null, Message.Type.HEARTBEAT, 10);
+        assertEquals(InboundRateLimiter.Decision.DROP, limiter.admit("link", null, Message.Type.HEARTBEAT));
+        limiter.onLinkLost("link");
+        assertEquals(InboundRateLimiter.Decision.ACCEPT, limiter.admit("link", null, Message.Type.HEARTBEAT));
+    }
+}
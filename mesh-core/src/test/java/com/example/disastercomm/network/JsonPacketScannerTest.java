@@ -0,0 +1,82 @@
+package com.example.disastercomm.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+public class JsonPacketScannerTest {
+
+    private static byte[] json(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String text(byte[] data) {
+        return new String(data, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void readsTopLevelFields() {
+        byte[] data = json("{\"id\":\"abc\",\"type\":\"TEXT\",\"ttl\":7,\"hopCount\": -2}");
+        assertEquals("abc", JsonPacketScanner.readString(data, data.length, JsonPacketScanner.FIELD_ID));
+        assertEquals("TEXT", JsonPacketScanner.readString(data, data.length, JsonPacketScanner.FIELD_TYPE));
+        assertEquals(7, JsonPacketScanner.readLong(data, data.length, JsonPacketScanner.FIELD_TTL, -1));
+        assertEquals(-2, JsonPacketScanner.readLong(data, data.length, JsonPacketScanner.FIELD_HOP_COUNT, 0));
+    }
+
+    @Test
+    public void ignoresNestedAndQuotedLookalikes() {
+        byte[] data = json("{\"content\":\"\\\"ttl\\\":99\",\"meta\":{\"ttl\":50,\"list\":[{\"ttl\":40}]},"
+                + "\"ttl\":3}");
+        assertEquals(3, JsonPacketScanner.readLong(data, data.length, JsonPacketScanner.FIELD_TTL, -1));
+    }
+
+    @Test
+    public void valueIsNotMistakenForAKey() {
+        byte[] data = json("{\"senderId\":\"ttl\",\"ttl\":4}");
+        assertEquals(4, JsonPacketScanner.readLong(data, data.length, JsonPacketScanner.FIELD_TTL, -1));
+    }
+
+    @Test
+    public void missingNullAndEscapedValues() {
+        byte[] data = json("{\"id\":null,\"senderId\":\"a\\\"b\",\"linkSeq\":0}");
+        assertEquals(-1, JsonPacketScanner.readLong(data, data.length, JsonPacketScanner.FIELD_TTL, -1));
+        assertNull(JsonPacketScanner.readString(data, data.length, JsonPacketScanner.FIELD_ID));
+        assertNull(JsonPacketScanner.readString(data, data.length, JsonPacketScanner.FIELD_SENDER_ID));
+        assertFalse(JsonPacketScanner.hasValue(data, data.length, JsonPacketScanner.FIELD_ID));
+        assertTrue(JsonPacketScanner.hasValue(data, data.length, JsonPacketScanner.FIELD_LINK_SEQ));
+        assertFalse(JsonPacketScanner.hasValue(data, data.length, JsonPacketScanner.FIELD_LINK_ACK));
+    }
+
+    @Test
+    public void onlyScansUpToLength() {
+        byte[] data = json("{\"id\":\"x\"}{\"ttl\":5}");
+        assertEquals(-1, JsonPacketScanner.readLong(data, 10, JsonPacketScanner.FIELD_TTL, -1));
+        assertEquals(-1, JsonPacketScanner.valueOffset(data, 6, JsonPacketScanner.FIELD_ID)); // Cut after the colon
+        assertNull(JsonPacketScanner.readString(data, 6, JsonPacketScanner.FIELD_ID));
+        assertNull(JsonPacketScanner.readString(data, 8, JsonPacketScanner.FIELD_ID)); // Cut mid-string
+    }
+
+    @Test
+    public void patchKeepsLengthAndPadsShorterValues() {
+        byte[] data = json("{\"ttl\":10,\"hopCount\":0}");
+        int length = data.length;
+        assertTrue(JsonPacketScanner.patchLong(data, length, JsonPacketScanner.FIELD_TTL, 9));
+        assertEquals("{\"ttl\": 9,\"hopCount\":0}", text(data));
+        assertEquals(9, JsonPacketScanner.readLong(data, length, JsonPacketScanner.FIELD_TTL, -1));
+        assertTrue(JsonPacketScanner.patchLong(data, length, JsonPacketScanner.FIELD_HOP_COUNT, 1));
+        assertEquals(1, JsonPacketScanner.readLong(data, length, JsonPacketScanner.FIELD_HOP_COUNT, -1));
+    }
+
+    @Test
+    public void patchRefusesWiderValuesAndMissingFields() {
+        byte[] data = json("{\"ttl\":9}");
+        assertFalse(JsonPacketScanner.patchLong(data, data.length, JsonPacketScanner.FIELD_TTL, 10));
+        assertFalse(JsonPacketScanner.patchLong(data, data.length, JsonPacketScanner.FIELD_HOP_COUNT, 1));
+        assertEquals("{\"ttl\":9}", text(data));
+    }
+}
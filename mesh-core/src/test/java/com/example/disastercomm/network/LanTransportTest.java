@@ -0,0 +1,183 @@
+package com.example.disastercomm.network;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Two transports on loopback: beacon discovery, the HELLO handshake and
+ * framed packets both ways
+ */
+public class LanTransportTest {
+    private static final String ID_A = "aaaaaaaa-0000-0000-0000-000000000000"; // Lower id: A dials
+    private static final String ID_B = "bbbbbbbb-0000-0000-0000-000000000000";
+
+    private static class Recorder implements Transport.Listener {
+        final List<String> up = new CopyOnWriteArrayList<>();
+        final List<String> down = new CopyOnWriteArrayList<>();
+        final Map<String, List<byte[]>> received = new ConcurrentHashMap<>();
+
+        @Override
+        public void onLinkUp(Transport transport, String linkId, String name) {
+            up.add(linkId);
+        }
+
+        @Override
+        public void onLinkDown(Transport transport, String linkId) {
+            down.add(linkId);
+        }
+
+        @Override
+        public void onReceive(Transport transport, String linkId, PooledBuffer data) {
+            received.computeIfAbsent(linkId, k -> new CopyOnWriteArrayList<>()).add(data.toByteArray());
+            data.release();
+        }
+
+        int count(String linkId) {
+            List<byte[]> packets = received.get(linkId);
+            return packets != null ? packets.size() : 0;
+        }
+    }
+
+    private LanTransport a;
+    private LanTransport b;
+    private final Recorder atA = new Recorder();
+    private final Recorder atB = new Recorder();
+
+    @Before
+    public void setUp() throws IOException {
+        // Own group and port per run, so parallel builds on one host do not meet
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        InetAddress group = InetAddress.getByName("239.255.77." + random.nextInt(1, 255));
+        int port = random.nextInt(40000, 60000);
+        List<NetworkInterface> lo = Collections.singletonList(NetworkInterface.getByInetAddress(
+                InetAddress.getLoopbackAddress()));
+        a = transport(ID_A, "Alice", group, port, lo, atA);
+        b = transport(ID_B, "Bob", group, port, lo, atB);
+    }
+
+    @After
+    public void tearDown() {
+        a.stop();
+        b.stop();
+    }
+
+    private static LanTransport transport(String id, String name, InetAddress group, int port,
+            List<NetworkInterface> interfaces, Recorder recorder) throws IOException {
+        LanTransport transport = new LanTransport(id, name);
+        transport.setDiscovery(group, port);
+        transport.setInterfaces(interfaces);
+        transport.setTransportListener(recorder);
+        transport.start();
+        return transport;
+    }
+
+    @Test
+    public void peersDiscoverEachOtherAndExchangeHello() throws Exception {
+        waitFor(() -> a.hasLink(linkTo(ID_B)) && b.hasLink(linkTo(ID_A)));
+        assertEquals(Collections.singletonList(linkTo(ID_B)), atA.up);
+        assertEquals(Collections.singletonList(linkTo(ID_A)), atB.up);
+        assertEquals(ID_B, a.getDeviceId(linkTo(ID_B)));
+        assertEquals(ID_A, b.getDeviceId(linkTo(ID_A)));
+    }
+
+    @Test
+    public void framesArriveWholeAndInOrder() throws Exception {
+        waitFor(() -> a.hasLink(linkTo(ID_B)) && b.hasLink(linkTo(ID_A)));
+        byte[] large = new byte[a.getMtu()]; // Spans many socket reads
+        ThreadLocalRandom.current().nextBytes(large);
+        byte[] small = "{\"type\":\"TEXT\"}".getBytes(StandardCharsets.UTF_8);
+        assertTrue(a.send(linkTo(ID_B), large));
+        assertTrue(a.send(linkTo(ID_B), small));
+        assertTrue(b.send(linkTo(ID_A), small));
+
+        waitFor(() -> atB.count(linkTo(ID_A)) == 2 && atA.count(linkTo(ID_B)) == 1);
+        assertArrayEquals(large, atB.received.get(linkTo(ID_A)).get(0));
+        assertArrayEquals(small, atB.received.get(linkTo(ID_A)).get(1));
+        assertArrayEquals(small, atA.received.get(linkTo(ID_B)).get(0));
+    }
+
+    @Test
+    public void helloForALiveLinkIsRefused() throws Exception {
+        waitFor(() -> a.hasLink(linkTo(ID_B)) && b.hasLink(linkTo(ID_A)));
+        Thread.sleep(5500); // Past the window where two dials may still race
+
+        // A stranger dials B claiming to be A
+        try (Socket impostor = new Socket(InetAddress.getLoopbackAddress(), b.getLocalPort())) {
+            impostor.setSoTimeout(5000);
+            DataOutputStream out = new DataOutputStream(impostor.getOutputStream());
+            StreamFraming.write(out, ("DCLAN1|HELLO|" + ID_A + "|Mallory").getBytes(StandardCharsets.UTF_8));
+            DataInputStream in = new DataInputStream(impostor.getInputStream());
+            try {
+                in.readInt();
+                throw new AssertionError("Impostor got a reply");
+            } catch (EOFException expected) {
+                // Closed without a HELLO back
+            }
+        }
+
+        assertTrue(b.send(linkTo(ID_A), new byte[] {1, 2, 3}));
+        waitFor(() -> atA.count(linkTo(ID_B)) == 1);
+        assertTrue(atB.down.isEmpty());
+        assertEquals(1, atB.up.size());
+    }
+
+    @Test
+    public void staticPeerLinksWithoutBeacons() throws Exception {
+        a.stop();
+        b.stop();
+        Recorder atC = new Recorder();
+        Recorder atD = new Recorder();
+        List<NetworkInterface> none = Collections.emptyList();
+        InetAddress group = InetAddress.getByName(LanTransport.DEFAULT_GROUP);
+        int port = ThreadLocalRandom.current().nextInt(40000, 60000);
+        LanTransport c = transport(ID_A, "C", group, port, none, atC);
+        LanTransport d = new LanTransport(ID_B, "D");
+        d.setDiscovery(group, port + 1);
+        d.setInterfaces(none);
+        d.setTransportListener(atD);
+        d.addStaticPeer(new InetSocketAddress(InetAddress.getLoopbackAddress(), c.getLocalPort()));
+        d.start();
+        try {
+            waitFor(() -> c.hasLink(linkTo(ID_B)) && d.hasLink(linkTo(ID_A)));
+            assertTrue(d.send(linkTo(ID_A), new byte[] {42}));
+            waitFor(() -> atC.count(linkTo(ID_B)) == 1);
+        } finally {
+            c.stop();
+            d.stop();
+        }
+    }
+
+    private static String linkTo(String deviceId) {
+        return LanTransport.LINK_PREFIX + deviceId;
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 15000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("Timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(20);
+        }
+    }
+}
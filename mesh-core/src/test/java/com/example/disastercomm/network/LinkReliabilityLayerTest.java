@@ -0,0 +1,142 @@
+package com.example.disastercomm.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.example.disastercomm.models.Message;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+public class LinkReliabilityLayerTest {
+    private static final String A_TO_B = "linkB";
+    private static final String B_TO_A = "linkA";
+
+    private LinkReliabilityLayer a;
+    private LinkReliabilityLayer b;
+    private final Set<String> lostIds = ConcurrentHashMap.newKeySet(); // Never arrive, however often sent
+    private final List<Message> receivedByB = new CopyOnWriteArrayList<>();
+    private final List<Message> givenUpByA = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() {
+        a = new LinkReliabilityLayer(new LinkReliabilityLayer.LinkSender() {
+            @Override
+            public boolean sendRaw(String endpointId, Message message) {
+                if (!lostIds.contains(message.id)) {
+                    Message copy = copyOf(message);
+                    receivedByB.add(copy);
+                    b.onReceive(B_TO_A, copy);
+                }
+                return true;
+            }
+
+            @Override
+            public void onGiveUp(String endpointId, Message message) {
+                givenUpByA.add(message);
+            }
+        });
+        b = new LinkReliabilityLayer(new LinkReliabilityLayer.LinkSender() {
+            @Override
+            public boolean sendRaw(String endpointId, Message message) {
+                a.onReceive(A_TO_B, copyOf(message));
+                return true;
+            }
+
+            @Override
+            public void onGiveUp(String endpointId, Message message) {
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        a.shutdown();
+        b.shutdown();
+    }
+
+    @Test
+    public void standaloneAcksClearTheRetransmitBuffer() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            assertTrue(a.send(A_TO_B, text()));
+        }
+        waitFor(() -> a.getUnackedCount(A_TO_B) == 0);
+        assertEquals(5, b.getCumAck(B_TO_A));
+        assertEquals(5, receivedByB.size());
+    }
+
+    @Test
+    public void receiverSkipsPastAnEvictedSeq() throws Exception {
+        Message lost = text();
+        lostIds.add(lost.id);
+        a.send(A_TO_B, lost);
+        // Faster than the delayed ack: the oldest entries, the lost one first, fall out of the 32-entry buffer
+        for (int i = 0; i < 40; i++) {
+            a.send(A_TO_B, text());
+        }
+        assertEquals(41 - 32, givenUpByA.size());
+        assertEquals(lost.id, givenUpByA.get(0).id);
+        waitFor(() -> a.getUnackedCount(A_TO_B) == 0);
+        assertEquals(41, b.getCumAck(B_TO_A));
+    }
+
+    @Test
+    public void receiverSkipsPastAGivenUpSeq() throws Exception {
+        Message lost = text();
+        lostIds.add(lost.id);
+        a.send(A_TO_B, lost);
+        a.send(A_TO_B, text());
+        assertEquals(0, b.getCumAck(B_TO_A)); // Stuck behind the hole until the sender gives up
+        // Five retransmits with backoff from a 1 s RTO; later traffic carries the new base
+        waitFor(() -> !givenUpByA.isEmpty(), 40000);
+        a.send(A_TO_B, text());
+        waitFor(() -> b.getCumAck(B_TO_A) == 3);
+        waitFor(() -> a.getUnackedCount(A_TO_B) == 0);
+    }
+
+    @Test
+    public void sendStampsSeqAndBase() {
+        Message message = text();
+        a.send(A_TO_B, message);
+        assertEquals(1, message.linkSeq);
+        assertEquals(1, message.linkBase);
+    }
+
+    private static Message text() {
+        Message message = new Message();
+        message.id = UUID.randomUUID().toString();
+        message.type = Message.Type.TEXT;
+        return message;
+    }
+
+    private static Message copyOf(Message message) {
+        Message copy = new Message();
+        copy.id = message.id;
+        copy.type = message.type;
+        copy.linkSeq = message.linkSeq;
+        copy.linkAck = message.linkAck;
+        copy.linkSack = message.linkSack;
+        copy.linkBase = message.linkBase;
+        return copy;
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        waitFor(condition, 5000);
+    }
+
+    private static void waitFor(BooleanSupplier condition, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (!condition.getAsBoolean()) {
+            assertTrue("Timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(20);
+        }
+    }
+}
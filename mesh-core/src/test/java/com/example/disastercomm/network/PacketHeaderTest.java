@@ -0,0 +1,102 @@
+package com.example.disastercomm.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.example.disastercomm.models.Message;
+
+import org.junit.Test;
+
+import java.util.UUID;
+
+public class PacketHeaderTest {
+
+    private static Message message(String id, String receiverId) {
+        Message message = new Message();
+        message.id = id;
+        message.type = Message.Type.SOS;
+        message.receiverId = receiverId;
+        message.ttl = 9;
+        message.hopCount = 2;
+        return message;
+    }
+
+    @Test
+    public void frameRoundTripsTheFields() {
+        String id = UUID.randomUUID().toString();
+        byte[] body = {1, 2, 3};
+        byte[] packet = PacketHeader.frame(message(id, "ALL"), body);
+        assertEquals(PacketHeader.LENGTH + body.length, packet.length);
+        assertEquals(2, packet[PacketHeader.LENGTH + 1]);
+
+        PacketHeader header = new PacketHeader();
+        assertTrue(header.read(packet, packet.length));
+        assertEquals(Message.Type.SOS, header.type());
+        assertEquals(9, header.ttl);
+        assertEquals(2, header.hopCount);
+        assertEquals(id, header.messageId());
+        assertEquals(0, header.receiverHash);
+        assertTrue(header.has(PacketHeader.FLAG_BROADCAST));
+        assertFalse(header.has(PacketHeader.FLAG_LINK_FIELDS));
+    }
+
+    @Test
+    public void unicastCarriesTheReceiverHash() {
+        byte[] packet = PacketHeader.frame(message(UUID.randomUUID().toString(), "device-1"), new byte[0]);
+        PacketHeader header = new PacketHeader();
+        header.read(packet, packet.length);
+        assertFalse(header.has(PacketHeader.FLAG_BROADCAST));
+        assertEquals(PacketHeader.receiverHash("device-1"), header.receiverHash);
+        assertNotEquals(0, header.receiverHash);
+        assertNotEquals(PacketHeader.receiverHash("device-2"), header.receiverHash);
+    }
+
+    @Test
+    public void nonUuidIdsTravelAsADigest() {
+        byte[] packet = PacketHeader.frame(message("msg-42", null), new byte[0]);
+        PacketHeader header = new PacketHeader();
+        header.read(packet, packet.length);
+        assertFalse(header.has(PacketHeader.FLAG_ID_UUID));
+        assertNull(header.messageId());
+        UUID digest = PacketHeader.idFor("msg-42");
+        assertEquals(digest.getMostSignificantBits(), header.idHigh);
+        assertEquals(digest.getLeastSignificantBits(), header.idLow);
+        // Upper-case UUIDs would not round-trip, so they are digested too
+        String upper = UUID.randomUUID().toString().toUpperCase();
+        assertNotEquals(UUID.fromString(upper), PacketHeader.idFor(upper));
+    }
+
+    @Test
+    public void linkStateIsFlagged() {
+        Message message = message(UUID.randomUUID().toString(), "device-1");
+        message.linkSeq = 5;
+        byte[] packet = PacketHeader.frame(message, new byte[0]);
+        PacketHeader header = new PacketHeader();
+        header.read(packet, packet.length);
+        assertTrue(header.has(PacketHeader.FLAG_LINK_FIELDS));
+    }
+
+    @Test
+    public void relayPatchClampsTtlAndHops() {
+        byte[] packet = PacketHeader.frame(message(UUID.randomUUID().toString(), null), new byte[0]);
+        PacketHeader.patchForRelay(packet, -1, 300);
+        PacketHeader header = new PacketHeader();
+        header.read(packet, packet.length);
+        assertEquals(0, header.ttl);
+        assertEquals(255, header.hopCount);
+    }
+
+    @Test
+    public void rejectsShortUnframedAndNewerPackets() {
+        PacketHeader header = new PacketHeader();
+        byte[] packet = PacketHeader.frame(message(UUID.randomUUID().toString(), null), new byte[0]);
+        assertFalse(PacketHeader.isFramed(packet, PacketHeader.LENGTH - 1));
+        assertFalse(PacketHeader.isFramed(new byte[PacketHeader.LENGTH], PacketHeader.LENGTH));
+        packet[1]++;
+        assertTrue(PacketHeader.isFramed(packet, packet.length));
+        assertFalse(header.read(packet, packet.length));
+    }
+}
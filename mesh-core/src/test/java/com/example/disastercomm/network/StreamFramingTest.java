@@ -0,0 +1,128 @@
+package com.example.disastercomm.network;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+public class StreamFramingTest {
+
+    private static byte[] bytes(int length, int seed) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i * 31 + seed);
+        }
+        return data;
+    }
+
+    private static byte[] stream(byte[]... packets) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] packet : packets) {
+            ByteBuffer frame = StreamFraming.encode(packet);
+            out.write(frame.array(), frame.position(), frame.remaining());
+        }
+        return out.toByteArray();
+    }
+
+    // Feed the stream in reads of chunkSize bytes, as a socket might return it
+    private static List<byte[]> decode(byte[] stream, int chunkSize) throws IOException {
+        StreamFraming.Decoder decoder = new StreamFraming.Decoder(64 * 1024);
+        List<byte[]> packets = new ArrayList<>();
+        for (int offset = 0; offset < stream.length; offset += chunkSize) {
+            ByteBuffer read = ByteBuffer.wrap(stream, offset, Math.min(chunkSize, stream.length - offset));
+            PooledBuffer frame;
+            while ((frame = decoder.next(read)) != null) {
+                packets.add(frame.toByteArray());
+                frame.release();
+            }
+        }
+        return packets;
+    }
+
+    @Test
+    public void decoderReassemblesAcrossAnySplit() throws IOException {
+        byte[] first = bytes(5000, 1);
+        byte[] second = bytes(1, 2);
+        byte[] third = bytes(300, 3);
+        byte[] stream = stream(first, second, third);
+        for (int chunkSize : new int[] {1, 3, 4, 7, 4096, stream.length}) {
+            List<byte[]> packets = decode(stream, chunkSize);
+            assertEquals("chunk size " + chunkSize, 3, packets.size());
+            assertArrayEquals(first, packets.get(0));
+            assertArrayEquals(second, packets.get(1));
+            assertArrayEquals(third, packets.get(2));
+        }
+    }
+
+    @Test
+    public void partialFrameWaitsForTheRest() throws IOException {
+        byte[] stream = stream(bytes(100, 0));
+        StreamFraming.Decoder decoder = new StreamFraming.Decoder(1024);
+        assertNull(decoder.next(ByteBuffer.wrap(stream, 0, 50)));
+        PooledBuffer frame = decoder.next(ByteBuffer.wrap(stream, 50, stream.length - 50));
+        assertArrayEquals(bytes(100, 0), frame.toByteArray());
+        frame.release();
+    }
+
+    @Test
+    public void rejectsOutOfBoundsLengths() {
+        assertRejected(0);
+        assertRejected(-1);
+        assertRejected(1025);
+    }
+
+    @Test
+    public void resetDropsAHalfReadFrame() throws IOException {
+        StreamFraming.Decoder decoder = new StreamFraming.Decoder(1024);
+        byte[] stale = stream(bytes(100, 0));
+        assertNull(decoder.next(ByteBuffer.wrap(stale, 0, 10)));
+        decoder.reset();
+        PooledBuffer frame = decoder.next(ByteBuffer.wrap(stream(bytes(8, 9))));
+        assertArrayEquals(bytes(8, 9), frame.toByteArray());
+        frame.release();
+    }
+
+    @Test
+    public void blockingWriteAndReadRoundTrip() throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        StreamFraming.write(out, bytes(2000, 4));
+        StreamFraming.write(out, bytes(10, 5));
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(buffer.toByteArray()));
+        PooledBuffer first = StreamFraming.read(in, 4096);
+        PooledBuffer second = StreamFraming.read(in, 4096);
+        assertArrayEquals(bytes(2000, 4), first.toByteArray());
+        assertArrayEquals(bytes(10, 5), second.toByteArray());
+        first.release();
+        second.release();
+    }
+
+    @Test
+    public void encodedFramesMatchTheBlockingFormat() throws IOException {
+        byte[] packet = bytes(77, 6);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        StreamFraming.write(new DataOutputStream(buffer), packet);
+        assertArrayEquals(buffer.toByteArray(), stream(packet));
+    }
+
+    private static void assertRejected(int length) {
+        StreamFraming.Decoder decoder = new StreamFraming.Decoder(1024);
+        try {
+            decoder.next(ByteBuffer.wrap(ByteBuffer.allocate(8).putInt(length).array()));
+            fail("Accepted frame length " + length);
+        } catch (IOException expected) {
+            // Link is closed before anything is allocated
+        }
+    }
+}
@@ -0,0 +1,358 @@
+package com.example.disastercomm.relay;
+
+import com.example.disastercomm.network.MeshLog;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Store-and-forward buffer of relayed packets on disk, as an append-only
+ * log split into segments. Every packet gets a sequence number, so a link
+ * that comes back only needs the packets after the last one it was sent.
+ * Old packets go a whole segment at a time (retention age or total size);
+ * nothing is ever rewritten.
+ *
+ * Record: int length, long seq, long storedAt, long idHigh, long idLow, packet bytes.
+ *
+ * All file access happens on one writer thread: appends are batched and
+ * flushed when the queue runs dry, and replays are queued behind them, so
+ * a replay always sees every packet appended before it.
+ */
+public class FileMessageStore {
+    private static final String TAG = "FileMessageStore";
+    private static final String PREFIX = "segment-";
+    private static final String SUFFIX = ".log";
+    private static final int RECORD_HEADER = 4 + 8 * 4;
+    private static final int MAX_PACKET = 1024 * 1024; // Anything larger is a corrupt length
+    private static final long SEGMENT_BYTES = 64L * 1024 * 1024;
+    private static final long SWEEP_INTERVAL_MS = 60 * 1000;
+
+    public interface RecordHandler {
+        void onRecord(long seq, UUID id, byte[] packet);
+    }
+
+    private static class Segment {
+        final File file;
+        final long firstSeq;
+        long lastSeq;
+        long newestAt;
+        long bytes;
+
+        Segment(File file, long firstSeq) {
+            this.file = file;
+            this.firstSeq = firstSeq;
+            this.lastSeq = firstSeq - 1;
+        }
+    }
+
+    private final File dir;
+    private final long retentionMs;
+    private final long maxBytes;
+    private final List<Segment> segments = new ArrayList<>(); // Writer thread only, oldest first
+    private final BlockingQueue<Runnable> tasks = new LinkedBlockingQueue<>();
+    private final AtomicLong nextSeq = new AtomicLong(1);
+    private Thread writerThread;
+    private volatile boolean running;
+    private DataOutputStream out;
+    private Segment active;
+    private long lastSweep;
+
+    // Stats
+    private volatile long storedBytes;
+    private volatile int segmentCount;
+    private final AtomicLong appended = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+    private final AtomicLong writeErrors = new AtomicLong();
+
+    public FileMessageStore(File dir, long retentionMs, long maxBytes) {
+        this.dir = dir;
+        this.retentionMs = retentionMs;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Load existing segments, reporting the id of every packet still within
+     * retention (to seed the relay's duplicate filter), then start the writer
+     */
+    public synchronized void open(RecordHandler existing) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        File[] files = dir.listFiles((d, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX));
+        if (files != null) {
+            Arrays.sort(files, (a, b) -> Long.compare(segmentSeq(a), segmentSeq(b)));
+            long cutoff = System.currentTimeMillis() - retentionMs;
+            for (File file : files) {
+                Segment segment = load(file, cutoff, existing);
+                if (segment != null) {
+                    segments.add(segment);
+                    nextSeq.set(Math.max(nextSeq.get(), segment.lastSeq + 1));
+                }
+            }
+        }
+        sweep(System.currentTimeMillis());
+        roll();
+        running = true;
+        writerThread = new Thread(this::writerLoop, "RelayStore");
+        writerThread.start();
+        MeshLog.i(TAG, "💾 Store at " + dir + ": " + segments.size() + " segments, next seq " + nextSeq.get());
+    }
+
+    public void close() {
+        running = false;
+        tasks.add(() -> {
+        });
+        if (writerThread != null) {
+            try {
+                writerThread.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Queue a packet for disk; returns its sequence number right away
+     */
+    public synchronized long append(UUID id, byte[] packet) { // Seq order == write order
+        long seq = nextSeq.getAndIncrement();
+        long storedAt = System.currentTimeMillis();
+        tasks.add(() -> write(seq, storedAt, id, packet));
+        return seq;
+    }
+
+    /**
+     * Highest sequence number handed out so far
+     */
+    public long lastSeq() {
+        return nextSeq.get() - 1;
+    }
+
+    /**
+     * Stream every retained packet with seq > afterSeq to handler, on the
+     * writer thread. A handler that throws stops the replay.
+     */
+    public void replay(long afterSeq, RecordHandler handler) {
+        tasks.add(() -> {
+            try {
+                out.flush();
+                long cutoff = System.currentTimeMillis() - retentionMs;
+                for (Segment segment : new ArrayList<>(segments)) {
+                    if (segment.lastSeq > afterSeq && segment.newestAt >= cutoff) {
+                        readSegment(segment.file, afterSeq, cutoff, handler);
+                    }
+                }
+            } catch (IOException e) {
+                MeshLog.e(TAG, "Replay failed", e);
+            } catch (RuntimeException e) {
+                // Handler gave up (link went away)
+            }
+        });
+    }
+
+    private void writerLoop() {
+        List<Runnable> batch = new ArrayList<>();
+        while (running || !tasks.isEmpty()) {
+            try {
+                Runnable first = tasks.poll(SWEEP_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    tasks.drainTo(batch, 1024);
+                    for (Runnable task : batch) {
+                        task.run();
+                    }
+                    batch.clear();
+                }
+                if (tasks.isEmpty()) {
+                    out.flush();
+                }
+                long now = System.currentTimeMillis();
+                if (now - lastSweep > SWEEP_INTERVAL_MS) {
+                    sweep(now);
+                }
+            } catch (InterruptedException e) {
+                break;
+            } catch (IOException e) {
+                writeErrors.incrementAndGet();
+                MeshLog.e(TAG, "Store write failed", e);
+            }
+        }
+        try {
+            out.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void write(long seq, long storedAt, UUID id, byte[] packet) {
+        try {
+            if (active.bytes >= SEGMENT_BYTES) {
+                roll();
+            }
+            out.writeInt(packet.length);
+            out.writeLong(seq);
+            out.writeLong(storedAt);
+            out.writeLong(id.getMostSignificantBits());
+            out.writeLong(id.getLeastSignificantBits());
+            out.write(packet);
+            active.lastSeq = seq;
+            active.newestAt = storedAt;
+            active.bytes += RECORD_HEADER + packet.length;
+            storedBytes += RECORD_HEADER + packet.length;
+            appended.incrementAndGet();
+        } catch (IOException e) {
+            writeErrors.incrementAndGet();
+            MeshLog.e(TAG, "Append of seq " + seq + " failed", e);
+        }
+    }
+
+    private void roll() throws IOException {
+        if (out != null) {
+            out.close();
+        }
+        long first = nextSeq.get();
+        active = new Segment(new File(dir, PREFIX + first + SUFFIX), first);
+        active.newestAt = System.currentTimeMillis();
+        segments.add(active);
+        segmentCount = segments.size();
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(active.file, true), 64 * 1024));
+    }
+
+    /**
+     * Drop whole segments past retention, then the oldest until under maxBytes
+     */
+    private void sweep(long now) {
+        lastSweep = now;
+        long cutoff = now - retentionMs;
+        long total = 0;
+        for (Segment segment : segments) {
+            total += segment.bytes;
+        }
+        while (!segments.isEmpty() && segments.get(0) != active
+                && (segments.get(0).newestAt < cutoff || total > maxBytes)) {
+            Segment oldest = segments.remove(0);
+            total -= oldest.bytes;
+            if (!oldest.file.delete()) {
+                MeshLog.w(TAG, "Could not delete " + oldest.file);
+            }
+        }
+        storedBytes = total;
+        segmentCount = segments.size();
+    }
+
+    /**
+     * Scan a segment for its bounds; a torn record at the tail (crash mid
+     * write) is cut off so appends continue from the last good one
+     */
+    private Segment load(File file, long cutoff, RecordHandler existing) throws IOException {
+        Segment segment = new Segment(file, segmentSeq(file));
+        long good = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                int length = in.readInt();
+                if (length < 0 || length > MAX_PACKET) {
+                    break;
+                }
+                long seq = in.readLong();
+                long storedAt = in.readLong();
+                UUID id = new UUID(in.readLong(), in.readLong());
+                byte[] packet = new byte[length];
+                in.readFully(packet);
+                good += RECORD_HEADER + length;
+                segment.lastSeq = seq;
+                segment.newestAt = storedAt;
+                if (storedAt >= cutoff && existing != null) {
+                    existing.onRecord(seq, id, packet);
+                }
+            }
+        } catch (EOFException e) {
+            // End of segment, or a torn last record
+        }
+        if (good < file.length()) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(good);
+            }
+            MeshLog.w(TAG, "Truncated torn tail of " + file.getName() + " at " + good);
+        }
+        if (good == 0) {
+            file.delete();
+            return null;
+        }
+        segment.bytes = good;
+        return segment;
+    }
+
+    private void readSegment(File file, long afterSeq, long cutoff, RecordHandler handler) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                int length = in.readInt();
+                if (length < 0 || length > MAX_PACKET) {
+                    return;
+                }
+                long seq = in.readLong();
+                long storedAt = in.readLong();
+                long idHigh = in.readLong();
+                long idLow = in.readLong();
+                if (seq <= afterSeq || storedAt < cutoff) {
+                    in.skipBytes(length);
+                    continue;
+                }
+                byte[] packet = new byte[length];
+                in.readFully(packet);
+                replayed.incrementAndGet();
+                handler.onRecord(seq, new UUID(idHigh, idLow), packet);
+            }
+        } catch (EOFException e) {
+            // Reached the end (or the part still in the write buffer of a later segment)
+        }
+    }
+
+    private static long segmentSeq(File file) {
+        String name = file.getName();
+        try {
+            return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    public long getStoredBytes() {
+        return storedBytes;
+    }
+
+    public int getSegmentCount() {
+        return segmentCount;
+    }
+
+    public long getAppended() {
+        return appended.get();
+    }
+
+    public long getReplayed() {
+        return replayed.get();
+    }
+
+    public long getWriteErrors() {
+        return writeErrors.get();
+    }
+
+    public String getStatsSummary() {
+        return String.format("Store: %d segments, %d KB, seq %d, %d appended, %d replayed, %d write errors",
+                segmentCount, storedBytes / 1024, lastSeq(), appended.get(), replayed.get(), writeErrors.get());
+    }
+}
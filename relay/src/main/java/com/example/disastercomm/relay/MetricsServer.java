@@ -0,0 +1,93 @@
+package com.example.disastercomm.relay;
+
+import com.example.disastercomm.network.BufferPool;
+import com.example.disastercomm.network.LanTransport;
+import com.example.disastercomm.network.TransportRegistry;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.Executors;
+
+/**
+ * HTTP endpoint for watching a relay from a laptop or a Prometheus scraper:
+ * /metrics in the Prometheus text format, /status as the same human
+ * readable summaries the app puts in its health report.
+ */
+public class MetricsServer {
+    private final RelayNode relay;
+    private final LanTransport lan;
+    private final TransportRegistry registry;
+    private final FileMessageStore store;
+    private final long startedAt = System.currentTimeMillis();
+    private HttpServer server;
+
+    public MetricsServer(RelayNode relay, LanTransport lan, TransportRegistry registry, FileMessageStore store) {
+        this.relay = relay;
+        this.lan = lan;
+        this.registry = registry;
+        this.store = store;
+    }
+
+    public void start(InetSocketAddress address) throws IOException {
+        server = HttpServer.create(address, 0);
+        server.createContext("/metrics", exchange -> respond(exchange, "text/plain; version=0.0.4", metrics()));
+        server.createContext("/status", exchange -> respond(exchange, "text/plain", status()));
+        server.setExecutor(Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "RelayMetrics");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        server.start();
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    private String metrics() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Long> counter : relay.getCounters().entrySet()) {
+            counter(sb, "relay_" + counter.getKey() + "_total", counter.getValue());
+        }
+        gauge(sb, "relay_links", lan.getLinkCount());
+        gauge(sb, "relay_store_bytes", store.getStoredBytes());
+        gauge(sb, "relay_store_segments", store.getSegmentCount());
+        gauge(sb, "relay_store_last_seq", store.lastSeq());
+        counter(sb, "relay_store_appended_total", store.getAppended());
+        counter(sb, "relay_store_write_errors_total", store.getWriteErrors());
+        gauge(sb, "relay_uptime_seconds", (System.currentTimeMillis() - startedAt) / 1000);
+        return sb.toString();
+    }
+
+    private String status() {
+        return relay.getStatsSummary() + "\n"
+                + store.getStatsSummary() + "\n"
+                + lan.getStatsSummary() + "\n"
+                + registry.getStatsSummary() + "\n"
+                + BufferPool.shared().getStatsSummary() + "\n";
+    }
+
+    private static void counter(StringBuilder sb, String name, long value) {
+        sb.append("# TYPE ").append(name).append(" counter\n").append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void gauge(StringBuilder sb, String name, long value) {
+        sb.append("# TYPE ").append(name).append(" gauge\n").append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void respond(HttpExchange exchange, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=utf-8");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.example.disastercomm.relay;
+
+import com.example.disastercomm.network.LanTransport;
+import com.example.disastercomm.network.MeshLog;
+import com.example.disastercomm.network.TransportRegistry;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Headless relay for a Raspberry Pi or laptop at a command post. Phones on
+ * the same hotspot / access point find it through LAN discovery; relays in
+ * other segments are reached with --peer.
+ *
+ * Usage: relay [--dir relay-data] [--name Relay] [--port 47478]
+ *              [--metrics 9464] [--peer host:port]... [--interface eth0]...
+ *              [--retention-hours 24] [--max-store-mb 1024] [--verbose]
+ */
+public class RelayMain {
+    private static final String TAG = "RelayMain";
+    private static final long STATUS_INTERVAL_S = 60;
+
+    public static void main(String[] args) throws Exception {
+        File dir = new File("relay-data");
+        String name = null;
+        int port = 47478;
+        int metricsPort = 9464;
+        long retentionHours = 24;
+        long maxStoreMb = 1024;
+        List<InetSocketAddress> peers = new ArrayList<>();
+        List<NetworkInterface> interfaces = new ArrayList<>();
+        boolean verbose = false;
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if ("--verbose".equals(arg)) {
+                verbose = true;
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                usage("Missing value for " + arg);
+            }
+            String value = args[++i];
+            switch (arg) {
+                case "--dir":
+                    dir = new File(value);
+                    break;
+                case "--name":
+                    name = value;
+                    break;
+                case "--port":
+                    port = Integer.parseInt(value);
+                    break;
+                case "--metrics":
+                    metricsPort = Integer.parseInt(value);
+                    break;
+                case "--peer":
+                    int colon = value.lastIndexOf(':');
+                    if (colon <= 0) {
+                        usage("Peer must be host:port, got " + value);
+                    }
+                    peers.add(new InetSocketAddress(value.substring(0, colon),
+                            Integer.parseInt(value.substring(colon + 1))));
+                    break;
+                case "--interface":
+                    NetworkInterface ni = NetworkInterface.getByName(value);
+                    if (ni == null) {
+                        usage("No interface " + value);
+                    }
+                    interfaces.add(ni);
+                    break;
+                case "--retention-hours":
+                    retentionHours = Long.parseLong(value);
+                    break;
+                case "--max-store-mb":
+                    maxStoreMb = Long.parseLong(value);
+                    break;
+                default:
+                    usage("Unknown option " + arg);
+            }
+        }
+        // Per-packet debug lines would swamp a busy relay
+        MeshLog.setMinLevel(verbose ? MeshLog.DEBUG : MeshLog.INFO);
+
+        String deviceId = loadDeviceId(dir);
+        if (name == null) {
+            name = "Relay-" + InetAddress.getLocalHost().getHostName();
+        }
+
+        FileMessageStore store = new FileMessageStore(dir, TimeUnit.HOURS.toMillis(retentionHours),
+                maxStoreMb * 1024 * 1024);
+        TransportRegistry registry = new TransportRegistry();
+        RelayNode relay = new RelayNode(registry, store);
+        store.open((seq, id, packet) -> relay.preload(id));
+        registry.setListener(relay);
+
+        LanTransport lan = new LanTransport(deviceId, name);
+        lan.setTcpPort(port);
+        if (!interfaces.isEmpty()) {
+            lan.setInterfaces(interfaces);
+        }
+        for (InetSocketAddress peer : peers) {
+            lan.addStaticPeer(peer);
+        }
+        registry.register(lan);
+        lan.start();
+
+        MetricsServer metrics = null;
+        if (metricsPort > 0) {
+            metrics = new MetricsServer(relay, lan, registry, store);
+            metrics.start(new InetSocketAddress(metricsPort));
+        }
+        MeshLog.i(TAG, "📡 " + name + " (" + deviceId.substring(0, 8) + ") relaying on port " + lan.getLocalPort()
+                + (metrics != null ? ", metrics on " + metricsPort : ""));
+
+        ScheduledExecutorService status = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "RelayStatus");
+            thread.setDaemon(true);
+            return thread;
+        });
+        status.scheduleAtFixedRate(() -> MeshLog.i(TAG, relay.getStatsSummary() + "\n" + lan.getStatsSummary()),
+                STATUS_INTERVAL_S, STATUS_INTERVAL_S, TimeUnit.SECONDS);
+
+        CountDownLatch stopped = new CountDownLatch(1);
+        MetricsServer metricsServer = metrics;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            MeshLog.i(TAG, "Stopping relay");
+            status.shutdownNow();
+            lan.stop();
+            if (metricsServer != null) {
+                metricsServer.stop();
+            }
+            store.close();
+            stopped.countDown();
+        }, "RelayShutdown"));
+        stopped.await();
+    }
+
+    /**
+     * Stable identity across restarts, so phones keep one link id for the relay
+     */
+    private static String loadDeviceId(File dir) throws IOException {
+        File file = new File(dir, "device-id");
+        if (file.isFile()) {
+            String id = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim();
+            if (!id.isEmpty()) {
+                return id;
+            }
+        }
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        String id = UUID.randomUUID().toString();
+        Files.write(file.toPath(), id.getBytes(StandardCharsets.UTF_8));
+        return id;
+    }
+
+    private static void usage(String problem) {
+        System.err.println(problem);
+        System.err.println("Usage: relay [--dir relay-data] [--name Relay] [--port 47478] [--metrics 9464]\n"
+                + "             [--peer host:port]... [--interface eth0]...\n"
+                + "             [--retention-hours 24] [--max-store-mb 1024] [--verbose]");
+        System.exit(2);
+    }
+}
@@ -0,0 +1,291 @@
+package com.example.disastercomm.relay;
+
+import com.example.disastercomm.models.Message;
+import com.example.disastercomm.network.InboundRateLimiter;
+import com.example.disastercomm.network.JsonPacketScanner;
+import com.example.disastercomm.network.MeshLog;
+import com.example.disastercomm.network.PacketHeader;
+import com.example.disastercomm.network.PooledBuffer;
+import com.example.disastercomm.network.Transport;
+import com.example.disastercomm.network.TransportRegistry;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Carries mesh traffic between all links of the relay without decoding
+ * message bodies, like the opaque relay path in PacketHandler: framed
+ * packets are judged by their PacketHeader, plain JSON ones by
+ * JsonPacketScanner, and either way only id, type and ttl are looked at.
+ *
+ * End-to-end traffic is deduplicated, sent on with ttl-1 and kept in the
+ * FileMessageStore; a link that comes (back) up is sent what it missed.
+ * One-hop traffic (heartbeats, sync, DTN hand-over, content, route
+ * discovery) stays put. The relay sends no heartbeats, so phones treat it
+ * as an unidentified link: every flood goes through it, but no route
+ * names it as a next hop.
+ *
+ * Packets carrying link fields (linkSeq/linkAck/linkSack/linkBase) are
+ * dropped. Phones only add them on reliable unicast to a neighbor that
+ * identified itself by heartbeat, which the relay never does, and a relay
+ * cannot ack for the real next hop anyway. Private chat still crosses a
+ * relay: a phone with no neighbor route to the receiver floods it (and
+ * hands it to DTN), and those copies carry no link fields. Anything that
+ * does arrive with them is counted as link_state.
+ */
+public class RelayNode implements Transport.Listener {
+    private static final String TAG = "RelayNode";
+    private static final int SEEN_CAPACITY = 200_000;
+    private static final long MAX_REPLAY = 5000; // Newest packets a link is sent on (re)connect
+    private static final int LINK_BUDGET_SCALE = 50; // A relay link may be another relay carrying a whole site
+
+    private static final class Forward {
+        final UUID id;
+        final byte[] packet;
+
+        Forward(UUID id, byte[] packet) {
+            this.id = id;
+            this.packet = packet;
+        }
+    }
+
+    private final TransportRegistry registry;
+    private final FileMessageStore store;
+    private final InboundRateLimiter rateLimiter = new InboundRateLimiter();
+    private final PacketHeader header = new PacketHeader(); // Guarded by seen
+    private final Map<UUID, Boolean> seen = new LinkedHashMap<UUID, Boolean>(1024, 0.75f, false) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<UUID, Boolean> eldest) {
+            return size() > SEEN_CAPACITY;
+        }
+    };
+    private final Map<String, Long> sentUpTo = new ConcurrentHashMap<>(); // linkId -> last store seq it has
+
+    // Stats
+    private final AtomicLong packetsIn = new AtomicLong();
+    private final AtomicLong relayed = new AtomicLong();
+    private final AtomicLong copiesOut = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong oneHop = new AtomicLong();
+    private final AtomicLong linkState = new AtomicLong();
+    private final AtomicLong ttlExpired = new AtomicLong();
+    private final AtomicLong rateLimited = new AtomicLong();
+    private final AtomicLong unknownFormat = new AtomicLong();
+    private final AtomicLong replaySent = new AtomicLong();
+    private final AtomicLong replayDropped = new AtomicLong();
+
+    public RelayNode(TransportRegistry registry, FileMessageStore store) {
+        this.registry = registry;
+        this.store = store;
+        // Originator budgets still hold every phone to its share
+        InboundRateLimiter.Config config = new InboundRateLimiter.Config();
+        config.transportScale.put("lan", (double) LINK_BUDGET_SCALE);
+        rateLimiter.setConfig(config);
+    }
+
+    /**
+     * Remember a stored packet as seen, so a restart does not relay it twice
+     */
+    public void preload(UUID id) {
+        synchronized (seen) {
+            seen.put(id, Boolean.TRUE);
+        }
+    }
+
+    @Override
+    public void onLinkUp(Transport transport, String linkId, String name) {
+        MeshLog.i(TAG, "🔗 " + name + " joined over " + transport.getName());
+        long upTo = store.lastSeq();
+        Long known = sentUpTo.get(linkId);
+        long after = Math.max(known != null ? known : 0, upTo - MAX_REPLAY);
+        sentUpTo.put(linkId, upTo);
+        if (after >= upTo) {
+            return;
+        }
+        // Anything newer than upTo reaches the link live, so the replay stops there
+        store.replay(after, (seq, id, packet) -> {
+            if (seq > upTo || !transport.hasLink(linkId)) {
+                throw new IllegalStateException("replay done");
+            }
+            if (registry.send(transport, linkId, packet)) {
+                replaySent.incrementAndGet();
+            } else {
+                replayDropped.incrementAndGet(); // Link queue full; the phones' own sync fills the gap
+            }
+        });
+    }
+
+    @Override
+    public void onLinkDown(Transport transport, String linkId) {
+        // Everything stored so far was sent to it live (or queued) while it was up
+        sentUpTo.put(linkId, store.lastSeq());
+        rateLimiter.onLinkLost(linkId);
+        MeshLog.i(TAG, "⛓️ " + linkId + " left");
+    }
+
+    @Override
+    public void onReceive(Transport transport, String linkId, PooledBuffer data) {
+        try {
+            packetsIn.incrementAndGet();
+            Forward forward = relayCopy(transport, linkId, data);
+            if (forward == null) {
+                return;
+            }
+            for (String link : registry.getLinks()) {
+                if (!link.equals(linkId) && registry.send(link, forward.packet)) {
+                    copiesOut.incrementAndGet();
+                }
+            }
+            store.append(forward.id, forward.packet);
+            relayed.incrementAndGet();
+        } finally {
+            data.release();
+        }
+    }
+
+    /**
+     * The packet as it goes on (ttl-1, hopCount+1), or null if it stops here
+     */
+    private Forward relayCopy(Transport transport, String linkId, PooledBuffer data) {
+        byte[] bytes = data.array();
+        int length = data.length();
+        UUID id;
+        Message.Type type;
+        int ttl;
+        int hopCount;
+        String senderId = null;
+        boolean framed = PacketHeader.isFramed(bytes, length);
+        synchronized (seen) {
+            if (framed) {
+                if (!header.read(bytes, length)) {
+                    unknownFormat.incrementAndGet();
+                    return null;
+                }
+                if (header.has(PacketHeader.FLAG_LINK_FIELDS)) {
+                    linkState.incrementAndGet(); // Hop-by-hop reliable unicast, see class doc
+                    return null;
+                }
+                id = new UUID(header.idHigh, header.idLow);
+                type = header.type();
+                ttl = header.ttl;
+                hopCount = header.hopCount;
+            } else if (length > 0 && bytes[0] == '{') {
+                String messageId = JsonPacketScanner.readString(bytes, length, JsonPacketScanner.FIELD_ID);
+                type = typeOf(JsonPacketScanner.readString(bytes, length, JsonPacketScanner.FIELD_TYPE));
+                if (messageId == null || type == null) {
+                    unknownFormat.incrementAndGet();
+                    return null;
+                }
+                if (JsonPacketScanner.readLong(bytes, length, JsonPacketScanner.FIELD_LINK_SEQ, 0) > 0
+                        || JsonPacketScanner.readLong(bytes, length, JsonPacketScanner.FIELD_LINK_ACK, 0) > 0
+                        || JsonPacketScanner.hasValue(bytes, length, JsonPacketScanner.FIELD_LINK_SACK)
+                        || JsonPacketScanner.readLong(bytes, length, JsonPacketScanner.FIELD_LINK_BASE, 0) > 0) {
+                    linkState.incrementAndGet();
+                    return null;
+                }
+                id = PacketHeader.idFor(messageId);
+                ttl = (int) JsonPacketScanner.readLong(bytes, length, JsonPacketScanner.FIELD_TTL, 0);
+                hopCount = (int) JsonPacketScanner.readLong(bytes, length, JsonPacketScanner.FIELD_HOP_COUNT, -1);
+                senderId = JsonPacketScanner.readString(bytes, length, JsonPacketScanner.FIELD_SENDER_ID);
+            } else {
+                unknownFormat.incrementAndGet(); // Compressed packets only go to links that advertise it
+                return null;
+            }
+            if (type == null || !isEndToEnd(type)) {
+                oneHop.incrementAndGet();
+                return null;
+            }
+            if (seen.containsKey(id)) {
+                duplicates.incrementAndGet();
+                return null;
+            }
+        }
+        // Only a forwarded copy marks the id seen, so a later copy with ttl left still gets through
+        if (ttl <= 0) {
+            ttlExpired.incrementAndGet();
+            return null;
+        }
+        if (rateLimiter.admit(linkId, transport.getName(), senderId, type) != InboundRateLimiter.Decision.ACCEPT) {
+            rateLimited.incrementAndGet();
+            return null;
+        }
+        synchronized (seen) {
+            if (seen.put(id, Boolean.TRUE) != null) {
+                duplicates.incrementAndGet(); // Another link forwarded it meanwhile
+                return null;
+            }
+        }
+
+        byte[] copy = data.toByteArray();
+        if (framed) {
+            PacketHeader.patchForRelay(copy, ttl - 1, hopCount + 1);
+        } else {
+            JsonPacketScanner.patchLong(copy, length, JsonPacketScanner.FIELD_TTL, ttl - 1);
+            if (hopCount >= 0) {
+                // Advisory only; left as is if the new count needs another digit
+                JsonPacketScanner.patchLong(copy, length, JsonPacketScanner.FIELD_HOP_COUNT, hopCount + 1);
+            }
+        }
+        return new Forward(id, copy);
+    }
+
+    // Traffic addressed end to end; everything else is one hop or rebuilt at every hop
+    private static boolean isEndToEnd(Message.Type type) {
+        switch (type) {
+            case TEXT:
+            case SOS:
+            case GOVT_ALERT:
+            case LOCATION_UPDATE:
+            case DELIVERY_RECEIPT:
+            case READ_RECEIPT:
+            case KEY_EXCHANGE:
+            case GROUP_KEY:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static Message.Type typeOf(String name) {
+        if (name == null) {
+            return null;
+        }
+        try {
+            return Message.Type.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    public long getPacketsIn() {
+        return packetsIn.get();
+    }
+
+    /**
+     * Counters for the metrics endpoint, name -> value
+     */
+    public Map<String, Long> getCounters() {
+        Map<String, Long> counters = new LinkedHashMap<>();
+        counters.put("packets_in", packetsIn.get());
+        counters.put("relayed", relayed.get());
+        counters.put("copies_out", copiesOut.get());
+        counters.put("duplicates", duplicates.get());
+        counters.put("one_hop", oneHop.get());
+        counters.put("link_state", linkState.get());
+        counters.put("ttl_expired", ttlExpired.get());
+        counters.put("rate_limited", rateLimited.get());
+        counters.put("unknown_format", unknownFormat.get());
+        counters.put("replay_sent", replaySent.get());
+        counters.put("replay_dropped", replayDropped.get());
+        return counters;
+    }
+
+    public String getStatsSummary() {
+        return String.format("Relay: %d in, %d relayed (%d copies), %d duplicates, %d one-hop, %d link-state, %d ttl expired, %d rate limited, %d unknown, replay %d sent/%d dropped",
+                packetsIn.get(), relayed.get(), copiesOut.get(), duplicates.get(), oneHop.get(), linkState.get(), ttlExpired.get(),
+                rateLimited.get(), unknownFormat.get(), replaySent.get(), replayDropped.get());
+    }
+}
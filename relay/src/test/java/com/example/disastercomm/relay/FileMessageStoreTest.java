@@ -0,0 +1,157 @@
+package com.example.disastercomm.relay;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class FileMessageStoreTest {
+    private static final long RETENTION_MS = TimeUnit.HOURS.toMillis(1);
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private FileMessageStore store;
+
+    private static final class Record {
+        final long seq;
+        final UUID id;
+        final byte[] packet;
+
+        Record(long seq, UUID id, byte[] packet) {
+            this.seq = seq;
+            this.id = id;
+            this.packet = packet;
+        }
+    }
+
+    @After
+    public void tearDown() {
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    private FileMessageStore open(List<Record> existing) throws IOException {
+        FileMessageStore opened = new FileMessageStore(folder.getRoot(), RETENTION_MS, Long.MAX_VALUE);
+        opened.open((seq, id, packet) -> existing.add(new Record(seq, id, packet)));
+        return opened;
+    }
+
+    private static byte[] packet(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Replays run on the writer thread in queue order: once a replay of the newest record
+    // reaches its handler, every replay queued before it has finished
+    private static List<Record> replay(FileMessageStore store, long afterSeq) throws InterruptedException {
+        List<Record> records = new CopyOnWriteArrayList<>();
+        store.replay(afterSeq, (seq, id, packet) -> records.add(new Record(seq, id, packet)));
+        CountDownLatch done = new CountDownLatch(1);
+        store.replay(store.lastSeq() - 1, (seq, id, packet) -> done.countDown());
+        assertTrue("Replay timed out", done.await(5, TimeUnit.SECONDS));
+        return records;
+    }
+
+    @Test
+    public void appendsGetIncreasingSeqsAndReplayInOrder() throws Exception {
+        store = open(new CopyOnWriteArrayList<>());
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        assertEquals(1, store.append(first, packet("one")));
+        assertEquals(2, store.append(second, packet("two")));
+        assertEquals(2, store.lastSeq());
+
+        List<Record> records = replay(store, 0);
+        assertEquals(2, records.size());
+        assertEquals(1, records.get(0).seq);
+        assertEquals(first, records.get(0).id);
+        assertArrayEquals(packet("one"), records.get(0).packet);
+        assertEquals(second, records.get(1).id);
+    }
+
+    @Test
+    public void replayStartsAfterTheGivenSeq() throws Exception {
+        store = open(new CopyOnWriteArrayList<>());
+        for (int i = 0; i < 5; i++) {
+            store.append(UUID.randomUUID(), packet("p" + i));
+        }
+        List<Record> records = replay(store, 3);
+        assertEquals(2, records.size());
+        assertEquals(4, records.get(0).seq);
+        assertArrayEquals(packet("p4"), records.get(1).packet);
+    }
+
+    @Test
+    public void reopenReportsStoredPacketsAndContinuesTheSeq() throws Exception {
+        store = open(new CopyOnWriteArrayList<>());
+        UUID id = UUID.randomUUID();
+        store.append(id, packet("kept"));
+        store.close();
+
+        List<Record> existing = new CopyOnWriteArrayList<>();
+        store = open(existing);
+        assertEquals(1, existing.size());
+        assertEquals(id, existing.get(0).id);
+        assertEquals(2, store.append(UUID.randomUUID(), packet("next")));
+        assertEquals(2, replay(store, 0).size());
+    }
+
+    @Test
+    public void tornTailIsCutOffOnOpen() throws Exception {
+        store = open(new CopyOnWriteArrayList<>());
+        store.append(UUID.randomUUID(), packet("one"));
+        store.append(UUID.randomUUID(), packet("two"));
+        store.close();
+
+        // Crash mid-write: a record header promising more bytes than made it to disk
+        File[] segments = folder.getRoot().listFiles((d, name) -> name.endsWith(".log"));
+        assertEquals(1, segments.length);
+        long goodLength = segments[0].length();
+        try (FileOutputStream out = new FileOutputStream(segments[0], true)) {
+            out.write(new byte[] {0, 0, 0, 50, 0, 0, 0});
+        }
+
+        List<Record> existing = new CopyOnWriteArrayList<>();
+        store = open(existing);
+        assertEquals(2, existing.size());
+        assertEquals(goodLength, segments[0].length());
+        assertEquals(3, store.append(UUID.randomUUID(), packet("three")));
+
+        List<Record> records = replay(store, 0);
+        assertEquals(3, records.size());
+        assertArrayEquals(packet("two"), records.get(1).packet);
+        assertArrayEquals(packet("three"), records.get(2).packet);
+    }
+
+    @Test
+    public void handlerThatThrowsStopsTheReplay() throws Exception {
+        store = open(new CopyOnWriteArrayList<>());
+        for (int i = 0; i < 5; i++) {
+            store.append(UUID.randomUUID(), packet("p" + i));
+        }
+        List<Record> records = new CopyOnWriteArrayList<>();
+        store.replay(0, (seq, id, packet) -> {
+            records.add(new Record(seq, id, packet));
+            if (seq == 2) {
+                throw new IllegalStateException("link gone");
+            }
+        });
+        replay(store, 0); // Waits for the writer thread to get past it
+        assertEquals(2, records.size());
+    }
+}
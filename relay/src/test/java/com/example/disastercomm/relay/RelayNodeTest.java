@@ -0,0 +1,239 @@
+package com.example.disastercomm.relay;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.example.disastercomm.models.Message;
+import com.example.disastercomm.network.JsonPacketScanner;
+import com.example.disastercomm.network.LoopbackTransport;
+import com.example.disastercomm.network.PacketHeader;
+import com.example.disastercomm.network.PooledBuffer;
+import com.example.disastercomm.network.Transport;
+import com.example.disastercomm.network.TransportRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A relay between two phones, all on LoopbackTransports
+ */
+public class RelayNodeTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private static class Phone implements Transport.Listener {
+        final LoopbackTransport transport;
+        final List<byte[]> received = new CopyOnWriteArrayList<>();
+
+        Phone(String name) {
+            transport = new LoopbackTransport(name);
+            transport.setTransportListener(this);
+        }
+
+        @Override
+        public void onLinkUp(Transport transport, String linkId, String name) {
+        }
+
+        @Override
+        public void onLinkDown(Transport transport, String linkId) {
+        }
+
+        @Override
+        public void onReceive(Transport transport, String linkId, PooledBuffer data) {
+            received.add(data.toByteArray());
+            data.release();
+        }
+
+        void send(byte[] packet) {
+            transport.broadcast(packet, null);
+        }
+
+        boolean hasReceived(String id) {
+            for (byte[] packet : received) {
+                if (id.equals(idOf(packet))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private FileMessageStore store;
+    private RelayNode relay;
+    private LoopbackTransport relayTransport;
+    private Phone alice;
+    private Phone bob;
+
+    @Before
+    public void setUp() throws Exception {
+        store = new FileMessageStore(folder.getRoot(), TimeUnit.HOURS.toMillis(1), Long.MAX_VALUE);
+        TransportRegistry registry = new TransportRegistry();
+        relay = new RelayNode(registry, store);
+        store.open((seq, id, packet) -> relay.preload(id));
+        registry.setListener(relay);
+        relayTransport = new LoopbackTransport("relay");
+        registry.register(relayTransport);
+        alice = new Phone("alice");
+        bob = new Phone("bob");
+        relayTransport.connect(alice.transport);
+        relayTransport.connect(bob.transport);
+    }
+
+    @After
+    public void tearDown() {
+        relayTransport.close();
+        alice.transport.close();
+        bob.transport.close();
+        store.close();
+    }
+
+    private static byte[] json(String id, String type, int ttl, String extra) {
+        return ("{\"id\":\"" + id + "\",\"senderId\":\"alice\",\"type\":\"" + type + "\",\"ttl\":" + ttl
+                + ",\"hopCount\":0" + extra + "}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String idOf(byte[] packet) {
+        if (PacketHeader.isFramed(packet, packet.length)) {
+            PacketHeader header = new PacketHeader();
+            header.read(packet, packet.length);
+            return header.messageId();
+        }
+        return JsonPacketScanner.readString(packet, packet.length, JsonPacketScanner.FIELD_ID);
+    }
+
+    private static String newId() {
+        return UUID.randomUUID().toString();
+    }
+
+    // Packets are handled in order, so once this reaches bob everything sent before it was judged
+    private void sendMarkerAndWait() throws InterruptedException {
+        String marker = newId();
+        alice.send(json(marker, "TEXT", 5, ""));
+        waitFor(() -> bob.hasReceived(marker));
+    }
+
+    @Test
+    public void floodIsRelayedWithTtlDecremented() throws Exception {
+        String id = newId();
+        alice.send(json(id, "TEXT", 10, ""));
+        waitFor(() -> bob.hasReceived(id));
+
+        byte[] packet = bob.received.get(0);
+        assertEquals(9, JsonPacketScanner.readLong(packet, packet.length, JsonPacketScanner.FIELD_TTL, -1));
+        assertEquals(1, JsonPacketScanner.readLong(packet, packet.length, JsonPacketScanner.FIELD_HOP_COUNT, -1));
+        assertTrue(alice.received.isEmpty()); // Never echoed back to the sender
+    }
+
+    @Test
+    public void framedPacketIsPatchedInItsHeader() throws Exception {
+        Message message = new Message();
+        message.id = newId();
+        message.type = Message.Type.SOS;
+        message.receiverId = "ALL";
+        message.ttl = 4;
+        byte[] body = {1, 2, 3, 4};
+        alice.send(PacketHeader.frame(message, body));
+        waitFor(() -> bob.hasReceived(message.id));
+
+        byte[] packet = bob.received.get(0);
+        PacketHeader header = new PacketHeader();
+        assertTrue(header.read(packet, packet.length));
+        assertEquals(3, header.ttl);
+        assertEquals(1, header.hopCount);
+        assertEquals(PacketHeader.LENGTH + body.length, packet.length);
+    }
+
+    @Test
+    public void duplicatesOneHopAndExpiredPacketsStayPut() throws Exception {
+        String id = newId();
+        alice.send(json(id, "TEXT", 5, ""));
+        alice.send(json(id, "TEXT", 5, "")); // Duplicate
+        alice.send(json(newId(), "HEARTBEAT", 5, "")); // One hop
+        alice.send(json(newId(), "TEXT", 0, "")); // Out of ttl
+        alice.send(json(newId(), "TEXT", 5, ",\"linkSeq\":3")); // Reliable unicast to a neighbor
+        alice.send(json(newId(), "TEXT", 5, ",\"linkSack\":\"4,6\""));
+        sendMarkerAndWait();
+
+        assertEquals(2, bob.received.size()); // The first copy and the marker
+        assertEquals(1, relay.getCounters().get("duplicates").longValue());
+        assertEquals(1, relay.getCounters().get("one_hop").longValue());
+        assertEquals(1, relay.getCounters().get("ttl_expired").longValue());
+        assertEquals(2, relay.getCounters().get("link_state").longValue());
+    }
+
+    @Test
+    public void expiredCopyDoesNotBlockALaterOneWithTtlLeft() throws Exception {
+        String id = newId();
+        alice.send(json(id, "TEXT", 0, ""));
+        alice.send(json(id, "TEXT", 5, ""));
+        waitFor(() -> bob.hasReceived(id));
+
+        assertEquals(1, relay.getCounters().get("ttl_expired").longValue());
+        assertEquals(0, relay.getCounters().get("duplicates").longValue());
+    }
+
+    @Test
+    public void linkThatJoinsLaterIsSentWhatItMissed() throws Exception {
+        String id = newId();
+        alice.send(json(id, "TEXT", 5, ""));
+        waitFor(() -> bob.hasReceived(id));
+
+        Phone carol = new Phone("carol");
+        try {
+            relayTransport.connect(carol.transport);
+            waitFor(() -> carol.hasReceived(id));
+            byte[] packet = carol.received.get(0);
+            assertEquals(4, JsonPacketScanner.readLong(packet, packet.length, JsonPacketScanner.FIELD_TTL, -1));
+        } finally {
+            carol.transport.close();
+        }
+    }
+
+    @Test
+    public void restartedRelayDoesNotRelayStoredPacketsAgain() throws Exception {
+        String id = newId();
+        alice.send(json(id, "TEXT", 5, ""));
+        waitFor(() -> bob.hasReceived(id));
+        store.close();
+
+        // A second relay on the same store directory
+        FileMessageStore reopened = new FileMessageStore(folder.getRoot(), TimeUnit.HOURS.toMillis(1),
+                Long.MAX_VALUE);
+        TransportRegistry registry = new TransportRegistry();
+        RelayNode restarted = new RelayNode(registry, reopened);
+        reopened.open((seq, stored, packet) -> restarted.preload(stored));
+        registry.setListener(restarted);
+        LoopbackTransport transport = new LoopbackTransport("relay2");
+        registry.register(transport);
+        Phone dave = new Phone("dave");
+        try {
+            transport.connect(dave.transport);
+            waitFor(() -> dave.hasReceived(id)); // Replayed to the new link
+            dave.send(json(id, "TEXT", 5, ""));
+            waitFor(() -> restarted.getCounters().get("duplicates") == 1);
+        } finally {
+            transport.close();
+            dave.transport.close();
+            reopened.close();
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("Timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(20);
+        }
+    }
+}